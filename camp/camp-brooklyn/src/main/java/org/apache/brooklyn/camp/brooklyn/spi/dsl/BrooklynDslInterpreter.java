@@ -67,7 +67,7 @@ public class BrooklynDslInterpreter extends PlanInterpreterAdapter {
 
         try {
             currentNode.set(node);
-            Object parsedNode = new DslParser(expression).parse();
+            Object parsedNode = DslParser.parseCached(expression);
             if ((parsedNode instanceof FunctionWithArgs) && ((FunctionWithArgs)parsedNode).getArgs()==null) {
                 if (node.getRoleInParent() == Role.MAP_KEY) {
                     node.setNewValue(parsedNode);
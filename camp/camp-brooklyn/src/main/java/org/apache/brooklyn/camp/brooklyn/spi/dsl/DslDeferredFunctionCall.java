@@ -16,6 +16,7 @@
 package org.apache.brooklyn.camp.brooklyn.spi.dsl;
 
 import java.lang.reflect.InvocationTargetException;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.util.Collections;
 import java.util.List;
@@ -36,6 +37,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 
 public class DslDeferredFunctionCall extends BrooklynDslDeferredSupplier<Object> {
@@ -110,7 +113,71 @@ public class DslDeferredFunctionCall extends BrooklynDslDeferredSupplier<Object>
         return new Invoker(obj, fnName, args).invoke();
     }
     
+    /** Key for the methods of a class in {@link Invoker#METHODS_BY_ARG_TYPES}; the method found depends only on these
+     * (and the class), as {@link Reflections#getMethodFromArgs(Object, String, List)} (without a coercer) matches on argument types.
+     * The argument types are held weakly, so that a class used only as an argument (e.g. from a bundle since removed)
+     * is not kept loaded by the cache of the class whose method it was passed to. */
+    private static class MethodKey {
+        /** the type of a null argument; shared, so that it is equal to itself, whereas a collected type is equal to nothing */
+        private static final WeakReference<Class<?>> NULL_TYPE = new WeakReference<Class<?>>(null);
+        
+        final String fnName;
+        final List<WeakReference<Class<?>>> argTypes;
+        final int hashCode;
+        
+        MethodKey(String fnName, List<?> args) {
+            this.fnName = fnName;
+            ImmutableList.Builder<WeakReference<Class<?>>> types = ImmutableList.builder();
+            int hash = fnName.hashCode();
+            for (Object arg : args) {
+                if (arg==null) {
+                    types.add(NULL_TYPE);
+                    hash = 31*hash;
+                } else {
+                    types.add(new WeakReference<Class<?>>(arg.getClass()));
+                    hash = 31*hash + arg.getClass().hashCode();
+                }
+            }
+            this.argTypes = types.build();
+            this.hashCode = hash;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof MethodKey)) return false;
+            MethodKey other = (MethodKey) obj;
+            if (hashCode != other.hashCode || !fnName.equals(other.fnName) || argTypes.size() != other.argTypes.size()) return false;
+            for (int i=0; i<argTypes.size(); i++) {
+                Class<?> type = argTypes.get(i).get();
+                if (type==null) {
+                    // null argument, or collected (in which case the entry is never used again, and is evicted in time)
+                    if (argTypes.get(i) != other.argTypes.get(i)) return false;
+                } else if (type != other.argTypes.get(i).get()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
     protected static class Invoker {
+        /** methods found for recent calls, so that evaluating the same DSL functions repeatedly
+         * (such as {@code attributeWhenReady} or {@code config} for every member of a cluster) does not search by reflection each time;
+         * held per class on which they were looked up, so they go when the class is unloaded */
+        private static final ClassValue<Cache<MethodKey, Maybe<Method>>> METHODS_BY_ARG_TYPES = new ClassValue<Cache<MethodKey, Maybe<Method>>>() {
+            @Override
+            protected Cache<MethodKey, Maybe<Method>> computeValue(Class<?> type) {
+                return CacheBuilder.newBuilder()
+                        .maximumSize(100)
+                        .build();
+            }
+        };
+        
         final Object obj;
         final String fnName;
         final List<?> args;
@@ -151,8 +218,20 @@ public class DslDeferredFunctionCall extends BrooklynDslDeferredSupplier<Object>
             }
         }
     
+        protected static Maybe<Method> getMethodFromArgs(Object clazzOrInstance, String fnName, List<?> args) {
+            Class<?> clazz = clazzOrInstance instanceof Class ? (Class<?>)clazzOrInstance : clazzOrInstance.getClass();
+            Cache<MethodKey, Maybe<Method>> methods = METHODS_BY_ARG_TYPES.get(clazz);
+            MethodKey key = new MethodKey(fnName, args);
+            Maybe<Method> result = methods.getIfPresent(key);
+            if (result==null) {
+                result = Reflections.getMethodFromArgs(clazzOrInstance, fnName, args);
+                methods.put(key, result);
+            }
+            return result;
+        }
+        
         protected void findMethod() {
-            method = Reflections.getMethodFromArgs(obj, fnName, args);
+            method = getMethodFromArgs(obj, fnName, args);
             if (method.isPresent()) {
                 this.instance = obj;
                 this.instanceArgs = args;
@@ -161,7 +240,7 @@ public class DslDeferredFunctionCall extends BrooklynDslDeferredSupplier<Object>
                 
             instance = BrooklynDslCommon.class;
             instanceArgs = ImmutableList.builder().add(obj).addAll(args).build();
-            method = Reflections.getMethodFromArgs(instance, fnName, instanceArgs);
+            method = getMethodFromArgs(instance, fnName, instanceArgs);
             if (method.isPresent()) return ;
     
             Maybe<?> facade;
@@ -174,7 +253,7 @@ public class DslDeferredFunctionCall extends BrooklynDslDeferredSupplier<Object>
             if (facade.isPresent()) {
                 instance = facade.get();
                 instanceArgs = args;
-                method = Reflections.getMethodFromArgs(instance, fnName, instanceArgs);
+                method = getMethodFromArgs(instance, fnName, instanceArgs);
                 if (method.isPresent()) return ;
             }
             
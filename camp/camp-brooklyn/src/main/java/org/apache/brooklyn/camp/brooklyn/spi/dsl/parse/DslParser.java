@@ -23,7 +23,18 @@ import java.util.List;
 
 import org.apache.brooklyn.util.collections.MutableList;
 
+import com.google.common.annotations.Beta;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
 public class DslParser {
+    
+    /** expressions recently parsed, as parse trees are immutable and blueprints (and types they refer to) are resolved repeatedly */
+    private static final Cache<String, Object> PARSED_EXPRESSIONS = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .build();
+    
     private final String expression;
     int index = -1;
     
@@ -31,6 +42,22 @@ public class DslParser {
         this.expression = expression;
     }
     
+    /**
+     * Parses the given expression, as {@code new DslParser(expression).parse()},
+     * but returning the same parse tree as a previous call with the same expression if it is still cached.
+     * The parse tree (lists, {@link FunctionWithArgs} and {@link QuotedString}) is immutable, so can be shared.
+     */
+    @Beta
+    public static Object parseCached(String expression) {
+        Object result = PARSED_EXPRESSIONS.getIfPresent(expression);
+        if (result==null) {
+            // errors are not cached; they are rare, and expected to be fixed rather than repeated
+            result = new DslParser(expression).parse();
+            PARSED_EXPRESSIONS.put(expression, result);
+        }
+        return result;
+    }
+    
     public synchronized Object parse() {
         if (index>=0)
             throw new IllegalStateException("Parser can only be used once");
@@ -113,7 +140,7 @@ public class DslParser {
             index++;
             skipWhitespace();
             if (index >= expression.length())
-                return result;
+                return ImmutableList.copyOf(result);
             char c = expression.charAt(index);
             if (c=='.') {
                 // chained expression
@@ -122,13 +149,13 @@ public class DslParser {
                 Object next = next();
                 if (next instanceof List) {
                     result.addAll((Collection<? extends FunctionWithArgs>) next);
-                    return result;
+                    return ImmutableList.copyOf(result);
                 } else {
                     throw new IllegalStateException("Expected functions following position"+chainStart);
                 }
             } else {
                 // following word not something handled at this level; assume parent will handle (or throw) - e.g. a , or extra )
-                return result;
+                return ImmutableList.copyOf(result);
             }
         } else {
             // it is just a word; return it with args as null
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.camp.brooklyn.spi.dsl;
+
+import static org.testng.Assert.assertEquals;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.brooklyn.camp.brooklyn.spi.dsl.methods.BrooklynDslCommon;
+import org.apache.brooklyn.util.guava.Maybe;
+import org.apache.brooklyn.util.javalang.Reflections;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+@Test
+public class DslDeferredFunctionCallTest {
+
+    public void testCachedMethodLookupMatchesUncached() {
+        assertSameMethodFound(BrooklynDslCommon.class, "literal", ImmutableList.of("x"));
+        assertSameMethodFound(BrooklynDslCommon.class, "formatString", ImmutableList.of("%s-%s", "a", 1));
+        assertSameMethodFound(BrooklynDslCommon.class, "formatString", ImmutableList.of("%s"));
+        assertSameMethodFound(BrooklynDslCommon.class, "config", ImmutableList.of("mykey"));
+        assertSameMethodFound(BrooklynDslCommon.class, "config", Arrays.asList((Object) null));
+        assertSameMethodFound(BrooklynDslCommon.class, "noSuchFunction", ImmutableList.of("x"));
+        assertSameMethodFound("abc", "concat", ImmutableList.of("d"));
+        assertSameMethodFound("abc", "concat", ImmutableList.of(1));
+        // same function and argument types on another class
+        assertSameMethodFound(new StringBuilder("abc"), "append", ImmutableList.of("d"));
+    }
+
+    private void assertSameMethodFound(Object clazzOrInstance, String fnName, List<?> args) {
+        Maybe<Method> uncached = Reflections.getMethodFromArgs(clazzOrInstance, fnName, args);
+        // the first call looks it up, the second finds it in the cache
+        for (int i = 0; i < 2; i++) {
+            Maybe<Method> cached = DslDeferredFunctionCall.Invoker.getMethodFromArgs(clazzOrInstance, fnName, args);
+            assertEquals(cached.isPresent(), uncached.isPresent(), fnName+args+" on "+clazzOrInstance);
+            if (uncached.isPresent()) assertEquals(cached.get(), uncached.get(), fnName+args+" on "+clazzOrInstance);
+        }
+    }
+}
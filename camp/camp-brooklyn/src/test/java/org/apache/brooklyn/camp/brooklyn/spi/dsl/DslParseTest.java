@@ -19,7 +19,9 @@
 package org.apache.brooklyn.camp.brooklyn.spi.dsl;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import java.util.Arrays;
 import java.util.List;
@@ -74,5 +76,22 @@ public class DslParseTest {
         assertTrue( ((FunctionWithArgs)fx2).getArgs().isEmpty() );
     }
     
+    @SuppressWarnings("unchecked")
+    public void testParseCachedSharesImmutableTree() {
+        String expression = "f(\"x\").g(h(\"y\").i())";
+        Object fx = DslParser.parseCached(expression);
+        assertSame(DslParser.parseCached(expression), fx);
+        assertEquals(fx.toString(), new DslParser(expression).parse().toString());
+        
+        try {
+            ((List<Object>)fx).add(new QuotedString("\"z\""));
+            fail("parse tree should be immutable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        Object nested = ((FunctionWithArgs)((List<?>)fx).get(1)).arg(0);
+        assertTrue(nested instanceof ImmutableList, "nested="+nested);
+    }
+    
 
 }
@@ -76,6 +76,19 @@ public class BrooklynFeatureEnablement {
      * behaviour (prior to 2017-11) which resolves the {@link EntitySpec} earlier and persists that */  
     public static final String FEATURE_PERSIST_ENTITY_SPEC_AS_SUPPLIER = FEATURE_PROPERTY_PREFIX+".persist.entitySpecAsSupplier";
 
+    /**
+     * Whether persistence should track which config and attributes of an entity have changed,
+     * and when generating the entity's memento reuse the parts of its previous memento which have not,
+     * rather than regenerating the whole memento on every change;
+     * and when writing the memento as XML, reuse the XML written for the attributes which have not changed.
+     * Entities with custom rebind support always have their memento generated in full.
+     * An attribute value changed in place, without the attribute being set again, may not be persisted
+     * until the attribute is next set.
+     * <p>
+     * Defaults to false.
+     */
+    public static final String FEATURE_INCREMENTAL_ENTITY_MEMENTOS = FEATURE_PROPERTY_PREFIX+".persist.incrementalEntityMementos";
+
     /**
      * Renaming threads can really helps with debugging etc; however it's a massive performance hit (2x)
      * <p>
@@ -93,6 +106,84 @@ public class BrooklynFeatureEnablement {
      */
     public static final String FEATURE_JITTER_THREADS = "brooklyn.executionManager.jitterThreads";
 
+    /**
+     * Whether sensor events are delivered to subscribers by a per-subscriber queue, drained by a single
+     * task for as long as events keep arriving, rather than by submitting a new task for every event.
+     * Delivery order per subscriber is preserved either way; with this enabled the task names and descriptions
+     * are only computed when the activity is inspected.
+     * <p>
+     * Defaults to false.
+     */
+    public static final String FEATURE_LIGHTWEIGHT_SUBSCRIPTION_DELIVERY = FEATURE_PROPERTY_PREFIX+".subscriptions.lightweightDelivery";
+
+    /**
+     * Whether the execution manager runs tasks on virtual threads, where the JVM supports them (Java 21+),
+     * rather than on a cached pool of platform threads. This suits the many tasks which spend most of their
+     * time blocked on ssh, http or waiting for other tasks. If enabled but not supported by the JVM,
+     * a warning is logged and platform threads are used.
+     * <p>
+     * Defaults to false.
+     */
+    public static final String FEATURE_VIRTUAL_THREADS = FEATURE_PROPERTY_PREFIX+".executionManager.virtualThreads";
+
+    /**
+     * Whether the execution manager should use a {@link org.apache.brooklyn.util.core.task.HashedWheelTaskTimer}
+     * to start each iteration of scheduled tasks (such as feed polls), rather than a single-threaded
+     * {@link java.util.concurrent.ScheduledThreadPoolExecutor}. The wheel is cheaper to schedule on with very many
+     * recurring tasks, but starts them up to one tick (10ms) late.
+     * <p>
+     * Defaults to false.
+     */
+    public static final String FEATURE_HASHED_WHEEL_TIMER = FEATURE_PROPERTY_PREFIX+".executionManager.hashedWheelTimer";
+
+    /**
+     * Whether a feed's {@link org.apache.brooklyn.core.feed.Poller} should run all of its poll jobs which have the same
+     * period in a single scheduled task, rather than scheduling (and creating a task for each run of) every job separately.
+     * The jobs in a batch are run one after the other, so a slow job delays the others in its batch;
+     * a failure in one job does not affect the others.
+     * <p>
+     * Defaults to false.
+     */
+    public static final String FEATURE_BATCH_POLLS = FEATURE_PROPERTY_PREFIX+".feed.batchPolls";
+
+    /**
+     * Whether {@link org.apache.brooklyn.feed.http.HttpFeed}s which do not say otherwise make their requests
+     * asynchronously, through the management context's {@link org.apache.brooklyn.feed.http.AsyncHttpPollExecutor},
+     * rather than in the feed's scheduled poll task. The poll task then does not wait for the response,
+     * requests are subject to a timeout and to a limit on concurrent requests per host.
+     * <p>
+     * Defaults to false.
+     */
+    public static final String FEATURE_ASYNC_HTTP_FEEDS = FEATURE_PROPERTY_PREFIX+".feed.http.async";
+
+    /**
+     * Whether a {@code JmxFeed} reads all the attributes of an mbean which are polled with the same period
+     * in a single {@link javax.management.MBeanServerConnection#getAttributes(javax.management.ObjectName, String[])} call,
+     * rather than with a round-trip per attribute. Combined with {@link #FEATURE_BATCH_POLLS}, the reads of
+     * all mbeans with the same period are also done in a single task, over the feed's one connection.
+     * <p>
+     * Defaults to false.
+     */
+    public static final String FEATURE_BATCH_JMX_ATTRIBUTE_READS = FEATURE_PROPERTY_PREFIX+".feed.jmx.batchAttributeReads";
+
+    /**
+     * Whether the commands of {@code SshFeed}s (and so of {@code SshCommandSensor}s) which are due on the same machine
+     * at about the same time are run together in a single ssh invocation, rather than one each.
+     * See {@code SshCommandBatcher}.
+     * <p>
+     * Defaults to false.
+     */
+    public static final String FEATURE_BATCH_SSH_FEED_COMMANDS = FEATURE_PROPERTY_PREFIX+".feed.ssh.batchCommands";
+
+    /**
+     * Whether a hot standby (or hot backup) keeps the contents it read from the persisted store, so that its
+     * periodic read-only rebind re-reads only the objects written since its last pass, and skips the pass
+     * entirely (rather than deserializing everything again) when nothing has been written.
+     * <p>
+     * Defaults to false.
+     */
+    public static final String FEATURE_INCREMENTAL_READ_ONLY_REBIND = FEATURE_PROPERTY_PREFIX+".rebind.readOnly.incremental";
+
     /**
      * When rebinding to state created from very old versions, the catalogItemId properties will be missing which
      * results in errors when OSGi bundles are used. When enabled the code tries to infer the catalogItemId from
@@ -152,8 +243,17 @@ public class BrooklynFeatureEnablement {
         setDefault(FEATURE_CATALOG_PERSISTENCE_PROPERTY, true);
         setDefault(FEATURE_DEFAULT_STANDBY_IS_HOT_PROPERTY, false);
         setDefault(FEATURE_PERSIST_ENTITY_SPEC_AS_SUPPLIER, true);
+        setDefault(FEATURE_INCREMENTAL_ENTITY_MEMENTOS, false);
         setDefault(FEATURE_RENAME_THREADS, false);
         setDefault(FEATURE_JITTER_THREADS, false);
+        setDefault(FEATURE_LIGHTWEIGHT_SUBSCRIPTION_DELIVERY, false);
+        setDefault(FEATURE_VIRTUAL_THREADS, false);
+        setDefault(FEATURE_HASHED_WHEEL_TIMER, false);
+        setDefault(FEATURE_BATCH_POLLS, false);
+        setDefault(FEATURE_ASYNC_HTTP_FEEDS, false);
+        setDefault(FEATURE_BATCH_JMX_ATTRIBUTE_READS, false);
+        setDefault(FEATURE_BATCH_SSH_FEED_COMMANDS, false);
+        setDefault(FEATURE_INCREMENTAL_READ_ONLY_REBIND, false);
         setDefault(FEATURE_BACKWARDS_COMPATIBILITY_INFER_CATALOG_ITEM_ON_REBIND, false);
         setDefault(FEATURE_AUTO_FIX_CATALOG_REF_ON_REBIND, false);
         setDefault(FEATURE_SSH_ASYNC_EXEC, false);
@@ -196,7 +196,7 @@ public class BasicBrooklynCatalog implements BrooklynCatalog {
     }
 
     public void reset(CatalogDto dto, boolean failOnLoadError) {
-        specCache.invalidate();
+        invalidateSpecCaches();
         // Unregister all existing persisted items.
         for (CatalogItem<?, ?> toRemove : getCatalogItemsLegacy()) {
             if (log.isTraceEnabled()) {
@@ -346,7 +346,7 @@ public class BasicBrooklynCatalog implements BrooklynCatalog {
         manualAdditionsCatalog.deleteEntry(itemDto);
         
         // Ensure the caches are de-populated
-        specCache.invalidate();
+        invalidateSpecCaches();
         getCatalog().deleteEntry(itemDto);
 
         // And indicate to the management context that it should be removed.
@@ -401,7 +401,7 @@ public class BasicBrooklynCatalog implements BrooklynCatalog {
     }
 
     private void resetRootClassLoader() {
-        specCache.invalidate();
+        invalidateSpecCaches();
         rootClassLoader.reset(ImmutableList.of(catalog.getRootClassLoader()));
     }
 
@@ -1843,7 +1843,7 @@ public class BasicBrooklynCatalog implements BrooklynCatalog {
         }
 
         // Clear spec cache (in-case overwriting existing)
-        specCache.invalidate();
+        invalidateSpecCaches();
         
         if (manualAdditionsCatalog==null) loadManualAdditionsCatalog();
         manualAdditionsCatalog.addEntry(itemDto);
@@ -1888,7 +1888,7 @@ public class BasicBrooklynCatalog implements BrooklynCatalog {
     @Override @Deprecated /** @deprecated see super */
     public void addItem(CatalogItem<?,?> item) {
         // Clear spec-cache (in-case overwriting)
-        specCache.invalidate();
+        invalidateSpecCaches();
         
         //assume forceUpdate for backwards compatibility
         log.debug("Adding manual catalog item to "+mgmt+": "+item);
@@ -1905,7 +1905,7 @@ public class BasicBrooklynCatalog implements BrooklynCatalog {
     }
     
     private void addCatalogLegacyItemsOnRebind(Iterable<? extends CatalogItem<?,?>> items, boolean failOnLoadError) {
-        specCache.invalidate();
+        invalidateSpecCaches();
         
         log.debug("Adding manual catalog items to "+mgmt+": "+items);
         checkNotNull(items, "item");
@@ -1945,7 +1945,7 @@ public class BasicBrooklynCatalog implements BrooklynCatalog {
         CatalogItem<?, ?> result = manualAdditionsCatalog.classpath.addCatalogEntry(type);
         
         // Clear spec-cache (in-case overwriting)
-        specCache.invalidate();
+        invalidateSpecCaches();
         
         return result;
     }
@@ -2094,6 +2094,15 @@ public class BasicBrooklynCatalog implements BrooklynCatalog {
         };
     }
 
+    /** clears the spec cache here and that of the type registry,
+     * as specs resolved there can refer to legacy catalog items */
+    private void invalidateSpecCaches() {
+        specCache.invalidate();
+        if (mgmt.getTypeRegistry() instanceof BasicBrooklynTypeRegistry) {
+            ((BasicBrooklynTypeRegistry) mgmt.getTypeRegistry()).invalidateSpecCache();
+        }
+    }
+
     private static class SpecCache {
         private final Map<String, AbstractBrooklynObjectSpec<?,?>> cache = Collections.synchronizedMap(
                 Maps.<String, AbstractBrooklynObjectSpec<?,?>>newLinkedHashMap());
@@ -1038,12 +1038,16 @@ public abstract class AbstractEntity extends AbstractBrooklynObject implements E
                 attributesInternal.remove(attribute);
                 entityType.removeSensor(attribute);
             });
+            if (BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_INCREMENTAL_ENTITY_MEMENTOS)) {
+                // incremental mementos keep the attributes of the previous memento, so must be told of removals
+                getManagementSupport().getEntityChangeListener().onAttributeChanged(attribute);
+            }
         }
 
         @Override
         public Map<AttributeSensor<?>, Object> getAll() {
             Map<AttributeSensor<?>, Object> result = Maps.newLinkedHashMap();
-            Map<String, Object> attribs = attributesInternal.asMap();
+            Map<String, Object> attribs = attributesInternal.asSnapshot();
             for (Map.Entry<String,Object> entry : attribs.entrySet()) {
                 AttributeSensor<?> attribKey = (AttributeSensor<?>) entityType.getSensor(entry.getKey());
                 if (attribKey == null) {
@@ -19,25 +19,40 @@
 package org.apache.brooklyn.core.feed;
 
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.mgmt.Task;
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
 import org.apache.brooklyn.core.entity.Attributes;
 import org.apache.brooklyn.core.entity.Entities;
 import org.apache.brooklyn.core.entity.EntityInternal;
 import org.apache.brooklyn.core.mgmt.BrooklynTaskTags;
+import org.apache.brooklyn.util.collections.MutableList;
 import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.core.task.DynamicSequentialTask;
 import org.apache.brooklyn.util.core.task.ScheduledTask;
 import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.Beta;
+import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 
 /** 
@@ -46,6 +61,9 @@ import com.google.common.base.MoreObjects;
  * The jobs will then be executed periodically, and the handler called for the result/failure.
  * 
  * Assumes the schedule+start will be done single threaded, and that stop will not be done concurrently.
+ * <p>
+ * If {@link BrooklynFeatureEnablement#FEATURE_BATCH_POLLS} is enabled, jobs with the same period
+ * share a single scheduled task, which runs them one after the other.
  */
 public class Poller<V> {
     public static final Logger log = LoggerFactory.getLogger(Poller.class);
@@ -63,7 +81,7 @@ public class Poller<V> {
         final PollHandler<? super V> handler;
         final Duration pollPeriod;
         final Runnable wrappedJob;
-        private boolean loggedPreviousException = false;
+        private volatile boolean loggedPreviousException = false;
         
         PollJob(final Callable<V> job, final PollHandler<? super V> handler, Duration period) {
             this.handler = handler;
@@ -73,25 +91,108 @@ public class Poller<V> {
                 @Override
                 public void run() {
                     try {
-                        V val = job.call();
-                        loggedPreviousException = false;
-                        if (handler.checkSuccess(val)) {
-                            handler.onSuccess(val);
-                        } else {
-                            handler.onFailure(val);
-                        }
+                        onResult(job.call());
                     } catch (Exception e) {
-                        if (loggedPreviousException) {
-                            if (log.isTraceEnabled()) log.trace("PollJob for {}, repeated consecutive failures, handling {} using {}", new Object[] {job, e, handler});
-                        } else {
-                            if (log.isDebugEnabled()) log.debug("PollJob for {} handling {} using {}", new Object[] {job, e, handler});
-                            loggedPreviousException = true;
-                        }
-                        handler.onException(e);
+                        onException(job, e);
                     }
                 }
             };
         }
+        
+        /** for a job which returns a future, whose result is passed to the handler (by the given executor) when it completes */
+        PollJob(final AsyncPollJob<V> job, final PollHandler<? super V> handler, Duration period, final Executor callbackExecutor) {
+            this.handler = handler;
+            this.pollPeriod = period;
+            
+            final AtomicBoolean inProgress = new AtomicBoolean();
+            wrappedJob = new Runnable() {
+                @Override
+                public void run() {
+                    // don't pile up requests against an endpoint which is slower than the poll period
+                    if (!inProgress.compareAndSet(false, true)) {
+                        if (log.isTraceEnabled()) log.trace("PollJob for {} skipped, as previous poll still in progress", job);
+                        return;
+                    }
+                    final ListenableFuture<? extends V> future;
+                    try {
+                        future = job.call();
+                    } catch (Exception e) {
+                        inProgress.set(false);
+                        onException(job, e);
+                        return;
+                    }
+                    future.addListener(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                callbackExecutor.execute(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        try {
+                                            onCompleted(job, future);
+                                        } finally {
+                                            // only now, so that the next poll's result cannot be handled before this one's
+                                            inProgress.set(false);
+                                        }
+                                    }
+                                    @Override
+                                    public String toString() {
+                                        return "Handling result of "+job;
+                                    }
+                                });
+                            } catch (RejectedExecutionException e) {
+                                // poller stopped (or entity unmanaged); discard the result
+                                if (log.isTraceEnabled()) log.trace("PollJob for {} result discarded: {}", job, e.getMessage());
+                                inProgress.set(false);
+                            }
+                        }
+                    }, MoreExecutors.sameThreadExecutor());
+                }
+            };
+        }
+        
+        private void onCompleted(Object job, ListenableFuture<? extends V> future) {
+            V val;
+            try {
+                val = Uninterruptibles.getUninterruptibly(future);
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                Exceptions.propagateIfFatal(t);
+                onException(job, (t instanceof Exception) ? (Exception)t : e);
+                return;
+            } catch (CancellationException e) {
+                onException(job, e);
+                return;
+            }
+            onResult(val);
+        }
+        
+        private void onResult(V val) {
+            loggedPreviousException = false;
+            if (handler.checkSuccess(val)) {
+                handler.onSuccess(val);
+            } else {
+                handler.onFailure(val);
+            }
+        }
+        
+        private void onException(Object job, Exception e) {
+            if (loggedPreviousException) {
+                if (log.isTraceEnabled()) log.trace("PollJob for {}, repeated consecutive failures, handling {} using {}", new Object[] {job, e, handler});
+            } else {
+                if (log.isDebugEnabled()) log.debug("PollJob for {} handling {} using {}", new Object[] {job, e, handler});
+                loggedPreviousException = true;
+            }
+            handler.onException(e);
+        }
+    }
+    
+    /**
+     * A poll job which starts the poll and returns a future for its result, rather than waiting for it,
+     * so that the scheduled task is not held for the whole poll (e.g. a network round-trip).
+     */
+    @Beta
+    public interface AsyncPollJob<V> extends Callable<ListenableFuture<? extends V>> {
     }
 
     /** @deprecated since 0.12.0 pass in feed */
@@ -124,6 +225,30 @@ public class Poller<V> {
         pollJobs.add(foo);
     }
 
+    /**
+     * As {@link #scheduleAtFixedRate(Callable, PollHandler, Duration)}, for a job which returns a future;
+     * when it completes, the handler is called in a task in the entity's execution context,
+     * if this poller is still running (otherwise the result is discarded).
+     * A run is skipped if the previous run's result has not yet been handled.
+     */
+    @Beta
+    public void scheduleAtFixedRateAsync(AsyncPollJob<V> job, PollHandler<? super V> handler, Duration period) {
+        if (started) {
+            throw new IllegalStateException("Cannot schedule additional tasks after poller has started");
+        }
+        pollJobs.add(new PollJob<V>(job, handler, period, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (!isRunning() || !Entities.isManaged(entity)) {
+                    throw new RejectedExecutionException("Poller "+Poller.this+" for "+entity+" no longer running");
+                }
+                Task<?> task = Tasks.builder().dynamic(false).displayName(handler.getDescription()).body(command).build();
+                BrooklynTaskTags.setTransient(task);
+                Entities.submit(entity, task);
+            }
+        }));
+    }
+
     @SuppressWarnings({ "unchecked" })
     public void start() {
         // TODO Previous incarnation of this logged this logged polledSensors.keySet(), but we don't know that anymore
@@ -142,43 +267,91 @@ public class Poller<V> {
             oneOffTasks.add(feed.getExecutionContext().submit(task));
         }
         
-        Duration minPeriod = null;
+        boolean batchPolls = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_BATCH_POLLS);
+        Map<Duration, List<PollJob<V>>> batches = MutableMap.of();
         for (final PollJob<V> pollJob : pollJobs) {
-            final String scheduleName = pollJob.handler.getDescription();
             if (pollJob.pollPeriod.compareTo(Duration.ZERO) > 0) {
-                ScheduledTask t = ScheduledTask.builder(() -> {
-                            DynamicSequentialTask<Void> task = new DynamicSequentialTask<Void>(MutableMap.of("displayName", scheduleName, "entity", entity), 
-                                new Callable<Void>() { @Override public Void call() {
-                                    if (!Entities.isManaged(entity)) {
-                                        return null;
-                                    }
-                                    if (onlyIfServiceUp && !Boolean.TRUE.equals(entity.getAttribute(Attributes.SERVICE_UP))) {
-                                        return null;
-                                    }
-                                    pollJob.wrappedJob.run();
-                                    return null; 
-                                } } );
-                            BrooklynTaskTags.setTransient(task);
-                            return task;
-                        })
-                        .displayName("scheduled:" + scheduleName)
-                        .period(pollJob.pollPeriod)
-                        .cancelOnException(false)
-                        .build();
-                tasks.add(Entities.submit(entity, t));
-                if (minPeriod==null || (pollJob.pollPeriod.isShorterThan(minPeriod))) {
-                    minPeriod = pollJob.pollPeriod;
+                if (batchPolls) {
+                    List<PollJob<V>> batch = batches.get(pollJob.pollPeriod);
+                    if (batch==null) {
+                        batch = MutableList.of();
+                        batches.put(pollJob.pollPeriod, batch);
+                    }
+                    batch.add(pollJob);
+                } else {
+                    schedule(pollJob.handler.getDescription(), pollJob.pollPeriod, ImmutableList.of(pollJob));
                 }
             } else {
                 if (log.isDebugEnabled()) log.debug("Activating poll (but leaving off, as period {}) for {} (using {})", new Object[] {pollJob.pollPeriod, entity, this});
             }
         }
+        for (Map.Entry<Duration, List<PollJob<V>>> batch : batches.entrySet()) {
+            List<PollJob<V>> jobs = batch.getValue();
+            String scheduleName = (jobs.size()==1) ? jobs.get(0).handler.getDescription() : getBatchDescription(jobs);
+            schedule(scheduleName, batch.getKey(), jobs);
+        }
+        
+        Duration minPeriod = null;
+        for (PollJob<V> pollJob : pollJobs) {
+            if (pollJob.pollPeriod.compareTo(Duration.ZERO) > 0 && (minPeriod==null || pollJob.pollPeriod.isShorterThan(minPeriod))) {
+                minPeriod = pollJob.pollPeriod;
+            }
+        }
         
         if (minPeriod!=null && feed!=null) {
             feed.highlightTriggerPeriod(minPeriod);
         }
     }
     
+    /** schedules the given jobs to be run one after another, in a single task, every period */
+    private void schedule(final String scheduleName, Duration period, final List<PollJob<V>> jobs) {
+        ScheduledTask t = ScheduledTask.builder(() -> {
+                    DynamicSequentialTask<Void> task = new DynamicSequentialTask<Void>(MutableMap.of("displayName", scheduleName, "entity", entity, "tags", ImmutableList.of(BrooklynTaskTags.POLL_TAG)), 
+                        new Callable<Void>() { @Override public Void call() {
+                            if (!Entities.isManaged(entity)) {
+                                return null;
+                            }
+                            if (onlyIfServiceUp && !Boolean.TRUE.equals(entity.getAttribute(Attributes.SERVICE_UP))) {
+                                return null;
+                            }
+                            runJobs(jobs);
+                            return null; 
+                        } } );
+                    BrooklynTaskTags.setTransient(task);
+                    return task;
+                })
+                .displayName("scheduled:" + scheduleName)
+                .period(period)
+                .cancelOnException(false)
+                .build();
+        tasks.add(Entities.submit(entity, t));
+    }
+
+    private void runJobs(List<PollJob<V>> jobs) {
+        if (jobs.size()==1) {
+            jobs.get(0).wrappedJob.run();
+            return;
+        }
+        for (PollJob<V> pollJob : jobs) {
+            // the job passes its own exceptions to its handler, but the handler itself may throw;
+            // that must not stop the rest of the batch
+            try {
+                pollJob.wrappedJob.run();
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                log.warn("Poll "+pollJob.handler.getDescription()+" for "+entity+" failed in handler (continuing with other polls in batch): "+e, e);
+            }
+        }
+    }
+
+    private String getBatchDescription(List<PollJob<V>> jobs) {
+        List<String> descriptions = MutableList.of();
+        for (PollJob<V> pollJob : jobs) {
+            descriptions.add(pollJob.handler.getDescription());
+        }
+        return jobs.size()+" polls: "+Joiner.on(", ").join(descriptions);
+    }
+
     public void stop() {
         if (log.isDebugEnabled()) log.debug("Stopping poll for {} (using {})", new Object[] {entity, this});
         if (!started) { 
@@ -49,6 +49,7 @@ import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.mgmt.ha.OsgiBundleInstallationResult.ResultCode;
 import org.apache.brooklyn.core.server.BrooklynServerConfig;
 import org.apache.brooklyn.core.server.BrooklynServerPaths;
+import org.apache.brooklyn.core.typereg.BasicBrooklynTypeRegistry;
 import org.apache.brooklyn.core.typereg.BundleUpgradeParser.CatalogUpgrades;
 import org.apache.brooklyn.core.typereg.RegisteredTypePredicates;
 import org.apache.brooklyn.util.collections.MutableList;
@@ -159,6 +160,7 @@ public class OsgiManager {
             if (Strings.isNonBlank(result.getMetadata().getUrl())) {
                 managedBundlesUidByUrl.put(result.getMetadata().getUrl(), result.getMetadata().getId());
             }
+            invalidateSpecCache();
         }
 
         private File fileFor(ManagedBundle managedBundle) {
@@ -181,8 +183,16 @@ public class OsgiManager {
             managedBundlesRecord.managedBundlesUidByUrl.remove(bundleMetadata.getUrl());
             removeInstalledWrapperBundle(bundleMetadata);
             fileFor(bundleMetadata).delete();
+            invalidateSpecCache();
             return true;
         }
+        
+        /** specs resolved by the type registry may have loaded classes from bundles, so are discarded when bundles change */
+        private void invalidateSpecCache() {
+            if (mgmt.getTypeRegistry() instanceof BasicBrooklynTypeRegistry) {
+                ((BasicBrooklynTypeRegistry) mgmt.getTypeRegistry()).invalidateSpecCache();
+            }
+        }
 
         /** Updates the bundle file associated with the given record, creating and returning a backup if there was already such a file */ 
         synchronized File updateManagedBundleFile(OsgiBundleInstallationResult result, File fNew) {
@@ -257,7 +257,8 @@ public class BrooklynGarbageCollector {
             executionManager.getNumActiveTasks()+" active, "+
             executionManager.getNumIncompleteTasks()+" unfinished; "+
             executionManager.getNumInMemoryTasks()+" remembered, "+
-            executionManager.getTotalTasksSubmitted()+" total submitted)";
+            executionManager.getTotalTasksSubmitted()+" total submitted)"+
+            (executionManager.getTaskPools().isEmpty() ? "" : "; task pools: "+executionManager.getTaskPoolMetrics());
     }
     
     public void shutdownNow() {
@@ -353,7 +354,8 @@ public class BrooklynGarbageCollector {
         
         // now look at overcapacity tags, non-entity tags first
         
-        Set<Object> taskTags = executionManager.getTaskTags();
+        // live view of the tags, and counts per tag, so that no tag or task sets are copied
+        Set<Object> taskTags = executionManager.getTaskTagsLive();
         
         int maxTasksPerEntity = brooklynProperties.getConfig(MAX_TASKS_PER_ENTITY);
         int maxTasksPerTag = brooklynProperties.getConfig(MAX_TASKS_PER_TAG);
@@ -366,17 +368,17 @@ public class BrooklynGarbageCollector {
         for (Object tag : taskTags) {
             if (isTagIgnoredForGc(tag)) continue;
             
-            Set<Task<?>> tasksWithTag = executionManager.tasksWithTagLiveOrNull(tag);
-            if (tasksWithTag==null) continue;
+            int numTasksWithTag = executionManager.getNumTasksWithTag(tag);
+            if (numTasksWithTag==0) continue;
             AtomicInteger overA = null;
             if (tag instanceof WrappedEntity) {
-                int over = tasksWithTag.size() - maxTasksPerEntity;
+                int over = numTasksWithTag - maxTasksPerEntity;
                 if (over>0) {
                     overA = new AtomicInteger(over);
                     taskEntityTagsOverCapacity.put(tag, overA);
                 }
             } else {
-                int over = tasksWithTag.size() - maxTasksPerTag;
+                int over = numTasksWithTag - maxTasksPerTag;
                 if (over>0) {
                     overA = new AtomicInteger(over);
                     taskNonEntityTagsOverCapacity.put(tag, overA);
@@ -22,6 +22,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.brooklyn.api.effector.Effector;
 import org.apache.brooklyn.api.entity.Application;
@@ -29,6 +30,7 @@ import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.mgmt.ExecutionContext;
 import org.apache.brooklyn.api.mgmt.ManagementContext;
 import org.apache.brooklyn.api.mgmt.SubscriptionContext;
+import org.apache.brooklyn.api.mgmt.rebind.ChangeListener;
 import org.apache.brooklyn.api.mgmt.entitlement.EntitlementManager;
 import org.apache.brooklyn.api.policy.Policy;
 import org.apache.brooklyn.api.sensor.AttributeSensor;
@@ -43,6 +45,7 @@ import org.apache.brooklyn.core.mgmt.entitlement.Entitlements;
 import org.apache.brooklyn.core.mgmt.entitlement.Entitlements.EntityAndItem;
 import org.apache.brooklyn.core.mgmt.entitlement.Entitlements.StringAndArgument;
 import org.apache.brooklyn.core.mgmt.internal.NonDeploymentManagementContext.NonDeploymentManagementContextMode;
+import org.apache.brooklyn.core.mgmt.rebind.FineGrainedChangeListener;
 import org.apache.brooklyn.util.core.task.Tasks;
 import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.slf4j.Logger;
@@ -52,6 +55,8 @@ import com.google.common.annotations.Beta;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 /**
  * Encapsulates management activities at an entity.
@@ -94,6 +99,9 @@ public class EntityManagementSupport {
     protected final AtomicBoolean managementFailed = new AtomicBoolean(false);
     
     private volatile EntityChangeListener entityChangeListener = EntityChangeListener.NOOP;
+    private final EntityChangeListener modificationCountingListener = new ModificationCountingListener();
+
+    private final AtomicLong modificationCount = new AtomicLong();
 
     /**
      * Whether this entity is managed (i.e. "onManagementStarting" has been called, so the framework knows about it,
@@ -411,7 +419,126 @@ public class EntityManagementSupport {
     }
     
     public EntityChangeListener getEntityChangeListener() {
-        return entityChangeListener;
+        return modificationCountingListener;
+    }
+
+    /**
+     * The number of changes to this entity's sensors, config, children, locations, members, tags and adjuncts,
+     * whether or not it is managed (and including changes made in read-only mode).
+     * <p>
+     * Intended to tell cheaply whether the entity might have changed, e.g. for HTTP ETags;
+     * it is not persisted, so it is only comparable for this instance of the entity.
+     */
+    @Beta
+    public long getModificationCount() {
+        return modificationCount.get();
+    }
+
+    /**
+     * As {@link #getModificationCount()}, but reflecting also the changes to all descendants of this entity:
+     * a value which changes whenever the modification count of any of them does, or the set of descendants does
+     * (barring a hash collision), though it does not necessarily increase.
+     * <p>
+     * This is computed on request by visiting the descendants, so that a change to an entity
+     * need not update its ancestors (which would make every write in an application contend on the application).
+     */
+    @Beta
+    public long getSubtreeModificationVersion() {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        putModificationCounts(entity, hasher);
+        return hasher.hash().asLong();
+    }
+
+    private static void putModificationCounts(Entity entity, Hasher hasher) {
+        AbstractEntity entityImpl = (entity instanceof AbstractEntity) ? (AbstractEntity) entity : Entities.deproxy(entity);
+        hasher.putUnencodedChars(entity.getId()).putChar('\0').putLong(entityImpl.getManagementSupport().getModificationCount());
+        for (Entity child : entityImpl.getChildren()) {
+            putModificationCounts(child, hasher);
+        }
+        // marks the end of the children, so that the same entities in a different tree give a different value
+        hasher.putChar('\0');
+    }
+
+    private void onModified() {
+        modificationCount.incrementAndGet();
+    }
+
+    /** counts changes, then passes them on to the current listener (which depends on the management state) */
+    private class ModificationCountingListener implements EntityChangeListener {
+        @Override
+        public void onChanged() {
+            onModified();
+            entityChangeListener.onChanged();
+        }
+        @Override
+        public void onAttributeChanged(AttributeSensor<?> attribute) {
+            onModified();
+            entityChangeListener.onAttributeChanged(attribute);
+        }
+        @Override
+        public void onConfigChanged(ConfigKey<?> key) {
+            onModified();
+            entityChangeListener.onConfigChanged(key);
+        }
+        @Override
+        public void onLocationsChanged() {
+            onModified();
+            entityChangeListener.onLocationsChanged();
+        }
+        @Override
+        public void onTagsChanged() {
+            onModified();
+            entityChangeListener.onTagsChanged();
+        }
+        @Override
+        public void onMembersChanged() {
+            onModified();
+            entityChangeListener.onMembersChanged();
+        }
+        @Override
+        public void onChildrenChanged() {
+            onModified();
+            entityChangeListener.onChildrenChanged();
+        }
+        @Override
+        public void onPolicyAdded(Policy policy) {
+            onModified();
+            entityChangeListener.onPolicyAdded(policy);
+        }
+        @Override
+        public void onPolicyRemoved(Policy policy) {
+            onModified();
+            entityChangeListener.onPolicyRemoved(policy);
+        }
+        @Override
+        public void onEnricherAdded(Enricher enricher) {
+            onModified();
+            entityChangeListener.onEnricherAdded(enricher);
+        }
+        @Override
+        public void onEnricherRemoved(Enricher enricher) {
+            onModified();
+            entityChangeListener.onEnricherRemoved(enricher);
+        }
+        @Override
+        public void onFeedAdded(Feed feed) {
+            onModified();
+            entityChangeListener.onFeedAdded(feed);
+        }
+        @Override
+        public void onFeedRemoved(Feed feed) {
+            onModified();
+            entityChangeListener.onFeedRemoved(feed);
+        }
+        @Override
+        public void onEffectorStarting(Effector<?> effector, Object parameters) {
+            // not a change; any changes made by the effector are counted as they happen
+            entityChangeListener.onEffectorStarting(effector, parameters);
+        }
+        @Override
+        public void onEffectorCompleted(Effector<?> effector) {
+            entityChangeListener.onEffectorCompleted(effector);
+        }
     }
     
     private class EntityChangeListenerImpl implements EntityChangeListener {
@@ -470,11 +597,21 @@ public class EntityManagementSupport {
             // TODO Could make this more efficient by inspecting the attribute to decide if needs persisted
             // immediately, or not important, or transient (e.g. do we really need to persist 
             // request-per-second count for rebind purposes?!)
-            getManagementContext().getRebindManager().getChangeListener().onChanged(entity);
+            ChangeListener listener = getManagementContext().getRebindManager().getChangeListener();
+            if (listener instanceof FineGrainedChangeListener) {
+                ((FineGrainedChangeListener)listener).onAttributeChanged(entity, attribute);
+            } else {
+                listener.onChanged(entity);
+            }
         }
         @Override
         public void onConfigChanged(ConfigKey<?> key) {
-            getManagementContext().getRebindManager().getChangeListener().onChanged(entity);
+            ChangeListener listener = getManagementContext().getRebindManager().getChangeListener();
+            if (listener instanceof FineGrainedChangeListener) {
+                ((FineGrainedChangeListener)listener).onConfigChanged(entity, key);
+            } else {
+                listener.onChanged(entity);
+            }
         }
         @Override
         public void onEffectorStarting(Effector<?> effector, Object parameters) {
@@ -55,12 +55,14 @@ import org.apache.brooklyn.core.mgmt.ha.OsgiManager;
 import org.apache.brooklyn.core.objs.proxy.InternalEntityFactory;
 import org.apache.brooklyn.core.objs.proxy.InternalLocationFactory;
 import org.apache.brooklyn.core.objs.proxy.InternalPolicyFactory;
+import org.apache.brooklyn.feed.http.AsyncHttpPollExecutor;
 import org.apache.brooklyn.util.core.task.BasicExecutionContext;
 import org.apache.brooklyn.util.core.task.BasicExecutionManager;
 import org.apache.brooklyn.util.core.task.DynamicTasks;
 import org.apache.brooklyn.util.core.task.TaskTags;
 import org.apache.brooklyn.util.core.task.Tasks;
 import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.executor.ManagedHttpClients;
 import org.apache.brooklyn.util.guava.Maybe;
 import org.apache.brooklyn.util.text.Strings;
 import org.slf4j.Logger;
@@ -315,6 +317,7 @@ public class LocalManagementContext extends AbstractManagementContext {
 
         if (execution == null) {
             execution = new BasicExecutionManager(getManagementNodeId());
+            execution.configureTaskPools(configMap);
             gc = new BrooklynGarbageCollector(configMap, execution, getStorage());
         }
         return execution;
@@ -334,6 +337,8 @@ public class LocalManagementContext extends AbstractManagementContext {
         if (usageManager != null) usageManager.terminate();
         if (execution != null) execution.shutdownNow();
         if (gc != null) gc.shutdownNow();
+        ManagedHttpClients.close(this);
+        AsyncHttpPollExecutor.close(this);
         if (osgiManager!=null) {
             osgiManager.stop();
             osgiManager = null;
@@ -19,9 +19,8 @@
 package org.apache.brooklyn.core.mgmt.internal;
 
 import static org.apache.brooklyn.util.JavaGroovyEquivalents.elvis;
-import static org.apache.brooklyn.util.JavaGroovyEquivalents.groovyTruth;
-import static org.apache.brooklyn.util.JavaGroovyEquivalents.join;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -42,6 +41,7 @@ import org.apache.brooklyn.api.sensor.AttributeSensor;
 import org.apache.brooklyn.api.sensor.Sensor;
 import org.apache.brooklyn.api.sensor.SensorEvent;
 import org.apache.brooklyn.api.sensor.SensorEventListener;
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
 import org.apache.brooklyn.core.entity.Entities;
 import org.apache.brooklyn.core.entity.EntityInternal;
 import org.apache.brooklyn.core.mgmt.BrooklynTaskTags;
@@ -70,6 +70,8 @@ import com.google.common.collect.Multimaps;
  * 
  * Synchronization model:  methods in this class synch on this object to ensure
  * subscription order and delivery order on publish.
+ * Publishing itself does not take that lock: subscriptions are looked up in a 
+ * copy-on-write {@link SubscriptionIndex}, so concurrent publishers do not contend.
  * <p>
  * Frequently it will be called by a thread holding a lock on a value
  * (eg {@link AttributeMap}, this synchronized methods here should not
@@ -87,12 +89,17 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
     private final AtomicLong totalEventsPublishedCount = new AtomicLong();
     private final AtomicLong totalEventsDeliveredCount = new AtomicLong();
     
+    /** whether to use {@link SubscriptionDeliveryQueue}s rather than a task per event; 
+     * see {@link BrooklynFeatureEnablement#FEATURE_LIGHTWEIGHT_SUBSCRIPTION_DELIVERY} */
+    protected final boolean lightweightDelivery = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_LIGHTWEIGHT_SUBSCRIPTION_DELIVERY);
+    protected final ConcurrentMap<Object, SubscriptionDeliveryQueue> deliveryQueuesByTag = new ConcurrentHashMap<Object, SubscriptionDeliveryQueue>();
+    
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<String, Subscription> allSubscriptions = new ConcurrentHashMap<String, Subscription>();
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsBySubscriber = new ConcurrentHashMap<Object, Set<Subscription>>();
-    @SuppressWarnings("rawtypes")
-    protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsByToken = new ConcurrentHashMap<Object, Set<Subscription>>();
+    /** subscriptions by producer and sensor, including wildcards; read without locking on every publish */
+    protected final SubscriptionIndex subscriptionIndex = new SubscriptionIndex();
     
     public LocalSubscriptionManager(ExecutionManager m) {
         this.em = m;
@@ -160,13 +167,15 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         } else {
             lastVal = null;  // won't be used
         }
-        addToMapOfSets(subscriptionsByToken, makeEntitySensorToken(s.producer, s.sensor), s);
+        // the scheduler must be in place before the subscription is visible to (unlocked) publishers,
+        // otherwise an event published in between would not be delivered in order
+        if (!s.subscriberExecutionManagerTagSupplied && s.subscriberExecutionManagerTag!=null) {
+            ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class, BrooklynTaskTags.SENSOR_TAG);
+        }
+        subscriptionIndex.add(s);
         if (s.subscriber!=null) {
             addToMapOfSets(subscriptionsBySubscriber, s.subscriber, s);
         }
-        if (!s.subscriberExecutionManagerTagSupplied && s.subscriberExecutionManagerTag!=null) {
-            ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class);
-        }
 
         if (notifyOfInitialValue) {
             if (LOG.isTraceEnabled()) LOG.trace("sending initial value of {} -> {} to {}", new Object[] {s.producer, s.sensor, s});
@@ -215,12 +224,9 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
     }
 
     @Override
-    public synchronized Set<SubscriptionHandle> getSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
+    public Set<SubscriptionHandle> getSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
         Set<SubscriptionHandle> subscriptions = new LinkedHashSet<SubscriptionHandle>();
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(source, sensor)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(null, sensor)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(source, null)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(null, null)), Collections.emptySet()));
+        Collections.addAll(subscriptions, subscriptionIndex.get(source, sensor));
         return subscriptions;
     }
 
@@ -235,15 +241,20 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         if (!(sh instanceof Subscription)) throw new IllegalArgumentException("Only subscription handles of type Subscription supported: sh="+sh+"; type="+(sh != null ? sh.getClass().getCanonicalName() : null));
         Subscription s = (Subscription) sh;
         boolean result = allSubscriptions.remove(s.id) != null;
-        boolean b2 = removeFromMapOfCollections(subscriptionsByToken, makeEntitySensorToken(s.producer, s.sensor), s);
+        boolean b2 = subscriptionIndex.remove(s);
         assert result==b2;
         if (s.subscriber!=null) {
             boolean b3 = removeFromMapOfCollections(subscriptionsBySubscriber, s.subscriber, s);
             assert b3 == b2;
         }
 
+        if (s.subscriberExecutionManagerTag!=null && (s.subscriber==null || !subscriptionsBySubscriber.containsKey(s.subscriber))) {
+            // any events already queued are still delivered, as the queue holds them until drained
+            deliveryQueuesByTag.remove(s.subscriberExecutionManagerTag);
+        }
+
         // FIXME ALEX - this seems wrong
-        ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class);
+        if (s.subscriberExecutionManagerTag!=null) ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class, BrooklynTaskTags.SENSOR_TAG);
         return result;
     }
 
@@ -264,9 +275,10 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         if (LOG.isTraceEnabled()) LOG.trace("{} got event {}", this, event);
         totalEventsPublishedCount.incrementAndGet();
         
-        Set<Subscription> subs = (Set<Subscription>) ((Set<?>) getSubscriptionsForEntitySensor(event.getSource(), event.getSensor()));
-        if (groovyTruth(subs)) {
-            if (LOG.isTraceEnabled()) LOG.trace("sending {}, {} to {}", new Object[] {event.getSensor().getName(), event, join(subs, ",")});
+        // lock-free; the array is shared so must not be modified
+        Subscription[] subs = subscriptionIndex.get(event.getSource(), event.getSensor());
+        if (subs.length > 0) {
+            if (LOG.isTraceEnabled()) LOG.trace("sending {}, {} to {}", new Object[] {event.getSensor().getName(), event, Arrays.toString(subs)});
             for (Subscription s : subs) {
                 submitPublishEvent(s, event, false);
                 // excludes initial so only do it here
@@ -280,41 +292,17 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         if (s.eventFilter!=null && !s.eventFilter.apply(event))
             return;
         
-        List<Object> tags = getPublishTags(s, event.getSource()).asUnmodifiable();
-        
-        StringBuilder name = new StringBuilder("sensor ");
-        StringBuilder description = new StringBuilder("Sensor ");
-        String sensorName = s.sensor==null ? "<null-sensor>" : s.sensor.getName();
-        String sourceName = event.getSource()==null ? null : event.getSource().getId();
-        if (Strings.isNonBlank(sourceName)) {
-            name.append(sourceName);
-            name.append(":");
-        }
-        name.append(sensorName);
-        
-        description.append(sensorName);
-        description.append(" on ");
-        description.append(sourceName==null ? "<null-source>" : sourceName);
-        description.append(" publishing to ");
-        description.append(s.subscriber instanceof Entity ? ((Entity)s.subscriber).getId() : s.subscriber);
-        if (Strings.isNonBlank(s.subscriptionDescription)) {
-            description.append(", ");
-            description.append(s.subscriptionDescription);
+        // without a tag there is no scheduler to keep a queue's delivery task in order with other deliveries
+        if (lightweightDelivery && !isInitialPublicationOfOldValueInCorrectScheduledThread && s.subscriberExecutionManagerTag!=null) {
+            getDeliveryQueue(s).enqueue(s, event);
+            return;
         }
         
-        if (includeDescriptionForSensorTask(event)) {
-            name.append(" ");
-            name.append(event.getValue());
-            description.append(", value: ");
-            description.append(event.getValue());
-        }
+        List<Object> tags = getPublishTags(s, event.getSource()).asUnmodifiable();
         Map<String, Object> execFlags = MutableMap.of("tags", tags, 
-            "displayName", name.toString(),
-            "description", description.toString());
+            "displayName", getPublishTaskName(s, event),
+            "description", getPublishTaskDescription(s, event));
         
-        boolean isEntityStarting = s.subscriber instanceof Entity && isInitialPublicationOfOldValueInCorrectScheduledThread;
-        // will have entity (and adjunct) execution context from tags, so can skip getting exec context
-        final ExecutionContext ec = BrooklynTaskTags.getExecutionContext(tags);
         Runnable deliverer = new Runnable() {
             @Override
             public String toString() {
@@ -326,39 +314,7 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
             }
             @Override
             public void run() {
-                BasicExecutionContext oldEC = ec instanceof BasicExecutionContext ? BasicExecutionContext.setPerThreadExecutionContext((BasicExecutionContext)ec) : null;
-                try {
-                    
-                    if (isEntityStarting) {
-                        /* don't let sub deliveries start until this is completed;
-                         * this is a pragmatic way to ensure the publish events 
-                         * if submitted during management starting, aren't executed
-                         * until after management is starting.
-                         *   without this we can get deadlocks as this goes to publish,
-                         * has the attribute sensors lock, and waits on the publish lock
-                         * (any of management support, local subs, queueing subs).
-                         * meanwhile the management startup has those three locks,
-                         * then goes to publish and in the process looks up a sensor value.
-                         *   usually this is not an issue because some other task
-                         * does something (eg entity.getExecutionContext()) which
-                         * also has a wait-on-management-support semantics.
-                         */
-                        synchronized (((EntityInternal)s.subscriber).getManagementSupport()) {}
-                    }
-                    int count = s.eventCount.incrementAndGet();
-                    if (count > 0 && count % 1000 == 0) LOG.debug("{} events for subscriber {}", count, s);
-                    
-                    s.listener.onEvent(event);
-                } catch (Throwable t) {
-                    Exceptions.propagateIfFatal(t);
-                    if (event!=null && event.getSource()!=null && Entities.isNoLongerManaged(event.getSource())) {
-                        LOG.debug("Error processing subscriptions to "+this+", after entity unmanaged: "+t, t);
-                    } else {
-                        LOG.warn("Error processing subscriptions to "+this+": "+t, t);
-                    }
-                } finally {
-                    BasicExecutionContext.setPerThreadExecutionContext(oldEC);
-                }
+                deliverEvent(s, event, isInitialPublicationOfOldValueInCorrectScheduledThread);
             }};
         if (!isInitialPublicationOfOldValueInCorrectScheduledThread) {
             em.submit(execFlags, deliverer);
@@ -371,10 +327,114 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         }
     }
 
+    /** delivers the event to the subscription's listener in the calling thread, using the subscriber's execution context */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    void deliverEvent(final Subscription s, final SensorEvent<?> event, final boolean isInitialPublicationOfOldValueInCorrectScheduledThread) {
+        boolean isEntityStarting = s.subscriber instanceof Entity && isInitialPublicationOfOldValueInCorrectScheduledThread;
+        // will have entity (and adjunct) execution context from tags, so can skip getting exec context
+        final ExecutionContext ec = getDeliveryExecutionContext(s, event);
+        BasicExecutionContext oldEC = ec instanceof BasicExecutionContext ? BasicExecutionContext.setPerThreadExecutionContext((BasicExecutionContext)ec) : null;
+        try {
+            
+            if (isEntityStarting) {
+                /* don't let sub deliveries start until this is completed;
+                 * this is a pragmatic way to ensure the publish events 
+                 * if submitted during management starting, aren't executed
+                 * until after management is starting.
+                 *   without this we can get deadlocks as this goes to publish,
+                 * has the attribute sensors lock, and waits on the publish lock
+                 * (any of management support, local subs, queueing subs).
+                 * meanwhile the management startup has those three locks,
+                 * then goes to publish and in the process looks up a sensor value.
+                 *   usually this is not an issue because some other task
+                 * does something (eg entity.getExecutionContext()) which
+                 * also has a wait-on-management-support semantics.
+                 */
+                synchronized (((EntityInternal)s.subscriber).getManagementSupport()) {}
+            }
+            int count = s.eventCount.incrementAndGet();
+            if (count > 0 && count % 1000 == 0) LOG.debug("{} events for subscriber {}", count, s);
+            
+            s.listener.onEvent(event);
+        } catch (Throwable t) {
+            Exceptions.propagateIfFatal(t);
+            if (event!=null && event.getSource()!=null && Entities.isNoLongerManaged(event.getSource())) {
+                LOG.debug("Error processing subscriptions to LSM.publish("+event+"), after entity unmanaged: "+t, t);
+            } else {
+                LOG.warn("Error processing subscriptions to LSM.publish("+event+"): "+t, t);
+            }
+        } finally {
+            BasicExecutionContext.setPerThreadExecutionContext(oldEC);
+        }
+    }
+
+    private ExecutionContext getDeliveryExecutionContext(Subscription<?> s, SensorEvent<?> event) {
+        // usually the subscriber's own tags identify the context, so avoid building the full publish tags
+        ExecutionContext ec = s.subscriberExtraExecTags instanceof Collection ? BrooklynTaskTags.getExecutionContext((Collection<?>) s.subscriberExtraExecTags) : null;
+        if (ec==null) ec = BrooklynTaskTags.getExecutionContext(getPublishTags(s, event.getSource()));
+        return ec;
+    }
+
+    private SubscriptionDeliveryQueue getDeliveryQueue(final Subscription<?> s) {
+        SubscriptionDeliveryQueue result = deliveryQueuesByTag.get(s.subscriberExecutionManagerTag);
+        if (result==null) {
+            List<Object> tags = MutableList.builder()
+                .addAll(s.subscriberExtraExecTags == null ? ImmutableList.of() : s.subscriberExtraExecTags)
+                .add(s.subscriberExecutionManagerTag)
+                .add(BrooklynTaskTags.SENSOR_TAG)
+                .build().asUnmodifiable();
+            result = new SubscriptionDeliveryQueue(this, em, s.subscriber, tags);
+            SubscriptionDeliveryQueue old = deliveryQueuesByTag.putIfAbsent(s.subscriberExecutionManagerTag, result);
+            if (old!=null) result = old;
+        }
+        return result;
+    }
+
+    String getPublishTaskName(Subscription<?> s, SensorEvent<?> event) {
+        StringBuilder name = new StringBuilder("sensor ");
+        String sensorName = s.sensor==null ? "<null-sensor>" : s.sensor.getName();
+        String sourceName = event.getSource()==null ? null : event.getSource().getId();
+        if (Strings.isNonBlank(sourceName)) {
+            name.append(sourceName);
+            name.append(":");
+        }
+        name.append(sensorName);
+        if (includeDescriptionForSensorTask(event)) {
+            name.append(" ");
+            name.append(event.getValue());
+        }
+        return name.toString();
+    }
+
+    String getPublishTaskDescription(Subscription<?> s, SensorEvent<?> event) {
+        StringBuilder description = new StringBuilder("Sensor ");
+        String sensorName = s.sensor==null ? "<null-sensor>" : s.sensor.getName();
+        String sourceName = event.getSource()==null ? null : event.getSource().getId();
+        description.append(sensorName);
+        description.append(" on ");
+        description.append(sourceName==null ? "<null-source>" : sourceName);
+        description.append(" publishing to ");
+        description.append(getSubscriberName(s.subscriber));
+        if (Strings.isNonBlank(s.subscriptionDescription)) {
+            description.append(", ");
+            description.append(s.subscriptionDescription);
+        }
+        if (includeDescriptionForSensorTask(event)) {
+            description.append(", value: ");
+            description.append(event.getValue());
+        }
+        return description.toString();
+    }
+
+    Object getSubscriberName(Object subscriber) {
+        return subscriber instanceof Entity ? ((Entity)subscriber).getId() : subscriber;
+    }
+
     private MutableList<Object> getPublishTags(final Subscription<?> s, final Entity source) {
         return MutableList.builder()
             .addAll(s.subscriberExtraExecTags == null ? ImmutableList.of() : s.subscriberExtraExecTags)
-            .add(s.subscriberExecutionManagerTag)
+            // a supplied tag may be null, which the execution manager's tag index cannot hold
+            .addIfNotNull(s.subscriberExecutionManagerTag)
             .add(BrooklynTaskTags.SENSOR_TAG)
             // associate the publish event with the publisher (though on init it might be triggered by subscriber)
             .addIfNotNull(source!=null ? BrooklynTaskTags.tagForTargetEntity(source) : null)
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.internal;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.mgmt.ExecutionManager;
+import org.apache.brooklyn.api.sensor.SensorEvent;
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
+import org.apache.brooklyn.core.mgmt.BrooklynTaskTags;
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.core.task.BasicTask;
+
+/**
+ * Delivers sensor events to the subscriptions of a single subscriber, in publication order,
+ * without creating a task for every event.
+ * <p>
+ * Events are appended to a queue; when the queue goes from idle to busy a single delivery task is
+ * submitted, which drains the queue until it is empty, whichever entities published the events. 
+ * The task carries the subscriber's execution manager tag, so it is still serialized by that tag's 
+ * {@link org.apache.brooklyn.util.core.task.SingleThreadedScheduler} along with any initial-value deliveries.
+ * Where the subscriber is an entity the task is also tagged with that entity as its target, so 
+ * entity-scoped task queries see it; the per-event tasks are instead tagged with each event's source.
+ * <p>
+ * The queue holds each subscription and event as consecutive elements of an {@link ArrayDeque},
+ * so queueing an event does not allocate once the deque has grown to its working size. 
+ * The task's display name and description are computed only when asked for, from the event currently being delivered.
+ * <p>
+ * Used by {@link LocalSubscriptionManager} when {@link BrooklynFeatureEnablement#FEATURE_LIGHTWEIGHT_SUBSCRIPTION_DELIVERY} is enabled.
+ */
+class SubscriptionDeliveryQueue {
+
+    private final LocalSubscriptionManager manager;
+    private final ExecutionManager em;
+    private final Object subscriber;
+    private final List<Object> tags;
+
+    /** alternating subscription and event; guarded by itself, as is {@link #draining} */
+    private final ArrayDeque<Object> pending = new ArrayDeque<Object>();
+    private boolean draining = false;
+    private volatile Subscription<?> currentSubscription;
+    private volatile SensorEvent<?> currentEvent;
+
+    SubscriptionDeliveryQueue(LocalSubscriptionManager manager, ExecutionManager em, Object subscriber, List<Object> tags) {
+        this.manager = manager;
+        this.em = em;
+        this.subscriber = subscriber;
+        this.tags = (subscriber instanceof Entity) 
+            ? MutableList.builder().addAll(tags).add(BrooklynTaskTags.tagForTargetEntity((Entity)subscriber)).build().asUnmodifiable()
+            : tags;
+    }
+
+    /** queues the event for delivery to the given subscription; must be called in publication order */
+    void enqueue(Subscription<?> s, SensorEvent<?> event) {
+        boolean submit;
+        synchronized (pending) {
+            pending.add(s);
+            pending.add(event);
+            submit = !draining;
+            draining = true;
+        }
+        if (submit) {
+            Map<String, Object> flags = MutableMap.<String, Object>of("tags", tags);
+            try {
+                em.submit(flags, new DeliveryTask(flags));
+            } catch (RuntimeException e) {
+                // leave the events queued for the next publish to retry, rather than never delivering again
+                synchronized (pending) {
+                    draining = false;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /** number of events queued but not yet delivered */
+    int size() {
+        synchronized (pending) {
+            return pending.size() / 2;
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Subscription<?> s;
+            SensorEvent<?> event;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    // publishers which add after this will submit a new task
+                    draining = false;
+                    return;
+                }
+                s = (Subscription<?>) pending.poll();
+                event = (SensorEvent<?>) pending.poll();
+            }
+            currentSubscription = s;
+            currentEvent = event;
+            try {
+                manager.deliverEvent(s, event, false);
+            } finally {
+                currentSubscription = null;
+                currentEvent = null;
+            }
+        }
+    }
+
+    private class DeliveryTask extends BasicTask<Void> {
+        DeliveryTask(Map<?,?> flags) {
+            super(flags, new Runnable() {
+                @Override public void run() { drain(); }
+                @Override public String toString() { return "LSM.deliverQueued("+subscriber+")"; }
+            });
+        }
+
+        @Override
+        public String getDisplayName() {
+            Subscription<?> s = currentSubscription;
+            SensorEvent<?> event = currentEvent;
+            if (s==null || event==null) return "sensor delivery to "+manager.getSubscriberName(subscriber);
+            return manager.getPublishTaskName(s, event);
+        }
+
+        @Override
+        public String getDescription() {
+            Subscription<?> s = currentSubscription;
+            SensorEvent<?> event = currentEvent;
+            if (s==null || event==null) return "Sensor delivery to "+manager.getSubscriberName(subscriber)+", "+size()+" queued";
+            return manager.getPublishTaskDescription(s, event);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.internal;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.sensor.Sensor;
+
+/**
+ * Copy-on-write index of {@link Subscription}s keyed by producer and sensor name,
+ * where either may be a wildcard, for use by {@link LocalSubscriptionManager}.
+ * <p>
+ * Lookups take no locks: each (producer, sensor name) bucket holds an immutable array,
+ * which is replaced (never modified) when subscriptions are added or removed.
+ * Writers are synchronized on this index.
+ * <p>
+ * Arrays returned by {@link #get(Entity, Sensor)} are shared and must not be modified by callers.
+ */
+class SubscriptionIndex {
+
+    private static final Object WILDCARD = new Object() {
+        @Override public String toString() { return "*"; }
+    };
+
+    // ConcurrentHashMap does not permit null keys, so wildcard sensor is stored under a name no real sensor will have
+    private static final String ANY_SENSOR = "\u0000*";
+
+    static final Subscription<?>[] EMPTY = new Subscription<?>[0];
+
+    private final ConcurrentMap<Object, ConcurrentMap<String, Subscription<?>[]>> byProducerThenSensor =
+            new ConcurrentHashMap<Object, ConcurrentMap<String, Subscription<?>[]>>();
+
+    private static Object producerKey(Entity producer) {
+        return producer==null ? WILDCARD : producer;
+    }
+
+    private static String sensorKey(Sensor<?> sensor) {
+        return sensor==null ? null : sensor.getName();
+    }
+
+    private static String sensorKeyForMap(Sensor<?> sensor) {
+        return sensor==null ? ANY_SENSOR : sensor.getName();
+    }
+
+    synchronized void add(Subscription<?> s) {
+        Object pk = producerKey(s.producer);
+        ConcurrentMap<String, Subscription<?>[]> bySensor = byProducerThenSensor.get(pk);
+        if (bySensor==null) {
+            bySensor = new ConcurrentHashMap<String, Subscription<?>[]>();
+            byProducerThenSensor.put(pk, bySensor);
+        }
+        String sk = sensorKeyForMap(s.sensor);
+        Subscription<?>[] old = bySensor.get(sk);
+        Subscription<?>[] updated;
+        if (old==null) {
+            updated = new Subscription<?>[] { s };
+        } else {
+            updated = Arrays.copyOf(old, old.length+1);
+            updated[old.length] = s;
+        }
+        bySensor.put(sk, updated);
+    }
+
+    synchronized boolean remove(Subscription<?> s) {
+        Object pk = producerKey(s.producer);
+        ConcurrentMap<String, Subscription<?>[]> bySensor = byProducerThenSensor.get(pk);
+        if (bySensor==null) return false;
+        String sk = sensorKeyForMap(s.sensor);
+        Subscription<?>[] old = bySensor.get(sk);
+        if (old==null) return false;
+        int index = -1;
+        for (int i=0; i<old.length; i++) {
+            if (old[i].equals(s)) {
+                index = i;
+                break;
+            }
+        }
+        if (index<0) return false;
+        if (old.length==1) {
+            bySensor.remove(sk);
+            if (bySensor.isEmpty()) byProducerThenSensor.remove(pk);
+        } else {
+            Subscription<?>[] updated = new Subscription<?>[old.length-1];
+            System.arraycopy(old, 0, updated, 0, index);
+            System.arraycopy(old, index+1, updated, index, old.length-index-1);
+            bySensor.put(sk, updated);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the subscriptions matching the given producer and sensor, including wildcard subscriptions,
+     * in the order: exact match, any producer, any sensor, any producer and sensor.
+     * Where only one of those has any subscriptions (the usual case) its array is returned without copying.
+     */
+    Subscription<?>[] get(Entity producer, Sensor<?> sensor) {
+        String sk = sensorKey(sensor);
+        ConcurrentMap<String, Subscription<?>[]> forProducer = producer==null ? null : byProducerThenSensor.get(producer);
+        ConcurrentMap<String, Subscription<?>[]> forAnyProducer = byProducerThenSensor.get(WILDCARD);
+
+        Subscription<?>[] exact = sk==null ? null : find(forProducer, sk);
+        Subscription<?>[] anyProducer = sk==null ? null : find(forAnyProducer, sk);
+        Subscription<?>[] anySensor = find(forProducer, ANY_SENSOR);
+        Subscription<?>[] anyProducerAndSensor = find(forAnyProducer, ANY_SENSOR);
+
+        return concat(exact, anyProducer, anySensor, anyProducerAndSensor);
+    }
+
+    private static Subscription<?>[] find(ConcurrentMap<String, Subscription<?>[]> bySensor, String sensorKey) {
+        return bySensor==null ? null : bySensor.get(sensorKey);
+    }
+
+    private static Subscription<?>[] concat(Subscription<?>[] a, Subscription<?>[] b, Subscription<?>[] c, Subscription<?>[] d) {
+        int la = a==null ? 0 : a.length;
+        int lb = b==null ? 0 : b.length;
+        int lc = c==null ? 0 : c.length;
+        int ld = d==null ? 0 : d.length;
+        int count = la+lb+lc+ld;
+        if (count==0) return EMPTY;
+        if (count==la) return a;
+        if (count==lb) return b;
+        if (count==lc) return c;
+        if (count==ld) return d;
+        Subscription<?>[] result = new Subscription<?>[count];
+        int pos = 0;
+        if (la>0) { System.arraycopy(a, 0, result, pos, la); pos += la; }
+        if (lb>0) { System.arraycopy(b, 0, result, pos, lb); pos += lb; }
+        if (lc>0) { System.arraycopy(c, 0, result, pos, lc); pos += lc; }
+        if (ld>0) { System.arraycopy(d, 0, result, pos, ld); }
+        return result;
+    }
+}
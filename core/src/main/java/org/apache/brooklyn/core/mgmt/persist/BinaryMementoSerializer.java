@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.persist;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+
+import com.google.common.annotations.Beta;
+import com.google.common.io.BaseEncoding;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+import com.thoughtworks.xstream.io.xml.PrettyPrintWriter;
+import com.thoughtworks.xstream.io.xml.XppDriver;
+
+/**
+ * Serializes mementos in a compact binary form of the same structure as {@link XmlMementoSerializer},
+ * using XStream's binary stream format, so all the same aliases and converters apply.
+ * <p>
+ * As persisted state is stored as strings, the binary data is base64 encoded, after a header line
+ * which identifies the format and its version, e.g. {@code brooklyn-binary-memento:1}.
+ * Both serializers can read either format (see {@link XmlMementoSerializer#fromString(String)}),
+ * so persisted state can be a mix of the two, for instance after changing
+ * {@link BrooklynMementoPersisterToObjectStore#PERSISTER_SERIALIZATION_FORMAT}.
+ * <p>
+ * The two forms can also be converted to each other without deserializing (and so without needing
+ * any of the classes referenced in them), using {@link #toXml(String)} and {@link #fromXml(String)},
+ * e.g. for tools which inspect or transform the XML.
+ */
+@Beta
+public class BinaryMementoSerializer<T> extends XmlMementoSerializer<T> {
+
+    public static final String FORMAT_PREFIX = "brooklyn-binary-memento:";
+    public static final int FORMAT_VERSION = 1;
+    
+    private static final String HEADER = FORMAT_PREFIX+FORMAT_VERSION+"\n";
+    private static final BaseEncoding ENCODING = BaseEncoding.base64();
+
+    public BinaryMementoSerializer(ClassLoader classLoader) {
+        super(classLoader);
+    }
+    
+    public BinaryMementoSerializer(ClassLoader classLoader, Map<String, String> deserializingClassRenames) {
+        super(classLoader, deserializingClassRenames);
+    }
+
+    @Override
+    public void serialize(Object object, Writer writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryStreamWriter binaryWriter = new BinaryStreamWriter(bytes);
+        xstream.marshal(object, binaryWriter);
+        binaryWriter.flush();
+        try {
+            writer.write(HEADER);
+            writer.write(ENCODING.encode(bytes.toByteArray()));
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /** whether the given persisted contents are in this binary format (of any version) */
+    public static boolean isBinary(String contents) {
+        return contents!=null && contents.startsWith(FORMAT_PREFIX);
+    }
+
+    /** @return a reader for the given contents, which must be {@link #isBinary(String) binary}, positioned at the root node */
+    static HierarchicalStreamReader newReader(String contents) {
+        if (!isBinary(contents)) {
+            throw new IllegalArgumentException("Contents are not a binary memento");
+        }
+        int endOfHeader = contents.indexOf('\n');
+        String version = (endOfHeader < 0) ? contents.substring(FORMAT_PREFIX.length()) : contents.substring(FORMAT_PREFIX.length(), endOfHeader);
+        if (!Integer.toString(FORMAT_VERSION).equals(version.trim())) {
+            throw new IllegalStateException("Unsupported binary memento format version "+version.trim()+" (supports version "+FORMAT_VERSION+")");
+        }
+        byte[] bytes = ENCODING.decode(contents.substring(endOfHeader+1).trim());
+        return new BinaryStreamReader(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Reads the values of the named children of the root node, without deserializing.
+     * For a child which has its own children (e.g. a list of strings) the values of those are returned;
+     * otherwise the single value of the child. Names not present are omitted.
+     */
+    public static Map<String, List<String>> readTopLevelValues(String contents, Set<String> names) {
+        Map<String, List<String>> result = MutableMap.of();
+        HierarchicalStreamReader reader = newReader(contents);
+        try {
+            while (reader.hasMoreChildren()) {
+                reader.moveDown();
+                if (names.contains(reader.getNodeName())) {
+                    List<String> values = MutableList.of();
+                    if (reader.hasMoreChildren()) {
+                        while (reader.hasMoreChildren()) {
+                            reader.moveDown();
+                            values.add(reader.getValue());
+                            reader.moveUp();
+                        }
+                    } else {
+                        values.add(reader.getValue());
+                    }
+                    result.put(reader.getNodeName(), values);
+                }
+                // skips any remaining children
+                reader.moveUp();
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    /** converts contents in this binary format to the equivalent XML; XML contents are returned unchanged */
+    public static String toXml(String contents) {
+        if (!isBinary(contents)) return contents;
+        StringWriter result = new StringWriter();
+        PrettyPrintWriter xmlWriter = new PrettyPrintWriter(result);
+        copy(newReader(contents), xmlWriter);
+        xmlWriter.flush();
+        result.append("\n");
+        return result.toString();
+    }
+
+    /** converts XML contents (as written by {@link XmlMementoSerializer}) to this binary format; binary contents are returned unchanged */
+    public static String fromXml(String contents) {
+        if (contents==null || isBinary(contents)) return contents;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryStreamWriter binaryWriter = new BinaryStreamWriter(bytes);
+        copy(new XppDriver().createReader(new StringReader(contents)), binaryWriter);
+        binaryWriter.flush();
+        return HEADER + ENCODING.encode(bytes.toByteArray());
+    }
+
+    /**
+     * Copies the node the reader is at, as {@link com.thoughtworks.xstream.io.copy.HierarchicalStreamCopier} does,
+     * except that values are only copied for nodes without children: XStream never writes both,
+     * and the XML reader reports the indentation between children as the parent's value.
+     */
+    private static void copy(HierarchicalStreamReader source, HierarchicalStreamWriter destination) {
+        destination.startNode(source.getNodeName());
+        for (int i = 0; i < source.getAttributeCount(); i++) {
+            destination.addAttribute(source.getAttributeName(i), source.getAttribute(i));
+        }
+        if (source.hasMoreChildren()) {
+            while (source.hasMoreChildren()) {
+                source.moveDown();
+                copy(source, destination);
+                source.moveUp();
+            }
+        } else {
+            String value = source.getValue();
+            if (value != null && value.length() > 0) {
+                destination.setValue(value);
+            }
+        }
+        destination.endNode();
+    }
+}
@@ -21,11 +21,12 @@ package org.apache.brooklyn.core.mgmt.persist;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
-import java.util.LinkedHashMap;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -53,14 +54,17 @@ import org.apache.brooklyn.api.typereg.ManagedBundle;
 import org.apache.brooklyn.api.typereg.RegisteredType;
 import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.config.StringConfigMap;
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
 import org.apache.brooklyn.core.catalog.internal.CatalogUtils;
 import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.mgmt.classloading.BrooklynClassLoadingContextSequential;
 import org.apache.brooklyn.core.mgmt.classloading.ClassLoaderFromBrooklynClassLoadingContext;
 import org.apache.brooklyn.core.mgmt.internal.ManagementContextInternal;
+import org.apache.brooklyn.core.mgmt.persist.MementoFragmentCache.ManifestFields;
+import org.apache.brooklyn.core.mgmt.persist.MementoFragmentCache.RecordingLookupContext;
 import org.apache.brooklyn.core.mgmt.persist.PersistenceObjectStore.StoreObjectAccessor;
 import org.apache.brooklyn.core.mgmt.persist.PersistenceObjectStore.StoreObjectAccessorWithLock;
-import org.apache.brooklyn.core.mgmt.rebind.PeriodicDeltaChangeListener;
+import org.apache.brooklyn.core.mgmt.rebind.dto.BasicEntityMemento;
 import org.apache.brooklyn.core.mgmt.rebind.dto.BrooklynMementoImpl;
 import org.apache.brooklyn.core.mgmt.rebind.dto.BrooklynMementoManifestImpl;
 import org.apache.brooklyn.core.typereg.BasicManagedBundle;
@@ -78,8 +82,10 @@ import org.slf4j.LoggerFactory;
 import org.w3c.dom.NodeList;
 
 import com.google.common.annotations.Beta;
+import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.io.ByteSource;
@@ -106,15 +112,46 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             "Maximum number of concurrent operations for persistence (reads/writes/deletes of *different* objects)", 
             10);
 
+    @Beta
+    public static final ConfigKey<Integer> PERSISTER_WRITE_SHARDS_PER_TYPE = ConfigKeys.newIntegerConfigKey(
+            "persister.writeShardsPerType",
+            "Number of groups into which the writes of a delta are divided for each type of object, each group being written "
+            + "in turn by a single task; defaults to the thread pool size, so that one type can still use all the threads");
+
     public static final ConfigKey<Integer> PERSISTER_MAX_SERIALIZATION_ATTEMPTS = ConfigKeys.newIntegerConfigKey(
             "persister.maxSerializationAttempts",
             "Maximum number of attempts to serialize a memento (e.g. if first attempts fail because of concurrent modifications of an entity)", 
             5);
 
+    @Beta
+    public static final ConfigKey<MementoSerializationFormat> PERSISTER_SERIALIZATION_FORMAT = ConfigKeys.newConfigKey(
+            MementoSerializationFormat.class,
+            "persister.serializationFormat",
+            "Format for writing mementos, XML or BINARY; mementos in either format can always be read. "
+            + "BINARY is more compact and quicker to write and read, but tools which work on the XML "
+            + "(such as XSLT transformers) will need it converted first (see CompoundTransformer.Builder.serializationFormat).",
+            MementoSerializationFormat.XML);
+
+    @Beta
+    public static final ConfigKey<Duration> PERSISTER_INCREMENTAL_LOAD_MARGIN = ConfigKeys.newDurationConfigKey(
+            "persister.incrementalLoad.modificationTimeMargin",
+            "When loading incrementally (as a hot standby does), objects modified within this time of the previous load "
+            + "are read again even if their modification date is unchanged, to allow for coarse store timestamps and clock skew", 
+            Duration.seconds(2));
+
+    @Beta
+    public static final ConfigKey<Integer> PERSISTER_FRAGMENT_CACHE_SIZE = ConfigKeys.newIntegerConfigKey(
+            "persister.fragmentCache.maxSize",
+            "Maximum number of objects whose parsed manifest and deserialized memento are remembered between loads, "
+            + "keyed by id and contents, so that unchanged objects are not parsed again (as a hot standby would otherwise do "
+            + "on every read-only rebind); 0 to disable", 
+            0);
+
     private final PersistenceObjectStore objectStore;
     private final MementoSerializer<Object> serializerWithStandardClassLoader;
 
-    private final Map<String, StoreObjectAccessorWithLock> writers = new LinkedHashMap<String, PersistenceObjectStore.StoreObjectAccessorWithLock>();
+    /** keyed by path */
+    private final ConcurrentMap<String, StoreObjectAccessorWithLock> writers = new ConcurrentHashMap<String, PersistenceObjectStore.StoreObjectAccessorWithLock>();
 
     private final ListeningExecutorService executor;
 
@@ -123,7 +160,16 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
     private StringConfigMap brooklynProperties;
     private ManagementContext mgmt = null;
     
-    private List<Delta> queuedDeltas = new CopyOnWriteArrayList<BrooklynMementoPersister.Delta>();
+    /** set when loading incrementally; see {@link #setIncrementalLoading(boolean)} */
+    private volatile MementoRawDataCache rawDataCache = null;
+    /** null if disabled; see {@link #PERSISTER_FRAGMENT_CACHE_SIZE} */
+    private final MementoFragmentCache fragmentCache;
+    /** null unless {@link BrooklynFeatureEnablement#FEATURE_INCREMENTAL_ENTITY_MEMENTOS} and writing XML */
+    private final EntityAttributeFragments entityAttributeFragments;
+    
+    /** deltas queued or not yet written, coalesced; synchronize on this to access */
+    private final PendingMementoWrites pendingWrites = new PendingMementoWrites();
+    private final int writeShardsPerType;
     
     /**
      * Lock used on writes (checkpoint + delta) so that {@link #waitForWritesCompleted(Duration)} can block
@@ -147,10 +193,17 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         this.brooklynProperties = brooklynProperties;
         
         int maxSerializationAttempts = brooklynProperties.getConfig(PERSISTER_MAX_SERIALIZATION_ATTEMPTS);
-        MementoSerializer<Object> rawSerializer = new XmlMementoSerializer<Object>(classLoader);
+        MementoSerializer<Object> rawSerializer = newRawSerializer(classLoader);
         this.serializerWithStandardClassLoader = new RetryingMementoSerializer<Object>(rawSerializer, maxSerializationAttempts);
 
         int maxThreadPoolSize = brooklynProperties.getConfig(PERSISTER_MAX_THREAD_POOL_SIZE);
+        Integer writeShardsPerType = brooklynProperties.getConfig(PERSISTER_WRITE_SHARDS_PER_TYPE);
+        this.writeShardsPerType = Math.max(1, (writeShardsPerType != null) ? writeShardsPerType : maxThreadPoolSize);
+        
+        int fragmentCacheSize = brooklynProperties.getConfig(PERSISTER_FRAGMENT_CACHE_SIZE);
+        this.fragmentCache = (fragmentCacheSize > 0) ? new MementoFragmentCache(fragmentCacheSize, classLoader) : null;
+        this.entityAttributeFragments = (rawSerializer instanceof XmlMementoSerializer && BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_INCREMENTAL_ENTITY_MEMENTOS))
+                ? new EntityAttributeFragments((XmlMementoSerializer<?>) rawSerializer) : null;
 
         objectStore.createSubPath("entities");
         objectStore.createSubPath("locations");
@@ -185,12 +238,16 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
     
     protected MementoSerializer<Object> getSerializerWithCustomClassLoader(LookupContext lookupContext, ClassLoader classLoader) {
         int maxSerializationAttempts = brooklynProperties.getConfig(PERSISTER_MAX_SERIALIZATION_ATTEMPTS);
-        MementoSerializer<Object> rawSerializer = new XmlMementoSerializer<Object>(classLoader);
+        MementoSerializer<Object> rawSerializer = newRawSerializer(classLoader);
         MementoSerializer<Object> result = new RetryingMementoSerializer<Object>(rawSerializer, maxSerializationAttempts);
         result.setLookupContext(lookupContext);
         return result;
     }
     
+    protected MementoSerializer<Object> newRawSerializer(ClassLoader classLoader) {
+        return brooklynProperties.getConfig(PERSISTER_SERIALIZATION_FORMAT).newSerializer(classLoader);
+    }
+    
     @Nullable protected ClassLoader getCustomClassLoaderForBrooklynObject(LookupContext lookupContext,
                                                                           BrooklynObjectType type, String objectId) {
         BrooklynObject item = lookupContext.peek(type, objectId);
@@ -260,15 +317,13 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
     }
 
     protected StoreObjectAccessorWithLock getWriter(String path) {
-        String id = path.substring(path.lastIndexOf('/')+1);
-        synchronized (writers) {
-            StoreObjectAccessorWithLock writer = writers.get(id);
-            if (writer == null) {
-                writer = new StoreObjectAccessorLocking( objectStore.newAccessor(path) );
-                writers.put(id, writer);
-            }
-            return writer;
+        StoreObjectAccessorWithLock writer = writers.get(path);
+        if (writer == null) {
+            writer = new StoreObjectAccessorLocking( objectStore.newAccessor(path) );
+            StoreObjectAccessorWithLock existing = writers.putIfAbsent(path, writer);
+            if (existing != null) writer = existing;
         }
+        return writer;
     }
 
     private Map<String,String> makeIdSubPathMap(Iterable<String> subPathLists) {
@@ -285,12 +340,29 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
     }
     
     protected BrooklynMementoRawData listMementoSubPathsAsData(final RebindExceptionHandler exceptionHandler) {
+        return listMementoSubPathsAsData(exceptionHandler, null);
+    }
+    
+    /**
+     * @param lastModifiedDates if not null, and the store {@link PersistenceObjectStore.ListableWithLastModifiedDates lists dates},
+     *        populated with the last modified date of each object listed, keyed by sub-path
+     */
+    private BrooklynMementoRawData listMementoSubPathsAsData(final RebindExceptionHandler exceptionHandler, @Nullable Map<String, Date> lastModifiedDates) {
         final BrooklynMementoRawData.Builder subPathDataBuilder = BrooklynMementoRawData.builder();
 
         Stopwatch stopwatch = Stopwatch.createStarted();
         try {
             for (BrooklynObjectType type: BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
-                subPathDataBuilder.putAll(type, makeIdSubPathMap(objectStore.listContentsWithSubPath(type.getSubPathName())));
+                Iterable<String> subPaths;
+                if (lastModifiedDates != null && objectStore instanceof PersistenceObjectStore.ListableWithLastModifiedDates) {
+                    Map<String, Date> listed = ((PersistenceObjectStore.ListableWithLastModifiedDates) objectStore)
+                            .listContentsWithSubPathAndLastModifiedDates(type.getSubPathName());
+                    lastModifiedDates.putAll(listed);
+                    subPaths = listed.keySet();
+                } else {
+                    subPaths = objectStore.listContentsWithSubPath(type.getSubPathName());
+                }
+                subPathDataBuilder.putAll(type, makeIdSubPathMap(subPaths));
             }
             
         } catch (Exception e) {
@@ -309,9 +381,103 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         return subPathData;
     }
     
+    /**
+     * Sets whether {@link #loadMementoRawData(RebindExceptionHandler)} re-reads only those objects modified since
+     * the previous load, reusing the contents it read for the rest; this is for a hot standby, which loads
+     * repeatedly (see also {@link #hasChangedSinceLastLoad(RebindExceptionHandler)}). Disabling it discards the cached contents.
+     */
+    @Beta
+    public void setIncrementalLoading(boolean enabled) {
+        if (!enabled) {
+            rawDataCache = null;
+        } else if (rawDataCache == null) {
+            rawDataCache = new MementoRawDataCache(brooklynProperties.getConfig(PERSISTER_INCREMENTAL_LOAD_MARGIN));
+        }
+    }
+
+    @Beta
+    public boolean isIncrementalLoading() {
+        return rawDataCache != null;
+    }
+    
+    /**
+     * Checks the objects in the store, and their modification dates, against those of the last load,
+     * without reading them (other than any modified too close to that load to trust their dates).
+     * Where the store {@link PersistenceObjectStore.ListableWithLastModifiedDates lists dates} this takes
+     * one listing per type of object; otherwise it also requests each object's date.
+     * 
+     * @return whether anything has been added, removed or modified since the last load; 
+     *         always true if not {@link #isIncrementalLoading() loading incrementally} or not yet loaded
+     */
+    @Beta
+    public boolean hasChangedSinceLastLoad(RebindExceptionHandler exceptionHandler) {
+        MementoRawDataCache cache = rawDataCache;
+        if (cache == null || !cache.isPopulated()) return true;
+        
+        long checkStartTime = System.currentTimeMillis();
+        Map<String, Date> listedDates = MutableMap.of();
+        BrooklynMementoRawData subPathData = listMementoSubPathsAsData(exceptionHandler, listedDates);
+        Map<String, Date> subPathsAndDates = MutableMap.of();
+        for (String subPath : getContentsSubPaths(subPathData)) {
+            subPathsAndDates.put(subPath, getLastModifiedDate(subPath, listedDates));
+        }
+        return cache.hasChanges(checkStartTime, subPathsAndDates, new Function<String, String>() {
+            @Override
+            public String apply(String subPath) {
+                return read(subPath);
+            }
+        });
+    }
+
+    /** metrics for incremental loading, or null if not enabled */
+    @Beta
+    @Nullable
+    public Map<String, Object> getIncrementalLoadingMetrics() {
+        MementoRawDataCache cache = rawDataCache;
+        return cache == null ? null : cache.getMetrics();
+    }
+
+    /** metrics for the cache of parsed mementos, including total {@code hits} and {@code misses}, or null if not enabled */
+    @Beta
+    @Nullable
+    public Map<String, Object> getFragmentCacheMetrics() {
+        if (fragmentCache == null) return null;
+        Map<String, Object> result = MutableMap.<String, Object>of("hits", fragmentCache.getHits(), "misses", fragmentCache.getMisses());
+        result.putAll(fragmentCache.getMetrics());
+        return result;
+    }
+    
+    /** metrics for the reuse of the XML of unchanged entity attributes when writing, or null if not enabled */
+    @Beta
+    @Nullable
+    public Map<String, Object> getEntityAttributeFragmentMetrics() {
+        return entityAttributeFragments == null ? null : entityAttributeFragments.getMetrics();
+    }
+    
+    /** the object's date from the listing if there, otherwise from the store */
+    private Date getLastModifiedDate(String subPath, Map<String, Date> listedDates) {
+        if (listedDates.containsKey(subPath)) return listedDates.get(subPath);
+        return objectStore.newAccessor(subPath).getLastModifiedDate();
+    }
+    
+    /** sub-paths of the mementos listed (excluding the jars of bundles, which are read along with their mementos) */
+    private static Set<String> getContentsSubPaths(BrooklynMementoRawData subPathData) {
+        Set<String> result = MutableSet.of();
+        for (BrooklynObjectType type: BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
+            for (Map.Entry<String, String> entry : subPathData.getObjectsOfType(type).entrySet()) {
+                if (type == BrooklynObjectType.MANAGED_BUNDLE && entry.getKey().endsWith(".jar")) continue;
+                result.add(entry.getValue());
+            }
+        }
+        return result;
+    }
+
     @Override
     public BrooklynMementoRawData loadMementoRawData(final RebindExceptionHandler exceptionHandler) {
-        BrooklynMementoRawData subPathData = listMementoSubPathsAsData(exceptionHandler);
+        final MementoRawDataCache cache = rawDataCache;
+        if (cache != null) cache.onLoadStarting();
+        final Map<String, Date> listedDates = (cache != null) ? MutableMap.<String, Date>of() : null;
+        BrooklynMementoRawData subPathData = listMementoSubPathsAsData(exceptionHandler, listedDates);
         
         final BrooklynMementoRawData.Builder builder = BrooklynMementoRawData.builder();
         
@@ -323,27 +489,40 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
                     return;
                 }
                 
+                // when loading incrementally, get the date before reading (from the listing, if the store gives it there),
+                // so any write after the read is seen next time
+                Date lastModified = (cache != null) ? getLastModifiedDate(contentsSubpath, listedDates) : null;
+                MementoRawDataCache.Entry cached = (cache != null) ? cache.getIfUnchanged(contentsSubpath, lastModified) : null;
+                
                 String contents = null;
-                try {
-                    contents = read(contentsSubpath);
-                } catch (Exception e) {
-                    Exceptions.propagateIfFatal(e);
-                    exceptionHandler.onLoadMementoFailed(type, "memento "+id+" read error", e);
+                if (cached != null) {
+                    contents = cached.getContents();
+                } else {
+                    try {
+                        contents = read(contentsSubpath);
+                    } catch (Exception e) {
+                        Exceptions.propagateIfFatal(e);
+                        exceptionHandler.onLoadMementoFailed(type, "memento "+id+" read error", e);
+                    }
                 }
                 
-                String xmlId = (String) XmlUtil.xpathHandlingIllegalChars(contents, "/"+type.toCamelCase()+"/id");
+                String xmlId = new MementoFieldReader(contents, type).get("id");
                 String safeXmlId = Strings.makeValidFilename(xmlId);
                 if (!Objects.equal(id, safeXmlId))
                     LOG.warn("ID mismatch on "+type.toCamelCase()+", "+id+" from path, "+safeXmlId+" from xml");
                 
+                byte[] jarData = null;
                 if (type == BrooklynObjectType.MANAGED_BUNDLE) {
                     // TODO could R/W to cache space directly, rather than memory copy then extra file copy
-                    byte[] jarData = readBytes(contentsSubpath+".jar");
+                    jarData = (cached != null) ? cached.getJar() : readBytes(contentsSubpath+".jar");
                     if (jarData==null) {
                         throw new IllegalStateException("No bundle data for "+contentsSubpath);
                     }
                     builder.bundleJar(id, ByteSource.wrap(jarData));
                 }
+                if (cache != null && cached == null && contents != null) {
+                    cache.put(contentsSubpath, lastModified, contents, jarData);
+                }
                 builder.put(type, xmlId, contents);
             }
         };
@@ -351,7 +530,19 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         Stopwatch stopwatch = Stopwatch.createStarted();
 
         builder.planeId(Strings.emptyToNull(read(PLANE_ID_FILE_NAME)));
-        visitMemento("loading raw", subPathData, loaderVisitor, exceptionHandler);
+        boolean loaded = false;
+        try {
+            visitMemento("loading raw", subPathData, loaderVisitor, exceptionHandler);
+            loaded = true;
+        } finally {
+            if (cache != null) {
+                if (loaded) {
+                    cache.onLoadCompleted(getContentsSubPaths(subPathData));
+                } else {
+                    cache.onLoadFailed();
+                }
+            }
+        }
         
         BrooklynMementoRawData result = builder.build();
 
@@ -366,19 +557,35 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         return result;
     }
 
-    private static class XPathHelper {
+    /** Reads the fields needed for the manifest from persisted contents, using xpath for XML, or directly from the binary form */
+    private static class MementoFieldReader {
+        private static final Set<String> BINARY_FIELDS = ImmutableSet.of("id", "type", "parent", "catalogItemId", "searchPath");
+        
         private String contents;
         private String prefix;
+        private Map<String, List<String>> binaryFields;
 
-        public XPathHelper(String contents, String prefix) {
+        public MementoFieldReader(String contents, BrooklynObjectType type) {
             this.contents = contents;
-            this.prefix = prefix;
+            this.prefix = "/"+type.toCamelCase()+"/";
+            if (BinaryMementoSerializer.isBinary(contents)) {
+                binaryFields = BinaryMementoSerializer.readTopLevelValues(contents, BINARY_FIELDS);
+            }
         }
 
         private String get(String innerPath) {
+            if (binaryFields!=null) {
+                // as xpath, empty string if not present
+                List<String> values = binaryFields.get(innerPath);
+                return (values==null || values.isEmpty()) ? "" : values.get(0);
+            }
             return (String) XmlUtil.xpathHandlingIllegalChars(contents, prefix+innerPath);
         }
         private List<String> getStringList(String innerPath) {
+            if (binaryFields!=null) {
+                List<String> values = binaryFields.get(innerPath);
+                return values==null ? MutableList.<String>of() : MutableList.copyOf(values);
+            }
             List<String> result = MutableList.of();
             final NodeList nodeList =
                 (NodeList) XmlUtil.xpathHandlingIllegalChars(contents, prefix + innerPath + "//string", XPathConstants.NODESET);
@@ -402,18 +609,17 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         Visitor visitor = new Visitor() {
             @Override
             public void visit(BrooklynObjectType type, String objectId, final String contents) throws Exception {
-                XPathHelper x = new XPathHelper(contents, "/"+type.toCamelCase()+"/");
                 switch (type) {
                     case ENTITY:
-                        builder.entity(x.get("id"), x.get("type"), Strings.emptyToNull(x.get("parent")),
-                            Strings.emptyToNull(x.get("catalogItemId")),
-                            x.getStringList("searchPath"));
+                        ManifestFields x = readManifestFields(type, objectId, contents);
+                        builder.entity(x.id, x.type, x.parent, x.catalogItemId, x.searchPath);
                         break;
                     case LOCATION:
                     case POLICY:
                     case ENRICHER:
                     case FEED:
-                        builder.putType(type, x.get("id"), x.get("type"));
+                        x = readManifestFields(type, objectId, contents);
+                        builder.putType(type, x.id, x.type);
                         break;
                     case CATALOG_ITEM:
                         try {
@@ -461,8 +667,27 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         return result;
     }
     
+    private ManifestFields readManifestFields(BrooklynObjectType type, String objectId, String contents) {
+        MementoFragmentCache.Key key = null;
+        if (fragmentCache != null) {
+            key = new MementoFragmentCache.Key(type, objectId, contents);
+            ManifestFields result = fragmentCache.getManifest(key);
+            if (result != null) return result;
+        }
+        MementoFieldReader x = new MementoFieldReader(contents, type);
+        ManifestFields result;
+        if (type == BrooklynObjectType.ENTITY) {
+            result = new ManifestFields(x.get("id"), x.get("type"), Strings.emptyToNull(x.get("parent")),
+                Strings.emptyToNull(x.get("catalogItemId")), x.getStringList("searchPath"));
+        } else {
+            result = new ManifestFields(x.get("id"), x.get("type"), null, null, ImmutableList.<String>of());
+        }
+        if (key != null) fragmentCache.putManifest(key, result);
+        return result;
+    }
+    
     @Override
-    public BrooklynMemento loadMemento(BrooklynMementoRawData mementoData, final LookupContext lookupContext, final RebindExceptionHandler exceptionHandler) throws IOException {
+    public BrooklynMemento loadMemento(BrooklynMementoRawData mementoData, LookupContext lookupContextR, final RebindExceptionHandler exceptionHandler) throws IOException {
         if (mementoData==null)
             mementoData = loadMementoRawData(exceptionHandler);
 
@@ -472,16 +697,42 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
 
         builder.planeId(mementoData.getPlaneId());
 
+        // when caching, note which mementos could be deserialized without reference to this particular rebind
+        final RecordingLookupContext recordingLookupContext = (fragmentCache != null) ? MementoFragmentCache.newRecordingLookupContext(lookupContextR) : null;
+        final LookupContext lookupContext = (recordingLookupContext != null) ? recordingLookupContext : lookupContextR;
+        
         Visitor visitor = new Visitor() {
             @Override
             public void visit(BrooklynObjectType type, String objectId, String contents) throws Exception {
                 try {
-                    Memento memento;
-                    try {
-                        lookupContext.pushContextDescription(""+type.toString().toLowerCase()+" "+objectId);
-                        memento = (Memento) getSerializerWithCustomClassLoader(lookupContext, type, objectId).fromString(contents);
-                    } finally {
-                        lookupContext.popContextDescription();
+                    MementoFragmentCache.Key key = null;
+                    Memento memento = null;
+                    if (fragmentCache != null && type != BrooklynObjectType.MANAGED_BUNDLE) {
+                        key = new MementoFragmentCache.Key(type, objectId, contents);
+                        memento = fragmentCache.getMemento(key);
+                    }
+                    if (memento == null) {
+                        try {
+                            lookupContext.pushContextDescription(""+type.toString().toLowerCase()+" "+objectId);
+                            MementoSerializer<Object> serializer = getSerializerWithCustomClassLoader(lookupContext, type, objectId);
+                            if (key == null) {
+                                memento = (Memento) serializer.fromString(contents);
+                            } else {
+                                recordingLookupContext.startRecording();
+                                boolean lookupUsed;
+                                try {
+                                    memento = (Memento) serializer.fromString(contents);
+                                } finally {
+                                    lookupUsed = recordingLookupContext.stopRecording();
+                                }
+                                // mementos of types from bundles are not kept, as the bundle could change
+                                if (memento != null) {
+                                    fragmentCache.putMemento(key, memento, !lookupUsed && serializer == getSerializerWithStandardClassLoader());
+                                }
+                            }
+                        } finally {
+                            lookupContext.popContextDescription();
+                        }
                     }
                     if (memento == null) {
                         LOG.warn("No "+type.toCamelCase()+"-memento deserialized from " + objectId + "; ignoring and continuing");
@@ -616,97 +867,162 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             } catch (Exception e) {
                 throw Exceptions.propagate(e);
             }
+            flushObjectStore();
             if (LOG.isDebugEnabled()) LOG.debug("Checkpointed entire memento in {}", Time.makeTimeStringRounded(stopwatch));
         } finally {
             lock.writeLock().unlock();
         }
     }
 
+    /**
+     * Writes the given delta, along with any {@link #queueDelta(Delta) queued} (and any given concurrently),
+     * coalesced so that only the latest memento of each object is written.
+     */
     @Override
     public void delta(Delta delta, PersistenceExceptionHandler exceptionHandler) {
         checkWritesAllowed();
 
-        while (!queuedDeltas.isEmpty()) {
-            Delta extraDelta = queuedDeltas.remove(0);
-            doDelta(extraDelta, exceptionHandler, true);
+        synchronized (pendingWrites) {
+            pendingWrites.add(delta);
         }
-
-        doDelta(delta, exceptionHandler, false);
+        doDelta(exceptionHandler);
     }
     
-    protected void doDelta(Delta delta, PersistenceExceptionHandler exceptionHandler, boolean previouslyQueued) {
-        Stopwatch stopwatch = deltaImpl(delta, exceptionHandler);
+    protected void doDelta(PersistenceExceptionHandler exceptionHandler) {
+        try {
+            lock.writeLock().lockInterruptibly();
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        }
+        try {
+            PendingMementoWrites writes;
+            synchronized (pendingWrites) {
+                // may have been written by a concurrent caller, while we waited for the lock
+                if (pendingWrites.isEmpty()) return;
+                writes = pendingWrites.drain();
+            }
+            Stopwatch stopwatch = deltaImpl(writes, exceptionHandler);
         
-        if (LOG.isDebugEnabled()) LOG.debug("Checkpointed "+(previouslyQueued ? "previously queued " : "")+"delta of memento in {}: "
+            if (LOG.isDebugEnabled()) LOG.debug("Checkpointed delta of memento in {}: "
                 + "updated {} entities, {} locations, {} policies, {} enrichers, {} catalog items, {} bundles; "
-                + "removed {} entities, {} locations, {} policies, {} enrichers, {} catalog items, {} bundles",
+                + "removed {} entities, {} locations, {} policies, {} enrichers, {} catalog items, {} bundles; "
+                + "{} writes coalesced",
                     new Object[] {Time.makeTimeStringRounded(stopwatch),
-                        delta.entities().size(), delta.locations().size(), delta.policies().size(), delta.enrichers().size(), delta.catalogItems().size(), delta.bundles().size(),
-                        delta.removedEntityIds().size(), delta.removedLocationIds().size(), delta.removedPolicyIds().size(), delta.removedEnricherIds().size(), delta.removedCatalogItemIds().size(), delta.removedBundleIds().size()});
+                        writes.getObjectsOfType(BrooklynObjectType.ENTITY).size(), writes.getObjectsOfType(BrooklynObjectType.LOCATION).size(), 
+                        writes.getObjectsOfType(BrooklynObjectType.POLICY).size(), writes.getObjectsOfType(BrooklynObjectType.ENRICHER).size(), 
+                        writes.getObjectsOfType(BrooklynObjectType.CATALOG_ITEM).size(), writes.getObjectsOfType(BrooklynObjectType.MANAGED_BUNDLE).size(),
+                        writes.getRemovedIdsOfType(BrooklynObjectType.ENTITY).size(), writes.getRemovedIdsOfType(BrooklynObjectType.LOCATION).size(), 
+                        writes.getRemovedIdsOfType(BrooklynObjectType.POLICY).size(), writes.getRemovedIdsOfType(BrooklynObjectType.ENRICHER).size(), 
+                        writes.getRemovedIdsOfType(BrooklynObjectType.CATALOG_ITEM).size(), writes.getRemovedIdsOfType(BrooklynObjectType.MANAGED_BUNDLE).size(),
+                        writes.getCoalescedCount()});
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
     
+    /** Adds the delta to those written on the next call to {@link #delta(Delta, PersistenceExceptionHandler)}, 
+     * coalesced with any others so that memory held is bounded by the number of objects rather than the number of changes. */
     @Override
     public void queueDelta(Delta delta) {
-        queuedDeltas.add(delta);
+        synchronized (pendingWrites) {
+            pendingWrites.add(delta);
+        }
     }
     
     /**
-     * Concurrent calls will queue-up (the lock is "fair", which means an "approximately arrival-order policy").
-     * Current usage is with the {@link PeriodicDeltaChangeListener} so we expect only one call at a time.
-     * 
-     * TODO Longer term, if we care more about concurrent calls we could merge the queued deltas so that we
-     * don't do unnecessary repeated writes of an entity.
+     * Caller must hold the write {@link #lock}, so concurrent calls queue-up (the lock is "fair", which means 
+     * an "approximately arrival-order policy"), although their deltas are normally all written by the first.
+     * <p>
+     * The writes are divided by type and then by id into {@link #PERSISTER_WRITE_SHARDS_PER_TYPE shards},
+     * each written by one task, so that a delta costs a bounded number of tasks however many objects it has
+     * and writes to the same part of the store are not all contending at once.
      */
-    private Stopwatch deltaImpl(Delta delta, PersistenceExceptionHandler exceptionHandler) {
-        try {
-            lock.writeLock().lockInterruptibly();
-        } catch (InterruptedException e) {
-            throw Exceptions.propagate(e);
+    private Stopwatch deltaImpl(PendingMementoWrites delta, PersistenceExceptionHandler exceptionHandler) {
+        objectStore.prepareForMasterUse();
+        
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<ListenableFuture<?>> futures = Lists.newArrayList();
+        Map<String, List<Runnable>> shards = MutableMap.of();
+        
+        Set<String> deletedIds = MutableSet.of();
+        for (BrooklynObjectType type: BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
+            deletedIds.addAll(delta.getRemovedIdsOfType(type));
         }
-        try {
-            objectStore.prepareForMasterUse();
-            
-            Stopwatch stopwatch = Stopwatch.createStarted();
-            List<ListenableFuture<?>> futures = Lists.newArrayList();
-            
-            Set<String> deletedIds = MutableSet.of();
-            for (BrooklynObjectType type: BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
-                deletedIds.addAll(delta.getRemovedIdsOfType(type));
-            }
-            
-            if (delta.planeId() != null) {
-                futures.add(asyncUpdatePlaneId(delta.planeId(), exceptionHandler));
-            }
-            for (BrooklynObjectType type: BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
-                for (Memento item : delta.getObjectsOfType(type)) {
-                    if (!deletedIds.contains(item.getId())) {
-                        addPersistContentIfManagedBundle(type, item.getId(), futures, exceptionHandler);
-                        futures.add(asyncPersist(type.getSubPathName(), item, exceptionHandler));
-                    }
+        
+        if (delta.getPlaneId() != null) {
+            futures.add(asyncUpdatePlaneId(delta.getPlaneId(), exceptionHandler));
+        }
+        for (BrooklynObjectType type: BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
+            for (final Memento item : delta.getObjectsOfType(type)) {
+                if (!deletedIds.contains(item.getId())) {
+                    addPersistContentIfManagedBundle(type, item.getId(), futures, exceptionHandler);
+                    final String subPath = type.getSubPathName();
+                    final Set<String> changedAttributes = (type==BrooklynObjectType.ENTITY) ? delta.getChangedAttributeNames(item.getId()) : null;
+                    addToShard(shards, subPath, item.getId(), new Runnable() {
+                        @Override
+                        public void run() {
+                            persist(subPath, item, changedAttributes, exceptionHandler);
+                        }});
                 }
             }
-            for (BrooklynObjectType type: BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
-                for (String id : delta.getRemovedIdsOfType(type)) {
-                    futures.add(asyncDelete(type.getSubPathName(), id, exceptionHandler));
-                    if (type==BrooklynObjectType.MANAGED_BUNDLE) {
-                        futures.add(asyncDelete(type.getSubPathName(), id+".jar", exceptionHandler));
-                    }
+        }
+        for (BrooklynObjectType type: BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
+            for (final String id : delta.getRemovedIdsOfType(type)) {
+                if (type==BrooklynObjectType.ENTITY && entityAttributeFragments != null) entityAttributeFragments.remove(id);
+                final String subPath = type.getSubPathName();
+                addToShard(shards, subPath, id, new Runnable() {
+                    @Override
+                    public void run() {
+                        delete(subPath, id, exceptionHandler);
+                    }});
+                if (type==BrooklynObjectType.MANAGED_BUNDLE) {
+                    addToShard(shards, subPath, id, new Runnable() {
+                        @Override
+                        public void run() {
+                            delete(subPath, id+".jar", exceptionHandler);
+                        }});
                 }
             }
-            
-            try {
-                // Wait for all the tasks to complete or fail, rather than aborting on the first failure.
-                // But then propagate failure if any fail. (hence the two calls).
-                Futures.successfulAsList(futures).get();
-                Futures.allAsList(futures).get();
-            } catch (Exception e) {
-                throw Exceptions.propagate(e);
-            }
-            
-            return stopwatch;
-        } finally {
-            lock.writeLock().unlock();
         }
+        for (final List<Runnable> shard : shards.values()) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // each write handles its own failures
+                    for (Runnable write : shard) {
+                        write.run();
+                    }
+                }}));
+        }
+        
+        try {
+            // Wait for all the tasks to complete or fail, rather than aborting on the first failure.
+            // But then propagate failure if any fail. (hence the two calls).
+            Futures.successfulAsList(futures).get();
+            Futures.allAsList(futures).get();
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+        flushObjectStore();
+        
+        return stopwatch;
+    }
+    
+    /** makes the writes so far durable, if the store {@link PersistenceObjectStore.WithBufferedWrites buffers them} */
+    private void flushObjectStore() {
+        if (objectStore instanceof PersistenceObjectStore.WithBufferedWrites) {
+            ((PersistenceObjectStore.WithBufferedWrites) objectStore).flush();
+        }
+    }
+    
+    private void addToShard(Map<String, List<Runnable>> shards, String subPath, String id, Runnable write) {
+        String shardKey = subPath+"#"+((id.hashCode() & Integer.MAX_VALUE) % writeShardsPerType);
+        List<Runnable> shard = shards.get(shardKey);
+        if (shard == null) {
+            shard = Lists.newArrayList();
+            shards.put(shardKey, shard);
+        }
+        shard.add(write);
     }
 
     private void addPersistContentIfManagedBundle(final BrooklynObjectType type, final String id, List<ListenableFuture<?>> futures, final PersistenceExceptionHandler exceptionHandler) {
@@ -742,10 +1058,7 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
     public void waitForWritesCompleted(Duration timeout) throws InterruptedException, TimeoutException {
         boolean locked = lock.readLock().tryLock(timeout.toMillisecondsRoundingUp(), TimeUnit.MILLISECONDS);
         if (locked) {
-            ImmutableSet<StoreObjectAccessorWithLock> wc;
-            synchronized (writers) {
-                wc = ImmutableSet.copyOf(writers.values());
-            }
+            ImmutableSet<StoreObjectAccessorWithLock> wc = ImmutableSet.copyOf(writers.values());
             lock.readLock().unlock();
             
             // Belt-and-braces: the lock above should be enough to ensure no outstanding writes, because
@@ -753,6 +1066,8 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             for (StoreObjectAccessorWithLock writer : wc) {
                 writer.waitForCurrentWrites(timeout);
             }
+            // deltas and checkpoints flush the store themselves; this is for anything written otherwise
+            flushObjectStore();
         } else {
             throw new TimeoutException("Timeout waiting for writes to "+objectStore);
         }
@@ -768,14 +1083,28 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         return objectAccessor.getBytes();
     }
 
-    private void persist(String subPath, Memento memento, PersistenceExceptionHandler exceptionHandler) {
+    private void persist(String subPath, Memento memento, @Nullable Set<String> changedAttributes, PersistenceExceptionHandler exceptionHandler) {
         try {
-            getWriter(getPath(subPath, memento.getId())).put(getSerializerWithStandardClassLoader().toString(memento));
+            getWriter(getPath(subPath, memento.getId())).put(serialize(memento, changedAttributes));
         } catch (Exception e) {
             exceptionHandler.onPersistMementoFailed(memento, e);
         }
     }
     
+    private String serialize(Memento memento, @Nullable Set<String> changedAttributes) {
+        if (entityAttributeFragments != null && memento instanceof BasicEntityMemento) {
+            try {
+                String result = entityAttributeFragments.toString((BasicEntityMemento) memento, changedAttributes);
+                if (result != null) return result;
+            } catch (RuntimeException e) {
+                // e.g. an attribute modified concurrently; serialize in full below, with the usual retries
+                Exceptions.propagateIfFatal(e);
+                LOG.debug("Unable to serialize "+memento.getId()+" reusing its unchanged attributes; serializing in full: "+e);
+            }
+        }
+        return getSerializerWithStandardClassLoader().toString(memento);
+    }
+    
     private void persist(String subPath, BrooklynObjectType type, String id, String content, PersistenceExceptionHandler exceptionHandler) {
         try {
             if (content==null) {
@@ -797,11 +1126,10 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
     
     private void delete(String subPath, String id, PersistenceExceptionHandler exceptionHandler) {
         try {
-            StoreObjectAccessorWithLock w = getWriter(getPath(subPath, id));
+            String path = getPath(subPath, id);
+            StoreObjectAccessorWithLock w = getWriter(path);
             w.delete();
-            synchronized (writers) {
-                writers.remove(id);
-            }
+            writers.remove(path, w);
         } catch (Exception e) {
             exceptionHandler.onDeleteMementoFailed(id, e);
         }
@@ -826,14 +1154,6 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         }
     }
 
-    private ListenableFuture<?> asyncPersist(final String subPath, final Memento memento, final PersistenceExceptionHandler exceptionHandler) {
-        return executor.submit(new Runnable() {
-            @Override
-            public void run() {
-                persist(subPath, memento, exceptionHandler);
-            }});
-    }
-
     private ListenableFuture<?> asyncPersist(final String subPath, final BrooklynObjectType type, final String id, final String content, final PersistenceExceptionHandler exceptionHandler) {
         return executor.submit(new Runnable() {
             @Override
@@ -842,13 +1162,6 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             }});
     }
 
-    private ListenableFuture<?> asyncDelete(final String subPath, final String id, final PersistenceExceptionHandler exceptionHandler) {
-        return executor.submit(new Runnable() {
-            @Override
-            public void run() {
-                delete(subPath, id, exceptionHandler);
-            }});
-    }
     
     private ListenableFuture<?> asyncUpdatePlaneId(final String planeId, final PersistenceExceptionHandler exceptionHandler) {
         return executor.submit(new Runnable() {
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.persist;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
+import org.apache.brooklyn.core.mgmt.rebind.dto.BasicEntityMemento;
+import org.apache.brooklyn.util.collections.MutableMap;
+
+/**
+ * Remembers the XML written for each attribute of the entities a {@link BrooklynMementoPersisterToObjectStore} writes,
+ * so that when an entity's memento is written again its unchanged attributes are not serialized again
+ * (see {@link BrooklynFeatureEnablement#FEATURE_INCREMENTAL_ENTITY_MEMENTOS}, which supplies what changed).
+ * <p>
+ * An attribute's XML is reused only if the memento says which attributes changed since the previous one
+ * (see {@link BasicEntityMemento#getChangedAttributeNames()}), the attribute is not one of them,
+ * and its value is the same object as when it was serialized. A value changed in place, without the attribute
+ * being set again, is therefore not written until the attribute is next set or the memento is next generated in full.
+ * Only XML with no XStream references is kept, as those are relative to the document
+ * (see {@link XmlMementoSerializer#toStringReusingAttributes(BasicEntityMemento, Map, Map)}).
+ * <p>
+ * This holds, for every entity written, the XML of its attributes (much as the persisted entity takes),
+ * and a reference to each attribute value (usually also held by the entity).
+ * <p>
+ * Thread-safe. Writes of one entity are expected not to be concurrent; if they are, the XML kept is that of one of them.
+ */
+class EntityAttributeFragments {
+
+    private static class Fragment {
+        final Object value;
+        final String xml;
+
+        Fragment(Object value, String xml) {
+            this.value = value;
+            this.xml = xml;
+        }
+    }
+
+    private final XmlMementoSerializer<?> serializer;
+    private final ConcurrentMap<String, Map<String, Fragment>> fragmentsByEntityId = new ConcurrentHashMap<String, Map<String, Fragment>>();
+
+    private final AtomicLong attributesReused = new AtomicLong();
+    private final AtomicLong attributesSerialized = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    EntityAttributeFragments(XmlMementoSerializer<?> serializer) {
+        this.serializer = serializer;
+    }
+
+    /**
+     * @param changedAttributes the names of the attributes changed since the previous memento written for this entity,
+     *        or null if not known
+     * @return the serialized memento, reusing the XML of attributes which have not changed; or null if it could not
+     *         be serialized this way, and should be serialized in full
+     */
+    @Nullable
+    String toString(BasicEntityMemento memento, @Nullable Set<String> changedAttributes) {
+        Map<String, Fragment> previous = fragmentsByEntityId.remove(memento.getId());
+        Map<String, Object> values = memento.getSerializedAttributes();
+
+        Map<String, String> reused = MutableMap.of();
+        if (previous != null && changedAttributes != null) {
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                if (changedAttributes.contains(entry.getKey())) continue;
+                Fragment fragment = previous.get(entry.getKey());
+                if (fragment != null && fragment.value == entry.getValue()) {
+                    reused.put(entry.getKey(), fragment.xml);
+                }
+            }
+        }
+
+        Map<String, String> serialized = MutableMap.of();
+        String result = serializer.toStringReusingAttributes(memento, reused, serialized);
+        if (result == null) {
+            failures.incrementAndGet();
+            return null;
+        }
+
+        Map<String, Fragment> fragments = MutableMap.of();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            String xml = reused.get(entry.getKey());
+            if (xml == null) xml = serialized.get(entry.getKey());
+            if (xml != null) fragments.put(entry.getKey(), new Fragment(entry.getValue(), xml));
+        }
+        fragmentsByEntityId.put(memento.getId(), fragments);
+        attributesReused.addAndGet(reused.size());
+        attributesSerialized.addAndGet(values.size() - reused.size());
+        return result;
+    }
+
+    /** forgets the XML kept for the entity, e.g. when it is deleted or its memento could not be written */
+    void remove(String entityId) {
+        fragmentsByEntityId.remove(entityId);
+    }
+
+    Map<String, Object> getMetrics() {
+        return MutableMap.<String, Object>of(
+                "entities", fragmentsByEntityId.size(),
+                "attributesReused", attributesReused.get(),
+                "attributesSerialized", attributesSerialized.get(),
+                "failures", failures.get());
+    }
+}
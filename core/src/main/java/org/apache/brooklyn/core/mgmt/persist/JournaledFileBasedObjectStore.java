@@ -0,0 +1,618 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.persist;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.api.mgmt.ha.HighAvailabilityMode;
+import org.apache.brooklyn.api.objs.BrooklynObjectType;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.collections.MutableSet;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.io.FileUtil;
+import org.apache.brooklyn.util.stream.Streams;
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link FileBasedObjectStore} which records writes to mementos as records appended to a journal file,
+ * rather than as a create and rename of a file per object, which is expensive for deltas touching many objects
+ * (especially on network file systems).
+ * <p>
+ * Journaled objects are served from memory until a background compaction (every {@link #COMPACTION_PERIOD})
+ * writes the latest contents of each to its usual file and deletes the journal; so the store is left as
+ * plain files after a clean shutdown, and any journal left by a crash is replayed when the store is next prepared.
+ * A node which is not writing (e.g. a hot standby) reads new journal records whenever contents are listed.
+ * <p>
+ * Appends are synced before returning, as the file store does for each file, but concurrent writers share a sync.
+ * Only memento sub-paths are journaled; others (such as the management plane records written by every node)
+ * are written directly to files.
+ * <p>
+ * A store created with {@code journalWrites} false (used when the journal is disabled but a journal was left
+ * behind, see {@link #hasJournals(File)}) replays and compacts the journals it finds, but writes directly to files.
+ */
+@Beta
+public class JournaledFileBasedObjectStore extends FileBasedObjectStore {
+
+    private static final Logger log = LoggerFactory.getLogger(JournaledFileBasedObjectStore.class);
+
+    public static final ConfigKey<Boolean> ENABLED = ConfigKeys.newBooleanConfigKey(
+            "brooklyn.persistence.journal.enabled",
+            "Whether file-based persistence appends writes to a journal, folded into the files in the background, "
+            + "rather than writing each object's file", false);
+
+    public static final ConfigKey<Duration> COMPACTION_PERIOD = ConfigKeys.newDurationConfigKey(
+            "brooklyn.persistence.journal.compactionPeriod",
+            "How often the journal of a journaled file-based persistence store is folded into the store's files",
+            Duration.seconds(30));
+
+    static final String JOURNAL_SUB_PATH = "journal";
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String JOURNAL_SUFFIX = ".log";
+    
+    private static final byte OP_PUT = 'P';
+    private static final byte OP_DELETE = 'D';
+
+    private static final Set<String> JOURNALED_SUB_PATHS;
+    static {
+        Set<String> subPaths = MutableSet.of();
+        for (BrooklynObjectType type : BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
+            subPaths.add(type.getSubPathName());
+        }
+        JOURNALED_SUB_PATHS = subPaths;
+    }
+
+    /** the latest journaled contents of an object, or a deletion if {@code data} is null */
+    private static final class JournalRecord {
+        final long journalIndex;
+        final long time;
+        final byte[] data;
+        
+        JournalRecord(long journalIndex, long time, byte[] data) {
+            this.journalIndex = journalIndex;
+            this.time = time;
+            this.data = data;
+        }
+    }
+
+    /** journaled objects not yet compacted, keyed by path */
+    private final ConcurrentMap<String, JournalRecord> journaled = new ConcurrentHashMap<String, JournalRecord>();
+    /** for nodes reading the journal, the offset read up to in each journal file */
+    private final Map<Long, Long> journalReadOffsets = MutableMap.of();
+    
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    private final Object compactionLock = new Object();
+    
+    // guarded by writeLock (and, when changing journalOut, syncLock, taken first)
+    private FileOutputStream journalOut;
+    private long journalIndex;
+    private long journalLength;
+    /** count of records ever written, across journals */
+    private long journalWritten;
+    // guarded by syncLock
+    private long journalSynced;
+    
+    private final boolean journalWrites;
+    // guarded by writeLock
+    private boolean master;
+    private boolean closed;
+    
+    private ManagementContext mgmt;
+    private ScheduledExecutorService compactor;
+
+    public JournaledFileBasedObjectStore(File basedir) {
+        this(basedir, true);
+    }
+
+    /**
+     * @param journalWrites whether to append writes to the journal; if false, journals left behind are replayed
+     *        (and compacted, when used as master) but writes go directly to files
+     */
+    public JournaledFileBasedObjectStore(File basedir, boolean journalWrites) {
+        super(basedir);
+        this.journalWrites = journalWrites;
+    }
+
+    /** @return whether the store at the given directory has journals, which a plain {@link FileBasedObjectStore} would ignore */
+    public static boolean hasJournals(File basedir) {
+        String[] files = new File(basedir, JOURNAL_SUB_PATH).list();
+        if (files == null) return false;
+        for (String name : files) {
+            if (name.startsWith(JOURNAL_PREFIX) && name.endsWith(JOURNAL_SUFFIX)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void injectManagementContext(ManagementContext mgmt) {
+        super.injectManagementContext(mgmt);
+        this.mgmt = mgmt;
+    }
+
+    @Override
+    public void prepareForSharedUse(@Nullable PersistMode persistMode, HighAvailabilityMode haMode) {
+        super.prepareForSharedUse(persistMode, haMode);
+        // replay anything left by a previous writer
+        readJournals();
+    }
+
+    @Override
+    public synchronized void prepareForMasterUse() {
+        super.prepareForMasterUse();
+        synchronized (writeLock) {
+            master = true;
+        }
+        if (journalWrites) {
+            startJournal();
+        } else {
+            // fold anything left by a previous writer into the files, which are then written directly
+            readJournals();
+            compact();
+        }
+    }
+
+    protected File getJournalDir() {
+        return new File(getBaseDir(), JOURNAL_SUB_PATH);
+    }
+    
+    protected boolean isJournaled(String path) {
+        int slash = path.indexOf('/');
+        return slash > 0 && JOURNALED_SUB_PATHS.contains(path.substring(0, slash));
+    }
+
+    protected boolean isWriting() {
+        synchronized (writeLock) {
+            return journalOut != null;
+        }
+    }
+
+    @Override
+    public StoreObjectAccessor newAccessor(String path) {
+        StoreObjectAccessor fileAccessor = super.newAccessor(path);
+        if (!isJournaled(path)) return fileAccessor;
+        return new JournaledStoreObjectAccessor(path, fileAccessor);
+    }
+
+    @Override
+    public List<String> listContentsWithSubPath(String parentSubPath) {
+        if (!JOURNALED_SUB_PATHS.contains(parentSubPath)) return super.listContentsWithSubPath(parentSubPath);
+        
+        // take the journaled records before listing the files: compaction writes a record's file before
+        // forgetting the record, so an object being compacted meanwhile is in one or the other
+        if (!isWriting()) readJournals();
+        Map<String, Boolean> journaledExists = MutableMap.of();
+        String prefix = parentSubPath+"/";
+        for (Map.Entry<String, JournalRecord> entry : journaled.entrySet()) {
+            String path = entry.getKey();
+            if (!path.startsWith(prefix) || path.indexOf('/', prefix.length()) >= 0) continue;
+            journaledExists.put(path, entry.getValue().data != null);
+        }
+        
+        Set<String> result = MutableSet.copyOf(super.listContentsWithSubPath(parentSubPath));
+        for (Map.Entry<String, Boolean> entry : journaledExists.entrySet()) {
+            if (entry.getValue()) {
+                result.add(entry.getKey());
+            } else {
+                result.remove(entry.getKey());
+            }
+        }
+        return ImmutableList.copyOf(result);
+    }
+
+    /** opens a new journal for writing, after all existing ones, compacts those, and starts periodic compaction */
+    protected void startJournal() {
+        synchronized (writeLock) {
+            if (closed) throw new IllegalStateException("Store "+this+" is closed; cannot start journal");
+            if (journalOut != null) return;
+            readJournals();
+            long maxIndex = 0;
+            for (long index : listJournals().keySet()) {
+                maxIndex = Math.max(maxIndex, index);
+            }
+            openJournal(maxIndex+1);
+            
+            Duration period = (mgmt != null) ? mgmt.getConfig().getConfig(COMPACTION_PERIOD) : COMPACTION_PERIOD.getDefaultValue();
+            compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("brooklyn-persistence-journal-compactor")
+                    .setDaemon(true)
+                    .build());
+            compactor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compact();
+                    } catch (Throwable t) {
+                        // keep the journal; retry next time
+                        log.warn("Problem compacting persistence journal in "+getJournalDir()+" (will retry): "+t, t);
+                        Exceptions.propagateIfFatal(t);
+                    }
+                }
+            }, period.toMilliseconds(), period.toMilliseconds(), TimeUnit.MILLISECONDS);
+        }
+        // fold in anything replayed from a previous writer now, rather than on the first compaction with new writes;
+        // outside writeLock, as compaction takes the compaction and sync locks first
+        compact();
+    }
+
+    // callers must hold writeLock
+    private void openJournal(long index) {
+        File dir = getJournalDir();
+        try {
+            if (dir.mkdir()) FileUtil.setFilePermissionsTo700(dir);
+            File file = new File(dir, journalFileName(index));
+            FileUtil.setFilePermissionsTo600(file);
+            journalOut = new FileOutputStream(file, true);
+            journalIndex = index;
+            journalLength = journalOut.getChannel().size();
+        } catch (IOException e) {
+            throw Exceptions.propagateAnnotated("Problem opening persistence journal in "+dir, e);
+        }
+    }
+
+    private void journal(String path, byte[] data) {
+        if (!journalWrites) {
+            writeFile(path, data);
+            journaled.remove(path);
+            return;
+        }
+        boolean writing;
+        synchronized (writeLock) {
+            if (closed) throw new IllegalStateException("Store "+this+" is closed; cannot write "+path);
+            writing = (journalOut != null);
+        }
+        if (!writing) startJournal();
+        
+        byte[] pathBytes = path.getBytes(Charsets.UTF_8);
+        long time = System.currentTimeMillis();
+        ByteArrayOutputStream record = new ByteArrayOutputStream(pathBytes.length + (data == null ? 0 : data.length) + 17);
+        DataOutputStream recordOut = new DataOutputStream(record);
+        long written;
+        try {
+            recordOut.writeByte(data == null ? OP_DELETE : OP_PUT);
+            recordOut.writeLong(time);
+            recordOut.writeInt(pathBytes.length);
+            recordOut.write(pathBytes);
+            recordOut.writeInt(data == null ? -1 : data.length);
+            if (data != null) recordOut.write(data);
+            
+            synchronized (writeLock) {
+                if (journalOut == null) throw new IllegalStateException("Journal closed for "+this+"; cannot write "+path);
+                journalOut.write(record.toByteArray());
+                journalLength += record.size();
+                journalWritten++;
+                written = journalWritten;
+                // record before releasing the lock, so that compaction (which rotates under this lock) sees it
+                journaled.put(path, new JournalRecord(journalIndex, time, data));
+            }
+            sync(written);
+        } catch (IOException e) {
+            throw Exceptions.propagateAnnotated("Problem writing "+path+" to persistence journal in "+getJournalDir(), e);
+        }
+    }
+
+    /** syncs the journal up to at least the given record; one sync covers all records written by then */
+    private void sync(long written) throws IOException {
+        synchronized (syncLock) {
+            if (journalSynced >= written) return;
+            FileOutputStream out;
+            long target;
+            synchronized (writeLock) {
+                out = journalOut;
+                target = journalWritten;
+            }
+            // journalOut is only replaced while holding syncLock, so cannot be closed under us
+            if (out != null) out.getChannel().force(false);
+            journalSynced = target;
+        }
+    }
+
+    /**
+     * Writes the latest contents of everything journaled so far to files, then deletes the journal(s).
+     * Writes made meanwhile go to a new journal.
+     * Only the writer (or, if not journaling writes, the master) compacts; otherwise this does nothing.
+     */
+    public void compact() {
+        synchronized (compactionLock) {
+            long foldUpTo;
+            synchronized (syncLock) {
+                synchronized (writeLock) {
+                    if (journalOut != null && journalLength > 0) {
+                        foldUpTo = journalIndex;
+                        try {
+                            journalOut.getChannel().force(false);
+                        } catch (IOException e) {
+                            throw Exceptions.propagateAnnotated("Problem syncing persistence journal in "+getJournalDir(), e);
+                        } finally {
+                            Streams.closeQuietly(journalOut);
+                        }
+                        journalSynced = journalWritten;
+                        openJournal(foldUpTo+1);
+                    } else {
+                        // nothing new; fold only journals replayed from a previous writer, if any
+                        if (journalOut == null && (journalWrites || !master)) return;
+                        foldUpTo = (journalOut != null) ? journalIndex-1 : Long.MAX_VALUE;
+                        SortedMap<Long, File> journals = listJournals();
+                        if (journals.isEmpty() || journals.firstKey() > foldUpTo) return;
+                    }
+                }
+            }
+            
+            int count = 0;
+            for (Map.Entry<String, JournalRecord> entry : journaled.entrySet()) {
+                JournalRecord record = entry.getValue();
+                if (record.journalIndex > foldUpTo) continue;
+                writeFile(entry.getKey(), record.data);
+                // only if not superseded by a later write, which will be compacted next time
+                journaled.remove(entry.getKey(), record);
+                count++;
+            }
+            
+            for (Map.Entry<Long, File> journal : listJournals().entrySet()) {
+                if (journal.getKey() <= foldUpTo && !journal.getValue().delete()) {
+                    log.warn("Unable to delete compacted persistence journal "+journal.getValue());
+                }
+            }
+            if (log.isDebugEnabled()) log.debug("Compacted {} objects from persistence journal(s) up to {} in {}", new Object[] {count, foldUpTo, getJournalDir()});
+        }
+    }
+
+    private void writeFile(String path, @Nullable byte[] data) {
+        StoreObjectAccessor fileAccessor = super.newAccessor(path);
+        if (data == null) {
+            fileAccessor.delete();
+        } else {
+            fileAccessor.put(ByteSource.wrap(data));
+        }
+    }
+
+    private SortedMap<Long, File> listJournals() {
+        SortedMap<Long, File> result = new TreeMap<Long, File>();
+        File[] files = getJournalDir().listFiles();
+        if (files == null) return result;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.startsWith(JOURNAL_PREFIX) || !name.endsWith(JOURNAL_SUFFIX)) continue;
+            try {
+                result.put(Long.parseLong(name.substring(JOURNAL_PREFIX.length(), name.length()-JOURNAL_SUFFIX.length())), file);
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring unexpected file in persistence journal directory: "+file);
+            }
+        }
+        return result;
+    }
+
+    private static String journalFileName(long index) {
+        return String.format("%s%012d%s", JOURNAL_PREFIX, index, JOURNAL_SUFFIX);
+    }
+
+    /** reads records appended to the journals since last read, and forgets those from journals since compacted by the writer */
+    protected void readJournals() {
+        synchronized (journalReadOffsets) {
+            SortedMap<Long, File> journals = listJournals();
+            for (Map.Entry<Long, File> journal : journals.entrySet()) {
+                Long offset = journalReadOffsets.get(journal.getKey());
+                try {
+                    journalReadOffsets.put(journal.getKey(), readJournal(journal.getKey(), journal.getValue(), offset == null ? 0 : offset));
+                } catch (IOException e) {
+                    // most likely compacted and deleted as we read it; the files will have the contents
+                    log.debug("Unable to read persistence journal "+journal.getValue()+" (continuing): "+e);
+                }
+            }
+            for (Long index : MutableSet.copyOf(journalReadOffsets.keySet())) {
+                if (journals.containsKey(index)) continue;
+                journalReadOffsets.remove(index);
+                for (Map.Entry<String, JournalRecord> entry : journaled.entrySet()) {
+                    if (entry.getValue().journalIndex == index) journaled.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    /** @return the offset of the end of the last complete record */
+    private long readJournal(long index, File file, long offset) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long length = raf.length();
+            raf.seek(offset);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel())));
+            while (offset < length) {
+                try {
+                    byte op = in.readByte();
+                    long time = in.readLong();
+                    int pathLength = in.readInt();
+                    if ((op != OP_PUT && op != OP_DELETE) || pathLength <= 0 || offset + pathLength > length) break;
+                    byte[] pathBytes = new byte[pathLength];
+                    in.readFully(pathBytes);
+                    int dataLength = in.readInt();
+                    if ((op == OP_PUT) != (dataLength >= 0) || offset + pathLength + dataLength > length) break;
+                    byte[] data = null;
+                    if (op == OP_PUT) {
+                        data = new byte[dataLength];
+                        in.readFully(data);
+                    }
+                    offset += 1 + 8 + 4 + pathLength + 4 + Math.max(dataLength, 0);
+                    
+                    String path = new String(pathBytes, Charsets.UTF_8);
+                    JournalRecord existing = journaled.get(path);
+                    if (existing == null || existing.journalIndex <= index) {
+                        journaled.put(path, new JournalRecord(index, time, data));
+                    }
+                } catch (EOFException e) {
+                    // incomplete record at the end, still being written (or torn by a crash); read it next time
+                    break;
+                }
+            }
+            return offset;
+        } finally {
+            Streams.closeQuietly(raf);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (writeLock) {
+            closed = true;
+        }
+        try {
+            if (compactor != null) compactor.shutdownNow();
+            if (isWriting()) {
+                // leave plain files behind
+                compact();
+            }
+        } catch (Exception e) {
+            log.warn("Problem compacting persistence journal on close of "+this+" (will be replayed on next use): "+e, e);
+        } finally {
+            closeJournal(true);
+            super.close();
+        }
+    }
+
+    @Override
+    public void deleteCompletely() {
+        if (compactor != null) compactor.shutdownNow();
+        closeJournal(false);
+        journaled.clear();
+        synchronized (journalReadOffsets) {
+            journalReadOffsets.clear();
+        }
+        super.deleteCompletely();
+    }
+
+    private void closeJournal(boolean deleteIfEmpty) {
+        synchronized (syncLock) {
+            synchronized (writeLock) {
+                if (journalOut == null) return;
+                Streams.closeQuietly(journalOut);
+                journalOut = null;
+                if (deleteIfEmpty && journalLength == 0) {
+                    new File(getJournalDir(), journalFileName(journalIndex)).delete();
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).add("basedir", getBaseDir()).add("journaled", journaled.size()).toString();
+    }
+
+    /** Reads journaled contents where present, otherwise the file; writes go to the journal. */
+    private class JournaledStoreObjectAccessor implements StoreObjectAccessor {
+        private final String path;
+        private final StoreObjectAccessor fileAccessor;
+        
+        JournaledStoreObjectAccessor(String path, StoreObjectAccessor fileAccessor) {
+            this.path = path;
+            this.fileAccessor = fileAccessor;
+        }
+        
+        @Override
+        public String get() {
+            byte[] bytes = getBytes();
+            return bytes == null ? null : new String(bytes, Charsets.UTF_8);
+        }
+
+        @Override
+        public byte[] getBytes() {
+            JournalRecord record = journaled.get(path);
+            if (record != null) return record.data;
+            return fileAccessor.getBytes();
+        }
+
+        @Override
+        public boolean exists() {
+            JournalRecord record = journaled.get(path);
+            if (record != null) return record.data != null;
+            return fileAccessor.exists();
+        }
+
+        @Override
+        public void put(String val) {
+            if (val == null) val = "";
+            journal(path, val.getBytes(Charsets.UTF_8));
+        }
+
+        @Override
+        public void put(ByteSource bytes) {
+            try {
+                journal(path, bytes.read());
+            } catch (IOException e) {
+                throw Exceptions.propagateAnnotated("Problem reading data to journal for "+path, e);
+            }
+        }
+
+        @Override
+        public void append(String val) {
+            String existing = get();
+            String combined = (existing == null ? "" : existing) + (val == null ? "" : val);
+            journal(path, combined.getBytes(Charsets.UTF_8));
+        }
+
+        @Override
+        public void delete() {
+            journal(path, null);
+        }
+
+        @Override
+        public Date getLastModifiedDate() {
+            JournalRecord record = journaled.get(path);
+            if (record != null) return record.data == null ? null : new Date(record.time);
+            return fileAccessor.getLastModifiedDate();
+        }
+        
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this).add("path", path).add("store", JournaledFileBasedObjectStore.this).toString();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.persist;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.brooklyn.api.catalog.CatalogItem;
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.location.Location;
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMementoPersister.LookupContext;
+import org.apache.brooklyn.api.mgmt.rebind.mementos.Memento;
+import org.apache.brooklyn.api.objs.BrooklynObject;
+import org.apache.brooklyn.api.objs.BrooklynObjectType;
+import org.apache.brooklyn.api.policy.Policy;
+import org.apache.brooklyn.api.sensor.Enricher;
+import org.apache.brooklyn.api.sensor.Feed;
+import org.apache.brooklyn.api.typereg.ManagedBundle;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.javalang.Serializers.ClassLoaderObjectInputStream;
+import org.apache.brooklyn.util.stream.Streams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+/**
+ * Remembers what a {@link BrooklynMementoPersisterToObjectStore} parsed from each persisted object,
+ * keyed by the object's id and a hash of its contents, so that repeated loads of unchanged objects
+ * (as a hot standby does on every read-only rebind) need not parse them again.
+ * <p>
+ * Two things are kept: the manifest fields read by XPath, and the deserialized memento.
+ * A memento is only kept if deserializing it did not consult the {@link LookupContext}, because otherwise
+ * it may refer to the objects of the rebind iteration which created it (see {@link #newRecordingLookupContext(LookupContext)}).
+ * <p>
+ * Mementos are not read-only (rebind injects the type class, and entity mementos fill their keyed maps lazily),
+ * and their config and attribute values are handed on to the rebound objects; so a memento is kept in its
+ * java-serialized form, taken as soon as it is deserialized, and each load gets its own copy. (Reading that is
+ * much cheaper than parsing the XML again.) A memento which cannot be java-serialized is not kept.
+ */
+class MementoFragmentCache {
+
+    private static final Logger log = LoggerFactory.getLogger(MementoFragmentCache.class);
+
+    static class ManifestFields {
+        final String id;
+        final String type;
+        final String parent;
+        final String catalogItemId;
+        final List<String> searchPath;
+        
+        ManifestFields(String id, String type, String parent, String catalogItemId, List<String> searchPath) {
+            this.id = id;
+            this.type = type;
+            this.parent = parent;
+            this.catalogItemId = catalogItemId;
+            this.searchPath = ImmutableList.copyOf(searchPath);
+        }
+    }
+    
+    static class Key {
+        private final BrooklynObjectType type;
+        private final String id;
+        private final HashCode contentsHash;
+        
+        Key(BrooklynObjectType type, String id, String contents) {
+            this.type = type;
+            this.id = id;
+            this.contentsHash = Hashing.murmur3_128().hashUnencodedChars(contents);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key o = (Key) obj;
+            return type == o.type && id.equals(o.id) && contentsHash.equals(o.contentsHash);
+        }
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(type, id, contentsHash);
+        }
+    }
+    
+    private final ClassLoader classLoader;
+    private final Cache<Key, ManifestFields> manifests;
+    /** java-serialized mementos */
+    private final Cache<Key, byte[]> mementos;
+    
+    private final AtomicLong manifestHits = new AtomicLong();
+    private final AtomicLong manifestMisses = new AtomicLong();
+    private final AtomicLong mementoHits = new AtomicLong();
+    private final AtomicLong mementoMisses = new AtomicLong();
+    private final AtomicLong mementosUncacheable = new AtomicLong();
+
+    /** @param classLoader the loader of the classes of mementos kept, i.e. the persister's standard class loader */
+    MementoFragmentCache(int maxSize, ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        manifests = CacheBuilder.newBuilder().maximumSize(maxSize).<Key, ManifestFields>build();
+        mementos = CacheBuilder.newBuilder().maximumSize(maxSize).<Key, byte[]>build();
+    }
+    
+    ManifestFields getManifest(Key key) {
+        ManifestFields result = manifests.getIfPresent(key);
+        (result != null ? manifestHits : manifestMisses).incrementAndGet();
+        return result;
+    }
+    
+    void putManifest(Key key, ManifestFields fields) {
+        manifests.put(key, fields);
+    }
+    
+    /** @return a new copy of the memento kept for the key, or null */
+    Memento getMemento(Key key) {
+        byte[] serialized = mementos.getIfPresent(key);
+        Memento result = null;
+        if (serialized != null) {
+            ObjectInputStream in = null;
+            try {
+                in = new ClassLoaderObjectInputStream(new ByteArrayInputStream(serialized), classLoader);
+                result = (Memento) in.readObject();
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                log.debug("Unable to read cached memento (discarding, will deserialize again): "+e);
+                mementos.invalidate(key);
+            } finally {
+                Streams.closeQuietly(in);
+            }
+        }
+        (result != null ? mementoHits : mementoMisses).incrementAndGet();
+        return result;
+    }
+    
+    /**
+     * Keeps (a serialized copy of) the memento if it is safe to share between loads, i.e. if {@code cacheable};
+     * to be called as soon as it is deserialized, before anything changes it.
+     */
+    void putMemento(Key key, Memento memento, boolean cacheable) {
+        if (cacheable) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream out = new ObjectOutputStream(bytes);
+                out.writeObject(memento);
+                out.close();
+                mementos.put(key, bytes.toByteArray());
+                return;
+            } catch (Exception e) {
+                // e.g. a config value which is not serializable
+                Exceptions.propagateIfFatal(e);
+                if (log.isTraceEnabled()) log.trace("Not caching memento "+memento.getId()+", as it cannot be serialized: "+e);
+            }
+        }
+        mementosUncacheable.incrementAndGet();
+    }
+    
+    long getHits() {
+        return manifestHits.get() + mementoHits.get();
+    }
+    
+    long getMisses() {
+        return manifestMisses.get() + mementoMisses.get();
+    }
+    
+    Map<String, Object> getMetrics() {
+        return MutableMap.<String, Object>of(
+                "cachedManifests", manifests.size(),
+                "cachedMementos", mementos.size(),
+                "manifestHits", manifestHits.get(),
+                "manifestMisses", manifestMisses.get(),
+                "mementoHits", mementoHits.get(),
+                "mementoMisses", mementoMisses.get(),
+                "mementosUncacheable", mementosUncacheable.get());
+    }
+    
+    /**
+     * Returns a {@link LookupContext} which delegates to the given one, and records whether it is used
+     * (other than for its context description) by the current thread between calls to
+     * {@link RecordingLookupContext#startRecording()} and {@link RecordingLookupContext#stopRecording()}.
+     */
+    static RecordingLookupContext newRecordingLookupContext(LookupContext delegate) {
+        return new RecordingLookupContext(delegate);
+    }
+    
+    static class RecordingLookupContext implements LookupContext {
+        private final LookupContext delegate;
+        private final ThreadLocal<Boolean> used = new ThreadLocal<Boolean>();
+        
+        RecordingLookupContext(LookupContext delegate) {
+            this.delegate = delegate;
+        }
+        
+        void startRecording() {
+            used.set(false);
+        }
+        
+        /** @return whether the lookup context was used since {@link #startRecording()} */
+        boolean stopRecording() {
+            Boolean result = used.get();
+            used.remove();
+            return Boolean.TRUE.equals(result);
+        }
+        
+        private void noteUsed() {
+            if (used.get() != null) used.set(true);
+        }
+        
+        @Override public ManagementContext lookupManagementContext() {
+            noteUsed();
+            return delegate.lookupManagementContext();
+        }
+        @Override public Entity lookupEntity(String id) {
+            noteUsed();
+            return delegate.lookupEntity(id);
+        }
+        @Override public Location lookupLocation(String id) {
+            noteUsed();
+            return delegate.lookupLocation(id);
+        }
+        @Override public Policy lookupPolicy(String id) {
+            noteUsed();
+            return delegate.lookupPolicy(id);
+        }
+        @Override public Enricher lookupEnricher(String id) {
+            noteUsed();
+            return delegate.lookupEnricher(id);
+        }
+        @Override public Feed lookupFeed(String id) {
+            noteUsed();
+            return delegate.lookupFeed(id);
+        }
+        @Override public CatalogItem<?, ?> lookupCatalogItem(String id) {
+            noteUsed();
+            return delegate.lookupCatalogItem(id);
+        }
+        @Override public ManagedBundle lookupBundle(String id) {
+            noteUsed();
+            return delegate.lookupBundle(id);
+        }
+        @Override public BrooklynObject lookup(BrooklynObjectType type, String objectId) {
+            noteUsed();
+            return delegate.lookup(type, objectId);
+        }
+        @Override public BrooklynObject peek(BrooklynObjectType type, String objectId) {
+            noteUsed();
+            return delegate.peek(type, objectId);
+        }
+        @Override public String getContextDescription() {
+            return delegate.getContextDescription();
+        }
+        @Override public String popContextDescription() {
+            return delegate.popContextDescription();
+        }
+        @Override public void pushContextDescription(String description) {
+            delegate.pushContextDescription(description);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.persist;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.time.Duration;
+
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+
+/**
+ * Remembers the raw persisted contents read by a {@link BrooklynMementoPersisterToObjectStore}, along with each
+ * object's modification date, so that a subsequent load need only read the objects written since,
+ * and so that a hot standby can tell cheaply whether anything has changed at all.
+ * <p>
+ * An object's cached contents are only reused if its modification date is unchanged and is more than
+ * the given margin before the start of the load which last verified it; a store's modification dates may be
+ * too coarse (or its clock too far off) to tell apart writes just before and just after a read.
+ */
+class MementoRawDataCache {
+
+    static class Entry {
+        private final Date lastModified;
+        private final String contents;
+        private final byte[] jar;
+        
+        Entry(Date lastModified, String contents, byte[] jar) {
+            this.lastModified = lastModified;
+            this.contents = contents;
+            this.jar = jar;
+        }
+        String getContents() {
+            return contents;
+        }
+        byte[] getJar() {
+            return jar;
+        }
+    }
+    
+    private final Duration margin;
+    /** keyed by sub-path in the object store */
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    /** start time of the last load or check confirming the entries are current, or null if not yet done */
+    private volatile Long verifiedTime;
+    private volatile Long loadStartTime;
+    
+    private final AtomicLong readCount = new AtomicLong();
+    private final AtomicLong reuseCount = new AtomicLong();
+    private final AtomicLong unchangedCheckCount = new AtomicLong();
+
+    MementoRawDataCache(Duration margin) {
+        this.margin = margin;
+    }
+
+    boolean isPopulated() {
+        return verifiedTime != null;
+    }
+    
+    void onLoadStarting() {
+        loadStartTime = System.currentTimeMillis();
+    }
+    
+    void onLoadCompleted(Set<String> subPathsLoaded) {
+        entries.keySet().retainAll(subPathsLoaded);
+        verifiedTime = loadStartTime;
+    }
+
+    void onLoadFailed() {
+        entries.clear();
+        verifiedTime = null;
+    }
+    
+    /** @return the cached entry for the given object, if it can be used instead of reading it again; otherwise null */
+    Entry getIfUnchanged(String subPath, Date lastModified) {
+        Entry entry = entries.get(subPath);
+        if (entry == null || !isUnchanged(entry, lastModified)) return null;
+        reuseCount.incrementAndGet();
+        return entry;
+    }
+    
+    void put(String subPath, Date lastModified, String contents, byte[] jar) {
+        readCount.incrementAndGet();
+        entries.put(subPath, new Entry(lastModified, contents, jar));
+    }
+    
+    private boolean isUnchanged(Entry entry, Date lastModified) {
+        Long since = verifiedTime;
+        return since != null && lastModified != null && lastModified.equals(entry.lastModified) 
+                && lastModified.getTime() < since - margin.toMilliseconds();
+    }
+
+    /**
+     * Compares the objects now in the store, and their modification dates (listed after {@code checkStartTime}),
+     * with those cached; objects modified too recently to trust their dates are read (with the given reader) and compared.
+     * If nothing has changed, the cache is marked as current as of {@code checkStartTime}. 
+     * 
+     * @return whether anything has been added, removed or modified since the last load; true if there has not been one
+     */
+    boolean hasChanges(long checkStartTime, Map<String, Date> currentSubPathsAndDates, Function<String, String> reader) {
+        if (!isPopulated()) return true;
+        if (!currentSubPathsAndDates.keySet().equals(entries.keySet())) return true;
+        
+        for (Map.Entry<String, Date> current : currentSubPathsAndDates.entrySet()) {
+            Entry entry = entries.get(current.getKey());
+            if (entry == null) return true;
+            if (isUnchanged(entry, current.getValue())) continue;
+            if (current.getValue() == null || !current.getValue().equals(entry.lastModified)) return true;
+            if (!Objects.equal(reader.apply(current.getKey()), entry.contents)) return true;
+        }
+        verifiedTime = checkStartTime;
+        unchangedCheckCount.incrementAndGet();
+        return false;
+    }
+
+    /** current statistics, for reporting */
+    Map<String, Object> getMetrics() {
+        return MutableMap.<String, Object>of(
+                "cachedObjects", entries.size(),
+                "reads", readCount.get(),
+                "reuses", reuseCount.get(),
+                "unchangedChecks", unchangedCheckCount.get());
+    }
+}
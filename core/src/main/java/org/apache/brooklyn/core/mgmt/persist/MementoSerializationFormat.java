@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.persist;
+
+import java.util.Map;
+
+import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMementoRawData;
+import org.apache.brooklyn.api.objs.BrooklynObjectType;
+import org.apache.brooklyn.util.collections.MutableMap;
+
+import com.google.common.annotations.Beta;
+
+/** The formats in which mementos can be persisted; see {@link BrooklynMementoPersisterToObjectStore#PERSISTER_SERIALIZATION_FORMAT}. */
+@Beta
+public enum MementoSerializationFormat {
+    
+    /** XStream XML, as written by {@link XmlMementoSerializer}; the default */
+    XML {
+        @Override
+        public <T> MementoSerializer<T> newSerializer(ClassLoader classLoader) {
+            return new XmlMementoSerializer<T>(classLoader);
+        }
+        @Override
+        protected String convertFromOther(String contents) {
+            return BinaryMementoSerializer.toXml(contents);
+        }
+    },
+    
+    /** compact binary, as written by {@link BinaryMementoSerializer} */
+    BINARY {
+        @Override
+        public <T> MementoSerializer<T> newSerializer(ClassLoader classLoader) {
+            return new BinaryMementoSerializer<T>(classLoader);
+        }
+        @Override
+        protected String convertFromOther(String contents) {
+            return BinaryMementoSerializer.fromXml(contents);
+        }
+    };
+
+    /** @return a serializer which writes this format (and can read any format) */
+    public abstract <T> MementoSerializer<T> newSerializer(ClassLoader classLoader);
+    
+    protected abstract String convertFromOther(String contents);
+    
+    /** @return the format of the given persisted contents */
+    public static MementoSerializationFormat of(String contents) {
+        return BinaryMementoSerializer.isBinary(contents) ? BINARY : XML;
+    }
+    
+    /** @return the given persisted contents in this format, converting without deserializing if necessary */
+    public String convert(String contents) {
+        if (contents==null || of(contents)==this) return contents;
+        return convertFromOther(contents);
+    }
+
+    /** @return a copy of the given persisted state with all mementos (other than bundle jars) in this format */
+    public BrooklynMementoRawData convert(BrooklynMementoRawData rawData) {
+        BrooklynMementoRawData.Builder result = BrooklynMementoRawData.builder()
+                .planeId(rawData.getPlaneId())
+                .brooklynVersion(rawData.getBrooklynVersion())
+                .bundleJars(rawData.getBundleJars());
+        for (BrooklynObjectType type : BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
+            result.putAll(type, convertAll(rawData.getObjectsOfType(type)));
+        }
+        return result.build();
+    }
+
+    private Map<String, String> convertAll(Map<String, String> idToContents) {
+        Map<String, String> result = MutableMap.of();
+        for (Map.Entry<String, String> entry : idToContents.entrySet()) {
+            result.put(entry.getKey(), convert(entry.getValue()));
+        }
+        return result;
+    }
+}
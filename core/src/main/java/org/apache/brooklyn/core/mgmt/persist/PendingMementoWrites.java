@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.persist;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMementoPersister.Delta;
+import org.apache.brooklyn.api.mgmt.rebind.mementos.Memento;
+import org.apache.brooklyn.api.objs.BrooklynObjectType;
+import org.apache.brooklyn.core.mgmt.rebind.dto.BasicEntityMemento;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.collections.MutableSet;
+
+/**
+ * The writes a {@link BrooklynMementoPersisterToObjectStore} has yet to make, coalesced from any number of
+ * {@link Delta}s: only the latest memento of each object is kept, and an object removed after being changed
+ * (or changed after being removed) is only removed (or only written).
+ * Where entity mementos say which attributes changed (see {@link BasicEntityMemento#getChangedAttributeNames()}),
+ * the names are accumulated across the mementos coalesced.
+ * <p>
+ * Not thread-safe; callers should synchronize.
+ */
+class PendingMementoWrites {
+
+    private String planeId;
+    private final Map<BrooklynObjectType, Map<String, Memento>> mementos = MutableMap.of();
+    private final Map<BrooklynObjectType, Set<String>> removedIds = MutableMap.of();
+    /** by entity id, the attributes changed since the memento before the first pending one, where known */
+    private final Map<String, Set<String>> changedAttributeNames = MutableMap.of();
+    private int coalescedCount = 0;
+    
+    void add(Delta delta) {
+        if (delta.planeId() != null) planeId = delta.planeId();
+        for (BrooklynObjectType type : BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
+            for (Memento memento : delta.getObjectsOfType(type)) {
+                boolean coalesced = getMementosOfType(type).put(memento.getId(), memento) != null;
+                if (coalesced) coalescedCount++;
+                getRemovedIdsOfType(type).remove(memento.getId());
+                if (type == BrooklynObjectType.ENTITY) addChangedAttributeNames(memento, coalesced);
+            }
+            for (String id : delta.getRemovedIdsOfType(type)) {
+                if (getMementosOfType(type).remove(id) != null) coalescedCount++;
+                getRemovedIdsOfType(type).add(id);
+                changedAttributeNames.remove(id);
+            }
+        }
+    }
+    
+    /** @return the writes pending, leaving this empty */
+    PendingMementoWrites drain() {
+        PendingMementoWrites result = new PendingMementoWrites();
+        result.planeId = planeId;
+        result.mementos.putAll(mementos);
+        result.removedIds.putAll(removedIds);
+        result.changedAttributeNames.putAll(changedAttributeNames);
+        result.coalescedCount = coalescedCount;
+        planeId = null;
+        mementos.clear();
+        removedIds.clear();
+        changedAttributeNames.clear();
+        coalescedCount = 0;
+        return result;
+    }
+    
+    boolean isEmpty() {
+        if (planeId != null) return false;
+        for (Map<String, Memento> m : mementos.values()) {
+            if (!m.isEmpty()) return false;
+        }
+        for (Set<String> r : removedIds.values()) {
+            if (!r.isEmpty()) return false;
+        }
+        return true;
+    }
+    
+    String getPlaneId() {
+        return planeId;
+    }
+    
+    Collection<Memento> getObjectsOfType(BrooklynObjectType type) {
+        return getMementosOfType(type).values();
+    }
+    
+    Set<String> getRemovedIdsOfType(BrooklynObjectType type) {
+        Set<String> result = removedIds.get(type);
+        if (result == null) {
+            result = MutableSet.of();
+            removedIds.put(type, result);
+        }
+        return result;
+    }
+    
+    /** the attributes of the entity changed since the memento written before its pending one, or null if not known */
+    Set<String> getChangedAttributeNames(String entityId) {
+        return changedAttributeNames.get(entityId);
+    }
+    
+    /** number of writes (or deletes) avoided, by a later change (or removal) of the same object */
+    int getCoalescedCount() {
+        return coalescedCount;
+    }
+    
+    private void addChangedAttributeNames(Memento memento, boolean coalesced) {
+        Set<String> changed = (memento instanceof BasicEntityMemento) ? ((BasicEntityMemento) memento).getChangedAttributeNames() : null;
+        Set<String> earlier = changedAttributeNames.remove(memento.getId());
+        if (changed == null || (coalesced && earlier == null)) return;
+        Set<String> result = MutableSet.copyOf(changed);
+        if (coalesced) result.addAll(earlier);
+        changedAttributeNames.put(memento.getId(), result);
+    }
+    
+    private Map<String, Memento> getMementosOfType(BrooklynObjectType type) {
+        Map<String, Memento> result = mementos.get(type);
+        if (result == null) {
+            result = MutableMap.of();
+            mementos.put(type, result);
+        }
+        return result;
+    }
+}
@@ -30,8 +30,12 @@ public class PersistenceActivityMetrics {
     final static int MAX_ERRORS = 200;
     
     long count=0, failureCount=0;
+    long mementosGenerated=0, mementosGeneratedIncrementally=0;
+    long producerWaitCount=0, producerWaitMillis=0;
     Long lastSuccessTime, lastDuration, lastFailureTime;
     List<Map<String,Object>> errorMessages = MutableList.of();
+    Map<String,Long> lastPhaseDurations = MutableMap.of();
+    Map<String,Map<String,Object>> caches = MutableMap.of();
 
     public void noteSuccess(Duration duration) {
         count++;
@@ -46,6 +50,37 @@ public class PersistenceActivityMetrics {
         lastDuration = duration!=null ? duration.toMilliseconds() : -1;
     }
 
+    /** records that mementos were generated, of which some reused parts of the previous memento for the same object */
+    public synchronized void noteMementosGenerated(int total, int incremental) {
+        mementosGenerated += total;
+        mementosGeneratedIncrementally += incremental;
+    }
+
+    /** records that a producer of changes was made to wait for persistence to catch up, and for how long */
+    public synchronized void noteProducerWait(Duration duration) {
+        producerWaitCount++;
+        producerWaitMillis += duration.toMilliseconds();
+    }
+
+    /** records the time taken by each phase of the last run (e.g. of rebind), in millis, in the order given */
+    public synchronized void notePhaseDurations(Map<String, Duration> durations) {
+        lastPhaseDurations = MutableMap.of();
+        for (Map.Entry<String, Duration> entry : durations.entrySet()) {
+            lastPhaseDurations.put(entry.getKey(), entry.getValue().toMilliseconds());
+        }
+    }
+
+    /** records the current metrics of a cache used, which if they include {@code hits} and {@code misses} will have a {@code hitRate} added */
+    public synchronized void noteCacheMetrics(String cacheName, Map<String, ?> metrics) {
+        Map<String,Object> result = MutableMap.<String,Object>copyOf(metrics);
+        Object hits = metrics.get("hits"), misses = metrics.get("misses");
+        if (hits instanceof Number && misses instanceof Number) {
+            double total = ((Number)hits).doubleValue() + ((Number)misses).doubleValue();
+            result.put("hitRate", total > 0 ? ((Number)hits).doubleValue() / total : null);
+        }
+        caches.put(cacheName, result);
+    }
+
     public void noteError(String error) {
         noteErrorObject(error);
     }
@@ -72,6 +107,12 @@ public class PersistenceActivityMetrics {
         result.put("lastFailureTimeUtc", lastFailureTime);
         result.put("lastFailureTimeMillisSince", since(lastFailureTime));
         result.put("errorMessages", MutableList.copyOf(errorMessages));
+        result.put("mementosGenerated", mementosGenerated);
+        result.put("mementosGeneratedIncrementally", mementosGeneratedIncrementally);
+        result.put("lastPhaseDurations", MutableMap.copyOf(lastPhaseDurations));
+        result.put("producerWaitCount", producerWaitCount);
+        result.put("producerWaitMillis", producerWaitMillis);
+        result.put("caches", MutableMap.copyOf(caches));
         return result;
     }
 
@@ -20,6 +20,7 @@ package org.apache.brooklyn.core.mgmt.persist;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReadWriteLock;
 
@@ -64,6 +65,29 @@ public interface PersistenceObjectStore {
         ReadWriteLock getLockObject();
     }
 
+    /**
+     * A store which can list objects along with their last modified dates in one call (e.g. one listing request
+     * to a blob store), rather than with a request per object through {@link StoreObjectAccessor#getLastModifiedDate()}.
+     */
+    @Beta
+    public interface ListableWithLastModifiedDates {
+        /**
+         * As {@link PersistenceObjectStore#listContentsWithSubPath(String)}, with the last modified date of each object
+         * (null if not known), as {@link StoreObjectAccessor#getLastModifiedDate()} would give.
+         */
+        Map<String, Date> listContentsWithSubPathAndLastModifiedDates(String subPath);
+    }
+
+    /**
+     * A store which buffers writes, so that they are not durable until {@link #flush() flushed};
+     * the persister flushes it at the end of each checkpoint and delta.
+     */
+    @Beta
+    public interface WithBufferedWrites {
+        /** writes everything buffered, returning once it is durable */
+        void flush();
+    }
+
     /** human-readable name of this object store */
     public String getSummaryName();
     
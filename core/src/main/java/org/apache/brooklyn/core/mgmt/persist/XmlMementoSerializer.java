@@ -21,6 +21,7 @@ package org.apache.brooklyn.core.mgmt.persist;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Method;
 import java.util.List;
@@ -60,13 +61,16 @@ import org.apache.brooklyn.core.mgmt.rebind.dto.BasicPolicyMemento;
 import org.apache.brooklyn.core.sensor.BasicAttributeSensor;
 import org.apache.brooklyn.core.typereg.BundleUpgradeParser.CatalogUpgrades;
 import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.core.xstream.XmlSerializer;
 import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.text.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
 import com.thoughtworks.xstream.converters.Converter;
 import com.thoughtworks.xstream.converters.MarshallingContext;
 import com.thoughtworks.xstream.converters.SingleValueConverter;
@@ -76,7 +80,9 @@ import com.thoughtworks.xstream.core.ReferenceByXPathUnmarshaller;
 import com.thoughtworks.xstream.core.ReferencingMarshallingContext;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.WriterWrapper;
 import com.thoughtworks.xstream.io.path.PathTrackingReader;
+import com.thoughtworks.xstream.io.xml.XppDriver;
 import com.thoughtworks.xstream.mapper.Mapper;
 import com.thoughtworks.xstream.mapper.MapperWrapper;
 
@@ -163,6 +169,128 @@ public class XmlMementoSerializer<T> extends XmlSerializer<T> implements Memento
         }
     }
 
+    /**
+     * As {@link #toString(Object)}, for an entity memento, but writing the given serialized forms of some of its attributes
+     * (keyed by attribute name, as previously reported here) in place of serializing their values again.
+     * The serialized form written for each other attribute is reported to {@code newAttributes}, if it is self-contained,
+     * i.e. has no XStream references (which are relative paths within the document), so could be written in a later document.
+     * The serialized forms given must be self-contained.
+     * <p>
+     * The document is written by XStream with an empty value in place of each attribute reused; then the XML of those
+     * attributes is replaced. Other parts of the document therefore never refer into a reused attribute, and XStream's
+     * references elsewhere are unaffected as the elements keep their names and positions. (One consequence is that
+     * a value shared by a reused attribute and another part of the memento is written, and so read back, as two copies.)
+     *
+     * @return the serialized memento, or null if the attributes could not be picked out of the document
+     *         (in which case nothing is reported, and the caller should serialize the memento in full) 
+     */
+    @Beta
+    public String toStringReusingAttributes(BasicEntityMemento memento, Map<String, String> reusedAttributes, Map<String, String> newAttributes) {
+        Map<String, Object> attributes = memento.getSerializedAttributes();
+        Map<String, Object> placeholders = MutableMap.of();
+        for (String name : reusedAttributes.keySet()) {
+            if (attributes.containsKey(name)) placeholders.put(name, "");
+        }
+        Object toWrite = placeholders.isEmpty() ? memento : memento.withSerializedAttributes(placeholders);
+        
+        StringWriter out = new StringWriter();
+        AttributeEntriesTrackingWriter writer = new AttributeEntriesTrackingWriter(new XppDriver().createWriter(out), out);
+        try {
+            xstream.marshal(toWrite, writer);
+        } finally {
+            writer.flush();
+        }
+        
+        List<String> names = ImmutableList.copyOf(attributes.keySet());
+        if (writer.entryStarts.size() != names.size() || writer.entryEnds.size() != names.size()) {
+            LOG.debug("Unable to find the "+names.size()+" attributes of "+memento.getId()+" when serializing; found "+writer.entryEnds.size());
+            return null;
+        }
+        String document = out.toString();
+        StringBuilder result = new StringBuilder(document.length() + 1);
+        int position = 0;
+        for (int i=0; i<names.size(); i++) {
+            String name = names.get(i);
+            int start = writer.entryStarts.get(i);
+            int end = writer.entryEnds.get(i);
+            result.append(document, position, start);
+            if (placeholders.containsKey(name)) {
+                result.append(reusedAttributes.get(name));
+            } else {
+                String entry = document.substring(start, end);
+                result.append(entry);
+                if (!entry.contains("reference=\"")) newAttributes.put(name, entry);
+            }
+            position = end;
+        }
+        result.append(document, position, document.length());
+        result.append("\n");
+        return result.toString();
+    }
+    
+    /**
+     * Records where each entry of the top-level {@code attributes} map starts and ends in the output,
+     * relying on the {@link com.thoughtworks.xstream.io.xml.PrettyPrintWriter} writing a start tag as soon as
+     * the node is started, and nothing after an end tag until the next node.
+     */
+    private static class AttributeEntriesTrackingWriter extends WriterWrapper {
+        private final StringWriter out;
+        private int depth = 0;
+        private boolean inAttributes = false;
+        final List<Integer> entryStarts = MutableList.of();
+        final List<Integer> entryEnds = MutableList.of();
+        
+        AttributeEntriesTrackingWriter(HierarchicalStreamWriter wrapped, StringWriter out) {
+            super(wrapped);
+            this.out = out;
+        }
+        
+        @Override
+        public void startNode(String name) {
+            super.startNode(name);
+            onStartNode(name);
+        }
+        
+        @Override
+        @SuppressWarnings("rawtypes")
+        public void startNode(String name, Class clazz) {
+            super.startNode(name, clazz);
+            onStartNode(name);
+        }
+        
+        private void onStartNode(String name) {
+            depth++;
+            if (depth==2 && "attributes".equals(name)) {
+                inAttributes = true;
+            } else if (depth==3 && inAttributes) {
+                flush();
+                entryStarts.add(out.getBuffer().lastIndexOf("<"));
+            }
+        }
+        
+        @Override
+        public void endNode() {
+            super.endNode();
+            if (depth==3 && inAttributes) {
+                flush();
+                entryEnds.add(out.getBuffer().length());
+            } else if (depth==2) {
+                inAttributes = false;
+            }
+            depth--;
+        }
+    }
+
+    /** Reads XML, or the {@link BinaryMementoSerializer binary form}, e.g. if persistence has been switched between the two. */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T fromString(String string) {
+        if (BinaryMementoSerializer.isBinary(string)) {
+            return (T) xstream.unmarshal(BinaryMementoSerializer.newReader(string));
+        }
+        return super.fromString(string);
+    }
+
     @Override
     public void setLookupContext(LookupContext lookupContext) {
         this.lookupContext = checkNotNull(lookupContext, "lookupContext");
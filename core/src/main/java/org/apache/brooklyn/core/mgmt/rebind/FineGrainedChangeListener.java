@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.rebind;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.mgmt.rebind.ChangeListener;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.config.ConfigKey;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * A {@link ChangeListener} which is told which part of an entity changed, for the most frequent changes,
+ * so that it need not regenerate the entity's whole memento. Each call is in place of {@link #onChanged(org.apache.brooklyn.api.objs.BrooklynObject)}.
+ */
+@Beta
+public interface FineGrainedChangeListener extends ChangeListener {
+
+    void onAttributeChanged(Entity entity, AttributeSensor<?> attribute);
+
+    void onConfigChanged(Entity entity, ConfigKey<?> key);
+}
@@ -20,33 +20,43 @@ package org.apache.brooklyn.core.mgmt.rebind;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import javax.annotation.Nullable;
+
 import org.apache.brooklyn.api.catalog.CatalogItem;
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.location.Location;
 import org.apache.brooklyn.api.mgmt.ExecutionContext;
 import org.apache.brooklyn.api.mgmt.Task;
-import org.apache.brooklyn.api.mgmt.rebind.ChangeListener;
 import org.apache.brooklyn.api.mgmt.rebind.PersistenceExceptionHandler;
 import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMementoPersister;
+import org.apache.brooklyn.api.mgmt.rebind.mementos.EntityMemento;
+import org.apache.brooklyn.api.mgmt.rebind.mementos.Memento;
 import org.apache.brooklyn.api.objs.BrooklynObject;
 import org.apache.brooklyn.api.objs.BrooklynObjectType;
 import org.apache.brooklyn.api.policy.Policy;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
 import org.apache.brooklyn.api.sensor.Enricher;
 import org.apache.brooklyn.api.sensor.Feed;
 import org.apache.brooklyn.api.typereg.ManagedBundle;
+import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.core.BrooklynFeatureEnablement;
 import org.apache.brooklyn.core.entity.EntityInternal;
 import org.apache.brooklyn.core.mgmt.persist.BrooklynPersistenceUtils;
 import org.apache.brooklyn.core.mgmt.persist.PersistenceActivityMetrics;
+import org.apache.brooklyn.core.mgmt.rebind.dto.MementosGenerators;
+import org.apache.brooklyn.core.mgmt.rebind.dto.MementosGenerators.EntityMementoSections;
 import org.apache.brooklyn.core.objs.BrooklynObjectInternal;
+import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.collections.MutableSet;
 import org.apache.brooklyn.util.core.task.ScheduledTask;
 import org.apache.brooklyn.util.core.task.Tasks;
@@ -78,7 +88,7 @@ import com.google.common.collect.Sets;
  * @author aled
  *
  */
-public class PeriodicDeltaChangeListener implements ChangeListener {
+public class PeriodicDeltaChangeListener implements FineGrainedChangeListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(PeriodicDeltaChangeListener.class);
 
@@ -104,6 +114,10 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         private Set<String> removedFeedIds = Sets.newLinkedHashSet();
         private Set<String> removedCatalogItemIds = Sets.newLinkedHashSet();
         private Set<String> removedBundleIds = Sets.newLinkedHashSet();
+        
+        /** for entities in {@link #entities} whose only changes were to their config or particular attributes, 
+         * what changed; entities not in here must have their mementos generated in full */
+        private Map<String, EntityChanges> partialEntityChanges = MutableMap.of();
 
         public boolean isEmpty() {
             return planeId == null &&
@@ -115,6 +129,14 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
                     removedCatalogItemIds.isEmpty() && removedBundleIds.isEmpty();
         }
         
+        /** number of objects changed or removed */
+        public int size() {
+            return locations.size() + entities.size() + policies.size() + enrichers.size() + feeds.size() + 
+                    catalogItems.size() + bundles.size() +
+                    removedLocationIds.size() + removedEntityIds.size() + removedPolicyIds.size() + removedEnricherIds.size() + 
+                    removedFeedIds.size() + removedCatalogItemIds.size() + removedBundleIds.size();
+        }
+        
         public void setPlaneId(String planeId) {
             this.planeId = planeId;
         }
@@ -125,6 +147,27 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
             if (type==BrooklynObjectType.CATALOG_ITEM) {
                 removedCatalogItemIds.remove(instance.getId());
             }
+            if (type==BrooklynObjectType.ENTITY) {
+                partialEntityChanges.remove(instance.getId());
+            }
+        }
+        
+        /** adds an entity which has had a change to its config (if attribute is null) or to the given attribute */
+        public void addPartial(Entity entity, @Nullable AttributeSensor<?> attribute) {
+            EntityChanges changes = partialEntityChanges.get(entity.getId());
+            if (changes==null) {
+                if (!entities.add(entity)) {
+                    // already changed in full
+                    return;
+                }
+                changes = new EntityChanges();
+                partialEntityChanges.put(entity.getId(), changes);
+            }
+            if (attribute==null) {
+                changes.config = true;
+            } else {
+                changes.attributes.add(attribute);
+            }
         }
         
         public void addIfNotRemoved(BrooklynObject instance) {
@@ -138,6 +181,7 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
             BrooklynObjectType type = BrooklynObjectType.of(instance);
             getUnsafeCollectionOfType(type).remove(instance);
             getRemovedIdsOfType(type).add(instance.getId());
+            partialEntityChanges.remove(instance.getId());
         }
 
         @SuppressWarnings("unchecked")
@@ -177,6 +221,11 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
 
     }
     
+    private static class EntityChanges {
+        boolean config = false;
+        Set<AttributeSensor<?>> attributes = Sets.newLinkedHashSet();
+    }
+    
     private final ExecutionContext executionContext;
     
     private final BrooklynMementoPersister persister;
@@ -195,12 +244,22 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
     private final boolean persistPoliciesEnabled;
     private final boolean persistEnrichersEnabled;
     private final boolean persistFeedsEnabled;
+    private final boolean incrementalEntityMementos;
+    
+    /** the config and attributes of the last memento generated for each entity, when {@link #incrementalEntityMementos};
+     * only used by the thread persisting (holding {@link #persistingMutex}), other than being removed when unmanaged */
+    private final Map<String, EntityMementoSections> entityMementoSections = new ConcurrentHashMap<String, EntityMementoSections>();
     
     private final Semaphore persistingMutex = new Semaphore(1);
     private final Object startStopMutex = new Object();
     private final AtomicInteger writeCount = new AtomicInteger(0);
 
     private PersistenceActivityMetrics metrics;
+    
+    /** see {@link #setMaxPendingChanges(int)} */
+    private volatile int maxPendingChanges = 0;
+    /** the thread generating and writing mementos, which must never wait for itself */
+    private volatile Thread persistingThread;
 
     private CountdownTimer planeIdPersistTimer = CountdownTimer.newInstanceStarted(Duration.ZERO);
     private Supplier<String> planeIdSupplier;
@@ -222,6 +281,16 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         this.persistPoliciesEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_POLICY_PERSISTENCE_PROPERTY);
         this.persistEnrichersEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_ENRICHER_PERSISTENCE_PROPERTY);
         this.persistFeedsEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_FEED_PERSISTENCE_PROPERTY);
+        this.incrementalEntityMementos = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_INCREMENTAL_ENTITY_MEMENTOS);
+    }
+    
+    /**
+     * Sets the number of changed objects above which those reporting further changes are made to wait 
+     * (for at most twice the period) until the pending changes are taken to be persisted, 
+     * so that a burst of changes slows their producers rather than outpacing persistence; 0 (the default) for no limit.
+     */
+    public void setMaxPendingChanges(int maxPendingChanges) {
+        this.maxPendingChanges = maxPendingChanges;
     }
     
     public void start() {
@@ -277,6 +346,7 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
                 synchronized (this) {
                     deltaCollector = new DeltaCollector();
                 }
+                entityMementoSections.clear();
             } finally {
                 state = ListenerState.STOPPED;
             }
@@ -420,6 +490,7 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         try {
             if (!alreadyHasMutex) persistingMutex.acquire();
             if (!isActive() && state != ListenerState.STOPPING) return;
+            persistingThread = Thread.currentThread();
             
             // Writes to the datastore are lossy. We'll just log failures and move on.
             // (Most) entities will get updated multiple times in their lifecycle
@@ -434,6 +505,8 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
             synchronized (this) {
                 prevDeltaCollector = deltaCollector;
                 deltaCollector = new DeltaCollector();
+                // release any producers waiting for space
+                notifyAll();
             }
             
             if (LOG.isDebugEnabled() && shouldLogCheckpoint()) LOG.debug("Checkpointing delta of memento: "
@@ -461,15 +534,29 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
                 if (prevDeltaCollector.planeId != null) {
                     persisterDelta.planeId = prevDeltaCollector.planeId;
                 }
+                int mementosGenerated = 0;
+                int mementosGeneratedIncrementally = 0;
                 for (BrooklynObjectType type: BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
                     for (BrooklynObject instance: prevDeltaCollector.getCollectionOfType(type)) {
                         try {
-                            persisterDelta.add(type, ((BrooklynObjectInternal)instance).getRebindSupport().getMemento());
+                            Memento memento;
+                            if (type==BrooklynObjectType.ENTITY && isIncrementalMementoSupported(instance)) {
+                                EntityChanges changes = prevDeltaCollector.partialEntityChanges.get(instance.getId());
+                                if (changes!=null && entityMementoSections.containsKey(instance.getId())) mementosGeneratedIncrementally++;
+                                memento = newEntityMementoIncrementally((Entity)instance, changes);
+                            } else {
+                                memento = ((BrooklynObjectInternal)instance).getRebindSupport().getMemento();
+                            }
+                            persisterDelta.add(type, memento);
+                            mementosGenerated++;
                         } catch (Exception e) {
+                            // the sections may now be ahead of the last memento persisted; generate the next in full
+                            if (type==BrooklynObjectType.ENTITY) entityMementoSections.remove(instance.getId());
                             exceptionHandler.onGenerateMementoFailed(type, instance, e);
                         }
                     }
                 }
+                if (metrics!=null) metrics.noteMementosGenerated(mementosGenerated, mementosGeneratedIncrementally);
                 for (BrooklynObjectType type: BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
                     persisterDelta.removed(type, prevDeltaCollector.getRemovedIdsOfType(type));
                 }
@@ -494,6 +581,7 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
                 LOG.debug("Problem persisting, but no longer active (ignoring)", e);
             }
         } finally {
+            persistingThread = null;
             synchronized (writeCount) {
                 writeCount.incrementAndGet();
                 writeCount.notifyAll();
@@ -502,6 +590,24 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         }
     }
     
+    private boolean isIncrementalMementoSupported(BrooklynObject instance) {
+        // custom rebind support may customise the memento, so must always be asked for it
+        return incrementalEntityMementos && ((BrooklynObjectInternal)instance).getRebindSupport().getClass() == BasicEntityRebindSupport.class;
+    }
+    
+    private EntityMemento newEntityMementoIncrementally(Entity entity, @Nullable EntityChanges changes) {
+        EntityMementoSections sections = entityMementoSections.get(entity.getId());
+        if (sections==null) {
+            sections = new EntityMementoSections();
+            entityMementoSections.put(entity.getId(), sections);
+        }
+        EntityMemento result = (changes==null)
+                ? MementosGenerators.newEntityMemento(entity, sections, true, null)
+                : MementosGenerators.newEntityMemento(entity, sections, changes.config, changes.attributes);
+        if (LOG.isTraceEnabled()) LOG.trace("Created memento{}: {}", (changes==null ? "" : " incrementally"), result.toVerboseString());
+        return result;
+    }
+    
     private void updatePlaneIdIfTimedOut() {
         if (planeIdPersistTimer.isExpired()) {
             deltaCollector.setPlaneId(planeIdSupplier.get());
@@ -535,6 +641,7 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         if (!isStopped()) {
             removeFromCollector(instance);
             if (instance instanceof Entity) {
+                entityMementoSections.remove(instance.getId());
                 Entity entity = (Entity) instance;
                 for (BrooklynObject adjunct : entity.policies()) removeFromCollector(adjunct);
                 for (BrooklynObject adjunct : entity.enrichers()) removeFromCollector(adjunct);
@@ -552,7 +659,61 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         if (LOG.isTraceEnabled()) LOG.trace("onChanged: {}", instance);
         if (!isStopped()) {
             deltaCollector.add(instance);
+            waitIfTooManyPendingChanges();
+        }
+    }
+
+    /** as {@link #onChanged(BrooklynObject)}, but recording that only the given attribute changed
+     * (used when {@link BrooklynFeatureEnablement#FEATURE_INCREMENTAL_ENTITY_MEMENTOS} is enabled) */
+    @Override
+    public synchronized void onAttributeChanged(Entity entity, AttributeSensor<?> attribute) {
+        if (!incrementalEntityMementos) {
+            onChanged(entity);
+            return;
+        }
+        if (LOG.isTraceEnabled()) LOG.trace("onAttributeChanged: {} {}", entity, attribute.getName());
+        if (!isStopped()) {
+            deltaCollector.addPartial(entity, attribute);
+            waitIfTooManyPendingChanges();
+        }
+    }
+
+    /** as {@link #onChanged(BrooklynObject)}, but recording that only config changed
+     * (used when {@link BrooklynFeatureEnablement#FEATURE_INCREMENTAL_ENTITY_MEMENTOS} is enabled) */
+    @Override
+    public synchronized void onConfigChanged(Entity entity, ConfigKey<?> key) {
+        if (!incrementalEntityMementos) {
+            onChanged(entity);
+            return;
+        }
+        if (LOG.isTraceEnabled()) LOG.trace("onConfigChanged: {} {}", entity, key.getName());
+        if (!isStopped()) {
+            deltaCollector.addPartial(entity, null);
+            waitIfTooManyPendingChanges();
+        }
+    }
+    
+    /**
+     * If there are more than {@link #setMaxPendingChanges(int) maxPendingChanges}, waits until they are taken 
+     * to be persisted, or until twice the period has passed (in case the persisting thread is itself waiting 
+     * on something the caller holds). Caller must hold this object's monitor, which is released while waiting.
+     */
+    private void waitIfTooManyPendingChanges() {
+        int max = maxPendingChanges;
+        if (max <= 0 || deltaCollector.size() <= max) return;
+        if (!isActive() || Thread.currentThread() == persistingThread) return;
+        
+        DeltaCollector full = deltaCollector;
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        CountdownTimer timer = period.multiply(2).countdownTimer();
+        try {
+            while (deltaCollector == full && isActive() && !timer.isExpired()) {
+                wait(Math.max(1, timer.getDurationRemaining().toMillisecondsRoundingUp()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        if (metrics != null) metrics.noteProducerWait(Duration.of(stopwatch));
     }
     
     public PersistenceExceptionHandler getExceptionHandler() {
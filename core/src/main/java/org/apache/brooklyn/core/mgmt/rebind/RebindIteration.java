@@ -28,13 +28,21 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
 
 import org.apache.brooklyn.api.catalog.BrooklynCatalog;
 import org.apache.brooklyn.api.catalog.CatalogItem;
@@ -91,6 +99,7 @@ import org.apache.brooklyn.core.mgmt.internal.LocalManagementContext;
 import org.apache.brooklyn.core.mgmt.internal.LocationManagerInternal;
 import org.apache.brooklyn.core.mgmt.internal.ManagementContextInternal;
 import org.apache.brooklyn.core.mgmt.internal.ManagementTransitionMode;
+import org.apache.brooklyn.core.mgmt.persist.BrooklynMementoPersisterToObjectStore;
 import org.apache.brooklyn.core.mgmt.persist.DeserializingClassRenamesProvider;
 import org.apache.brooklyn.core.mgmt.persist.PersistenceActivityMetrics;
 import org.apache.brooklyn.core.mgmt.rebind.RebindManagerImpl.RebindTracker;
@@ -127,6 +136,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
 Multi-phase deserialization:
@@ -194,6 +204,12 @@ public abstract class RebindIteration {
     // set on run start
     
     protected Stopwatch timer;
+    /** time taken by each phase, in the order run, for reporting */
+    protected final Map<String, Duration> phaseDurations = Collections.synchronizedMap(new LinkedHashMap<String, Duration>());
+    private String currentPhaseName;
+    private Stopwatch currentPhaseTimer;
+    /** used to reconstruct application subtrees concurrently; null if rebinding sequentially */
+    protected ExecutorService subtreeExecutor;
     /** phase is used to ensure our steps are run as we've expected, and documented (in javadoc at top).
      * it's worth the extra effort due to the complication and the subtleties. */
     protected int phase = 0;
@@ -253,20 +269,50 @@ public abstract class RebindIteration {
     }
     
     protected void doRun() throws Exception {
+        startPhaseTiming("loadManifests");
         loadManifestFiles();
         initPlaneId();
+        startPhaseTiming("installBundlesAndCatalog");
         installBundlesAndRebuildCatalog();
+        startPhaseTiming("instantiateLocationsAndEntities");
         instantiateLocationsAndEntities();
+        startPhaseTiming("deserializeMementos");
         instantiateMementos();
         // adjuncts depend on actual mementos; whereas entity works off special memento manifest, 
         // and location, bundles etc just take type and id
+        startPhaseTiming("instantiateAdjuncts");
         instantiateAdjuncts(instantiator); 
+        startPhaseTiming("reconstruct");
         reconstructEverything();
+        startPhaseTiming("associateAdjuncts");
         associateAdjunctsWithEntities();
+        startPhaseTiming("manage");
         manageTheObjects();
+        endPhaseTiming();
         finishingUp();
     }
     
+    /** ends the timing of the current phase, if any, and starts timing the given one */
+    protected void startPhaseTiming(String name) {
+        endPhaseTiming();
+        currentPhaseName = name;
+        currentPhaseTimer = Stopwatch.createStarted();
+    }
+    
+    protected void endPhaseTiming() {
+        if (currentPhaseName!=null) {
+            phaseDurations.put(currentPhaseName, Duration.of(currentPhaseTimer));
+            currentPhaseName = null;
+        }
+    }
+    
+    /** time taken by each phase of this iteration so far, in the order they were run */
+    public Map<String, Duration> getPhaseDurations() {
+        synchronized (phaseDurations) {
+            return ImmutableMap.copyOf(phaseDurations);
+        }
+    }
+    
     protected abstract void loadManifestFiles() throws Exception;
     
     public void run() {
@@ -283,27 +329,126 @@ public abstract class RebindIteration {
 
             timer = Stopwatch.createStarted();
             exceptionHandler.onStart(rebindContext);
+            subtreeExecutor = newSubtreeExecutor();
 
             doRun();
             
             exceptionHandler.onDone();
             
             rebindMetrics.noteSuccess(Duration.of(timer));
+            rebindMetrics.notePhaseDurations(getPhaseDurations());
+            if (persistenceStoreAccess instanceof BrooklynMementoPersisterToObjectStore) {
+                Map<String, Object> fragmentCacheMetrics = ((BrooklynMementoPersisterToObjectStore)persistenceStoreAccess).getFragmentCacheMetrics();
+                if (fragmentCacheMetrics != null) rebindMetrics.noteCacheMetrics("mementoFragments", fragmentCacheMetrics);
+            }
             noteErrors(exceptionHandler, null);
             
         } catch (Exception e) {
             rebindMetrics.noteFailure(Duration.of(timer));
+            endPhaseTiming();
+            rebindMetrics.notePhaseDurations(getPhaseDurations());
             
             Exceptions.propagateIfFatal(e);
             noteErrors(exceptionHandler, e);
             throw exceptionHandler.onFailed(e);
             
         } finally {
+            if (subtreeExecutor!=null) {
+                subtreeExecutor.shutdownNow();
+                subtreeExecutor = null;
+            }
             rebindActive.release();
             RebindTracker.reset();
         }
     }
     
+    /** @return an executor for {@link #forEachParentFirst(Map, Consumer)}, if {@link RebindManagerImpl#REBIND_PARALLELISM} is more than 1 */
+    @Nullable
+    protected ExecutorService newSubtreeExecutor() {
+        Integer parallelism = managementContext.getConfig().getConfig(RebindManagerImpl.REBIND_PARALLELISM);
+        if (parallelism==null || parallelism <= 1) return null;
+        return Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+                .setNameFormat("brooklyn-rebind-%d")
+                .setDaemon(true)
+                .build());
+    }
+    
+    /**
+     * Applies the action to each of the given nodes, parents before their children.
+     * <p>
+     * If there is a {@link #subtreeExecutor}, the nodes are grouped by the root of their subtree
+     * (normally an application), and the subtrees are processed concurrently; otherwise the nodes are
+     * processed in turn on the calling thread. Returns when all are done, throwing the first
+     * failure (if the exception handler throws, e.g. when failing fast).
+     * <p>
+     * Only use this for a phase whose action is independent across subtrees. The state shared between
+     * the threads is then:
+     * <ul>
+     *   <li>the {@link #rebindContext}'s lookup maps, which are only read: all objects are registered
+     *       in earlier phases, and nothing is registered or unregistered while this runs
+     *       (submitting the jobs makes those earlier writes visible to the pool threads);
+     *   <li>the {@link #exceptionHandler}, whose records of failures and missing objects are concurrent collections;
+     *   <li>the objects being rebound, where each action must only change the object for its own node
+     *       (e.g. a group adding members from other subtrees changes only its own member set).
+     * </ul>
+     * Reconstructing entities meets this; associating adjuncts does not, as adjuncts start and can
+     * act on other entities, so that is always done sequentially.
+     */
+    protected <T extends TreeNode> void forEachParentFirst(Map<String, T> nodes, final Consumer<? super T> action) {
+        Map<String, T> sorted = sortParentFirst(nodes);
+        if (subtreeExecutor==null) {
+            for (T node : sorted.values()) {
+                action.accept(node);
+            }
+            return;
+        }
+        
+        List<Future<?>> futures = Lists.newArrayList();
+        for (final List<T> subtree : groupBySubtree(sorted)) {
+            futures.add(subtreeExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    RebindTracker.setRebinding();
+                    try {
+                        for (T node : subtree) {
+                            action.accept(node);
+                        }
+                    } finally {
+                        RebindTracker.reset();
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (Exception e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            throw Exceptions.propagate(e instanceof ExecutionException ? e.getCause() : e);
+        }
+    }
+    
+    /** @return the given nodes (sorted parent first) grouped by the root of their subtree, keeping the order within each group */
+    protected <T extends TreeNode> Collection<List<T>> groupBySubtree(Map<String, T> sortedParentFirst) {
+        Map<String, String> rootIds = Maps.newHashMap();
+        Map<String, List<T>> result = Maps.newLinkedHashMap();
+        for (T node : sortedParentFirst.values()) {
+            String rootId = (node.getParent()==null) ? null : rootIds.get(node.getParent());
+            if (rootId==null) rootId = node.getId();
+            rootIds.put(node.getId(), rootId);
+            List<T> group = result.get(rootId);
+            if (group==null) {
+                group = Lists.newArrayList();
+                result.put(rootId, group);
+            }
+            group.add(node);
+        }
+        return result.values();
+    }
+
     protected void checkEnteringPhase(int targetPhase) {
         phase++;
         checkContinuingPhase(targetPhase);
@@ -465,6 +610,8 @@ public abstract class RebindIteration {
         checkEnteringPhase(4);
         
         memento = persistenceStoreAccess.loadMemento(mementoRawData, rebindContext.lookup(), exceptionHandler);
+        // the raw data is not needed after this, so let it be collected rather than holding both forms of all state
+        mementoRawData = null;
     }
 
     protected void initPlaneId() {
@@ -625,20 +772,27 @@ public abstract class RebindIteration {
    
         // Reconstruct entities
         logRebindingDebug("RebindManager reconstructing entities");
-        for (EntityMemento entityMemento : sortParentFirst(memento.getEntityMementos()).values()) {
-            Entity entity = rebindContext.lookup().lookupEntity(entityMemento.getId());
-            logRebindingDebug("RebindManager reconstructing entity {}", entityMemento);
-   
-            if (entity == null) {
-                // usually because of creation-failure, when not using fail-fast
-                exceptionHandler.onNotFound(BrooklynObjectType.ENTITY, entityMemento.getId());
-            } else {
-                try {
-                    entityMemento.injectTypeClass(entity.getClass());
-                    ((EntityInternal)entity).getRebindSupport().reconstruct(rebindContext, entityMemento);
-                } catch (Exception e) {
-                    exceptionHandler.onRebindFailed(BrooklynObjectType.ENTITY, entity, e);
-                }
+        forEachParentFirst(memento.getEntityMementos(), new Consumer<EntityMemento>() {
+            @Override
+            public void accept(EntityMemento entityMemento) {
+                reconstructEntity(entityMemento);
+            }
+        });
+    }
+
+    protected void reconstructEntity(EntityMemento entityMemento) {
+        Entity entity = rebindContext.lookup().lookupEntity(entityMemento.getId());
+        logRebindingDebug("RebindManager reconstructing entity {}", entityMemento);
+
+        if (entity == null) {
+            // usually because of creation-failure, when not using fail-fast
+            exceptionHandler.onNotFound(BrooklynObjectType.ENTITY, entityMemento.getId());
+        } else {
+            try {
+                entityMemento.injectTypeClass(entity.getClass());
+                ((EntityInternal)entity).getRebindSupport().reconstruct(rebindContext, entityMemento);
+            } catch (Exception e) {
+                exceptionHandler.onRebindFailed(BrooklynObjectType.ENTITY, entity, e);
             }
         }
     }
@@ -648,35 +802,40 @@ public abstract class RebindIteration {
         checkEnteringPhase(7);
 
         logRebindingDebug("RebindManager associating adjuncts to entities");
+        // not done in parallel (see forEachParentFirst), as adjuncts can start and act on other entities
         for (EntityMemento entityMemento : sortParentFirst(memento.getEntityMementos()).values()) {
-            Entity entity = rebindContext.getEntity(entityMemento.getId());
-            logRebindingDebug("RebindManager associating adjuncts to entity {}", entityMemento);
-   
-            if (entity == null) {
-                // usually because of creation-failure, when not using fail-fast
-                exceptionHandler.onNotFound(BrooklynObjectType.ENTITY, entityMemento.getId());
-            } else {
-                // Must execute in entity's context, so policy.setEntity can resolve config (BROOKLYN-549).
-                Runnable body = new Runnable() {
-                    public void run() {
-                        try {
-                            entityMemento.injectTypeClass(entity.getClass());
-                            // TODO these call to the entity which in turn sets the entity on the underlying feeds and enrichers;
-                            // that is taken as the cue to start, but it should not be. start should be a separate call.
-                            ((EntityInternal)entity).getRebindSupport().addPolicies(rebindContext, entityMemento);
-                            ((EntityInternal)entity).getRebindSupport().addEnrichers(rebindContext, entityMemento);
-                            ((EntityInternal)entity).getRebindSupport().addFeeds(rebindContext, entityMemento);
-                        } catch (Exception e) {
-                            exceptionHandler.onRebindFailed(BrooklynObjectType.ENTITY, entity, e);
-                        }
+            associateAdjunctsWithEntity(entityMemento);
+        }
+    }
+
+    protected void associateAdjunctsWithEntity(final EntityMemento entityMemento) {
+        final Entity entity = rebindContext.getEntity(entityMemento.getId());
+        logRebindingDebug("RebindManager associating adjuncts to entity {}", entityMemento);
+
+        if (entity == null) {
+            // usually because of creation-failure, when not using fail-fast
+            exceptionHandler.onNotFound(BrooklynObjectType.ENTITY, entityMemento.getId());
+        } else {
+            // Must execute in entity's context, so policy.setEntity can resolve config (BROOKLYN-549).
+            Runnable body = new Runnable() {
+                public void run() {
+                    try {
+                        entityMemento.injectTypeClass(entity.getClass());
+                        // TODO these call to the entity which in turn sets the entity on the underlying feeds and enrichers;
+                        // that is taken as the cue to start, but it should not be. start should be a separate call.
+                        ((EntityInternal)entity).getRebindSupport().addPolicies(rebindContext, entityMemento);
+                        ((EntityInternal)entity).getRebindSupport().addEnrichers(rebindContext, entityMemento);
+                        ((EntityInternal)entity).getRebindSupport().addFeeds(rebindContext, entityMemento);
+                    } catch (Exception e) {
+                        exceptionHandler.onRebindFailed(BrooklynObjectType.ENTITY, entity, e);
                     }
-                };
-                ((EntityInternal)entity).getExecutionContext().get(Tasks.<Void>builder()
-                        .displayName("rebind-adjuncts-"+entity.getId())
-                        .dynamic(false)
-                        .body(body)
-                        .build());
-            }
+                }
+            };
+            ((EntityInternal)entity).getExecutionContext().get(Tasks.<Void>builder()
+                    .displayName("rebind-adjuncts-"+entity.getId())
+                    .dynamic(false)
+                    .body(body)
+                    .build());
         }
     }
 
@@ -790,7 +949,7 @@ public abstract class RebindIteration {
         }
 
         // Return the top-level applications
-        logRebindingDebug("RebindManager complete; apps: {}", getMementoRootEntities());
+        logRebindingDebug("RebindManager complete; apps: {}; phase timings: {}", getMementoRootEntities(), getPhaseDurations());
     }
 
     protected void noteErrors(final RebindExceptionHandler exceptionHandler, Exception primaryException) {
@@ -42,6 +42,7 @@ import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMementoPersister;
 import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMementoRawData;
 import org.apache.brooklyn.api.mgmt.rebind.mementos.TreeNode;
 import org.apache.brooklyn.api.objs.BrooklynObject;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
 import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.core.BrooklynFeatureEnablement;
 import org.apache.brooklyn.core.config.ConfigKeys;
@@ -110,6 +111,20 @@ public class RebindManagerImpl implements RebindManager {
                 + "then linear regression to allow max 5% at 100 items and above", 
                 QuorumChecks.newLinearRange("[[0,-2],[10,8],[100,95],[200,190]]"));
 
+    @Beta
+    public static final ConfigKey<Integer> REBIND_PARALLELISM =
+        ConfigKeys.newIntegerConfigKey("rebind.parallelism",
+                "Number of threads used to reconstruct entities during rebind; "
+                + "each thread works through a whole application (or other top-level entity) at a time, parents before children; "
+                + "the default of 1 does everything on the rebinding thread, in parent-first order", 1);
+
+    @Beta
+    public static final ConfigKey<Integer> PERSISTENCE_MAX_PENDING_CHANGES =
+        ConfigKeys.newIntegerConfigKey("persistence.maxPendingChanges",
+                "Number of changed objects waiting to be persisted above which whatever reports a further change "
+                + "is made to wait (for a bounded time) until they are taken to be written, "
+                + "so that persistence slows producers rather than falling ever further behind; 0 (the default) for no limit", 0);
+
     public static final Logger LOG = LoggerFactory.getLogger(RebindManagerImpl.class);
 
     private final ManagementContextInternal managementContext;
@@ -124,6 +139,7 @@ public class RebindManagerImpl implements RebindManager {
     private volatile ScheduledTask readOnlyTask = null;
     private transient Semaphore rebindActive = new Semaphore(1);
     private transient AtomicInteger readOnlyRebindCount = new AtomicInteger(Integer.MIN_VALUE);
+    private transient AtomicInteger readOnlyUnchangedCount = new AtomicInteger();
     
     private volatile BrooklynMementoPersister persistenceStoreAccess;
 
@@ -255,6 +271,7 @@ public class RebindManagerImpl implements RebindManager {
                 exceptionHandler,
                 persistMetrics,
                 periodicPersistPeriod);
+        this.persistenceRealChangeListener.setMaxPendingChanges(managementContext.getConfig().getConfig(PERSISTENCE_MAX_PENDING_CHANGES));
         this.persistencePublicChangeListener = new SafeChangeListener(persistenceRealChangeListener);
         
         if (persistenceRunning) {
@@ -314,6 +331,16 @@ public class RebindManagerImpl implements RebindManager {
         
         readOnlyRunning = true;
         readOnlyRebindCount.set(0);
+        readOnlyUnchangedCount.set(0);
+        
+        final BrooklynMementoPersisterToObjectStore incrementalPersister;
+        if (BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_INCREMENTAL_READ_ONLY_REBIND) 
+                && persistenceStoreAccess instanceof BrooklynMementoPersisterToObjectStore) {
+            incrementalPersister = (BrooklynMementoPersisterToObjectStore) persistenceStoreAccess;
+            incrementalPersister.setIncrementalLoading(true);
+        } else {
+            incrementalPersister = null;
+        }
 
         try {
             rebind(null, null, mode);
@@ -327,6 +354,12 @@ public class RebindManagerImpl implements RebindManager {
                     @Override
                     public Void call() {
                         try {
+                            if (incrementalPersister!=null && !incrementalPersister.hasChangedSinceLastLoad(
+                                    RebindExceptionHandlerImpl.builder().rebindFailureMode(rebindFailureMode).build())) {
+                                // nothing written since the last pass; what we have is current
+                                readOnlyUnchangedCount.incrementAndGet();
+                                return null;
+                            }
                             rebind(null, null, mode);
                             return null;
                         } catch (RuntimeInterruptedException e) {
@@ -370,6 +403,10 @@ public class RebindManagerImpl implements RebindManager {
                 LOG.warn("Rebind (read-only) tasks took too long to die after interrupt (ignoring): "+readOnlyTask);
             }
             readOnlyTask = null;
+            if (persistenceStoreAccess instanceof BrooklynMementoPersisterToObjectStore) {
+                // only needed while repeatedly loading; free the cached contents
+                ((BrooklynMementoPersisterToObjectStore)persistenceStoreAccess).setIncrementalLoading(false);
+            }
             LOG.debug("Stopped read-only rebinding ("+this+"), mgmt "+managementContext.getManagementNodeId());
         }
     }
@@ -607,7 +644,7 @@ public class RebindManagerImpl implements RebindManager {
      * failed to persist, and we'd expect other threads to throw the OutOfMemoryError so
      * we shouldn't lose anything.
      */
-    private static class SafeChangeListener implements ChangeListener {
+    private static class SafeChangeListener implements FineGrainedChangeListener {
         private final ChangeListener delegate;
         
         public SafeChangeListener(ChangeListener delegate) {
@@ -640,6 +677,32 @@ public class RebindManagerImpl implements RebindManager {
                 LOG.error("Error persisting mememento onUnmanaged("+instance+"); continuing.", t);
             }
         }
+
+        @Override
+        public void onAttributeChanged(Entity entity, AttributeSensor<?> attribute) {
+            try {
+                if (delegate instanceof FineGrainedChangeListener) {
+                    ((FineGrainedChangeListener)delegate).onAttributeChanged(entity, attribute);
+                } else {
+                    delegate.onChanged(entity);
+                }
+            } catch (Throwable t) {
+                LOG.error("Error persisting mememento onAttributeChanged("+entity+", "+attribute.getName()+"); continuing.", t);
+            }
+        }
+
+        @Override
+        public void onConfigChanged(Entity entity, ConfigKey<?> key) {
+            try {
+                if (delegate instanceof FineGrainedChangeListener) {
+                    ((FineGrainedChangeListener)delegate).onConfigChanged(entity, key);
+                } else {
+                    delegate.onChanged(entity);
+                }
+            } catch (Throwable t) {
+                LOG.error("Error persisting mememento onConfigChanged("+entity+", "+key.getName()+"); continuing.", t);
+            }
+        }
     }
 
     public int getReadOnlyRebindCount() {
@@ -653,8 +716,14 @@ public class RebindManagerImpl implements RebindManager {
         result.put("rebind", rebindMetrics.asMap());
         result.put("persist", persistMetrics.asMap());
         
-        if (readOnlyRebindCount.get()>=0)
+        if (readOnlyRebindCount.get()>=0) {
             result.put("rebindReadOnlyCount", readOnlyRebindCount);
+            result.put("rebindReadOnlyUnchangedCount", readOnlyUnchangedCount);
+        }
+        if (persistenceStoreAccess instanceof BrooklynMementoPersisterToObjectStore) {
+            Map<String, Object> incrementalMetrics = ((BrooklynMementoPersisterToObjectStore)persistenceStoreAccess).getIncrementalLoadingMetrics();
+            if (incrementalMetrics!=null) result.put("rebindReadOnlyIncremental", incrementalMetrics);
+        }
         
         // include first rebind counts, so we know whether we rebinded or not
         result.put("firstRebindCounts", MutableMap.of(
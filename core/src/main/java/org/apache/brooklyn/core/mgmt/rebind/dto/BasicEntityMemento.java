@@ -22,6 +22,7 @@ import java.io.Serializable;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.brooklyn.api.effector.Effector;
 import org.apache.brooklyn.api.entity.Entity;
@@ -35,11 +36,13 @@ import org.apache.brooklyn.core.config.Sanitizer;
 import org.apache.brooklyn.core.entity.AbstractEntity;
 import org.apache.brooklyn.core.objs.BrooklynTypes;
 import org.apache.brooklyn.core.sensor.Sensors;
+import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.text.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.google.common.annotations.Beta;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -56,7 +59,7 @@ import com.google.common.collect.Maps;
  * @author aled
  */
 @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY, getterVisibility= JsonAutoDetect.Visibility.NONE)
-public class BasicEntityMemento extends AbstractTreeNodeMemento implements EntityMemento, Serializable {
+public class BasicEntityMemento extends AbstractTreeNodeMemento implements EntityMemento, Serializable, Cloneable {
 
     private static final Logger log = LoggerFactory.getLogger(BasicEntityMemento.class);
     
@@ -78,6 +81,7 @@ public class BasicEntityMemento extends AbstractTreeNodeMemento implements Entit
         protected List<String> feeds = Lists.newArrayList();
         protected List<String> members = Lists.newArrayList();
         protected List<Effector<?>> effectors = Lists.newArrayList();
+        protected Set<String> changedAttributeNames;
         
         /** @deprecated since 1.0.0 not used, and incomplete (eg doesn't copy configKeys) */
         public Builder from(EntityMemento other) {
@@ -125,6 +129,7 @@ public class BasicEntityMemento extends AbstractTreeNodeMemento implements Entit
     private transient Map<ConfigKey<?>, Object> configByKey;
     private transient Map<String, Object> configUnmatched;
     private transient Map<AttributeSensor<?>, Object> attributesByKey;
+    private transient Set<String> changedAttributeNames;
 
     @SuppressWarnings("unused") // For deserialisation
     private BasicEntityMemento() {}
@@ -148,6 +153,7 @@ public class BasicEntityMemento extends AbstractTreeNodeMemento implements Entit
         configByKey = builder.config;
         configUnmatched = builder.configUnmatched;
         attributesByKey = builder.attributes;
+        changedAttributeNames = builder.changedAttributeNames;
         
         staticConfigKeys = getStaticConfigKeys();
         staticSensorKeys = getStaticSensorKeys();
@@ -336,6 +342,44 @@ public class BasicEntityMemento extends AbstractTreeNodeMemento implements Entit
         return Collections.unmodifiableMap(attributesByKey);
     }
 
+    /**
+     * The names of the attributes which may have changed since the previous memento generated for this entity
+     * (including any removed), when this memento was generated from that one; or null if not known
+     * (e.g. the memento was generated in full, or deserialized).
+     * Serializers can reuse what they wrote for the other attributes.
+     */
+    @Beta
+    public Set<String> getChangedAttributeNames() {
+        return changedAttributeNames==null ? null : Collections.unmodifiableSet(changedAttributeNames);
+    }
+
+    /** The attribute values, keyed by attribute name, in the order they are serialized. */
+    @Beta
+    public Map<String, Object> getSerializedAttributes() {
+        return attributes==null ? Collections.<String, Object>emptyMap() : Collections.unmodifiableMap(attributes);
+    }
+
+    /**
+     * A copy of this memento, only for serializing, in which the given attributes have the given values
+     * (keyed by name; others are unchanged, and none are added or removed). The copy is shallow,
+     * and its other getters are not updated.
+     */
+    @Beta
+    public BasicEntityMemento withSerializedAttributes(Map<String, ?> replacementValues) {
+        Map<String, Object> newAttributes = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Object> entry : getSerializedAttributes().entrySet()) {
+            String name = entry.getKey();
+            newAttributes.put(name, replacementValues.containsKey(name) ? replacementValues.get(name) : entry.getValue());
+        }
+        try {
+            BasicEntityMemento result = (BasicEntityMemento) clone();
+            result.attributes = toPersistedMap(newAttributes);
+            return result;
+        } catch (CloneNotSupportedException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
     @Override
     public List<Effector<?>> getEffectors() {
         return fromPersistedList(effectors);
@@ -22,9 +22,12 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
+import javax.annotation.Nullable;
+
 import org.apache.brooklyn.api.catalog.CatalogItem;
 import org.apache.brooklyn.api.entity.Application;
 import org.apache.brooklyn.api.entity.Entity;
@@ -71,6 +74,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.annotations.Beta;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicates;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 public class MementosGenerators {
@@ -114,6 +118,38 @@ public class MementosGenerators {
      * Inspects an entity to create a corresponding memento.
      */
     private static EntityMemento newEntityMemento(Entity entityRaw) {
+        return newEntityMemento(entityRaw, new EntityMementoSections(), true, null);
+    }
+
+    /**
+     * The parts of an entity's memento which are most expensive to generate for large entities
+     * (its local config and its attributes), kept from one call to
+     * {@link MementosGenerators#newEntityMemento(Entity, EntityMementoSections, boolean, Collection)}
+     * to the next so that the parts which have not changed can be reused.
+     * <p>
+     * The maps held are never modified once created, as mementos may share them.
+     */
+    @Beta
+    public static class EntityMementoSections {
+        private Map<ConfigKey<?>, Object> config;
+        private Map<String, Object> configUnmatched;
+        private Map<AttributeSensor<?>, Object> attributes;
+    }
+
+    /**
+     * Inspects an entity to create a corresponding memento, as {@link #newBasicMemento(BrooklynObject)},
+     * but reusing the config and attributes from the given sections where they are known not to have changed
+     * (and updating the sections to hold those of the new memento).
+     * <p>
+     * The other parts of the memento (references to other objects, tags, etc) are cheap, and always regenerated.
+     *
+     * @param configChanged whether the entity's config may have changed since the sections were last updated
+     * @param changedAttributes the attributes which may have changed since the sections were last updated
+     *        (including any removed), or null if not known; if known, their names are recorded
+     *        in the memento (see {@link BasicEntityMemento#getChangedAttributeNames()})
+     */
+    @Beta
+    public static EntityMemento newEntityMemento(Entity entityRaw, EntityMementoSections sections, boolean configChanged, @Nullable Collection<? extends AttributeSensor<?>> changedAttributes) {
         EntityInternal entity = (EntityInternal) entityRaw;
         BasicEntityMemento.Builder builder = BasicEntityMemento.builder();
         populateBrooklynObjectMementoBuilder(entity, builder);
@@ -130,32 +166,59 @@ public class MementosGenerators {
 
         builder.configKeys.addAll(entity.getEntityType().getConfigKeys());
 
-        Map<ConfigKey<?>, ?> localConfig = entity.config().getAllLocalRaw();
-        for (Map.Entry<ConfigKey<?>, ?> entry : localConfig.entrySet()) {
-            ConfigKey<?> key = checkNotNull(entry.getKey(), localConfig);
-            Object value = configValueToPersistable(entry.getValue(), entityRaw, key.getName());
-            builder.config.put(key, value); 
-        }
-        
-        Map<String, Object> localConfigUnmatched = MutableMap.copyOf(entity.config().getLocalBag().getAllConfig());
-        for (ConfigKey<?> key : localConfig.keySet()) {
-            localConfigUnmatched.remove(key.getName());
-        }
-        for (Map.Entry<String, Object> entry : localConfigUnmatched.entrySet()) {
-            String key = checkNotNull(entry.getKey(), localConfig);
-            Object value = entry.getValue();
-            // TODO Not transforming; that code is deleted in another pending PR anyway!
-            builder.configUnmatched.put(key, value); 
+        if (configChanged || sections.config==null) {
+            Map<ConfigKey<?>, Object> config = Maps.newLinkedHashMap();
+            Map<ConfigKey<?>, ?> localConfig = entity.config().getAllLocalRaw();
+            for (Map.Entry<ConfigKey<?>, ?> entry : localConfig.entrySet()) {
+                ConfigKey<?> key = checkNotNull(entry.getKey(), localConfig);
+                Object value = configValueToPersistable(entry.getValue(), entityRaw, key.getName());
+                config.put(key, value); 
+            }
+            
+            Map<String, Object> configUnmatched = Maps.newLinkedHashMap();
+            Map<String, Object> localConfigUnmatched = MutableMap.copyOf(entity.config().getLocalBag().getAllConfig());
+            for (ConfigKey<?> key : localConfig.keySet()) {
+                localConfigUnmatched.remove(key.getName());
+            }
+            for (Map.Entry<String, Object> entry : localConfigUnmatched.entrySet()) {
+                String key = checkNotNull(entry.getKey(), localConfig);
+                Object value = entry.getValue();
+                // TODO Not transforming; that code is deleted in another pending PR anyway!
+                configUnmatched.put(key, value); 
+            }
+            sections.config = config;
+            sections.configUnmatched = configUnmatched;
         }
+        builder.config.putAll(sections.config);
+        builder.configUnmatched.putAll(sections.configUnmatched);
         
-        Map<AttributeSensor<?>, Object> allAttributes = entity.sensors().getAll();
-        for (Map.Entry<AttributeSensor<?>, Object> entry : allAttributes.entrySet()) {
-            AttributeSensor<?> key = checkNotNull(entry.getKey(), allAttributes);
-            if (key.getPersistenceMode() != SensorPersistenceMode.NONE) {
-                Object value = entry.getValue();
-                builder.attributes.put(key, value);
+        if (changedAttributes==null || sections.attributes==null) {
+            Map<AttributeSensor<?>, Object> attributes = Maps.newLinkedHashMap();
+            Map<AttributeSensor<?>, Object> allAttributes = entity.sensors().getAll();
+            for (Map.Entry<AttributeSensor<?>, Object> entry : allAttributes.entrySet()) {
+                AttributeSensor<?> key = checkNotNull(entry.getKey(), allAttributes);
+                if (key.getPersistenceMode() != SensorPersistenceMode.NONE) {
+                    Object value = entry.getValue();
+                    attributes.put(key, value);
+                }
+            }
+            sections.attributes = attributes;
+        } else {
+            builder.changedAttributeNames = Sets.newLinkedHashSet();
+            Map<AttributeSensor<?>, Object> attributes = changedAttributes.isEmpty() ? sections.attributes : Maps.newLinkedHashMap(sections.attributes);
+            for (AttributeSensor<?> key : changedAttributes) {
+                if (key.getPersistenceMode() == SensorPersistenceMode.NONE) continue;
+                builder.changedAttributeNames.add(key.getName());
+                if (entity.getEntityType().getSensor(key.getName()) == null) {
+                    // removed
+                    attributes.remove(key);
+                } else {
+                    attributes.put(key, entity.sensors().get(key));
+                }
             }
+            sections.attributes = attributes;
         }
+        builder.attributes.putAll(sections.attributes);
         
         for (Location location : entity.getLocations()) {
             builder.locations.add(location.getId()); 
@@ -28,6 +28,7 @@ import org.apache.brooklyn.api.mgmt.rebind.RebindExceptionHandler;
 import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMementoPersister;
 import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMementoRawData;
 import org.apache.brooklyn.api.objs.BrooklynObjectType;
+import org.apache.brooklyn.core.mgmt.persist.MementoSerializationFormat;
 import org.apache.brooklyn.core.mgmt.rebind.transformer.impl.XsltTransformer;
 import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.core.ResourceUtils;
@@ -65,6 +66,7 @@ public class CompoundTransformer {
     public static class Builder {
         private final Multimap<BrooklynObjectType, RawDataTransformer> rawDataTransformers = ArrayListMultimap.<BrooklynObjectType, RawDataTransformer>create();
         private final Multimap<BrooklynObjectType, String> deletions = HashMultimap.<BrooklynObjectType, String>create();
+        private MementoSerializationFormat serializationFormat;
         
         public Builder rawDataTransformer(RawDataTransformer val) {
             for (BrooklynObjectType type : BrooklynObjectType.values()) {
@@ -238,6 +240,13 @@ public class CompoundTransformer {
             return this;
         }
 
+        /** Converts all persisted state to the given format, after any other transformations
+         * (which are always given the XML form, whatever format the state is in) */
+        public Builder serializationFormat(MementoSerializationFormat val) {
+            serializationFormat = checkNotNull(val, "val");
+            return this;
+        }
+
         public CompoundTransformer build() {
             return new CompoundTransformer(this);
         }
@@ -247,9 +256,12 @@ public class CompoundTransformer {
 
     private final Multimap<BrooklynObjectType, String> deletions;
 
+    private final MementoSerializationFormat serializationFormat;
+
     protected CompoundTransformer(Builder builder) {
         rawDataTransformers = builder.rawDataTransformers;
         deletions = builder.deletions;
+        serializationFormat = builder.serializationFormat;
     }
 
     public BrooklynMementoRawData transform(BrooklynMementoPersister reader, RebindExceptionHandler exceptionHandler) throws Exception {
@@ -348,32 +360,32 @@ public class CompoundTransformer {
                 switch (type) {
                     case ENTITY:
                         for (Map.Entry<String, String> entry : entities.entrySet()) {
-                            entry.setValue(transformer.transform(entry.getValue()));
+                            entry.setValue(transform(transformer, entry.getValue()));
                         }
                         break;
                     case LOCATION:
                         for (Map.Entry<String, String> entry : locations.entrySet()) {
-                            entry.setValue(transformer.transform(entry.getValue()));
+                            entry.setValue(transform(transformer, entry.getValue()));
                         }
                         break;
                     case POLICY:
                         for (Map.Entry<String, String> entry : policies.entrySet()) {
-                            entry.setValue(transformer.transform(entry.getValue()));
+                            entry.setValue(transform(transformer, entry.getValue()));
                         }
                         break;
                     case ENRICHER:
                         for (Map.Entry<String, String> entry : enrichers.entrySet()) {
-                            entry.setValue(transformer.transform(entry.getValue()));
+                            entry.setValue(transform(transformer, entry.getValue()));
                         }
                         break;
                     case FEED:
                         for (Map.Entry<String, String> entry : feeds.entrySet()) {
-                            entry.setValue(transformer.transform(entry.getValue()));
+                            entry.setValue(transform(transformer, entry.getValue()));
                         }
                         break;
                     case CATALOG_ITEM:
                         for (Map.Entry<String, String> entry : catalogItems.entrySet()) {
-                            entry.setValue(transformer.transform(entry.getValue()));
+                            entry.setValue(transform(transformer, entry.getValue()));
                         }
                         break;
                     case MANAGED_BUNDLE:
@@ -381,7 +393,7 @@ public class CompoundTransformer {
                         // TODO we should support a better way of adding/removing bundles,
                         // e.g. start in management mode where you can edit brooklyn-managed bundles
 //                        for (Map.Entry<String, String> entry : bundles.entrySet()) {
-//                            entry.setValue(transformer.transform(entry.getValue()));
+//                            entry.setValue(transform(transformer, entry.getValue()));
 //                        }
                         break;
                     case UNKNOWN:
@@ -392,7 +404,7 @@ public class CompoundTransformer {
             }
         }
         
-        return BrooklynMementoRawData.builder()
+        BrooklynMementoRawData result = BrooklynMementoRawData.builder()
                 .planeId(rawData.getPlaneId())
                 .entities(entities)
                 .locations(locations)
@@ -403,6 +415,14 @@ public class CompoundTransformer {
                 .bundles(bundles)
                 .bundleJars(bundleJars)
                 .build();
+        
+        return (serializationFormat==null) ? result : serializationFormat.convert(result);
+    }
+    
+    /** applies the transformer to the XML form of the given contents, returning the result in the original format */
+    private static String transform(RawDataTransformer transformer, String contents) throws Exception {
+        MementoSerializationFormat format = MementoSerializationFormat.of(contents);
+        return format.convert(transformer.transform(MementoSerializationFormat.XML.convert(contents)));
     }
     
     @VisibleForTesting
@@ -18,6 +18,8 @@
  */
 package org.apache.brooklyn.core.mgmt.rebind.transformer;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -25,6 +27,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import org.apache.brooklyn.api.objs.BrooklynObjectType;
+import org.apache.brooklyn.core.mgmt.persist.MementoSerializationFormat;
 import org.apache.brooklyn.core.mgmt.rebind.transformer.CompoundTransformer.Builder;
 import org.apache.brooklyn.util.core.ClassLoaderUtils;
 import org.apache.brooklyn.util.core.ResourceUtils;
@@ -106,6 +109,9 @@ public class CompoundTransformerLoader {
             // we could pass XSLT-style parameters instead, maybe?  that's more normal, 
             // but OTOH freemarker is maybe more powerful, given our other support there
             builder.xsltTransformer(xslt);
+        } else if (name.equals("serializationFormat")) {
+            String format = checkNotNull(checkString(args.get("format"), "format"), "format");
+            builder.serializationFormat(MementoSerializationFormat.valueOf(format.toUpperCase()));
         } else if (name.equals("rawDataTransformer")) {
             String type = (String) args.get("type");
             try {
@@ -26,6 +26,7 @@ import javax.xml.xpath.XPathConstants;
 import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMementoRawData;
 import org.apache.brooklyn.api.objs.BrooklynObjectType;
 import org.apache.brooklyn.core.location.access.PortForwardManager;
+import org.apache.brooklyn.core.mgmt.persist.MementoSerializationFormat;
 import org.apache.brooklyn.core.mgmt.rebind.transformer.CompoundTransformer;
 import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.collections.MutableSet;
@@ -75,9 +76,11 @@ public class DeleteOrphanedStateTransformer extends CompoundTransformer {
      */
     @Override
     public BrooklynMementoRawData transform(BrooklynMementoRawData input) {
-        ReferencedState stateReferencedFromXpath = new ReachabilityXpathInspector().inspect(input);
-        ReferencedState stateToKeepFromGrep = new ReachabilityGrepInspector().inspect(input);
-        ReferencedState stateToKeepFromXpath = stateReferencedFromXpath.filterForExtant(input);
+        // inspection is done on the xml, but the state is returned in the format it was given
+        BrooklynMementoRawData inputXml = MementoSerializationFormat.XML.convert(input);
+        ReferencedState stateReferencedFromXpath = new ReachabilityXpathInspector().inspect(inputXml);
+        ReferencedState stateToKeepFromGrep = new ReachabilityGrepInspector().inspect(inputXml);
+        ReferencedState stateToKeepFromXpath = stateReferencedFromXpath.filterForExtant(inputXml);
         ReferencedState.warnOfDifferences(stateToKeepFromXpath, stateToKeepFromGrep);
 
         ReferencedState stateToKeep = ReferencedState.union(stateToKeepFromXpath, stateToKeepFromGrep);
@@ -22,8 +22,12 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -42,24 +46,55 @@ import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableMap;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 /**
  * A {@link Map} of {@link Entity} attribute values.
+ * <p>
+ * Values are keyed by sensor name in a concurrent map, so reading a value takes no lock,
+ * while changes are serialized between themselves (and published as described at {@link #getLockInternal()}).
+ * Setting a sensor costs the same however many the entity has: the map of all values is not copied on each write,
+ * but as a {@link #asSnapshot() snapshot} when one is requested, which is then reused until the next change.
+ * So an entity whose sensors change often and are all read as often (e.g. for each persisted memento)
+ * copies them as often as it would copy-on-write; one read by sensor, or in full only occasionally, copies them rarely.
  */
 public final class AttributeMap {
 
     static final Logger log = LoggerFactory.getLogger(AttributeMap.class);
 
-    private static enum Marker {
-        NULL;
-    }
+    private static final Joiner PATH_JOINER = Joiner.on('.');
+    private static final Splitter PATH_SPLITTER = Splitter.on('.');
     
     private final AbstractEntity entity;
 
-    // Assumed to be something like a ConcurrentMap passed in.
-    private final Map<Collection<String>, Object> values;
+    /** a sensor's value, and the order in which the sensor was first set */
+    private static class Slot {
+        final long order;
+        volatile Object value;
+        
+        Slot(long order, Object value) {
+            this.order = order;
+            this.value = value;
+        }
+    }
+    
+    private static final Comparator<Map.Entry<String, Slot>> SLOT_ORDER = new Comparator<Map.Entry<String, Slot>>() {
+        @Override
+        public int compare(Map.Entry<String, Slot> o1, Map.Entry<String, Slot> o2) {
+            return Long.compare(o1.getValue().order, o2.getValue().order);
+        }
+    };
+    
+    /** the current values, keyed by sensor name (whose value may be null); changed only holding {@link #valuesMutex} */
+    private final ConcurrentMap<String, Slot> values = new ConcurrentHashMap<String, Slot>();
+    /** the values as of the last change, if a snapshot has been requested since; set to null on each change, holding {@link #valuesMutex} */
+    private volatile Map<String, Object> snapshot = Collections.emptyMap();
+    /** guarded by {@link #valuesMutex} */
+    private long nextOrder = 0;
+    private final Object valuesMutex = new Object();
 
     /**
      * Creates a new AttributeMap.
@@ -68,21 +103,26 @@ public final class AttributeMap {
      * @throws NullPointerException if entity is null
      */
     public AttributeMap(AbstractEntity entity) {
-        // Not using ConcurrentMap, because want to (continue to) allow null values.
-        // Could use ConcurrentMapAcceptingNullVals (with the associated performance hit on entrySet() etc).
-        this(entity, Collections.synchronizedMap(Maps.<Collection<String>, Object>newLinkedHashMap()));
+        this.entity = checkNotNull(entity, "entity must be specified");
     }
 
     /**
      * Creates a new AttributeMap.
      *
      * @param entity  the Entity this AttributeMap belongs to.
-     * @param storage the Map in which to store the values - should be concurrent or synchronized.
+     * @param storage initial values; no longer used to hold the values
      * @throws NullPointerException if entity is null
+     * @deprecated since 1.0.0 values are always held internally; use {@link #AttributeMap(AbstractEntity)}
      */
+    @Deprecated
     public AttributeMap(AbstractEntity entity, Map<Collection<String>, Object> storage) {
-        this.entity = checkNotNull(entity, "entity must be specified");
-        this.values = checkNotNull(storage, "storage map must not be null");
+        this(entity);
+        checkNotNull(storage, "storage map must not be null");
+        synchronized (storage) {
+            for (Map.Entry<Collection<String>, Object> entry : storage.entrySet()) {
+                updateByName(PATH_JOINER.join(entry.getKey()), entry.getValue());
+            }
+        }
     }
 
     /** 
@@ -90,8 +130,8 @@ public final class AttributeMap {
      * any sensor value at a time.  Methods which set, modify, and publish values
      * acquire this lock.
      * <p>
-     * Reads are not blocked by this, although this synchs on {@link #values}
-     * when actually changing the low-level value to ensure consistency there.
+     * Reads are not blocked by this, although changes to the low-level values
+     * are serialized separately to ensure consistency there.
      * <p>
      * See {@link #getLockInternal()}
      */
@@ -114,21 +154,66 @@ public final class AttributeMap {
     }
     
     public Map<Collection<String>, Object> asRawMap() {
-        synchronized (values) {
-            return ImmutableMap.copyOf(values);
+        Map<Collection<String>, Object> result = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Object> entry : asSnapshot().entrySet()) {
+            result.put(ImmutableList.copyOf(PATH_SPLITTER.split(entry.getKey())), entry.getValue());
         }
+        return Collections.unmodifiableMap(result);
     }
 
+    /** @return a new (mutable) copy of the values, keyed by sensor name; see also {@link #asSnapshot()} */
     public Map<String, Object> asMap() {
-        Map<String, Object> result = Maps.newLinkedHashMap();
-        synchronized (values) {
-            for (Map.Entry<Collection<String>, Object> entry : values.entrySet()) {
-                String sensorName = Joiner.on('.').join(entry.getKey());
-                Object val = (isNull(entry.getValue())) ? null : entry.getValue();
-                result.put(sensorName, val);
+        return Maps.newLinkedHashMap(asSnapshot());
+    }
+    
+    /** 
+     * @return the values keyed by sensor name, in the order first set, as an unmodifiable map which will not change;
+     * cheaper than {@link #asMap()} as the same map is returned until the values next change
+     * (when it is copied again, waiting for any change in progress)
+     */
+    @Beta
+    public Map<String, Object> asSnapshot() {
+        Map<String, Object> result = snapshot;
+        if (result != null) return result;
+        synchronized (valuesMutex) {
+            if (snapshot == null) {
+                List<Map.Entry<String, Slot>> entries = Lists.newArrayList(values.entrySet());
+                Collections.sort(entries, SLOT_ORDER);
+                Map<String, Object> newSnapshot = Maps.newLinkedHashMap();
+                for (Map.Entry<String, Slot> entry : entries) {
+                    newSnapshot.put(entry.getKey(), entry.getValue().value);
+                }
+                snapshot = Collections.unmodifiableMap(newSnapshot);
+            }
+            return snapshot;
+        }
+    }
+    
+    /** applies the given change to the values, returning the old value for the key */
+    private Object updateValues(String key, boolean remove, Object newValue) {
+        synchronized (valuesMutex) {
+            Object oldValue;
+            if (remove) {
+                Slot slot = values.remove(key);
+                oldValue = (slot != null) ? slot.value : null;
+            } else {
+                Slot slot = values.get(key);
+                if (slot == null) {
+                    values.put(key, new Slot(nextOrder++, newValue));
+                    oldValue = null;
+                } else {
+                    oldValue = slot.value;
+                    slot.value = newValue;
+                }
             }
+            snapshot = null;
+            return oldValue;
         }
-        return result;
+    }
+    
+    private Object getValueByName(String name) {
+        Slot slot = values.get(name);
+        return (slot != null) ? slot.value : null;
     }
     
     /**
@@ -146,18 +231,17 @@ public final class AttributeMap {
     // (is there even any point to the path?  it was for returning maps by querying a prefix but that's ancient!)
     public <T> T update(Collection<String> path, T newValue) {
         checkPath(path);
-
-        if (newValue == null) {
-            newValue = typedNull();
-        }
-
+        return updateByName(PATH_JOINER.join(path), newValue);
+    }
+    
+    private <T> T updateByName(String name, T newValue) {
         if (log.isTraceEnabled()) {
-            log.trace("setting sensor {}={} for {}", new Object[] {path, newValue, entity});
+            log.trace("setting sensor {}={} for {}", new Object[] {name, newValue, entity});
         }
 
         @SuppressWarnings("unchecked")
-        T oldValue = (T) values.put(path, newValue);
-        return (isNull(oldValue)) ? null : oldValue;
+        T oldValue = (T) updateValues(name, false, newValue);
+        return oldValue;
     }
 
     private void checkPath(Collection<String> path) {
@@ -195,7 +279,7 @@ public final class AttributeMap {
     
     @Beta
     public <T> T updateInternalWithoutLockOrPublish(AttributeSensor<T> attribute, T newValue) {
-        synchronized (values) {
+        synchronized (valuesMutex) {
             if (log.isTraceEnabled()) {
                 Object oldValue = getValue(attribute);
                 if (!Objects.equal(oldValue, newValue != null)) {
@@ -205,8 +289,7 @@ public final class AttributeMap {
                 }
             }
     
-            T oldValue = update(attribute.getNameParts(), newValue);
-            return (isNull(oldValue)) ? null : oldValue;
+            return updateByName(attribute.getName(), newValue);
         }
     }
 
@@ -243,7 +326,7 @@ public final class AttributeMap {
     public void remove(AttributeSensor<?> attribute) {
         BrooklynLogging.log(log, BrooklynLogging.levelDebugOrTraceIfReadOnly(entity),
             "removing attribute {} on {}", attribute.getName(), entity);
-        withLock(() -> remove(attribute.getNameParts()) );
+        withLock(() -> removeByName(attribute.getName()) );
     }
 
     // TODO path must be ordered(and legal to contain duplicates like "a.b.a"; list would be better
@@ -252,12 +335,15 @@ public final class AttributeMap {
     @Deprecated
     public void remove(Collection<String> path) {
         checkPath(path);
-
+        removeByName(PATH_JOINER.join(path));
+    }
+    
+    private void removeByName(String name) {
         if (log.isTraceEnabled()) {
-            log.trace("removing sensor {} for {}", new Object[] {path, entity});
+            log.trace("removing sensor {} for {}", new Object[] {name, entity});
         }
 
-        values.remove(path);
+        updateValues(name, true, null);
     }
 
     /**
@@ -271,21 +357,11 @@ public final class AttributeMap {
     @Deprecated
     public Object getValue(Collection<String> path) {
         checkPath(path);
-        Object result = values.get(path);
-        return (isNull(result)) ? null : result;
+        return getValueByName(PATH_JOINER.join(path));
     }
 
     @SuppressWarnings("unchecked")
     public <T> T getValue(AttributeSensor<T> sensor) {
-        return (T) TypeCoercions.coerce(getValue(sensor.getNameParts()), sensor.getType());
-    }
-
-    @SuppressWarnings("unchecked")
-    private <T> T typedNull() {
-        return (T) Marker.NULL;
-    }
-    
-    private boolean isNull(Object t) {
-        return t == Marker.NULL;
+        return (T) TypeCoercions.coerce(getValueByName(sensor.getName()), sensor.getType());
     }
 }
@@ -18,6 +18,8 @@
  */
 package org.apache.brooklyn.core.server.entity;
 
+import java.util.Map;
+
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.entity.ImplementedBy;
 import org.apache.brooklyn.api.sensor.AttributeSensor;
@@ -52,4 +54,16 @@ public interface BrooklynMetrics extends Entity {
     
     public static final AttributeSensor<Long> NUM_SUBSCRIPTIONS = new BasicAttributeSensor<Long>(
             Long.class, "brooklyn.metrics.numSubscriptions", "Current number of event subscriptions");
+
+    @SuppressWarnings("rawtypes")
+    public static final AttributeSensor<Map> TASK_POOLS = new BasicAttributeSensor<Map>(
+            Map.class, "brooklyn.metrics.taskPools", "Statistics for each bounded task pool (pool size, active, queued, overflowed), keyed by pool name");
+
+    @SuppressWarnings("rawtypes")
+    public static final AttributeSensor<Map> SCHEDULING_LAG = new BasicAttributeSensor<Map>(
+            Map.class, "brooklyn.metrics.schedulingLag", "How late scheduled task iterations are started (count, mean and max lag), keyed by period bucket");
+
+    @SuppressWarnings("rawtypes")
+    public static final AttributeSensor<Map> HTTP_POOLS = new BasicAttributeSensor<Map>(
+            Map.class, "brooklyn.metrics.httpPools", "Statistics for the shared HTTP connection pools (clients, requests, leased, available and pending connections), if pooling is enabled");
 }
@@ -28,6 +28,7 @@ import org.apache.brooklyn.core.entity.AbstractEntity;
 import org.apache.brooklyn.core.mgmt.internal.LocalSubscriptionManager;
 import org.apache.brooklyn.core.mgmt.internal.ManagementContextInternal;
 import org.apache.brooklyn.util.core.task.BasicExecutionManager;
+import org.apache.brooklyn.util.executor.ManagedHttpClients;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
@@ -72,11 +73,14 @@ public class BrooklynMetricsImpl extends AbstractEntity implements BrooklynMetri
         
         if (managementContext != null) {
             sensors().set(TOTAL_EFFECTORS_INVOKED, ((ManagementContextInternal)managementContext).getTotalEffectorInvocations());
+            sensors().set(HTTP_POOLS, ManagedHttpClients.getMetrics(managementContext));
         }
         if (execManager != null) {
             sensors().set(TOTAL_TASKS_SUBMITTED, execManager.getTotalTasksSubmitted());
             sensors().set(NUM_INCOMPLETE_TASKS, execManager.getNumIncompleteTasks());
             sensors().set(NUM_ACTIVE_TASKS, execManager.getNumActiveTasks());
+            sensors().set(TASK_POOLS, execManager.getTaskPoolMetrics());
+            sensors().set(SCHEDULING_LAG, execManager.getSchedulingLagMetrics().getMetrics());
         }
         if (subsManager != null) {
             sensors().set(TOTAL_EVENTS_PUBLISHED, subsManager.getTotalEventsPublished());
@@ -32,6 +32,7 @@ import javax.annotation.Nullable;
 import org.apache.brooklyn.api.catalog.BrooklynCatalog;
 import org.apache.brooklyn.api.catalog.CatalogItem;
 import org.apache.brooklyn.api.catalog.CatalogItem.CatalogItemType;
+import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.api.internal.AbstractBrooklynObjectSpec;
 import org.apache.brooklyn.api.mgmt.ManagementContext;
 import org.apache.brooklyn.api.typereg.BrooklynTypeRegistry;
@@ -41,9 +42,11 @@ import org.apache.brooklyn.api.typereg.RegisteredTypeLoadingContext;
 import org.apache.brooklyn.core.catalog.internal.BasicBrooklynCatalog;
 import org.apache.brooklyn.core.catalog.internal.CatalogItemBuilder;
 import org.apache.brooklyn.core.catalog.internal.CatalogUtils;
+import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.mgmt.ha.OsgiManager;
 import org.apache.brooklyn.core.mgmt.internal.ManagementContextInternal;
 import org.apache.brooklyn.core.typereg.BundleUpgradeParser.CatalogUpgrades;
+import org.apache.brooklyn.core.typereg.RegisteredTypePredicates.IndexedPredicate;
 import org.apache.brooklyn.core.typereg.RegisteredTypes.RegisteredTypeNameThenBestFirstComparator;
 import org.apache.brooklyn.test.Asserts;
 import org.apache.brooklyn.util.collections.MutableMap;
@@ -71,6 +74,14 @@ public class BasicBrooklynTypeRegistry implements BrooklynTypeRegistry {
 
     private static final Logger log = LoggerFactory.getLogger(BasicBrooklynTypeRegistry.class);
     
+    @Beta
+    public static final ConfigKey<Integer> SPEC_CACHE_SIZE = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.typeRegistry.specCache.maxSize",
+            "Maximum number of specs resolved from registered types which are remembered, "
+            + "so that repeated requests for the same type (such as the REST API describing catalog items) do not parse its plan again; "
+            + "a deep copy is returned each time, and the cache is cleared whenever types or bundles change; 0 to disable",
+            0);
+
     private ManagementContext mgmt;
     private Map<String,Map<String,RegisteredType>> localRegisteredTypesAndContainingBundles = MutableMap.of();
     /**
@@ -83,11 +94,18 @@ public class BasicBrooklynTypeRegistry implements BrooklynTypeRegistry {
      * maps but coordinating that is tricky and does not seem worth it.
      */
     private ReadWriteLock localRegistryLock = new ReentrantReadWriteLock();
+    /** indexes of the ids in {@link #localRegisteredTypesAndContainingBundles}; guarded by {@link #localRegistryLock} */
+    private final RegisteredTypeIndexes localIndexes = new RegisteredTypeIndexes();
 
     private CatalogUpgrades catalogUpgrades;
 
+    /** null if disabled; see {@link #SPEC_CACHE_SIZE} */
+    private final RegisteredTypeSpecCache specCache;
+
     public BasicBrooklynTypeRegistry(ManagementContext mgmt) {
         this.mgmt = mgmt;
+        Integer specCacheSize = mgmt.getConfig()==null ? null : mgmt.getConfig().getConfig(SPEC_CACHE_SIZE);
+        this.specCache = (specCacheSize!=null && specCacheSize > 0) ? new RegisteredTypeSpecCache(specCacheSize) : null;
     }
     
     @Override
@@ -96,13 +114,19 @@ public class BasicBrooklynTypeRegistry implements BrooklynTypeRegistry {
     }
     
     private Iterable<RegisteredType> getAllWithoutCatalog(Predicate<? super RegisteredType> filter) {
-        // TODO optimisation? make indexes and look up?
         Ordering<RegisteredType> typeOrder = Ordering.from(RegisteredTypeNameThenBestFirstComparator.INSTANCE);
         return Locks.withLock(localRegistryLock.readLock(), 
-            () -> localRegisteredTypesAndContainingBundles.values().stream().
+            () -> getCandidatesWithoutCatalog(filter).stream().
                 flatMap(m -> { return typeOrder.sortedCopy(m.values()).stream(); }).filter(filter::apply).collect(Collectors.toList()) );
     }
 
+    /** types by bundle for each id which might match the filter, using the indexes if the filter supports it; caller must hold the read lock */
+    private Collection<Map<String,RegisteredType>> getCandidatesWithoutCatalog(Predicate<? super RegisteredType> filter) {
+        Set<String> ids = (filter instanceof IndexedPredicate) ? ((IndexedPredicate)filter).candidateIds(localIndexes) : null;
+        if (ids==null) return localRegisteredTypesAndContainingBundles.values();
+        return ids.stream().map(localRegisteredTypesAndContainingBundles::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
     private Maybe<RegisteredType> getExactWithoutLegacyCatalog(String symbolicName, String version, RegisteredTypeLoadingContext constraint) {
         RegisteredType item = Locks.withLock(localRegistryLock.readLock(), 
             ()-> getBestValue(localRegisteredTypesAndContainingBundles.get(symbolicName+":"+version)) );
@@ -170,14 +194,14 @@ public class BasicBrooklynTypeRegistry implements BrooklynTypeRegistry {
             versionCheck = RegisteredTypePredicates.versionOsgi(version);
         }
         
-        Iterable<RegisteredType> types = getMatching(Predicates.and(
+        Iterable<RegisteredType> types = getMatching(RegisteredTypePredicates.and(
             RegisteredTypePredicates.symbolicName(symbolicNameOrAliasIfNoVersion),
             versionCheck,
             RegisteredTypePredicates.satisfies(context)));
         
         if (Iterables.isEmpty(types)) {
             // look for alias if no exact symbolic name match AND no version is specified
-            types = getMatching(Predicates.and(
+            types = getMatching(RegisteredTypePredicates.and(
                 RegisteredTypePredicates.alias(symbolicNameOrAliasIfNoVersion),
                 versionCheck,
                 RegisteredTypePredicates.satisfies(context) ) );
@@ -286,8 +310,21 @@ public class BasicBrooklynTypeRegistry implements BrooklynTypeRegistry {
         }
         constraint = RegisteredTypeLoadingContexts.withSpecSuperType(constraint, specSuperType);
 
+        RegisteredTypeSpecCache.Key cacheKey = specCache!=null ? RegisteredTypeSpecCache.keyFor(type, constraint) : null;
+        long cacheVersion = 0;
+        if (cacheKey!=null) {
+            AbstractBrooklynObjectSpec<?,?> cached = specCache.getCopy(cacheKey);
+            if (cached!=null) return (SpecT) cached;
+            cacheVersion = specCache.getVersion();
+        }
+        
         Maybe<Object> result = TypePlanTransformers.transform(mgmt, type, constraint);
-        if (result.isPresent()) return (SpecT) result.get();
+        if (result.isPresent()) {
+            if (cacheKey!=null && result.get() instanceof AbstractBrooklynObjectSpec) {
+                specCache.put(cacheKey, cacheVersion, (AbstractBrooklynObjectSpec<?,?>) result.get());
+            }
+            return (SpecT) result.get();
+        }
         
         // fallback: look up in (legacy) catalog
         // TODO remove once all transformers are available in the new style
@@ -474,6 +511,8 @@ public class BasicBrooklynTypeRegistry implements BrooklynTypeRegistry {
                     knownMatchingTypesByBundles.remove(oldContainingBundle);
                 }
                 knownMatchingTypesByBundles.put(type.getContainingBundle(), type);
+                localIndexes.reindex(type.getId(), knownMatchingTypesByBundles.values());
+                invalidateSpecCache();
             });
     }
 
@@ -585,7 +624,9 @@ public class BasicBrooklynTypeRegistry implements BrooklynTypeRegistry {
             () -> {
                 boolean changed = (localRegisteredTypesAndContainingBundles.remove(type.toString()) != null);
                 if (changed) {
+                    localIndexes.reindex(type.toString(), null);
                     CatalogUpgrades.clearTypeInStoredUpgrades(mgmt, type);
+                    invalidateSpecCache();
                 }
                 return changed;
             });
@@ -617,6 +658,10 @@ public class BasicBrooklynTypeRegistry implements BrooklynTypeRegistry {
                 Map<String, RegisteredType> m = localRegisteredTypesAndContainingBundles.get(type.getId());
                 if (m==null) return false;
                 RegisteredType removedItem = m.remove(type.getContainingBundle());
+                if (removedItem!=null) {
+                    localIndexes.reindex(type.getId(), m.values());
+                    invalidateSpecCache();
+                }
                 if (m.isEmpty()) {
                     localRegisteredTypesAndContainingBundles.remove(type.getId());
                     CatalogUpgrades.clearTypeInStoredUpgrades(mgmt, type.getVersionedName());
@@ -640,7 +685,9 @@ public class BasicBrooklynTypeRegistry implements BrooklynTypeRegistry {
     public void clear() {
         Locks.withLock(localRegistryLock.writeLock(), () -> {
             localRegisteredTypesAndContainingBundles.clear();
+            localIndexes.clear();
             catalogUpgrades = null;
+            invalidateSpecCache();
         });
     }
 
@@ -648,6 +695,7 @@ public class BasicBrooklynTypeRegistry implements BrooklynTypeRegistry {
     @Beta
     public void storeCatalogUpgradesInstructions(CatalogUpgrades catalogUpgrades) {
         this.catalogUpgrades = catalogUpgrades;
+        invalidateSpecCache();
     }
 
     @Beta
@@ -655,4 +703,20 @@ public class BasicBrooklynTypeRegistry implements BrooklynTypeRegistry {
         return catalogUpgrades;
     }
 
+    /** Discards any specs remembered from previous calls to create a spec (see {@link #SPEC_CACHE_SIZE});
+     * done automatically when types here change, and to be called when anything else which
+     * could change how types are resolved (such as the legacy catalog) is changed */
+    @Beta
+    public void invalidateSpecCache() {
+        if (specCache!=null) specCache.invalidate();
+    }
+
+    /** metrics for the cache of resolved specs, including {@code parses}, {@code hits}, {@code misses} and {@code hitRate},
+     * or null if not enabled (see {@link #SPEC_CACHE_SIZE}) */
+    @Beta
+    @Nullable
+    public Map<String, Object> getSpecCacheMetrics() {
+        return specCache==null ? null : specCache.getMetrics();
+    }
+
 }
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.typereg;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.api.typereg.RegisteredType;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.collections.MutableSet;
+
+import com.google.common.base.Objects;
+
+/**
+ * Indexes of the ids of registered types by symbolic name, alias, tag, super type and kind,
+ * used by {@link BasicBrooklynTypeRegistry} so that lookups need not visit every type.
+ * <p>
+ * Lookups give the ids of all types which <i>might</i> match; callers must still apply their filter to the result.
+ * In particular, the super type index includes every Java super class and interface of the super types declared
+ * (and those declared by registered types which are super types), and their names, so it serves both
+ * {@link RegisteredTypePredicates#subtypeOf(Class)} and {@link RegisteredTypePredicates#subtypeOf(String)}.
+ * <p>
+ * Not thread safe; the registry guards it with its lock.
+ */
+class RegisteredTypeIndexes {
+
+    enum Index { SYMBOLIC_NAME, ALIAS, TAG, SUPER_TYPE, KIND }
+
+    static class Key {
+        final Index index;
+        final Object value;
+
+        private Key(Index index, Object value) {
+            this.index = index;
+            this.value = value;
+        }
+
+        static Key of(Index index, Object value) {
+            return new Key(index, value);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            return index == ((Key)obj).index && Objects.equal(value, ((Key)obj).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(index, value);
+        }
+
+        @Override
+        public String toString() {
+            return index+"="+value;
+        }
+    }
+
+    private final Map<Key, Set<String>> idsByKey = MutableMap.of();
+    private final Map<String, Set<Key>> keysById = MutableMap.of();
+
+    /** updates the indexes for the given id, where the types are all those now registered with that id (across bundles) */
+    void reindex(String id, @Nullable Collection<RegisteredType> types) {
+        remove(id);
+        if (types==null || types.isEmpty()) return;
+        Set<Key> keys = MutableSet.of();
+        for (RegisteredType type: types) {
+            addKeys(type, keys);
+        }
+        keysById.put(id, keys);
+        for (Key key: keys) {
+            Set<String> ids = idsByKey.get(key);
+            if (ids==null) {
+                ids = MutableSet.of();
+                idsByKey.put(key, ids);
+            }
+            ids.add(id);
+        }
+    }
+
+    private void remove(String id) {
+        Set<Key> oldKeys = keysById.remove(id);
+        if (oldKeys==null) return;
+        for (Key key: oldKeys) {
+            Set<String> ids = idsByKey.get(key);
+            if (ids!=null) {
+                ids.remove(id);
+                if (ids.isEmpty()) idsByKey.remove(key);
+            }
+        }
+    }
+
+    void clear() {
+        idsByKey.clear();
+        keysById.clear();
+    }
+
+    /** ids of types which might match the key */
+    Set<String> lookup(Key key) {
+        Set<String> ids = idsByKey.get(key);
+        return ids==null ? Collections.<String>emptySet() : Collections.unmodifiableSet(ids);
+    }
+
+    /** ids of types which might match any of the keys */
+    Set<String> lookupAny(Key ...keys) {
+        Set<String> result = MutableSet.of();
+        for (Key key: keys) result.addAll(lookup(key));
+        return result;
+    }
+
+    private static void addKeys(RegisteredType type, Set<Key> keys) {
+        keys.add(Key.of(Index.SYMBOLIC_NAME, type.getSymbolicName()));
+        if (type.getKind()!=null) keys.add(Key.of(Index.KIND, type.getKind()));
+        for (String alias: type.getAliases()) {
+            keys.add(Key.of(Index.ALIAS, alias));
+        }
+        for (Object tag: type.getTags()) {
+            if (tag!=null) keys.add(Key.of(Index.TAG, tag));
+        }
+        // the type itself is considered by the super type predicates
+        keys.add(Key.of(Index.SUPER_TYPE, type.getSymbolicName()));
+        addSuperTypeKeys(type.getSuperTypes(), keys, MutableSet.<Object>of());
+    }
+
+    private static void addSuperTypeKeys(Set<Object> superTypes, Set<Key> keys, Set<Object> visited) {
+        for (Object st: superTypes) {
+            if (st==null || !visited.add(st)) continue;
+            if (st instanceof Class) {
+                addClassHierarchyKeys((Class<?>)st, keys);
+            } else if (st instanceof RegisteredType) {
+                keys.add(Key.of(Index.SUPER_TYPE, ((RegisteredType)st).getSymbolicName()));
+                addSuperTypeKeys(((RegisteredType)st).getSuperTypes(), keys, visited);
+            } else {
+                keys.add(Key.of(Index.SUPER_TYPE, st));
+            }
+        }
+    }
+
+    private static void addClassHierarchyKeys(Class<?> clazz, Set<Key> keys) {
+        // every class, including interfaces, is assignable to Object
+        keys.add(Key.of(Index.SUPER_TYPE, Object.class));
+        keys.add(Key.of(Index.SUPER_TYPE, Object.class.getName()));
+        addClassAndSupersKeys(clazz, keys);
+    }
+
+    private static void addClassAndSupersKeys(Class<?> clazz, Set<Key> keys) {
+        if (clazz==null) return;
+        if (!keys.add(Key.of(Index.SUPER_TYPE, clazz))) return;
+        keys.add(Key.of(Index.SUPER_TYPE, clazz.getName()));
+        addClassAndSupersKeys(clazz.getSuperclass(), keys);
+        for (Class<?> iface: clazz.getInterfaces()) {
+            addClassAndSupersKeys(iface, keys);
+        }
+    }
+}
@@ -20,6 +20,8 @@ package org.apache.brooklyn.core.typereg;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 import javax.annotation.Nullable;
@@ -30,11 +32,15 @@ import org.apache.brooklyn.api.location.Location;
 import org.apache.brooklyn.api.mgmt.ManagementContext;
 import org.apache.brooklyn.api.policy.Policy;
 import org.apache.brooklyn.api.sensor.Enricher;
+import org.apache.brooklyn.api.typereg.BrooklynTypeRegistry.RegisteredTypeKind;
 import org.apache.brooklyn.api.typereg.OsgiBundleWithUrl;
 import org.apache.brooklyn.api.typereg.RegisteredType;
 import org.apache.brooklyn.api.typereg.RegisteredTypeLoadingContext;
 import org.apache.brooklyn.core.mgmt.entitlement.Entitlements;
+import org.apache.brooklyn.core.typereg.RegisteredTypeIndexes.Index;
+import org.apache.brooklyn.core.typereg.RegisteredTypeIndexes.Key;
 import org.apache.brooklyn.util.collections.CollectionFunctionals;
+import org.apache.brooklyn.util.collections.MutableList;
 import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.osgi.VersionedName;
 import org.apache.brooklyn.util.text.BrooklynVersionSyntax;
@@ -50,6 +56,14 @@ public class RegisteredTypePredicates {
 
     private static final Logger log = LoggerFactory.getLogger(RegisteredTypePredicates.class);
     
+    /** Implemented by predicates which can only match types found in the indexes of {@link BasicBrooklynTypeRegistry}
+     * under particular keys, so that the registry need not test every type against them.
+     * The fields giving those keys are transient, as some predicates are persisted. */
+    interface IndexedPredicate {
+        /** ids of all types which might match (a superset), or null if the indexes cannot narrow the search */
+        @Nullable Set<String> candidateIds(RegisteredTypeIndexes indexes);
+    }
+    
     public static Predicate<RegisteredType> deprecated(final boolean deprecated) {
         return new DeprecatedEqualTo(deprecated);
     }
@@ -122,22 +136,28 @@ public class RegisteredTypePredicates {
     }
 
     public static Predicate<RegisteredType> symbolicName(final String name) {
-        return symbolicName(Predicates.equalTo(name));
+        return new SymbolicNameMatches(Predicates.equalTo(name), name);
     }
     public static Predicate<RegisteredType> symbolicName(final Predicate<? super String> filter) {
-        return new SymbolicNameMatches(filter);
+        return new SymbolicNameMatches(filter, null);
     }
     
-    private static class SymbolicNameMatches implements Predicate<RegisteredType> {
+    private static class SymbolicNameMatches implements Predicate<RegisteredType>, IndexedPredicate {
         private final Predicate<? super String> filter;
+        private final transient String name;
         
-        public SymbolicNameMatches(Predicate<? super String> filter) {
+        public SymbolicNameMatches(Predicate<? super String> filter, @Nullable String name) {
             this.filter = filter;
+            this.name = name;
         }
         @Override
         public boolean apply(@Nullable RegisteredType item) {
             return (item != null) && filter.apply(item.getSymbolicName());
         }
+        @Override
+        public Set<String> candidateIds(RegisteredTypeIndexes indexes) {
+            return name==null ? null : indexes.lookup(Key.of(Index.SYMBOLIC_NAME, name));
+        }
     }
 
     public static Predicate<RegisteredType> version(final String name) {
@@ -177,37 +197,49 @@ public class RegisteredTypePredicates {
     }
 
     public static Predicate<RegisteredType> alias(final String alias) {
-        return aliases(CollectionFunctionals.any(Predicates.equalTo(alias)));
+        return new AliasesMatch(CollectionFunctionals.any(Predicates.equalTo(alias)), alias);
     }
     public static Predicate<RegisteredType> aliases(final Predicate<? super Iterable<String>> filter) {
-        return new AliasesMatch(filter);
+        return new AliasesMatch(filter, null);
     }
     
-    private static class AliasesMatch implements Predicate<RegisteredType> {
+    private static class AliasesMatch implements Predicate<RegisteredType>, IndexedPredicate {
         private final Predicate<? super Iterable<String>> filter;
+        private final transient String alias;
         
-        public AliasesMatch(Predicate<? super Iterable<String>> filter) {
+        public AliasesMatch(Predicate<? super Iterable<String>> filter, @Nullable String alias) {
             this.filter = filter;
+            this.alias = alias;
         }
         @Override
         public boolean apply(@Nullable RegisteredType item) {
             return (item != null) && filter.apply(item.getAliases());
         }
+        @Override
+        public Set<String> candidateIds(RegisteredTypeIndexes indexes) {
+            return alias==null ? null : indexes.lookup(Key.of(Index.ALIAS, alias));
+        }
     }
 
     /** Filters for the symbolic name or alias matching the given typeName. */
     public static Predicate<RegisteredType> nameOrAlias(final String typeName) {
-        return nameOrAlias(Predicates.equalTo(typeName));
+        return new NameOrAliasMatches(Predicates.equalTo(typeName), typeName);
     }
     public static Predicate<RegisteredType> nameOrAlias(final Predicate<? super String> filter) {
-        return new NameOrAliasMatches(filter);
+        return new NameOrAliasMatches(filter, null);
     }
     
-    private static class NameOrAliasMatches implements Predicate<RegisteredType> {
+    private static class NameOrAliasMatches implements Predicate<RegisteredType>, IndexedPredicate {
         private final Predicate<? super String> filter;
+        private final transient String typeName;
         
-        public NameOrAliasMatches(Predicate<? super String> filter) {
+        public NameOrAliasMatches(Predicate<? super String> filter, @Nullable String typeName) {
             this.filter = filter;
+            this.typeName = typeName;
+        }
+        @Override
+        public Set<String> candidateIds(RegisteredTypeIndexes indexes) {
+            return typeName==null ? null : indexes.lookupAny(Key.of(Index.SYMBOLIC_NAME, typeName), Key.of(Index.ALIAS, typeName));
         }
         @Override
         public boolean apply(@Nullable RegisteredType item) {
@@ -221,26 +253,51 @@ public class RegisteredTypePredicates {
     }
 
     public static Predicate<RegisteredType> tag(final Object tag) {
-        return tags(CollectionFunctionals.any(Predicates.equalTo(tag)));
+        return new TagsMatch(CollectionFunctionals.any(Predicates.equalTo(tag)), tag);
     }
     public static Predicate<RegisteredType> tags(final Predicate<? super Iterable<Object>> filter) {
-        return new TagsMatch(filter);
+        return new TagsMatch(filter, null);
     }
     
-    private static class TagsMatch implements Predicate<RegisteredType> {
+    private static class TagsMatch implements Predicate<RegisteredType>, IndexedPredicate {
         private final Predicate<? super Iterable<Object>> filter;
+        private final transient Object tag;
         
-        public TagsMatch(Predicate<? super Iterable<Object>> filter) {
+        public TagsMatch(Predicate<? super Iterable<Object>> filter, @Nullable Object tag) {
             this.filter = filter;
+            this.tag = tag;
         }
         @Override
         public boolean apply(@Nullable RegisteredType item) {
             return (item != null) && filter.apply(item.getTags());
         }
+        @Override
+        public Set<String> candidateIds(RegisteredTypeIndexes indexes) {
+            return tag==null ? null : indexes.lookup(Key.of(Index.TAG, tag));
+        }
+    }
+
+    public static Predicate<RegisteredType> kind(final RegisteredTypeKind kind) {
+        return new KindEqualTo(kind);
+    }
+    private static class KindEqualTo implements Predicate<RegisteredType>, IndexedPredicate {
+        private final RegisteredTypeKind kind;
+        
+        public KindEqualTo(RegisteredTypeKind kind) {
+            this.kind = kind;
+        }
+        @Override
+        public boolean apply(@Nullable RegisteredType item) {
+            return (item != null) && item.getKind() == kind;
+        }
+        @Override
+        public Set<String> candidateIds(RegisteredTypeIndexes indexes) {
+            return kind==null ? null : indexes.lookup(Key.of(Index.KIND, kind));
+        }
     }
 
     public static <T> Predicate<RegisteredType> anySuperType(final Predicate<Object> filter) {
-        return new AnySuperTypeSatisfies(filter);
+        return new AnySuperTypeSatisfies(filter, null);
     }
     /** True for any {@link RegisteredType} which has a type ancestor (or self)
      * registered type which is equal to the given {@link RegisteredType} */
@@ -252,7 +309,7 @@ public class RegisteredTypePredicates {
     public static Predicate<RegisteredType> subtypeOf(final Class<?> filter) {
         // the assignableFrom predicate checks if this class is assignable from the subsequent *input*.
         // in other words, we're checking if any input is a subtype of this class
-        return anySuperType(new IsSubtypeOfClass(filter));
+        return new AnySuperTypeSatisfies(new IsSubtypeOfClass(filter), filter);
     }
     private static class IsSubtypeOfClass implements Predicate<Object> {
         private Class<?> filter;
@@ -268,7 +325,7 @@ public class RegisteredTypePredicates {
     /** True for any {@link RegisteredType} which has a type ancestor (or self)
      * whose registered type name or ID equals the string, or class name equals the string */
     public static Predicate<RegisteredType> subtypeOf(final String filter) {
-        return anySuperType(new EqualsClassOrTypeName(filter));
+        return new AnySuperTypeSatisfies(new EqualsClassOrTypeName(filter), filter);
     }
     private static class EqualsClassOrTypeName implements Predicate<Object> {
         private String filter;
@@ -306,11 +363,13 @@ public class RegisteredTypePredicates {
         }
     }
     
-    private static class AnySuperTypeSatisfies implements Predicate<RegisteredType> {
+    private static class AnySuperTypeSatisfies implements Predicate<RegisteredType>, IndexedPredicate {
         private final Predicate<Object> filter;
+        private final transient Object superType;
         
-        private AnySuperTypeSatisfies(Predicate<Object> filter) {
+        private AnySuperTypeSatisfies(Predicate<Object> filter, @Nullable Object superType) {
             this.filter = filter;
+            this.superType = superType;
         }
         @Override
         public boolean apply(@Nullable RegisteredType item) {
@@ -318,6 +377,53 @@ public class RegisteredTypePredicates {
             if (filter.apply(item)) return true;
             return RegisteredTypes.isAnyTypeOrSuper(item.getSuperTypes(), filter);
         }
+        @Override
+        public Set<String> candidateIds(RegisteredTypeIndexes indexes) {
+            return superType==null ? null : indexes.lookup(Key.of(Index.SUPER_TYPE, superType));
+        }
+    }
+    
+    /** As {@link Predicates#and(Iterable)}, but allowing the type registry to use its indexes
+     * for any of the components which support that (such as those for exact symbolic names, aliases, tags, kinds and super types) */
+    @Beta
+    public static Predicate<RegisteredType> and(Iterable<? extends Predicate<? super RegisteredType>> components) {
+        return new AllMatch(components);
+    }
+    /** @see #and(Iterable) */
+    @Beta
+    @SafeVarargs
+    public static Predicate<RegisteredType> and(Predicate<? super RegisteredType> ...components) {
+        return new AllMatch(Arrays.asList(components));
+    }
+    private static class AllMatch implements Predicate<RegisteredType>, IndexedPredicate {
+        private final List<Predicate<? super RegisteredType>> components;
+        
+        public AllMatch(Iterable<? extends Predicate<? super RegisteredType>> components) {
+            this.components = MutableList.copyOf(components);
+        }
+        @Override
+        public boolean apply(@Nullable RegisteredType item) {
+            for (Predicate<? super RegisteredType> p: components) {
+                if (!p.apply(item)) return false;
+            }
+            return true;
+        }
+        @Override
+        public Set<String> candidateIds(RegisteredTypeIndexes indexes) {
+            // any component's candidates suffice; use the smallest
+            Set<String> result = null;
+            for (Predicate<? super RegisteredType> p: components) {
+                if (p instanceof IndexedPredicate) {
+                    Set<String> candidates = ((IndexedPredicate)p).candidateIds(indexes);
+                    if (candidates!=null && (result==null || candidates.size() < result.size())) result = candidates;
+                }
+            }
+            return result;
+        }
+        @Override
+        public String toString() {
+            return "and"+components;
+        }
     }
     
     public static final Predicate<RegisteredType> IS_APPLICATION = subtypeOf(Application.class);
@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.typereg;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.api.internal.AbstractBrooklynObjectSpec;
+import org.apache.brooklyn.api.mgmt.classloading.BrooklynClassLoadingContext;
+import org.apache.brooklyn.api.typereg.BrooklynTypeRegistry.RegisteredTypeKind;
+import org.apache.brooklyn.api.typereg.RegisteredType;
+import org.apache.brooklyn.api.typereg.RegisteredType.TypeImplementationPlan;
+import org.apache.brooklyn.api.typereg.RegisteredTypeLoadingContext;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.stream.Streams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Remembers the specs which {@link BasicBrooklynTypeRegistry} resolved from registered types,
+ * keyed by the type (including its plan) and the loading context used,
+ * so that repeated requests for the same type need not run its plan transformers again.
+ * The main such caller is the REST API, which creates the spec of every catalog item it describes
+ * whenever the catalog or types are listed; deploying the same type repeatedly also benefits.
+ * <p>
+ * Specs are mutable and nest other specs (children, policies, specs given as config such as a cluster's member spec),
+ * so the cache keeps each spec in java-serialized form and hands out a new deep copy on every hit;
+ * callers can modify what they are given, including nested specs and config values.
+ * Specs which cannot be java-serialized (e.g. with a config value which is not {@link java.io.Serializable}) are not kept.
+ * Classes are resolved to those of the spec serialized, so no class loader is needed to copy it.
+ * <p>
+ * Entries are tagged with the version of the registry when resolution started;
+ * {@link #invalidate()} moves to a new version, so a spec resolved concurrently with a change
+ * to the registry is never handed out.
+ */
+class RegisteredTypeSpecCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RegisteredTypeSpecCache.class);
+
+    static class Key {
+        final String typeId;
+        final String containingBundle;
+        final TypeImplementationPlan plan;
+        final RegisteredTypeKind expectedKind;
+        final Class<?> expectedJavaSuperType;
+        final Set<String> alreadyEncounteredTypes;
+        final BrooklynClassLoadingContext loader;
+
+        Key(RegisteredType type, RegisteredTypeLoadingContext context) {
+            this.typeId = type.getId();
+            this.containingBundle = type.getContainingBundle();
+            this.plan = type.getPlan();
+            this.expectedKind = context.getExpectedKind();
+            this.expectedJavaSuperType = context.getExpectedJavaSuperType();
+            this.alreadyEncounteredTypes = ImmutableSet.copyOf(context.getAlreadyEncounteredTypes());
+            this.loader = context.getLoader();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return Objects.equal(typeId, other.typeId) && Objects.equal(containingBundle, other.containingBundle)
+                && Objects.equal(plan, other.plan) && expectedKind == other.expectedKind
+                && Objects.equal(expectedJavaSuperType, other.expectedJavaSuperType)
+                && alreadyEncounteredTypes.equals(other.alreadyEncounteredTypes) && Objects.equal(loader, other.loader);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(typeId, containingBundle, plan, expectedKind, expectedJavaSuperType, alreadyEncounteredTypes, loader);
+        }
+
+        @Override
+        public String toString() {
+            return typeId+(containingBundle!=null ? " ("+containingBundle+")" : "");
+        }
+    }
+
+    private static class Entry {
+        final long version;
+        final byte[] serialized;
+        /** classes referred to by the serialized spec, by name */
+        final Map<String, Class<?>> classes;
+        Entry(long version, byte[] serialized, Map<String, Class<?>> classes) {
+            this.version = version;
+            this.serialized = serialized;
+            this.classes = classes;
+        }
+    }
+
+    private final Cache<Key, Entry> cache;
+    private final AtomicLong version = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong parses = new AtomicLong();
+    private final AtomicLong uncacheable = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    RegisteredTypeSpecCache(int maxSize) {
+        cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /** java-serializes the spec, recording the classes it refers to */
+    private static Entry serialize(long version, AbstractBrooklynObjectSpec<?,?> spec) throws IOException {
+        final Map<String, Class<?>> classes = MutableMap.of();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes) {
+            @Override
+            protected void annotateClass(Class<?> cl) {
+                classes.put(cl.getName(), cl);
+            }
+            @Override
+            protected void annotateProxyClass(Class<?> cl) throws IOException {
+                throw new NotSerializableException("Proxy "+cl);
+            }
+        };
+        out.writeObject(spec);
+        out.close();
+        return new Entry(version, bytes.toByteArray(), classes);
+    }
+
+    /** a new copy of the spec serialized in the entry */
+    private static AbstractBrooklynObjectSpec<?,?> deserialize(final Entry entry) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(entry.serialized)) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                Class<?> result = entry.classes.get(desc.getName());
+                return (result != null) ? result : super.resolveClass(desc);
+            }
+        };
+        try {
+            return (AbstractBrooklynObjectSpec<?,?>) in.readObject();
+        } finally {
+            Streams.closeQuietly(in);
+        }
+    }
+
+    /** the key for the given type, or null if the type cannot be cached (because it is anonymous) */
+    @Nullable
+    static Key keyFor(RegisteredType type, RegisteredTypeLoadingContext context) {
+        if (type.getId()==null) return null;
+        return new Key(type, context);
+    }
+
+    /** the current version, to be passed to {@link #put(Key, long, AbstractBrooklynObjectSpec)} once resolved */
+    long getVersion() {
+        return version.get();
+    }
+
+    /** returns a (deep) copy of the cached spec, or null if there is none for the current version */
+    @Nullable
+    AbstractBrooklynObjectSpec<?,?> getCopy(Key key) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry==null || entry.version != version.get()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            AbstractBrooklynObjectSpec<?,?> result = deserialize(entry);
+            hits.incrementAndGet();
+            return result;
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            log.debug("Unable to copy cached spec of "+key+" (discarding, will resolve again): "+e);
+            cache.invalidate(key);
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /** records that the spec was resolved, caching a copy of it if possible;
+     * to be called before the spec is changed, and the caller should keep the given spec, which is not retained */
+    void put(Key key, long versionWhenStarted, AbstractBrooklynObjectSpec<?,?> spec) {
+        parses.incrementAndGet();
+        if (versionWhenStarted != version.get()) {
+            // registry changed while resolving; don't keep it
+            return;
+        }
+        Entry entry;
+        try {
+            entry = serialize(versionWhenStarted, spec);
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            if (log.isTraceEnabled()) log.trace("Not caching spec of "+key+", as it cannot be serialized: "+e);
+            uncacheable.incrementAndGet();
+            return;
+        }
+        cache.put(key, entry);
+    }
+
+    /** discards all cached specs; to be called whenever types or bundles change,
+     * as specs can refer to other types */
+    void invalidate() {
+        version.incrementAndGet();
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    Map<String, Object> getMetrics() {
+        long h = hits.get();
+        long m = misses.get();
+        return MutableMap.<String, Object>builder()
+            .put("hits", h)
+            .put("misses", m)
+            .put("hitRate", (h+m)==0 ? 0.0 : ((double)h)/(h+m))
+            .put("parses", parses.get())
+            .put("uncacheable", uncacheable.get())
+            .put("invalidations", invalidations.get())
+            .put("size", cache.size())
+            .put("version", version.get())
+            .build();
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.feed.http;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.api.mgmt.Scratchpad;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.config.StringConfigMap;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.core.task.VirtualThreads;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Performs the requests of asynchronous {@link HttpFeed}s, shared by all feeds of a management context.
+ * <p>
+ * Requests return a future immediately, so the feed's scheduled poll task does not wait for the
+ * network round-trip; the result is passed to the feed's handlers when the future completes.
+ * Each request is failed with a {@link TimeoutException} if not complete within its timeout
+ * (measured from submission, so including time waiting for its host), and aborted.
+ * An aborted request keeps its place against the host until its thread returns, as until then it may still
+ * be using a connection to the host (e.g. blocked in a socket read, which an interrupt does not stop on a platform thread).
+ * At most {@code maxPerHost} requests run concurrently against any one host, the rest waiting their turn
+ * (up to {@code maxQueuedPerHost}, and one per source) so that a slow host does not take all the threads.
+ * <p>
+ * Requests run on virtual threads where the JVM supports them (Java 21+), so that many thousands
+ * of requests can be in flight on a few carrier threads; otherwise on a fixed pool of platform threads,
+ * in which case the pool size bounds the number of requests in flight.
+ */
+@Beta
+public class AsyncHttpPollExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncHttpPollExecutor.class);
+
+    public static final ConfigKey<Boolean> USE_VIRTUAL_THREADS = ConfigKeys.newBooleanConfigKey("brooklyn.http.async.virtualThreads",
+            "Whether asynchronous HTTP feed requests run on virtual threads, where the JVM supports them", true);
+
+    public static final ConfigKey<Integer> THREADS = ConfigKeys.newIntegerConfigKey("brooklyn.http.async.threads",
+            "Number of threads performing asynchronous HTTP feed requests, when not using virtual threads", 32);
+
+    public static final ConfigKey<Integer> MAX_PER_HOST = ConfigKeys.newIntegerConfigKey("brooklyn.http.async.maxPerHost",
+            "Maximum number of asynchronous HTTP feed requests in progress against any one host", 4);
+
+    public static final ConfigKey<Integer> MAX_QUEUED_PER_HOST = ConfigKeys.newIntegerConfigKey("brooklyn.http.async.maxQueuedPerHost",
+            "Maximum number of asynchronous HTTP feed requests waiting for any one host, beyond which new requests are rejected", 100);
+
+    public static final ConfigKey<Duration> TIMEOUT = ConfigKeys.newDurationConfigKey("brooklyn.http.async.timeout",
+            "Default time after which an asynchronous HTTP feed request fails, if the feed does not set one", Duration.ONE_MINUTE);
+
+    private static final ConfigKey<AsyncHttpPollExecutor> INSTANCE = ConfigKeys.newConfigKey(AsyncHttpPollExecutor.class,
+            "brooklyn.internal.http.asyncPollExecutor");
+
+    /** @return the management context's executor, creating it if necessary */
+    public static AsyncHttpPollExecutor get(ManagementContext mgmt) {
+        Scratchpad scratchpad = mgmt.getScratchpad();
+        synchronized (scratchpad) {
+            AsyncHttpPollExecutor result = scratchpad.get(INSTANCE);
+            if (result == null) {
+                StringConfigMap config = mgmt.getConfig();
+                result = new AsyncHttpPollExecutor(Boolean.TRUE.equals(config.getConfig(USE_VIRTUAL_THREADS)), config.getConfig(THREADS),
+                        config.getConfig(MAX_PER_HOST), config.getConfig(MAX_QUEUED_PER_HOST), config.getConfig(TIMEOUT));
+                log.debug("Created "+result+" for "+mgmt);
+                scratchpad.put(INSTANCE, result);
+            }
+            return result;
+        }
+    }
+
+    /** shuts down the management context's executor, if any; called when the management context terminates */
+    public static void close(ManagementContext mgmt) {
+        Scratchpad scratchpad = mgmt.getScratchpad();
+        synchronized (scratchpad) {
+            AsyncHttpPollExecutor executor = scratchpad.get(INSTANCE);
+            if (executor != null) {
+                executor.shutdown();
+                scratchpad.put(INSTANCE, null);
+            }
+        }
+    }
+
+    /** a request for a host, queued or running */
+    private class HostRequest<V> implements Runnable {
+        final HostQueue queue;
+        @Nullable final Object source;
+        final Callable<V> request;
+        final SettableFuture<V> result = SettableFuture.create();
+        volatile ScheduledFuture<?> timeoutFuture;
+        volatile Future<?> running;
+        /** whether this request has given up its place in the host's active count; guarded by the queue */
+        boolean released = false;
+        /** whether this request has started, or been aborted before it could start; guarded by the queue */
+        boolean started = false;
+
+        HostRequest(HostQueue queue, @Nullable Object source, Callable<V> request) {
+            this.queue = queue;
+            this.source = source;
+            this.request = request;
+        }
+
+        @Override
+        public void run() {
+            // skip requests which timed out (or were cancelled) while waiting for the host
+            if (result.isDone()) return;
+            try {
+                result.set(request.call());
+            } catch (Throwable t) {
+                Exceptions.propagateIfFatal(t);
+                result.setException(t);
+            } finally {
+                ScheduledFuture<?> timeout = timeoutFuture;
+                if (timeout != null) timeout.cancel(false);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return request.toString();
+        }
+    }
+
+    /**
+     * Requests for a host, of which at most {@link AsyncHttpPollExecutor#maxPerHost} run at a time
+     * and at most {@link AsyncHttpPollExecutor#maxQueuedPerHost} wait their turn.
+     * Removed from {@link AsyncHttpPollExecutor#hosts} when it has none.
+     */
+    private class HostQueue {
+        private final String host;
+        private final Deque<HostRequest<?>> pending = new ArrayDeque<HostRequest<?>>();
+        private final Map<Object, HostRequest<?>> pendingBySource = Maps.newHashMap();
+        private int active = 0;
+        private boolean removed = false;
+
+        HostQueue(String host) {
+            this.host = host;
+        }
+
+        /** @return the request's future, or null if this queue has been removed (so another must be used) */
+        @SuppressWarnings("unchecked")
+        @Nullable
+        <V> ListenableFuture<V> submit(@Nullable Object source, Callable<V> request, Duration timeout) {
+            final HostRequest<V> hostRequest;
+            boolean runNow;
+            synchronized (this) {
+                if (removed) return null;
+                if (source != null) {
+                    HostRequest<?> existing = pendingBySource.get(source);
+                    if (existing != null) {
+                        // same source still waiting for the host; its result will do for this one too
+                        duplicatesDroppedCount.incrementAndGet();
+                        return (ListenableFuture<V>) existing.result;
+                    }
+                }
+                runNow = active < maxPerHost;
+                if (!runNow && pending.size() >= maxQueuedPerHost) {
+                    rejectedCount.incrementAndGet();
+                    return Futures.immediateFailedFuture(new RejectedExecutionException("HTTP request "+request+" rejected, as "
+                            +pending.size()+" requests are already waiting for host "+host));
+                }
+                hostRequest = new HostRequest<V>(this, source, request);
+                hostRequest.timeoutFuture = scheduleTimeout(hostRequest, timeout);
+                if (runNow) {
+                    active++;
+                } else {
+                    pending.add(hostRequest);
+                    if (source != null) pendingBySource.put(source, hostRequest);
+                    queuedCount.incrementAndGet();
+                }
+            }
+            hostRequest.result.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    if (hostRequest.result.isCancelled()) abort(hostRequest);
+                }
+            }, MoreExecutors.sameThreadExecutor());
+            if (runNow) execute(hostRequest);
+            return hostRequest.result;
+        }
+
+        /**
+         * stops the request: if waiting, removes it; if running, interrupts it, its place being freed for the next
+         * when its thread returns; if submitted to the executor but not yet started, stops it starting and frees its place
+         */
+        void abort(HostRequest<?> request) {
+            boolean wasStarted;
+            synchronized (this) {
+                if (pending.remove(request)) {
+                    if (request.source != null) pendingBySource.remove(request.source);
+                    removeIfIdle();
+                    return;
+                }
+                wasStarted = request.started;
+                request.started = true;
+            }
+            Future<?> running = request.running;
+            if (running != null) running.cancel(true);
+            if (!wasStarted) release(request);
+        }
+
+        void release(HostRequest<?> request) {
+            HostRequest<?> next;
+            synchronized (this) {
+                if (request.released) return;
+                request.released = true;
+                next = pending.poll();
+                if (next == null) {
+                    active--;
+                    removeIfIdle();
+                } else if (next.source != null) {
+                    pendingBySource.remove(next.source);
+                }
+            }
+            if (next != null) execute(next);
+        }
+
+        /** caller must hold this object's monitor */
+        private void removeIfIdle() {
+            if (active == 0 && pending.isEmpty()) {
+                removed = true;
+                hosts.remove(host, this);
+            }
+        }
+
+        private void execute(final HostRequest<?> request) {
+            try {
+                request.running = executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (HostQueue.this) {
+                            // if aborted before starting, its place has already been freed
+                            if (request.started) return;
+                            request.started = true;
+                        }
+                        try {
+                            request.run();
+                        } finally {
+                            release(request);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                // e.g. rejected on shutdown
+                request.result.setException(e);
+                release(request);
+            }
+        }
+    }
+
+    private final boolean virtualThreads;
+    private final int maxPerHost;
+    private final int maxQueuedPerHost;
+    private final Duration defaultTimeout;
+    private final ExecutorService executor;
+    private final ScheduledThreadPoolExecutor timeouts;
+    private final ConcurrentMap<String, HostQueue> hosts = new ConcurrentHashMap<String, HostQueue>();
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong timedOutCount = new AtomicLong();
+    private final AtomicLong duplicatesDroppedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public AsyncHttpPollExecutor(boolean useVirtualThreads, int threads, int maxPerHost, Duration defaultTimeout) {
+        this(useVirtualThreads, threads, maxPerHost, MAX_QUEUED_PER_HOST.getDefaultValue(), defaultTimeout);
+    }
+
+    public AsyncHttpPollExecutor(boolean useVirtualThreads, int threads, int maxPerHost, int maxQueuedPerHost, Duration defaultTimeout) {
+        Preconditions.checkArgument(threads > 0, "threads must be positive");
+        Preconditions.checkArgument(maxPerHost > 0, "maxPerHost must be positive");
+        Preconditions.checkArgument(maxQueuedPerHost >= 0, "maxQueuedPerHost must not be negative");
+        this.maxPerHost = maxPerHost;
+        this.maxQueuedPerHost = maxQueuedPerHost;
+        this.defaultTimeout = Preconditions.checkNotNull(defaultTimeout, "defaultTimeout");
+        this.virtualThreads = useVirtualThreads && VirtualThreads.isAvailable();
+        if (virtualThreads) {
+            executor = VirtualThreads.newThreadPerTaskExecutor("brooklyn-http-async-", null);
+        } else {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                    .setNameFormat("brooklyn-http-async-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        timeouts = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                .setNameFormat("brooklyn-http-async-timeout-%d")
+                .setDaemon(true)
+                .build());
+        // most requests complete in time, so don't keep their cancelled timeouts in the queue until they would have fired
+        timeouts.setRemoveOnCancelPolicy(true);
+    }
+
+    /** @see #submit(String, Object, Callable, Duration) */
+    public <V> ListenableFuture<V> submit(String host, final Callable<V> request, @Nullable Duration timeout) {
+        return submit(host, null, request, timeout);
+    }
+
+    /**
+     * Submits a request against the given host, returning immediately.
+     * <p>
+     * If the request is not complete within its timeout, or the returned future is cancelled,
+     * it is removed from the host's queue or, if running, interrupted (which aborts the HTTP request
+     * where the thread's I/O is interruptible, as it is on virtual threads); its place is given to the next request
+     * once it has stopped.
+     * 
+     * @param source identifies where the request comes from (e.g. a feed's poll); if a request from the same source
+     *        is still waiting for the host, that request's future is returned instead, and this request is dropped
+     * @param timeout time after which the returned future fails (if not already done), or null for the default
+     * @return the request's future, failed with a {@link RejectedExecutionException} if too many requests are waiting for the host
+     */
+    public <V> ListenableFuture<V> submit(String host, @Nullable Object source, Callable<V> request, @Nullable Duration timeout) {
+        submittedCount.incrementAndGet();
+        Duration effectiveTimeout = (timeout != null) ? timeout : defaultTimeout;
+        String key = (host != null) ? host : "";
+        while (true) {
+            HostQueue queue = hosts.get(key);
+            if (queue == null) {
+                HostQueue newQueue = new HostQueue(key);
+                queue = hosts.putIfAbsent(key, newQueue);
+                if (queue == null) queue = newQueue;
+            }
+            ListenableFuture<V> result = queue.submit(source, request, effectiveTimeout);
+            // null if the queue was removed as idle after we got it, so try again with a new one
+            if (result != null) return result;
+        }
+    }
+
+    private ScheduledFuture<?> scheduleTimeout(final HostRequest<?> request, final Duration timeout) {
+        return timeouts.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (request.result.setException(new TimeoutException("HTTP request "+request+" not complete within "+timeout))) {
+                    timedOutCount.incrementAndGet();
+                    request.queue.abort(request);
+                }
+            }
+        }, timeout.toMilliseconds(), TimeUnit.MILLISECONDS);
+    }
+
+    /** current statistics, for reporting */
+    public Map<String, Object> getMetrics() {
+        return MutableMap.<String, Object>of(
+            "virtualThreads", virtualThreads,
+            "hosts", hosts.size(),
+            "submitted", submittedCount.get(),
+            "queuedForHost", queuedCount.get(),
+            "timedOut", timedOutCount.get(),
+            "duplicatesDropped", duplicatesDroppedCount.get(),
+            "rejected", rejectedCount.get());
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        timeouts.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncHttpPollExecutor[virtualThreads="+virtualThreads+"; maxPerHost="+maxPerHost+"; timeout="+defaultTimeout+"]";
+    }
+}
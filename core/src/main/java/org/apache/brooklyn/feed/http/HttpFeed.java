@@ -37,8 +37,10 @@ import org.apache.brooklyn.api.entity.EntityLocal;
 import org.apache.brooklyn.api.location.Location;
 import org.apache.brooklyn.api.location.MachineLocation;
 import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
 import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.entity.EntityInternal;
 import org.apache.brooklyn.core.feed.AbstractFeed;
 import org.apache.brooklyn.core.feed.AttributePollHandler;
 import org.apache.brooklyn.core.feed.DelegatingPollHandler;
@@ -47,6 +49,7 @@ import org.apache.brooklyn.core.location.Locations;
 import org.apache.brooklyn.core.location.Machines;
 import org.apache.brooklyn.core.location.internal.LocationInternal;
 import org.apache.brooklyn.util.executor.HttpExecutorFactory;
+import org.apache.brooklyn.util.executor.ManagedHttpClients;
 import org.apache.brooklyn.util.guava.Maybe;
 import org.apache.brooklyn.util.http.HttpToolResponse;
 import org.apache.brooklyn.util.http.executor.HttpConfig;
@@ -54,7 +57,6 @@ import org.apache.brooklyn.util.http.executor.HttpExecutor;
 import org.apache.brooklyn.util.http.executor.HttpRequest;
 import org.apache.brooklyn.util.http.executor.HttpResponse;
 import org.apache.brooklyn.util.http.auth.UsernamePassword;
-import org.apache.brooklyn.util.http.executor.apacheclient.HttpExecutorImpl;
 import org.apache.brooklyn.util.stream.Streams;
 import org.apache.brooklyn.util.time.Duration;
 import org.apache.http.auth.Credentials;
@@ -62,6 +64,7 @@ import org.apache.http.auth.UsernamePasswordCredentials;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
@@ -76,6 +79,7 @@ import com.google.common.collect.Sets;
 import com.google.common.io.BaseEncoding;
 import com.google.common.io.ByteStreams;
 import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * Provides a feed of attribute values, by polling over http.
@@ -130,6 +134,14 @@ public class HttpFeed extends AbstractFeed {
             new TypeToken<SetMultimap<HttpPollIdentifier, HttpPollConfig<?>>>() {},
             "polls");
 
+    /** whether to poll asynchronously; if null, per {@link BrooklynFeatureEnablement#FEATURE_ASYNC_HTTP_FEEDS} */
+    @Beta
+    public static final ConfigKey<Boolean> ASYNC = ConfigKeys.newBooleanConfigKey("async");
+
+    /** timeout for asynchronous requests; if null, per {@link AsyncHttpPollExecutor#TIMEOUT} */
+    @Beta
+    public static final ConfigKey<Duration> REQUEST_TIMEOUT = ConfigKeys.newDurationConfigKey("requestTimeout");
+
     public static Builder builder() {
         return new Builder();
     }
@@ -148,6 +160,8 @@ public class HttpFeed extends AbstractFeed {
         private String uniqueTag;
         private HttpExecutor httpExecutor;
         private Boolean preemptiveBasicAuth;
+        private Boolean async;
+        private Duration requestTimeout;
         private volatile boolean built;
 
         public Builder entity(Entity val) {
@@ -236,6 +250,21 @@ public class HttpFeed extends AbstractFeed {
             this.httpExecutor = val;
             return this;
         }
+        /**
+         * Whether to make requests asynchronously, through the management context's {@link AsyncHttpPollExecutor};
+         * defaults to {@link BrooklynFeatureEnablement#FEATURE_ASYNC_HTTP_FEEDS}.
+         */
+        @Beta
+        public Builder async(boolean val) {
+            this.async = val;
+            return this;
+        }
+        /** time after which an asynchronous request fails; defaults to {@link AsyncHttpPollExecutor#TIMEOUT} */
+        @Beta
+        public Builder requestTimeout(Duration val) {
+            this.requestTimeout = val;
+            return this;
+        }
         public Map<String, String> buildBaseHeaders() {
             if (Boolean.TRUE.equals(preemptiveBasicAuth)) {
                 Credentials creds = credentials;
@@ -332,6 +361,8 @@ public class HttpFeed extends AbstractFeed {
     
     protected HttpFeed(Builder builder) {
         config().set(ONLY_IF_SERVICE_UP, builder.onlyIfServiceUp);
+        config().set(ASYNC, builder.async);
+        config().set(REQUEST_TIMEOUT, builder.requestTimeout);
         Map<String,String> baseHeaders = builder.buildBaseHeaders();
 
         HttpExecutor httpExecutor;
@@ -346,7 +377,7 @@ public class HttpFeed extends AbstractFeed {
                 Map<String, Object> httpExecutorProps = ((LocationInternal)location.get()).config().getBag().getAllConfig();
                 httpExecutor = httpExecutorFactory.getHttpExecutor(httpExecutorProps);
             } else {
-                httpExecutor = HttpExecutorImpl.newInstance();
+                httpExecutor = ManagedHttpClients.newHttpExecutor(((EntityInternal)builder.entity).getManagementContext());
             }
         }
 
@@ -403,35 +434,66 @@ public class HttpFeed extends AbstractFeed {
                 if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
             }
 
-            Callable<HttpToolResponse> pollJob;
-            pollJob = new Callable<HttpToolResponse>() {
-                @Override
-                public HttpToolResponse call() throws Exception {
-                    if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
+            if (isAsync()) {
+                final AsyncHttpPollExecutor asyncExecutor = AsyncHttpPollExecutor.get(getManagementContext());
+                final Duration requestTimeout = getConfig(REQUEST_TIMEOUT);
+                Poller.AsyncPollJob<HttpToolResponse> pollJob = new Poller.AsyncPollJob<HttpToolResponse>() {
+                    @Override
+                    public ListenableFuture<HttpToolResponse> call() throws Exception {
+                        final URI uri = pollInfo.uriProvider.get();
+                        // this poll job is the source, so a poll still waiting for the host is not queued again
+                        return asyncExecutor.submit(uri.getHost(), this, new Callable<HttpToolResponse>() {
+                            @Override
+                            public HttpToolResponse call() throws Exception {
+                                return poll(pollInfo, uri);
+                            }
+                            @Override
+                            public String toString() {
+                                return pollInfo.method+" "+uri;
+                            }
+                        }, requestTimeout);
+                    }};
+                getPoller().scheduleAtFixedRateAsync(pollJob, new DelegatingPollHandler<HttpToolResponse>(handlers), Duration.millis(minPeriod));
+            } else {
+                Callable<HttpToolResponse> pollJob;
+                pollJob = new Callable<HttpToolResponse>() {
+                    @Override
+                    public HttpToolResponse call() throws Exception {
+                        return poll(pollInfo, pollInfo.uriProvider.get());
+                    }};
+                getPoller().scheduleAtFixedRate(pollJob, new DelegatingPollHandler<HttpToolResponse>(handlers), minPeriod);
+            }
+        }
+    }
 
-                    UsernamePassword creds = null;
-                    if (pollInfo.credentials.isPresent()) {
-                        creds =  new UsernamePassword(
-                                pollInfo.credentials.get().getUserPrincipal().getName(),
-                                pollInfo.credentials.get().getPassword());
-                    }
+    protected boolean isAsync() {
+        Boolean async = getConfig(ASYNC);
+        return (async != null) ? async : BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_ASYNC_HTTP_FEEDS);
+    }
 
-                    HttpResponse response =  pollInfo.httpExecutor.execute(new HttpRequest.Builder()
-                            .headers(pollInfo.headers)
-                            .uri(pollInfo.uriProvider.get())
-                            .credentials(creds)
-                            .method(pollInfo.method)
-                            .body(pollInfo.body)
-                            .config(HttpConfig.builder()
-                                    .trustSelfSigned(true)
-                                    .trustAll(true)
-                                    .laxRedirect(true)
-                                    .build())
-                            .build());
-                    return createHttpToolRespose(response);
-                }};
-                getPoller().scheduleAtFixedRate(pollJob, new DelegatingPollHandler<HttpToolResponse>(handlers), minPeriod);
+    private HttpToolResponse poll(HttpPollIdentifier pollInfo, URI uri) throws IOException {
+        if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
+
+        UsernamePassword creds = null;
+        if (pollInfo.credentials.isPresent()) {
+            creds =  new UsernamePassword(
+                    pollInfo.credentials.get().getUserPrincipal().getName(),
+                    pollInfo.credentials.get().getPassword());
         }
+
+        HttpResponse response =  pollInfo.httpExecutor.execute(new HttpRequest.Builder()
+                .headers(pollInfo.headers)
+                .uri(uri)
+                .credentials(creds)
+                .method(pollInfo.method)
+                .body(pollInfo.body)
+                .config(HttpConfig.builder()
+                        .trustSelfSigned(true)
+                        .trustAll(true)
+                        .laxRedirect(true)
+                        .build())
+                .build());
+        return createHttpToolRespose(response);
     }
 
     @Override
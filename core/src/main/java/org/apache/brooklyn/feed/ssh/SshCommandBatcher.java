@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.feed.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.api.mgmt.Scratchpad;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.location.ssh.SshMachineLocation;
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.core.internal.ssh.SshTool;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.text.Identifiers;
+import org.apache.brooklyn.util.text.StringEscapes.BashStringEscapes;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.Beta;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Runs the commands of {@link SshFeed}s (including those of {@link org.apache.brooklyn.core.sensor.ssh.SshCommandSensor}s)
+ * polling the same machine at about the same time as a single ssh invocation, rather than opening a channel for each.
+ * <p>
+ * The first command submitted starts a batch, and waits for the batch window for others to join it;
+ * it then runs them all in one script, each in its own sub-shell (with its own environment), with its stdout,
+ * stderr and exit status delimited by unique markers, and passes each command's output back to its caller.
+ * A command which fails does not stop the others.
+ * <p>
+ * Used by {@link SshFeed} when {@link org.apache.brooklyn.core.BrooklynFeatureEnablement#FEATURE_BATCH_SSH_FEED_COMMANDS} is enabled.
+ */
+@Beta
+public class SshCommandBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(SshCommandBatcher.class);
+
+    public static final ConfigKey<Duration> BATCH_WINDOW = ConfigKeys.newDurationConfigKey("sshFeed.batchWindow",
+            "How long the first ssh feed command due on a machine waits for others to run with it in one batch", Duration.millis(100));
+
+    public static final ConfigKey<Duration> BATCH_TIMEOUT = ConfigKeys.newDurationConfigKey("sshFeed.batchTimeout",
+            "How long a command which joined a batch waits for the batch to complete, before failing", Duration.FIVE_MINUTES);
+
+    private static final ConfigKey<LoadingCache<SshMachineLocation, SshCommandBatcher>> BATCHERS = ConfigKeys.newConfigKey(
+            new TypeToken<LoadingCache<SshMachineLocation, SshCommandBatcher>>() {},
+            "brooklyn.internal.sshFeed.batchers");
+
+    /**
+     * @return the batcher for the given machine, shared by all feeds polling it in its management context
+     * (or a new one, if the machine is not managed)
+     */
+    public static SshCommandBatcher forMachine(SshMachineLocation machine) {
+        ManagementContext mgmt = machine.getManagementContext();
+        if (mgmt == null) return new SshCommandBatcher(machine);
+        Scratchpad scratchpad = mgmt.getScratchpad();
+        LoadingCache<SshMachineLocation, SshCommandBatcher> batchers;
+        synchronized (scratchpad) {
+            batchers = scratchpad.get(BATCHERS);
+            if (batchers == null) {
+                batchers = CacheBuilder.newBuilder()
+                        .weakKeys()
+                        .build(new CacheLoader<SshMachineLocation, SshCommandBatcher>() {
+                            @Override
+                            public SshCommandBatcher load(SshMachineLocation machine) {
+                                return new SshCommandBatcher(machine);
+                            }
+                        });
+                scratchpad.put(BATCHERS, batchers);
+            }
+        }
+        return batchers.getUnchecked(machine);
+    }
+
+    /**
+     * Discards the batcher for the given machine, if any; called when the machine is closed.
+     * (The batcher refers to its machine, so it would otherwise never be dropped from the weak-keyed cache.)
+     */
+    public static void release(SshMachineLocation machine) {
+        ManagementContext mgmt = machine.getManagementContext();
+        if (mgmt == null) return;
+        LoadingCache<SshMachineLocation, SshCommandBatcher> batchers = mgmt.getScratchpad().get(BATCHERS);
+        if (batchers != null) batchers.invalidate(machine);
+    }
+
+    private static class Request {
+        final String command;
+        final Map<String, String> env;
+        final SettableFuture<SshPollValue> result = SettableFuture.create();
+        
+        Request(String command, Map<String, String> env) {
+            this.command = command;
+            this.env = env;
+        }
+    }
+
+    private static class Batch {
+        final boolean execAsCommand;
+        final Map<String, ?> flags;
+        final List<Request> requests = MutableList.of();
+        
+        Batch(boolean execAsCommand, Map<String, ?> flags) {
+            this.execAsCommand = execAsCommand;
+            this.flags = flags;
+        }
+    }
+
+    private final SshMachineLocation machine;
+    private final Map<List<Object>, Batch> openBatches = MutableMap.of();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong commandCount = new AtomicLong();
+
+    protected SshCommandBatcher(SshMachineLocation machine) {
+        this.machine = machine;
+    }
+
+    /**
+     * Runs the command as part of a batch, returning its result when the batch completes.
+     * Commands are only batched with others using the same {@code execAsCommand} and the same ssh flags
+     * (see {@link #sshFlags(Map)}); the batch is run with the flags given for its first command.
+     */
+    public SshPollValue exec(Map<String, ?> flags, boolean execAsCommand, String command, Map<String, String> env) {
+        Request request = new Request(command, env);
+        List<Object> key = ImmutableList.<Object>of(execAsCommand, sshFlags(flags));
+        Batch toRun = null;
+        synchronized (openBatches) {
+            Batch batch = openBatches.get(key);
+            if (batch == null) {
+                batch = new Batch(execAsCommand, flags);
+                openBatches.put(key, batch);
+                toRun = batch;
+            }
+            batch.requests.add(request);
+        }
+        
+        if (toRun != null) {
+            // wait for other commands due at about the same time to join the batch, then run them all
+            boolean interrupted = true;
+            try {
+                Time.sleep(machine.config().get(BATCH_WINDOW));
+                interrupted = false;
+            } finally {
+                synchronized (openBatches) {
+                    openBatches.remove(key);
+                }
+                if (interrupted) {
+                    // no more can join; don't leave those which did waiting for a batch which will not run
+                    for (Request joined : toRun.requests) {
+                        joined.result.setException(new IllegalStateException("Batch of ssh commands interrupted before running: "+joined.command));
+                    }
+                }
+            }
+            run(toRun);
+        }
+        
+        try {
+            Duration timeout = machine.config().get(BATCH_TIMEOUT);
+            return request.result.get(timeout.toMilliseconds(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Timeout waiting for batch of ssh commands on "+machine+" to run: "+command, e);
+        } catch (ExecutionException e) {
+            throw Exceptions.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * @return the flags which can change how a command is run, i.e. those the machine passes on to its ssh tool;
+     * commands whose ssh flags differ are not batched together
+     */
+    private static Map<String, Object> sshFlags(Map<String, ?> flags) {
+        Map<String, Object> result = MutableMap.of();
+        if (flags == null) return result;
+        for (Map.Entry<String, ?> entry : flags.entrySet()) {
+            String name = entry.getKey();
+            if (name == null) continue;
+            if (SshMachineLocation.ALL_SSH_CONFIG_KEY_NAMES.contains(name) || name.startsWith(SshTool.BROOKLYN_CONFIG_KEY_PREFIX)
+                    || name.startsWith(SshMachineLocation.SSH_TOOL_CLASS_PROPERTIES_PREFIX)) {
+                result.put(name, entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private void run(Batch batch) {
+        batchCount.incrementAndGet();
+        commandCount.addAndGet(batch.requests.size());
+        try {
+            if (batch.requests.size() == 1) {
+                Request request = batch.requests.get(0);
+                request.result.set(execSingle(batch, request));
+            } else {
+                execBatch(batch);
+            }
+        } catch (Throwable t) {
+            Exceptions.propagateIfFatal(t);
+            for (Request request : batch.requests) {
+                request.result.setException(t);
+            }
+        } finally {
+            // should all be done, but never leave a caller waiting
+            for (Request request : batch.requests) {
+                if (!request.result.isDone()) {
+                    request.result.setException(new IllegalStateException("No result for ssh command in batch: "+request.command));
+                }
+            }
+        }
+    }
+
+    private SshPollValue execSingle(Batch batch, Request request) {
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        int exitStatus = exec(batch, stdout, stderr, ImmutableList.of(request.command), request.env);
+        return new SshPollValue(machine, exitStatus, new String(stdout.toByteArray()), new String(stderr.toByteArray()));
+    }
+
+    private void execBatch(Batch batch) {
+        String marker = "BROOKLYN-SSH-BATCH-"+Identifiers.makeRandomId(8);
+        List<String> lines = MutableList.of();
+        for (int i = 0; i < batch.requests.size(); i++) {
+            Request request = batch.requests.get(i);
+            StringBuilder exports = new StringBuilder();
+            if (request.env != null) {
+                for (Map.Entry<String, String> entry : request.env.entrySet()) {
+                    if (entry.getKey() == null || entry.getValue() == null) continue;
+                    exports.append("export ").append(entry.getKey()).append("=\"")
+                            .append(BashStringEscapes.escapeLiteralForDoubleQuotedBash(entry.getValue())).append("\"\n");
+                }
+            }
+            String begin = marker+":begin:"+i;
+            String end = marker+":end:"+i+":";
+            lines.add("printf '%s\\n' '"+begin+"'; printf '%s\\n' '"+begin+"' >&2");
+            // sub-shell so each command has its own env and cwd, and an exit or failure (with bash -e) does not stop the others
+            lines.add("BROOKLYN_BATCH_RC=0; (\n"+exports+request.command+"\n) || BROOKLYN_BATCH_RC=$?; "
+                    + "printf '\\n%s\\n' \""+end+"$BROOKLYN_BATCH_RC\"; printf '\\n%s\\n' '"+end+"' >&2");
+        }
+        
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        int exitStatus = exec(batch, stdout, stderr, lines, null);
+        String out = new String(stdout.toByteArray());
+        String err = new String(stderr.toByteArray());
+        if (log.isTraceEnabled()) log.trace("Ran batch of {} ssh feed commands on {}, exit status {}", new Object[] {batch.requests.size(), machine, exitStatus});
+        
+        for (int i = 0; i < batch.requests.size(); i++) {
+            Request request = batch.requests.get(i);
+            String[] stdoutAndStatus = extract(out, marker, i, true);
+            String[] stderrOnly = extract(err, marker, i, false);
+            if (stdoutAndStatus == null || stderrOnly == null) {
+                request.result.setException(new IllegalStateException("Output of ssh command not found in batch (exit status "+exitStatus+"): "+request.command));
+            } else {
+                request.result.set(new SshPollValue(machine, Integer.parseInt(stdoutAndStatus[1]), stdoutAndStatus[0], stderrOnly[0]));
+            }
+        }
+    }
+
+    private int exec(Batch batch, ByteArrayOutputStream stdout, ByteArrayOutputStream stderr, List<String> commands, Map<String, ?> env) {
+        Map<String, Object> flags = MutableMap.<String, Object>copyOf(batch.flags);
+        flags.put(SshTool.PROP_NO_EXTRA_OUTPUT.getName(), true);
+        flags.put(SshTool.PROP_OUT_STREAM.getName(), stdout);
+        flags.put(SshTool.PROP_ERR_STREAM.getName(), stderr);
+        if (batch.execAsCommand) {
+            return machine.execCommands(flags, "ssh-feed", commands, env);
+        } else {
+            return machine.execScript(flags, "ssh-feed", commands, env);
+        }
+    }
+
+    /**
+     * @return the output between the begin and end markers of the given command, and (if requested) the exit status
+     * following the end marker; or null if not found
+     */
+    private static String[] extract(String output, String marker, int index, boolean withExitStatus) {
+        String begin = marker+":begin:"+index+"\n";
+        int start = output.indexOf(begin);
+        if (start < 0) return null;
+        start += begin.length();
+        String end = "\n"+marker+":end:"+index+":";
+        int finish = output.indexOf(end, start);
+        if (finish < 0) return null;
+        String content = output.substring(start, finish);
+        if (!withExitStatus) return new String[] {content};
+        
+        int statusStart = finish + end.length();
+        int statusEnd = output.indexOf('\n', statusStart);
+        if (statusEnd < 0) statusEnd = output.length();
+        String status = output.substring(statusStart, statusEnd).trim();
+        if (!status.matches("[0-9]+")) return null;
+        return new String[] {content, status};
+    }
+
+    /** current statistics, for reporting */
+    public Map<String, Object> getMetrics() {
+        return MutableMap.<String, Object>of("batches", batchCount.get(), "commands", commandCount.get());
+    }
+
+    @Override
+    public String toString() {
+        return "SshCommandBatcher["+machine+"]";
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.brooklyn.feed.ssh;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
 import org.apache.brooklyn.feed.CommandPollConfig;
 import org.apache.brooklyn.location.ssh.SshMachineLocation;
 import org.apache.brooklyn.util.core.config.ConfigBag;
@@ -113,6 +114,10 @@ public class SshFeed extends org.apache.brooklyn.feed.AbstractCommandFeed {
         SshMachineLocation machine = (SshMachineLocation)getMachine();
         Boolean execAsCommand = config().get(EXEC_AS_COMMAND);
         if (log.isTraceEnabled()) log.trace("Ssh polling for {}, executing {} with env {}", new Object[] {machine, command, env});
+        if (BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_BATCH_SSH_FEED_COMMANDS)) {
+            return SshCommandBatcher.forMachine(machine).exec(config().getBag().getAllConfig(),
+                    Boolean.TRUE.equals(execAsCommand), command, env);
+        }
         ByteArrayOutputStream stdout = new ByteArrayOutputStream();
         ByteArrayOutputStream stderr = new ByteArrayOutputStream();
 
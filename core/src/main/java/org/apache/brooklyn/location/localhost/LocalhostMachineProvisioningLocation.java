@@ -40,6 +40,7 @@ import org.apache.brooklyn.core.location.BasicOsDetails;
 import org.apache.brooklyn.core.location.HasSubnetHostname;
 import org.apache.brooklyn.core.location.geo.HostGeoInfo;
 import org.apache.brooklyn.core.mgmt.persist.FileBasedObjectStore;
+import org.apache.brooklyn.core.mgmt.persist.JournaledFileBasedObjectStore;
 import org.apache.brooklyn.core.mgmt.persist.LocationWithObjectStore;
 import org.apache.brooklyn.core.mgmt.persist.PersistenceObjectStore;
 import org.apache.brooklyn.location.byon.FixedListMachineProvisioningLocation;
@@ -364,6 +365,14 @@ public class LocalhostMachineProvisioningLocation extends FixedListMachineProvis
     public PersistenceObjectStore newPersistenceObjectStore(String container) {
         File basedir = new File(container);
         if (basedir.isFile()) throw new IllegalArgumentException("Destination directory must not be a file");
+        if (getManagementContext()!=null && Boolean.TRUE.equals(getManagementContext().getConfig().getConfig(JournaledFileBasedObjectStore.ENABLED))) {
+            return new JournaledFileBasedObjectStore(basedir);
+        }
+        if (JournaledFileBasedObjectStore.hasJournals(basedir)) {
+            // journaling was disabled since the last (unclean) shutdown; replay what it left, then write files directly
+            LOG.info("Persistence journal found in "+basedir+" with journaling disabled; replaying it");
+            return new JournaledFileBasedObjectStore(basedir, false);
+        }
         return new FileBasedObjectStore(basedir);
     }
     
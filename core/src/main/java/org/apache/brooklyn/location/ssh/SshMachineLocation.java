@@ -67,6 +67,7 @@ import org.apache.brooklyn.core.location.access.PortForwardManager;
 import org.apache.brooklyn.core.location.access.PortForwardManagerLocationResolver;
 import org.apache.brooklyn.core.mgmt.BrooklynTaskTags;
 import org.apache.brooklyn.core.mgmt.internal.LocalLocationManager;
+import org.apache.brooklyn.feed.ssh.SshCommandBatcher;
 import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.core.ClassLoaderUtils;
 import org.apache.brooklyn.util.core.ResourceUtils;
@@ -478,6 +479,7 @@ public class SshMachineLocation extends AbstractMachineLocation implements Machi
         }
         cleanupTask = null;
         sshPoolCacheOrNull = null;
+        SshCommandBatcher.release(this);
     }
 
     @Override
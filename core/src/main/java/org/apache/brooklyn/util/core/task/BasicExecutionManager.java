@@ -20,9 +20,9 @@ package org.apache.brooklyn.util.core.task;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -33,12 +33,11 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadLocalRandom;
@@ -52,6 +51,7 @@ import org.apache.brooklyn.api.mgmt.ExecutionManager;
 import org.apache.brooklyn.api.mgmt.HasTaskChildren;
 import org.apache.brooklyn.api.mgmt.Task;
 import org.apache.brooklyn.api.mgmt.TaskAdaptable;
+import org.apache.brooklyn.config.StringConfigMap;
 import org.apache.brooklyn.core.BrooklynFeatureEnablement;
 import org.apache.brooklyn.core.config.Sanitizer;
 import org.apache.brooklyn.core.entity.Entities;
@@ -76,6 +76,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Callables;
 import com.google.common.util.concurrent.ExecutionList;
@@ -111,19 +112,29 @@ public class BasicExecutionManager implements ExecutionManager {
     private final ThreadFactory daemonThreadFactory;
     
     private final ExecutorService runner;
+    
+    private boolean usingVirtualThreads = false;
         
-    private final ScheduledExecutorService delayedRunner;
-
-    // inefficient having so many records, and also doing searches through ...
-    // many things in here could be more efficient however (different types of lookup etc),
-    // do that when we need to.
+    private final TaskTimer delayedRunner;
     
-    //access to this field AND to members in this field is synchronized, 
-    //to allow us to preserve order while guaranteeing thread-safe
-    //(but more testing is needed before we are completely sure it is thread-safe!)
-    //synch blocks are as finely grained as possible for efficiency;
-    //NB CopyOnWriteArraySet is a perf bottleneck, and the simple map makes it easier to remove when a tag is empty
-    private Map<Object,Set<Task<?>>> tasksByTag = new HashMap<Object,Set<Task<?>>>();
+    private final SchedulingLagMetrics schedulingLagMetrics = new SchedulingLagMetrics();
+
+    /** bounded pools for particular classes of task, keyed by the tag which selects them; 
+     * tasks with none of these tags run in {@link #runner} */
+    private final Map<Object, TaskPool> taskPoolsByTag = new ConcurrentHashMap<Object, TaskPool>();
+
+    // tasks indexed by each of their tags.
+    // the map is concurrent, so lookups take no global lock; each tag's set is a TasksWithTag,
+    // which keeps the tasks in the order they were submitted, in a skip list keyed by submission sequence,
+    // so reads, counts and iteration take no locks and copies need no sort.
+    // adding to and removing from a tag's set is done in compute/computeIfPresent, 
+    // which only locks that tag's bin in the map, so that a set is never discarded 
+    // as empty at the same time as a task is being added to it.
+    //NB CopyOnWriteArraySet is a perf bottleneck, so not used for the sets
+    private final ConcurrentMap<Object,TasksWithTag> tasksByTag = new ConcurrentHashMap<Object,TasksWithTag>();
+    /** the position of each indexed task in its tags' sets; removed when the task is deleted */
+    private final ConcurrentMap<Task<?>,Long> tagIndexSequenceByTask = new ConcurrentHashMap<Task<?>,Long>();
+    private final AtomicLong tagIndexSequence = new AtomicLong();
     
     private ConcurrentMap<String,Task<?>> tasksById = new ConcurrentHashMap<String,Task<?>>();
 
@@ -155,12 +166,10 @@ public class BasicExecutionManager implements ExecutionManager {
                 .setThreadFactory(threadFactory)
                 .setDaemon(true)
                 .build();
-                
-        // use Executors.newCachedThreadPool(daemonThreadFactory), but timeout of 1s rather than 60s for better shutdown!
-        runner = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 10L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), 
-                daemonThreadFactory);
+        
+        runner = newRunner(contextid);
             
-        delayedRunner = new ScheduledThreadPoolExecutor(1, daemonThreadFactory);
+        delayedRunner = newTaskTimer(contextid);
 
         if (jitterThreads) {
             log.info("Task startup jittering enabled with a maximum of " + jitterThreadsMaxDelay + " delay.");
@@ -174,6 +183,66 @@ public class BasicExecutionManager implements ExecutionManager {
         }
     }
     
+    /**
+     * Creates the executor for tasks which are not assigned to a {@link TaskPool}:
+     * a thread per task on virtual threads if {@link BrooklynFeatureEnablement#FEATURE_VIRTUAL_THREADS}
+     * is enabled and supported, otherwise an unbounded cached pool of platform threads.
+     * <p>
+     * Task bookkeeping ({@link #getPerThreadCurrentTask()}, thread renaming, per-thread execution context)
+     * is thread-local so works the same on either.
+     * Note that a virtual thread blocking while holding a monitor pins its carrier thread,
+     * so code which blocks inside {@code synchronized} blocks will see less benefit.
+     * <p>
+     * Called by the constructor, so as with {@link #newThreadFactory(String)} overriders must take care.
+     */
+    protected ExecutorService newRunner(String contextid) {
+        if (BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_VIRTUAL_THREADS)) {
+            if (VirtualThreads.isAvailable()) {
+                usingVirtualThreads = true;
+                log.info("Execution manager "+contextid+" running tasks on virtual threads");
+                return VirtualThreads.newThreadPerTaskExecutor("brooklyn-execmanager-"+contextid+"-virtual-", new UncaughtExceptionHandlerImplementation());
+            } else {
+                log.warn("Virtual threads requested for execution manager "+contextid+" but not supported in this JVM "
+                    + "(requires Java 21+); using platform threads");
+            }
+        }
+        // use Executors.newCachedThreadPool(daemonThreadFactory), but timeout of 1s rather than 60s for better shutdown!
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 10L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), 
+                daemonThreadFactory);
+    }
+
+    /**
+     * Creates the timer which starts each iteration of {@link ScheduledTask}s:
+     * a {@link HashedWheelTaskTimer} if {@link BrooklynFeatureEnablement#FEATURE_HASHED_WHEEL_TIMER} is enabled,
+     * otherwise a {@link ScheduledExecutorTaskTimer}.
+     * <p>
+     * Called by the constructor, so as with {@link #newThreadFactory(String)} overriders must take care.
+     */
+    protected TaskTimer newTaskTimer(String contextid) {
+        if (BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_HASHED_WHEEL_TIMER)) {
+            log.debug("Execution manager "+contextid+" scheduling tasks with a hashed wheel timer");
+            return new HashedWheelTaskTimer(daemonThreadFactory);
+        }
+        return new ScheduledExecutorTaskTimer(daemonThreadFactory);
+    }
+
+    @Beta
+    public TaskTimer getTaskTimer() {
+        return delayedRunner;
+    }
+
+    /** how late iterations of scheduled tasks have been started, by period; see {@link SchedulingLagMetrics} */
+    @Beta
+    public SchedulingLagMetrics getSchedulingLagMetrics() {
+        return schedulingLagMetrics;
+    }
+
+    /** whether tasks not assigned to a {@link TaskPool} are run on virtual threads */
+    @Beta
+    public boolean isUsingVirtualThreads() {
+        return usingVirtualThreads;
+    }
+    
     /** 
      * For use by overriders to use custom thread factory.
      * But be extremely careful: called by constructor, so before sub-class' constructor will
@@ -197,16 +266,84 @@ public class BasicExecutionManager implements ExecutionManager {
     public boolean shutdownNow(Duration howLongToWaitForTermination) {
         runner.shutdownNow();
         delayedRunner.shutdownNow();
+        for (TaskPool pool : getTaskPools()) {
+            pool.getExecutor().shutdownNow();
+        }
         if (howLongToWaitForTermination!=null) {
             CountdownTimer timer = howLongToWaitForTermination.countdownTimer();
             try {
                 runner.awaitTermination(timer.getDurationRemaining().toMilliseconds(), TimeUnit.MILLISECONDS);
                 if (timer.isLive()) delayedRunner.awaitTermination(timer.getDurationRemaining().toMilliseconds(), TimeUnit.MILLISECONDS);
+                for (TaskPool pool : getTaskPools()) {
+                    if (timer.isLive()) pool.getExecutor().awaitTermination(timer.getDurationRemaining().toMilliseconds(), TimeUnit.MILLISECONDS);
+                }
             } catch (InterruptedException e) {
                 throw Exceptions.propagate(e);
             }
         }
-        return runner.isTerminated() && delayedRunner.isTerminated();
+        boolean result = runner.isTerminated() && delayedRunner.isTerminated();
+        for (TaskPool pool : getTaskPools()) {
+            result &= pool.getExecutor().isTerminated();
+        }
+        return result;
+    }
+
+    /**
+     * Creates the bounded {@link TaskPool}s configured in the given properties
+     * (see {@link TaskPool} for the keys), for sensor deliveries, feed polls and effectors.
+     * Pools which are not configured are not created, and their tasks continue to use the shared pool.
+     * <p>
+     * Should be called before tasks are submitted; tasks already running are unaffected.
+     */
+    @Beta
+    public void configureTaskPools(StringConfigMap config) {
+        configureTaskPool(TaskPool.SENSOR, BrooklynTaskTags.SENSOR_TAG, config);
+        configureTaskPool(TaskPool.POLL, BrooklynTaskTags.POLL_TAG, config);
+        configureTaskPool(TaskPool.EFFECTOR, BrooklynTaskTags.EFFECTOR_TAG, config);
+    }
+
+    private void configureTaskPool(String name, Object tag, StringConfigMap config) {
+        Maybe<TaskPool> pool = TaskPool.fromConfig(name, config, daemonThreadFactory, runner);
+        if (pool.isPresent()) {
+            setTaskPoolForTag(tag, pool.get());
+        }
+    }
+
+    /** Runs subsequently submitted tasks with the given tag in the given pool (unless they are run by a {@link TaskScheduler}) */
+    @Beta
+    public void setTaskPoolForTag(Object tag, TaskPool pool) {
+        TaskPool old = taskPoolsByTag.put(tag, pool);
+        if (old!=null && old!=pool) {
+            log.debug("Replaced task pool for tag "+tag+": "+old+" now "+pool+"; old pool will be shut down when idle");
+            old.getExecutor().shutdown();
+        }
+    }
+
+    /** the bounded task pools in use */
+    @Beta
+    public Collection<TaskPool> getTaskPools() {
+        return Collections.unmodifiableCollection(taskPoolsByTag.values());
+    }
+
+    /** statistics for each bounded task pool, keyed by pool name */
+    @Beta
+    public Map<String, Map<String, Object>> getTaskPoolMetrics() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<String, Map<String, Object>>();
+        for (TaskPool pool : getTaskPools()) {
+            result.put(pool.getName(), pool.getMetrics());
+        }
+        return result;
+    }
+
+    /** the executor to use for a task with the given tags: the pool for the first tag which has one, or the shared pool */
+    protected ExecutorService getExecutorForTags(Iterable<?> tags) {
+        if (!taskPoolsByTag.isEmpty() && tags!=null) {
+            for (Object tag : tags) {
+                TaskPool pool = tag==null ? null : taskPoolsByTag.get(tag);
+                if (pool!=null) return pool.getExecutor();
+            }
+        }
+        return runner;
     }
     
     public void addListener(ExecutionListener listener) {
@@ -224,10 +361,7 @@ public class BasicExecutionManager implements ExecutionManager {
      * a reference to it as a tag.
      */
     public void deleteTag(Object tag) {
-        Set<Task<?>> tasks;
-        synchronized (tasksByTag) {
-            tasks = tasksByTag.remove(tag);
-        }
+        TasksWithTag tasks = tasksByTag.remove(tag);
         if (tasks != null) {
             for (Task<?> task : tasks) {
                 deleteTask(task);
@@ -249,15 +383,10 @@ public class BasicExecutionManager implements ExecutionManager {
 
     protected boolean deleteTaskNonRecursive(Task<?> task) {
         Set<?> tags = TaskTags.getTagsFast(checkNotNull(task, "task"));
-        for (Object tag : tags) {
-            synchronized (tasksByTag) {
-                Set<Task<?>> tasks = tasksWithTagLiveOrNull(tag);
-                if (tasks != null) {
-                    tasks.remove(task);
-                    if (tasks.isEmpty()) {
-                        tasksByTag.remove(tag);
-                    }
-                }
+        Long sequence = tagIndexSequenceByTask.remove(task);
+        if (sequence!=null) {
+            for (Object tag : tags) {
+                removeTaskFromTag(tag, sequence);
             }
         }
         Task<?> removed = tasksById.remove(task.getId());
@@ -298,24 +427,77 @@ public class BasicExecutionManager implements ExecutionManager {
         return tasksById.size();
     }
 
-    private Set<Task<?>> tasksWithTagCreating(Object tag) {
+    private void addTaskToTag(Object tag, final Task<?> task, final long sequence) {
         Preconditions.checkNotNull(tag);
-        synchronized (tasksByTag) {
-            Set<Task<?>> result = tasksWithTagLiveOrNull(tag);
-            if (result==null) {
-                result = Collections.synchronizedSet(new LinkedHashSet<Task<?>>());
-                tasksByTag.put(tag, result);
-            }
-            return result;
+        tasksByTag.compute(tag, (k, tasks) -> {
+            if (tasks==null) tasks = new TasksWithTag();
+            tasks.add(sequence, task);
+            return tasks;
+        });
+    }
+
+    private void removeTaskFromTag(Object tag, final long sequence) {
+        tasksByTag.computeIfPresent(tag, (k, tasks) -> {
+            tasks.remove(sequence);
+            return tasks.isEmpty() ? null : tasks;
+        });
+    }
+
+    /** The tasks with one tag, in the order they were submitted. Reads, {@link #size()} and iteration
+     * take no locks; iteration is weakly consistent, as for other concurrent collections. */
+    private class TasksWithTag extends AbstractSet<Task<?>> {
+        private final ConcurrentSkipListMap<Long,Task<?>> tasks = new ConcurrentSkipListMap<Long,Task<?>>();
+        // the skip list's own size() walks the whole list
+        private final AtomicInteger size = new AtomicInteger();
+
+        void add(long sequence, Task<?> task) {
+            if (tasks.put(sequence, task)==null) size.incrementAndGet();
+        }
+
+        void remove(long sequence) {
+            if (tasks.remove(sequence)!=null) size.decrementAndGet();
+        }
+
+        @Override
+        public Iterator<Task<?>> iterator() {
+            return Iterators.unmodifiableIterator(tasks.values().iterator());
+        }
+
+        @Override
+        public int size() {
+            return size.get();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return tasks.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            Long sequence = (o instanceof Task) ? tagIndexSequenceByTask.get(o) : null;
+            return sequence!=null && tasks.get(sequence)==o;
         }
     }
 
-    /** exposes live view, for internal use only */
+    /** exposes live, unmodifiable view, for internal use only; it can be read and iterated without locking,
+     * but it may be discarded from the index (and so go stale) if it becomes empty */
     @Beta
     public Set<Task<?>> tasksWithTagLiveOrNull(Object tag) {
-        synchronized (tasksByTag) {
-            return tasksByTag.get(tag);
-        }
+        return tasksByTag.get(tag);
+    }
+
+    /** number of tasks currently known with the given tag, without copying them */
+    @Beta
+    public int getNumTasksWithTag(Object tag) {
+        TasksWithTag result = tasksByTag.get(tag);
+        return result==null ? 0 : result.size();
+    }
+
+    /** live view of the tags of all known tasks, for internal use only */
+    @Beta
+    public Set<Object> getTaskTagsLive() {
+        return Collections.unmodifiableSet(tasksByTag.keySet());
     }
 
     @Override
@@ -336,9 +518,7 @@ public class BasicExecutionManager implements ExecutionManager {
     public Set<Task<?>> getTasksWithTag(Object tag) {
         Set<Task<?>> result = tasksWithTagLiveOrNull(tag);
         if (result==null) return Collections.emptySet();
-        synchronized (result) {
-            return Collections.unmodifiableSet(new LinkedHashSet<Task<?>>(result));
-        }
+        return Collections.unmodifiableSet(new LinkedHashSet<Task<?>>(result));
     }
     
     @Override
@@ -348,9 +528,7 @@ public class BasicExecutionManager implements ExecutionManager {
         while (ti.hasNext()) {
             Set<Task<?>> tasksForTag = tasksWithTagLiveOrNull(ti.next());
             if (tasksForTag!=null) {
-                synchronized (tasksForTag) {
-                    result.addAll(tasksForTag);
-                }
+                result.addAll(tasksForTag);
             }
         }
         return Collections.unmodifiableSet(result);
@@ -383,9 +561,7 @@ public class BasicExecutionManager implements ExecutionManager {
     
     @Override
     public Set<Object> getTaskTags() { 
-        synchronized (tasksByTag) {
-            return Collections.unmodifiableSet(Sets.newLinkedHashSet(tasksByTag.keySet())); 
-        }
+        return Collections.unmodifiableSet(Sets.newLinkedHashSet(tasksByTag.keySet())); 
     }
 
     @Override @Deprecated public Task<?> submit(Runnable r) { return submit(new LinkedHashMap<Object,Object>(1), r); }
@@ -427,8 +603,9 @@ public class BasicExecutionManager implements ExecutionManager {
     
     private boolean submitSubsequentScheduledTask(final Map<?,?> flags, final ScheduledTask task) {
         if (!task.isDone()) {
-            task.internalFuture = delayedRunner.schedule(new ScheduledTaskCallable(task, flags),
-                task.delay.toNanoseconds(), TimeUnit.NANOSECONDS);
+            long delayNanos = task.delay.toNanoseconds();
+            task.internalFuture = delayedRunner.schedule(new ScheduledTaskCallable(task, flags, System.nanoTime() + delayNanos),
+                delayNanos, TimeUnit.NANOSECONDS);
             return true;
         } else {
             return false;
@@ -438,15 +615,25 @@ public class BasicExecutionManager implements ExecutionManager {
     protected class ScheduledTaskCallable implements Callable<Object> {
         public ScheduledTask task;
         public Map<?,?> flags;
+        /** {@link System#nanoTime()} at which this iteration is due, or {@link Long#MIN_VALUE} if not known */
+        private final long dueNanos;
 
         public ScheduledTaskCallable(ScheduledTask task, Map<?, ?> flags) {
+            this(task, flags, Long.MIN_VALUE);
+        }
+
+        public ScheduledTaskCallable(ScheduledTask task, Map<?, ?> flags, long dueNanos) {
             this.task = task;
             this.flags = flags;
+            this.dueNanos = dueNanos;
         }
 
         @Override
         @SuppressWarnings({ "rawtypes", "unchecked" })
         public Object call() {
+            if (dueNanos!=Long.MIN_VALUE) {
+                schedulingLagMetrics.record(task.period, System.nanoTime() - dueNanos);
+            }
             if (task.startTimeUtc==-1) {
                 // this is overwritten on each run; not sure if that's best or not
                 task.startTimeUtc = System.currentTimeMillis();
@@ -720,7 +907,7 @@ public class BasicExecutionManager implements ExecutionManager {
             if (schedulers.size()>1) log.warn("multiple schedulers detected, using only the first, for "+task+": "+schedulers);
             future = schedulers.iterator().next().submit(job);
         } else {
-            future = runner.submit(job);
+            future = getExecutorForTags(BrooklynTaskTags.getTagsFast(task)).submit(job);
         }
         afterSubmitRecordFuture(task, future);
         
@@ -766,8 +953,9 @@ public class BasicExecutionManager implements ExecutionManager {
         if (flags!=null && flags.get("tag")!=null) ((TaskInternal<?>)task).getMutableTags().add(flags.remove("tag"));
         if (flags!=null && flags.get("tags")!=null) ((TaskInternal<?>)task).getMutableTags().addAll((Collection<?>)flags.remove("tags"));
 
+        long sequence = tagIndexSequenceByTask.computeIfAbsent(task, t -> tagIndexSequence.incrementAndGet());
         for (Object tag: BrooklynTaskTags.getTagsFast(task)) {
-            tasksWithTagCreating(tag).add(task);
+            addTaskToTag(tag, task, sequence);
         }
         
         tasksById.put(task.getId(), task);
@@ -993,6 +1181,17 @@ public class BasicExecutionManager implements ExecutionManager {
     }
     
     public void setTaskSchedulerForTag(Object tag, Class<? extends TaskScheduler> scheduler) {
+        setTaskSchedulerForTag(tag, scheduler, null);
+    }
+
+    /**
+     * As {@link #setTaskSchedulerForTag(Object, Class)}, but where a new scheduler is created
+     * it runs its tasks in the {@link TaskPool} for the given pool tag, if there is one.
+     * For example subscription deliveries use a scheduler per subscriber,
+     * but should run in the pool for {@link BrooklynTaskTags#SENSOR_TAG}.
+     */
+    @Beta
+    public void setTaskSchedulerForTag(Object tag, Class<? extends TaskScheduler> scheduler, Object poolTag) {
         synchronized (schedulerByTag) {
             TaskScheduler old = getTaskSchedulerForTag(tag);
             if (old!=null) {
@@ -1007,7 +1206,7 @@ public class BasicExecutionManager implements ExecutionManager {
                 TaskScheduler schedulerI = scheduler.newInstance();
                 // allow scheduler to have a nice name, for logging etc
                 if (schedulerI instanceof CanSetName) ((CanSetName)schedulerI).setName(""+tag);
-                setTaskSchedulerForTag(tag, schedulerI);
+                setTaskSchedulerForTag(tag, schedulerI, getExecutorForTags(poolTag==null ? null : ImmutableList.of(poolTag)));
             } catch (InstantiationException e) {
                 throw Exceptions.propagate(e);
             } catch (IllegalAccessException e) {
@@ -1025,8 +1224,12 @@ public class BasicExecutionManager implements ExecutionManager {
      * @see #setTaskSchedulerForTag(Object, Class)
      */
     public void setTaskSchedulerForTag(Object tag, TaskScheduler scheduler) {
+        setTaskSchedulerForTag(tag, scheduler, runner);
+    }
+
+    private void setTaskSchedulerForTag(Object tag, TaskScheduler scheduler, ExecutorService executor) {
         synchronized (schedulerByTag) {
-            scheduler.injectExecutor(runner);
+            scheduler.injectExecutor(executor);
 
             Object old = schedulerByTag.put(tag, scheduler);
             if (old!=null && old!=scheduler) {
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.util.core.task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Preconditions;
+
+/**
+ * {@link TaskTimer} using a hashed timing wheel: scheduling and cancelling are O(1) and take no
+ * shared lock, at the cost of jobs running up to one tick late (they never run early).
+ * <p>
+ * The wheel is an array of buckets, each covering one tick. A single thread advances through
+ * the buckets once per tick, running the jobs in the current bucket which are due and leaving
+ * those due on a later revolution. New jobs are handed to that thread on a lock-free queue,
+ * and cancelled jobs are dropped when their bucket is next visited.
+ * <p>
+ * Suits very many recurring tasks (such as feed polls) whose periods are long relative to the tick.
+ */
+@Beta
+public class HashedWheelTaskTimer implements TaskTimer {
+
+    private static final Logger log = LoggerFactory.getLogger(HashedWheelTaskTimer.class);
+
+    public static final Duration DEFAULT_TICK = Duration.millis(10);
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    private final long tickNanos;
+    private final List<Timeout<?>>[] wheel;
+    private final int mask;
+    private final Queue<Timeout<?>> newTimeouts = new ConcurrentLinkedQueue<Timeout<?>>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final Thread worker;
+    private final long startNanos;
+    private volatile boolean shutdown = false;
+
+    public HashedWheelTaskTimer(ThreadFactory threadFactory) {
+        this(threadFactory, DEFAULT_TICK, DEFAULT_TICKS_PER_WHEEL);
+    }
+
+    /**
+     * @param tick granularity of the timer; jobs may run up to this much later than requested
+     * @param ticksPerWheel number of buckets, rounded up to a power of two; jobs due further ahead
+     *        than {@code tick * ticksPerWheel} stay in their bucket for several revolutions
+     */
+    @SuppressWarnings("unchecked")
+    public HashedWheelTaskTimer(ThreadFactory threadFactory, Duration tick, int ticksPerWheel) {
+        Preconditions.checkArgument(tick.isPositive(), "tick must be positive");
+        Preconditions.checkArgument(ticksPerWheel > 0 && ticksPerWheel <= (1<<30), "ticksPerWheel must be between 1 and 2^30");
+        this.tickNanos = tick.toNanoseconds();
+        int size = Integer.highestOneBit(ticksPerWheel);
+        if (size < ticksPerWheel) size <<= 1;
+        wheel = new List[size];
+        for (int i=0; i<size; i++) wheel[i] = new ArrayList<Timeout<?>>();
+        mask = size-1;
+        
+        startNanos = System.nanoTime();
+        worker = threadFactory.newThread(new Runnable() {
+            @Override public void run() { runWheel(); }
+            @Override public String toString() { return "HashedWheelTaskTimer.worker"; }
+        });
+        worker.start();
+    }
+
+    @Override
+    public <T> ScheduledFuture<T> schedule(Callable<T> job, long delay, TimeUnit unit) {
+        if (shutdown) throw new RejectedExecutionException("Timer "+this+" has been shut down");
+        Timeout<T> result = new Timeout<T>(job, System.nanoTime() + Math.max(0, unit.toNanos(delay)));
+        pendingCount.incrementAndGet();
+        newTimeouts.add(result);
+        return result;
+    }
+
+    /** number of jobs scheduled but not yet run or dropped after cancellation */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    @Override
+    public void shutdownNow() {
+        shutdown = true;
+        worker.interrupt();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        unit.timedJoin(worker, timeout);
+        return isTerminated();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && !worker.isAlive();
+    }
+
+    private void runWheel() {
+        long tick = 0;
+        while (!shutdown) {
+            long tickEnd = startNanos + (tick+1)*tickNanos;
+            long sleep;
+            while ((sleep = tickEnd - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, sleep);
+                // clear any interrupt, else we would no longer park
+                Thread.interrupted();
+                if (shutdown) return;
+            }
+            transferNewTimeouts(tick);
+            expire(wheel[(int)(tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferNewTimeouts(long currentTick) {
+        Timeout<?> t;
+        while ((t = newTimeouts.poll()) != null) {
+            if (t.isCancelled()) {
+                pendingCount.decrementAndGet();
+                continue;
+            }
+            // the bucket whose tick contains the deadline; that bucket is processed at the end of its tick, so never early
+            long dueTick = Math.max(currentTick, (t.deadlineNanos - startNanos) / tickNanos);
+            t.remainingRounds = (dueTick - currentTick) / wheel.length;
+            wheel[(int)(dueTick & mask)].add(t);
+        }
+    }
+
+    private void expire(List<Timeout<?>> bucket) {
+        int kept = 0;
+        for (int i=0; i<bucket.size(); i++) {
+            Timeout<?> t = bucket.get(i);
+            if (t.isCancelled()) {
+                pendingCount.decrementAndGet();
+            } else if (t.remainingRounds > 0) {
+                t.remainingRounds--;
+                bucket.set(kept++, t);
+            } else {
+                pendingCount.decrementAndGet();
+                try {
+                    t.run();
+                } catch (Throwable e) {
+                    // FutureTask records failures in the future, so should not happen
+                    log.warn("Error running timer job "+t+" in "+this, e);
+                }
+                if (shutdown) return;
+            }
+        }
+        for (int i=bucket.size()-1; i>=kept; i--) bucket.remove(i);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()+"[tick="+Duration.nanos(tickNanos)+"; ticksPerWheel="+wheel.length+"; pending="+pendingCount.get()+"]";
+    }
+
+    private static class Timeout<T> extends FutureTask<T> implements ScheduledFuture<T> {
+        final long deadlineNanos;
+        // only accessed by the worker thread
+        long remainingRounds;
+
+        Timeout(Callable<T> job, long deadlineNanos) {
+            super(job);
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            if (o == this) return 0;
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), o.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.util.core.task;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * {@link TaskTimer} backed by a single-threaded {@link ScheduledThreadPoolExecutor}.
+ * Precise, but every schedule and cancel is O(log n) on a heap guarded by a single lock,
+ * which can become a hotspot with very many recurring tasks; see {@link HashedWheelTaskTimer}.
+ */
+@Beta
+public class ScheduledExecutorTaskTimer implements TaskTimer {
+
+    private final ScheduledExecutorService executor;
+
+    public ScheduledExecutorTaskTimer(ThreadFactory threadFactory) {
+        this(new ScheduledThreadPoolExecutor(1, threadFactory));
+    }
+
+    public ScheduledExecutorTaskTimer(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public <T> ScheduledFuture<T> schedule(Callable<T> job, long delay, TimeUnit unit) {
+        return executor.schedule(job, delay, unit);
+    }
+
+    @Override
+    public void shutdownNow() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()+"["+executor+"]";
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.util.core.task;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.time.Duration;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Records how late each iteration of a {@link ScheduledTask} is started by the execution manager's
+ * {@link TaskTimer}, relative to when it was due, grouped by the task's period.
+ */
+@Beta
+public class SchedulingLagMetrics {
+
+    private static final Duration[] BUCKET_LIMITS = new Duration[] {
+        Duration.ONE_SECOND, Duration.TEN_SECONDS, Duration.ONE_MINUTE, Duration.minutes(10) };
+    private static final String[] BUCKET_NAMES = new String[] {
+        "periodUpTo1s", "periodUpTo10s", "periodUpTo1m", "periodUpTo10m", "periodLonger" };
+    private static final String ONCE = "once";
+
+    private static class Bucket {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong totalLagNanos = new AtomicLong();
+        final AtomicLong maxLagNanos = new AtomicLong();
+    }
+
+    private final Bucket once = new Bucket();
+    private final Bucket[] byPeriod = new Bucket[BUCKET_NAMES.length];
+
+    public SchedulingLagMetrics() {
+        for (int i=0; i<byPeriod.length; i++) byPeriod[i] = new Bucket();
+    }
+
+    /** records an iteration started {@code lagNanos} after it was due, for a task with the given period (or null if not recurring) */
+    public void record(Duration period, long lagNanos) {
+        Bucket b = bucketFor(period);
+        long lag = Math.max(0, lagNanos);
+        b.count.incrementAndGet();
+        b.totalLagNanos.addAndGet(lag);
+        b.maxLagNanos.accumulateAndGet(lag, Math::max);
+    }
+
+    private Bucket bucketFor(Duration period) {
+        if (period==null) return once;
+        for (int i=0; i<BUCKET_LIMITS.length; i++) {
+            if (period.compareTo(BUCKET_LIMITS[i]) <= 0) return byPeriod[i];
+        }
+        return byPeriod[byPeriod.length-1];
+    }
+
+    /** count, mean and max lag (in milliseconds) for each period bucket which has recorded anything */
+    public Map<String, Map<String, Object>> getMetrics() {
+        Map<String, Map<String, Object>> result = MutableMap.of();
+        addMetrics(result, ONCE, once);
+        for (int i=0; i<byPeriod.length; i++) {
+            addMetrics(result, BUCKET_NAMES[i], byPeriod[i]);
+        }
+        return result;
+    }
+
+    private static void addMetrics(Map<String, Map<String, Object>> result, String name, Bucket b) {
+        long count = b.count.get();
+        if (count==0) return;
+        result.put(name, MutableMap.<String, Object>of(
+            "count", count,
+            "meanLagMillis", TimeUnit.NANOSECONDS.toMillis(b.totalLagNanos.get() / count),
+            "maxLagMillis", TimeUnit.NANOSECONDS.toMillis(b.maxLagNanos.get())));
+    }
+
+    @Override
+    public String toString() {
+        return getMetrics().toString();
+    }
+}
@@ -25,6 +25,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -33,6 +34,8 @@ import org.apache.brooklyn.api.mgmt.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.Futures;
+
 /**
  * Instances of this class ensures that {@link Task}s execute with in-order
  * single-threaded semantics.
@@ -43,6 +46,10 @@ import org.slf4j.LoggerFactory;
  * This implementation does so by blocking on a {@link ConcurrentLinkedQueue}, <em>after</em>
  * the task is started in a thread (and {@link Task#isBegun()} returns true), but (of course)
  * <em>before</em> the {@link TaskInternal#getJob()} actually gets invoked.
+ * <p>
+ * If the executor rejects a task, for instance a {@link TaskPool} with the
+ * {@link TaskPool.RejectionPolicy#ABORT} policy, that task fails with the
+ * {@link RejectedExecutionException} and the scheduler carries on with the next one.
  */
 public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
     private static final Logger LOG = LoggerFactory.getLogger(SingleThreadedScheduler.class);
@@ -73,7 +80,13 @@ public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
     @Override
     public synchronized <T> Future<T> submit(Callable<T> c) {
         if (running.compareAndSet(false, true)) {
-            return executeNow(c);
+            try {
+                return executeNow(c);
+            } catch (RejectedExecutionException e) {
+                // e.g. a bounded pool with the ABORT policy; nothing is running, so later submissions must start afresh
+                running.set(false);
+                throw e;
+            }
         } else {
             WrappingFuture<T> f = new WrappingFuture<T>();
             order.add(new QueuedSubmission<T>(c, f));
@@ -101,7 +114,16 @@ public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
                 QueuedSubmission<?> qs = order.remove();
                 queueSize--;
                 if (!qs.f.isCancelled()) {
-                    Future future = executeNow(qs.c);
+                    Future future;
+                    try {
+                        future = executeNow(qs.c);
+                    } catch (RejectedExecutionException e) {
+                        // fail just this submission, as the executor would have done had it been submitted directly,
+                        // and carry on with the queue so that later submissions are not stuck behind it
+                        LOG.warn("{} could not run queued task {}, executor rejected it: {}", new Object[] {this, qs, e});
+                        qs.f.setDelegate(Futures.immediateFailedFuture(e));
+                        continue;
+                    }
                     qs.f.setDelegate(future);
                     done = true;
                 }
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.util.core.task;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.config.StringConfigMap;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.guava.Maybe;
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Preconditions;
+
+/**
+ * A bounded pool of threads used by {@link BasicExecutionManager} for a class of tasks,
+ * such as sensor deliveries, feed polls or effectors, identified by a tag on the task.
+ * <p>
+ * Pools are configured in brooklyn.properties, using keys of the form
+ * {@code brooklyn.executionManager.pool.<name>.<setting>}, e.g.
+ * <pre>
+ * brooklyn.executionManager.pool.sensor.coreSize=8
+ * brooklyn.executionManager.pool.sensor.maxSize=32
+ * brooklyn.executionManager.pool.sensor.queueSize=10000
+ * brooklyn.executionManager.pool.sensor.rejectionPolicy=OVERFLOW
+ * </pre>
+ * A pool is only created if its {@code maxSize} is set; otherwise its tasks run in the
+ * execution manager's shared, unbounded pool, as before.
+ * <p>
+ * Take care with tasks which block on other tasks in the same pool (effectors calling
+ * effectors on children, for example): if the pool is full and has a queue, the child may be
+ * queued behind its blocked parent forever. For such pools leave the {@code queueSize} at 0,
+ * so that once {@code maxSize} threads are busy further tasks overflow to the shared pool.
+ */
+@Beta
+public class TaskPool {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskPool.class);
+
+    public static final String POOL_PROPERTY_PREFIX = "brooklyn.executionManager.pool";
+
+    /** pool for tasks tagged {@link org.apache.brooklyn.core.mgmt.BrooklynTaskTags#SENSOR_TAG} */
+    public static final String SENSOR = "sensor";
+    /** pool for tasks tagged {@link org.apache.brooklyn.core.mgmt.BrooklynTaskTags#POLL_TAG} */
+    public static final String POLL = "poll";
+    /** pool for tasks tagged {@link org.apache.brooklyn.core.mgmt.BrooklynTaskTags#EFFECTOR_TAG} */
+    public static final String EFFECTOR = "effector";
+
+    /** What to do with a task when the pool has {@code maxSize} threads busy and its queue is full */
+    public enum RejectionPolicy {
+        /** run the task in the execution manager's shared, unbounded pool */
+        OVERFLOW,
+        /** fail the submission with a {@link java.util.concurrent.RejectedExecutionException} */
+        ABORT
+    }
+
+    public static ConfigKey<Integer> coreSizeKey(String pool) {
+        return ConfigKeys.newIntegerConfigKey(POOL_PROPERTY_PREFIX+"."+pool+".coreSize",
+            "number of threads kept in the "+pool+" task pool even when idle", 0);
+    }
+
+    public static ConfigKey<Integer> maxSizeKey(String pool) {
+        return ConfigKeys.newIntegerConfigKey(POOL_PROPERTY_PREFIX+"."+pool+".maxSize",
+            "maximum number of threads in the "+pool+" task pool; if not set, the pool is not used", null);
+    }
+
+    public static ConfigKey<Integer> queueSizeKey(String pool) {
+        return ConfigKeys.newIntegerConfigKey(POOL_PROPERTY_PREFIX+"."+pool+".queueSize",
+            "number of tasks which can wait for a thread in the "+pool+" task pool; "
+            + "0 for none, -1 for unbounded", 0);
+    }
+
+    public static ConfigKey<Duration> keepAliveKey(String pool) {
+        return ConfigKeys.newDurationConfigKey(POOL_PROPERTY_PREFIX+"."+pool+".keepAlive",
+            "how long threads above the core size are kept in the "+pool+" task pool when idle", Duration.TEN_SECONDS);
+    }
+
+    public static ConfigKey<RejectionPolicy> rejectionPolicyKey(String pool) {
+        return ConfigKeys.newConfigKey(RejectionPolicy.class, POOL_PROPERTY_PREFIX+"."+pool+".rejectionPolicy",
+            "what to do with tasks when the "+pool+" task pool is full (OVERFLOW or ABORT)", RejectionPolicy.OVERFLOW);
+    }
+
+    /**
+     * Creates the named pool from the given config, if its {@code maxSize} is set.
+     *
+     * @param overflow executor used for tasks the pool cannot accept, when the policy is {@link RejectionPolicy#OVERFLOW}
+     */
+    public static Maybe<TaskPool> fromConfig(String name, StringConfigMap config, ThreadFactory threadFactory, Executor overflow) {
+        Integer maxSize = config.getConfig(maxSizeKey(name));
+        if (maxSize==null) return Maybe.absent("No maxSize configured for task pool "+name);
+        TaskPool result = new TaskPool(name, config.getConfig(coreSizeKey(name)), maxSize, config.getConfig(queueSizeKey(name)),
+            config.getConfig(keepAliveKey(name)), config.getConfig(rejectionPolicyKey(name)), threadFactory, overflow);
+        log.debug("Created task pool "+result);
+        return Maybe.of(result);
+    }
+
+    private final String name;
+    private final RejectionPolicy rejectionPolicy;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong overflowCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public TaskPool(String name, int coreSize, int maxSize, int queueSize, Duration keepAlive, RejectionPolicy rejectionPolicy,
+            ThreadFactory threadFactory, final Executor overflow) {
+        Preconditions.checkArgument(maxSize > 0, "maxSize must be positive for task pool %s", name);
+        Preconditions.checkArgument(coreSize >= 0 && coreSize <= maxSize, "coreSize must be between 0 and maxSize for task pool %s", name);
+        this.name = name;
+        this.rejectionPolicy = Preconditions.checkNotNull(rejectionPolicy, "rejectionPolicy");
+
+        BlockingQueue<Runnable> queue;
+        if (queueSize < 0) queue = new LinkedBlockingQueue<Runnable>();
+        else if (queueSize == 0) queue = new SynchronousQueue<Runnable>();
+        else queue = new ArrayBlockingQueue<Runnable>(queueSize);
+
+        RejectedExecutionHandler handler;
+        switch (rejectionPolicy) {
+        case OVERFLOW:
+            Preconditions.checkNotNull(overflow, "overflow executor required for task pool %s", name);
+            handler = new RejectedExecutionHandler() {
+                @Override public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                    overflowCount.incrementAndGet();
+                    overflow.execute(r);
+                }};
+            break;
+        case ABORT:
+            handler = new RejectedExecutionHandler() {
+                final RejectedExecutionHandler delegate = new ThreadPoolExecutor.AbortPolicy();
+                @Override public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                    rejectedCount.incrementAndGet();
+                    delegate.rejectedExecution(r, executor);
+                }};
+            break;
+        default:
+            throw new IllegalStateException("Unsupported rejection policy "+rejectionPolicy+" for task pool "+name);
+        }
+
+        // with an unbounded queue the pool never grows beyond the core size, so make the core the max
+        int effectiveCoreSize = (queueSize < 0) ? maxSize : coreSize;
+        executor = new ThreadPoolExecutor(effectiveCoreSize, maxSize, keepAlive.toMilliseconds(), TimeUnit.MILLISECONDS, queue, threadFactory, handler);
+        if (queueSize < 0) executor.allowCoreThreadTimeOut(true);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /** current statistics for this pool, for reporting */
+    public Map<String, Object> getMetrics() {
+        return MutableMap.<String, Object>of(
+            "poolSize", executor.getPoolSize(),
+            "activeCount", executor.getActiveCount(),
+            "largestPoolSize", executor.getLargestPoolSize(),
+            "maxSize", executor.getMaximumPoolSize(),
+            "queueSize", executor.getQueue().size(),
+            "completedTaskCount", executor.getCompletedTaskCount())
+            .add("overflowCount", overflowCount.get())
+            .add("rejectedCount", rejectedCount.get());
+    }
+
+    @Override
+    public String toString() {
+        return "TaskPool["+name+"; core="+executor.getCorePoolSize()+"; max="+executor.getMaximumPoolSize()+"; policy="+rejectionPolicy+"]";
+    }
+}
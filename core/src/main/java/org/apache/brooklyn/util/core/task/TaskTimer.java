@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.util.core.task;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Runs jobs after a delay, for {@link BasicExecutionManager} to start each iteration of a {@link ScheduledTask}.
+ * <p>
+ * Jobs run on the timer's own thread(s), so must be quick; the execution manager's jobs only
+ * create and submit the next task. Returned futures support {@link ScheduledFuture#getDelay(TimeUnit)}
+ * (used by {@link ScheduledTask#getNextScheduled()}), {@link ScheduledFuture#cancel(boolean)} and blocking
+ * on the job's result.
+ * <p>
+ * See {@link ScheduledExecutorTaskTimer} (the default) and {@link HashedWheelTaskTimer}.
+ */
+@Beta
+public interface TaskTimer {
+
+    /** @throws java.util.concurrent.RejectedExecutionException if the timer has been shut down */
+    <T> ScheduledFuture<T> schedule(Callable<T> job, long delay, TimeUnit unit);
+
+    /** stops the timer; jobs not yet run will not be run */
+    void shutdownNow();
+
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException;
+
+    boolean isTerminated();
+}
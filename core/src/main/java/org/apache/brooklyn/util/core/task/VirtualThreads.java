@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.util.core.task;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.guava.Maybe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Access to virtual threads (Java 21+), for use by {@link BasicExecutionManager}.
+ * <p>
+ * Brooklyn is compiled for older Java versions, so this uses reflection,
+ * and reports virtual threads as unavailable when running on an older JVM
+ * (or on a JVM where they are only a disabled preview feature).
+ */
+@Beta
+public class VirtualThreads {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final Maybe<Void> AVAILABLE = checkAvailable();
+
+    private VirtualThreads() {}
+
+    private static Maybe<Void> checkAvailable() {
+        try {
+            // creating (but not starting) a thread also fails fast where they are a disabled preview
+            newThreadFactory("brooklyn-virtual-check-", null).newThread(new Runnable() {
+                @Override public void run() {}
+            });
+            return Maybe.ofAllowingNull((Void)null);
+        } catch (Throwable t) {
+            Exceptions.propagateIfFatal(t);
+            return Maybe.absent("Virtual threads not available in this JVM ("+System.getProperty("java.version")+"): "+t, t);
+        }
+    }
+
+    /** whether virtual threads can be used in this JVM */
+    public static boolean isAvailable() {
+        return AVAILABLE.isPresent();
+    }
+
+    /** @return a factory for virtual threads named with the given prefix and a counter, throwing if not {@link #isAvailable()} */
+    public static ThreadFactory newThreadFactory(String namePrefix, Thread.UncaughtExceptionHandler handler) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            if (handler!=null) {
+                builder = builderType.getMethod("uncaughtExceptionHandler", Thread.UncaughtExceptionHandler.class).invoke(builder, handler);
+            }
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /** @return an executor which starts a new virtual thread for each task, throwing if not {@link #isAvailable()} */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix, Thread.UncaughtExceptionHandler handler) {
+        AVAILABLE.get();
+        ThreadFactory factory = newThreadFactory(namePrefix, handler);
+        try {
+            ExecutorService result = (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+            log.debug("Created virtual thread per task executor for "+namePrefix);
+            return result;
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+}
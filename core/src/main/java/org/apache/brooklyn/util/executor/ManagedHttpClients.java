@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.util.executor;
+
+import java.util.Map;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.api.mgmt.Scratchpad;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.config.StringConfigMap;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.guava.Maybe;
+import org.apache.brooklyn.util.http.executor.HttpExecutor;
+import org.apache.brooklyn.util.http.executor.apacheclient.HttpExecutorImpl;
+import org.apache.brooklyn.util.http.executor.apacheclient.SharedHttpClients;
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Access to the {@link SharedHttpClients} of a management context, so that HTTP feeds and effectors
+ * across all entities can reuse pooled connections.
+ * <p>
+ * Pooling is enabled by setting {@code brooklyn.http.pool.enabled=true} in brooklyn.properties;
+ * otherwise {@link #newHttpExecutor(ManagementContext)} returns an executor which builds a new client
+ * for each request, as before.
+ */
+@Beta
+public class ManagedHttpClients {
+
+    private static final Logger log = LoggerFactory.getLogger(ManagedHttpClients.class);
+
+    public static final ConfigKey<Boolean> POOL_ENABLED = ConfigKeys.newBooleanConfigKey("brooklyn.http.pool.enabled",
+            "Whether HTTP feeds and effectors share pooled, kept-alive connections, rather than using a new client per request", false);
+
+    public static final ConfigKey<Integer> POOL_MAX_TOTAL = ConfigKeys.newIntegerConfigKey("brooklyn.http.pool.maxTotal",
+            "Maximum number of connections in each shared HTTP client's pool", SharedHttpClients.DEFAULT_MAX_TOTAL);
+
+    public static final ConfigKey<Integer> POOL_MAX_PER_ROUTE = ConfigKeys.newIntegerConfigKey("brooklyn.http.pool.maxPerRoute",
+            "Maximum number of connections to any one host and port in each shared HTTP client's pool", SharedHttpClients.DEFAULT_MAX_PER_ROUTE);
+
+    public static final ConfigKey<Duration> POOL_IDLE_TIMEOUT = ConfigKeys.newDurationConfigKey("brooklyn.http.pool.idleTimeout",
+            "How long an unused pooled HTTP connection is kept open for reuse", SharedHttpClients.DEFAULT_IDLE_TIMEOUT);
+
+    public static final ConfigKey<Duration> POOL_EXPIRY = ConfigKeys.newDurationConfigKey("brooklyn.http.pool.expiry",
+            "How long a shared HTTP client (and its pool) is kept when not used", SharedHttpClients.DEFAULT_EXPIRY);
+
+    public static final ConfigKey<Duration> POOL_CONNECTION_REQUEST_TIMEOUT = ConfigKeys.newDurationConfigKey("brooklyn.http.pool.connectionRequestTimeout",
+            "How long a request waits for a connection from a shared HTTP client's pool when all are in use", SharedHttpClients.DEFAULT_CONNECTION_REQUEST_TIMEOUT);
+
+    private static final ConfigKey<SharedHttpClients> SHARED_CLIENTS = ConfigKeys.newConfigKey(SharedHttpClients.class,
+            "brooklyn.internal.http.sharedClients");
+
+    private ManagedHttpClients() {}
+
+    /** @return an executor using the management context's shared clients, if pooling is enabled, or otherwise a new client per request */
+    public static HttpExecutor newHttpExecutor(ManagementContext mgmt) {
+        Maybe<SharedHttpClients> sharedClients = getSharedClients(mgmt);
+        if (sharedClients.isPresent()) {
+            return HttpExecutorImpl.newInstance(sharedClients.get());
+        } else {
+            return HttpExecutorImpl.newInstance();
+        }
+    }
+
+    /** @return the management context's shared clients, creating them if necessary, or absent if pooling is not enabled */
+    public static Maybe<SharedHttpClients> getSharedClients(ManagementContext mgmt) {
+        StringConfigMap config = mgmt.getConfig();
+        if (!Boolean.TRUE.equals(config.getConfig(POOL_ENABLED))) {
+            return Maybe.absent("HTTP connection pooling not enabled ("+POOL_ENABLED.getName()+")");
+        }
+        Scratchpad scratchpad = mgmt.getScratchpad();
+        synchronized (scratchpad) {
+            SharedHttpClients result = scratchpad.get(SHARED_CLIENTS);
+            if (result == null) {
+                result = new SharedHttpClients(config.getConfig(POOL_MAX_TOTAL), config.getConfig(POOL_MAX_PER_ROUTE),
+                        config.getConfig(POOL_IDLE_TIMEOUT), config.getConfig(POOL_EXPIRY), config.getConfig(POOL_CONNECTION_REQUEST_TIMEOUT));
+                log.debug("Created "+result+" for "+mgmt);
+                scratchpad.put(SHARED_CLIENTS, result);
+            }
+            return Maybe.of(result);
+        }
+    }
+
+    /** current statistics for the management context's shared clients, or empty if none have been created;
+     * published by {@link org.apache.brooklyn.core.server.entity.BrooklynMetrics#HTTP_POOLS} */
+    public static Map<String, Object> getMetrics(ManagementContext mgmt) {
+        SharedHttpClients sharedClients = mgmt.getScratchpad().get(SHARED_CLIENTS);
+        return (sharedClients != null) ? sharedClients.getMetrics() : MutableMap.<String, Object>of();
+    }
+
+    /** closes the management context's shared clients, if any; called when the management context terminates */
+    public static void close(ManagementContext mgmt) {
+        Scratchpad scratchpad = mgmt.getScratchpad();
+        synchronized (scratchpad) {
+            SharedHttpClients sharedClients = scratchpad.get(SHARED_CLIENTS);
+            if (sharedClients != null) {
+                sharedClients.close();
+                scratchpad.put(SHARED_CLIENTS, null);
+            }
+        }
+    }
+}
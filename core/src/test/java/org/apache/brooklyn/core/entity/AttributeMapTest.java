@@ -19,11 +19,14 @@
 package org.apache.brooklyn.core.entity;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -47,6 +50,7 @@ import org.testng.annotations.Test;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
@@ -224,6 +228,50 @@ public class AttributeMapTest {
             }});
     }
     
+    @Test
+    public void testSnapshotUnaffectedByLaterChanges() throws Exception {
+        AttributeSensor<String> sensor1 = Sensors.newStringSensor("a", "");
+        AttributeSensor<String> sensor2 = Sensors.newStringSensor("b.c", "");
+        
+        map.update(sensor1, "1val");
+        Map<String, Object> snapshot = map.asSnapshot();
+        map.update(sensor1, "1val-changed");
+        map.update(sensor2, "2val");
+        map.remove(sensor1);
+        
+        assertEquals(snapshot, ImmutableMap.of("a", "1val"));
+        assertEquals(map.asMap(), ImmutableMap.of("b.c", "2val"));
+        assertEquals(map.asRawMap(), ImmutableMap.of(ImmutableList.of("b", "c"), "2val"));
+    }
+    
+    @Test
+    public void testSnapshotReusedUntilChanged() throws Exception {
+        AttributeSensor<String> sensor1 = Sensors.newStringSensor("a", "");
+        
+        map.update(sensor1, "1val");
+        Map<String, Object> snapshot = map.asSnapshot();
+        assertSame(map.asSnapshot(), snapshot);
+        
+        map.update(sensor1, "1val-changed");
+        assertNotSame(map.asSnapshot(), snapshot);
+        assertEquals(map.asSnapshot(), ImmutableMap.of("a", "1val-changed"));
+    }
+    
+    @Test
+    public void testNullValuesRetainedInOrderFirstSet() throws Exception {
+        AttributeSensor<String> sensor1 = Sensors.newStringSensor("a", "");
+        AttributeSensor<String> sensor2 = Sensors.newStringSensor("b", "");
+        
+        map.update(sensor1, null);
+        map.update(sensor2, "2val");
+        map.update(sensor1, "1val");
+        
+        assertEquals(ImmutableList.copyOf(map.asMap().keySet()), ImmutableList.of("a", "b"));
+        map.update(sensor1, null);
+        assertTrue(map.asMap().containsKey("a"));
+        assertEquals(map.getValue(sensor1), null);
+    }
+    
     protected <T> Runnable newUpdateMapRunnable(final AttributeMap map, final AttributeSensor<T> attribute, final T val) {
         return new Runnable() {
             @Override public void run() {
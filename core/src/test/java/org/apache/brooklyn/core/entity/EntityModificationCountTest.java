@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.entity;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.core.mgmt.internal.EntityManagementSupport;
+import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.testng.annotations.Test;
+
+public class EntityModificationCountTest extends BrooklynAppUnitTestSupport {
+
+    private static EntityManagementSupport support(Object entity) {
+        return ((EntityInternal) entity).getManagementSupport();
+    }
+
+    @Test
+    public void testSensorConfigAndChildChangesCounted() {
+        TestEntity entity = app.addChild(EntitySpec.create(TestEntity.class));
+
+        long count = support(entity).getModificationCount();
+        entity.sensors().set(TestEntity.SEQUENCE, 1);
+        assertTrue(support(entity).getModificationCount() > count);
+
+        count = support(entity).getModificationCount();
+        entity.config().set(TestEntity.CONF_NAME, "changed");
+        assertTrue(support(entity).getModificationCount() > count);
+
+        count = support(entity).getModificationCount();
+        entity.addChild(EntitySpec.create(TestEntity.class));
+        assertTrue(support(entity).getModificationCount() > count);
+    }
+
+    @Test
+    public void testDescendantChangesChangeSubtreeVersionOfAncestors() {
+        TestEntity child = app.addChild(EntitySpec.create(TestEntity.class));
+        TestEntity grandchild = child.addChild(EntitySpec.create(TestEntity.class));
+
+        long appCount = support(app).getModificationCount();
+        long appVersion = support(app).getSubtreeModificationVersion();
+        long childVersion = support(child).getSubtreeModificationVersion();
+        assertEquals(support(app).getSubtreeModificationVersion(), appVersion);
+        grandchild.sensors().set(TestEntity.SEQUENCE, 1);
+
+        assertNotEquals(support(app).getSubtreeModificationVersion(), appVersion);
+        assertNotEquals(support(child).getSubtreeModificationVersion(), childVersion);
+        // the change is found from the descendants when asked, rather than counted at each ancestor
+        assertEquals(support(app).getModificationCount(), appCount);
+    }
+
+    @Test
+    public void testRemovingDescendantChangesSubtreeVersion() {
+        TestEntity child = app.addChild(EntitySpec.create(TestEntity.class));
+        TestEntity grandchild = child.addChild(EntitySpec.create(TestEntity.class));
+
+        long appVersion = support(app).getSubtreeModificationVersion();
+        child.removeChild(grandchild);
+        assertNotEquals(support(app).getSubtreeModificationVersion(), appVersion);
+    }
+}
@@ -18,8 +18,12 @@
  */
 package org.apache.brooklyn.core.feed;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.entity.EntitySpec;
@@ -27,21 +31,27 @@ import org.apache.brooklyn.api.entity.ImplementedBy;
 import org.apache.brooklyn.api.mgmt.Task;
 import org.apache.brooklyn.api.sensor.AttributeSensor;
 import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
 import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.entity.AbstractEntity;
 import org.apache.brooklyn.core.entity.EntityAsserts;
+import org.apache.brooklyn.core.mgmt.BrooklynTaskTags;
 import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
 import org.apache.brooklyn.feed.function.FunctionFeed;
 import org.apache.brooklyn.feed.function.FunctionPollConfig;
+import org.apache.brooklyn.test.Asserts;
 import org.apache.brooklyn.util.core.task.DynamicTasks;
+import org.apache.brooklyn.util.core.task.ScheduledTask;
 import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.time.Duration;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Callables;
 
 public class PollerTest extends BrooklynAppUnitTestSupport {
 
@@ -83,6 +93,57 @@ public class PollerTest extends BrooklynAppUnitTestSupport {
         EntityAsserts.assertAttributeEqualsContinually(timeoutFlags, fee, FeedExceptionEntity.FLAG, true);
     }
 
+    @Test
+    public void testBatchedPollsShareScheduledTaskAndIsolateFailures() throws Exception {
+        boolean batchPollsEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_BATCH_POLLS);
+        BrooklynFeatureEnablement.enable(BrooklynFeatureEnablement.FEATURE_BATCH_POLLS);
+        Poller<Integer> poller = new Poller<Integer>(app, null, false);
+        try {
+            final AtomicInteger count1 = new AtomicInteger();
+            final AtomicInteger count2 = new AtomicInteger();
+            final AtomicInteger countOther = new AtomicInteger();
+            poller.scheduleAtFixedRate(Callables.returning(1), new CountingPollHandler(count1, false), Duration.millis(10));
+            poller.scheduleAtFixedRate(Callables.returning(1), new CountingPollHandler(new AtomicInteger(), true), Duration.millis(10));
+            poller.scheduleAtFixedRate(Callables.returning(1), new CountingPollHandler(count2, false), Duration.millis(10));
+            poller.scheduleAtFixedRate(Callables.returning(1), new CountingPollHandler(countOther, false), Duration.millis(20));
+            poller.start();
+            
+            Asserts.succeedsEventually(new Runnable() {
+                @Override public void run() {
+                    assertTrue(count1.get() > 2, "count1="+count1);
+                    assertTrue(count2.get() > 2, "count2="+count2);
+                    assertTrue(countOther.get() > 2, "countOther="+countOther);
+                }});
+            
+            int scheduledTasks = 0;
+            for (Task<?> t : BrooklynTaskTags.getTasksInEntityContext(mgmt.getExecutionManager(), app)) {
+                if (t instanceof ScheduledTask && !t.isDone()) scheduledTasks++;
+            }
+            assertEquals(scheduledTasks, 2);
+        } finally {
+            poller.stop();
+            BrooklynFeatureEnablement.setEnablement(BrooklynFeatureEnablement.FEATURE_BATCH_POLLS, batchPollsEnabled);
+        }
+    }
+
+    private static class CountingPollHandler implements PollHandler<Integer> {
+        private final AtomicInteger count;
+        private final boolean failInHandler;
+        
+        CountingPollHandler(AtomicInteger count, boolean failInHandler) {
+            this.count = count;
+            this.failInHandler = failInHandler;
+        }
+        @Override public boolean checkSuccess(Integer val) { return true; }
+        @Override public void onSuccess(Integer val) {
+            if (failInHandler) throw new IllegalStateException("simulated failure in handler");
+            count.incrementAndGet();
+        }
+        @Override public void onFailure(Integer val) {}
+        @Override public void onException(Exception exception) {}
+        @Override public String getDescription() { return "counting"+(failInHandler ? "-failing" : ""); }
+    }
+
     @ImplementedBy(FeedExceptionEntityImpl.class)
     public static interface FeedExceptionEntity extends Entity {
         ConfigKey<ThrowingPoller> POLLER = ConfigKeys.newConfigKey(ThrowingPoller.class, "poller");
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.internal;
+
+import java.util.Map;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.api.mgmt.SubscriptionHandle;
+import org.apache.brooklyn.api.mgmt.Task;
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
+import org.apache.brooklyn.core.entity.RecordingSensorEventListener;
+import org.apache.brooklyn.core.mgmt.BrooklynTaskTags;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.test.Asserts;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.core.task.BasicExecutionManager;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Runs the {@link LocalSubscriptionManagerTest} tests with 
+ * {@link BrooklynFeatureEnablement#FEATURE_LIGHTWEIGHT_SUBSCRIPTION_DELIVERY} enabled.
+ */
+public class LocalSubscriptionManagerLightweightDeliveryTest extends LocalSubscriptionManagerTest {
+
+    private boolean lightweightDeliveryWasPreviouslyEnabled;
+    
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        lightweightDeliveryWasPreviouslyEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_LIGHTWEIGHT_SUBSCRIPTION_DELIVERY);
+        BrooklynFeatureEnablement.enable(BrooklynFeatureEnablement.FEATURE_LIGHTWEIGHT_SUBSCRIPTION_DELIVERY);
+        super.setUp();
+    }
+    
+    @AfterMethod(alwaysRun=true)
+    @Override
+    public void tearDown() throws Exception {
+        try {
+            super.tearDown();
+        } finally {
+            BrooklynFeatureEnablement.setEnablement(BrooklynFeatureEnablement.FEATURE_LIGHTWEIGHT_SUBSCRIPTION_DELIVERY, lightweightDeliveryWasPreviouslyEnabled);
+        }
+    }
+
+    @Test
+    public void testManyEventsDeliveredInOrderWithFewerTasks() {
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        RecordingSensorEventListener<Object> listener = new RecordingSensorEventListener<>();
+        entity.subscriptions().subscribe(ImmutableMap.of(), entity, TestEntity.SEQUENCE, listener);
+        
+        BasicExecutionManager em = (BasicExecutionManager) mgmt.getExecutionManager();
+        long tasksBefore = em.getTotalTasksSubmitted();
+        int numEvents = 1000;
+        for (int i=0; i<numEvents; i++) {
+            entity.sensors().set(TestEntity.SEQUENCE, i);
+        }
+        
+        Asserts.succeedsEventually(() -> Asserts.assertSize(listener.getEvents(), numEvents));
+        for (int i=0; i<numEvents; i++) {
+            Assert.assertEquals(listener.getEvents().get(i).getValue(), i);
+        }
+        // a task per event was the old behaviour; expect the queue to have coalesced at least some of them
+        long tasksSubmitted = em.getTotalTasksSubmitted() - tasksBefore;
+        Assert.assertTrue(tasksSubmitted < numEvents, "tasksSubmitted="+tasksSubmitted);
+        
+        for (Task<?> t : em.getTasksWithTag(BrooklynTaskTags.SENSOR_TAG)) {
+            Assert.assertNotNull(t.getDisplayName());
+            Assert.assertNotNull(t.getDescription());
+        }
+    }
+
+    @Test
+    public void testEventsFromManySourcesShareDeliveryTasksTaggedWithSubscriber() {
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        TestEntity otherEntity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        RecordingSensorEventListener<Object> listener = new RecordingSensorEventListener<>();
+        app.subscriptions().subscribe(ImmutableMap.of(), entity, TestEntity.SEQUENCE, listener);
+        app.subscriptions().subscribe(ImmutableMap.of(), otherEntity, TestEntity.SEQUENCE, listener);
+
+        BasicExecutionManager em = (BasicExecutionManager) mgmt.getExecutionManager();
+        long tasksBefore = em.getTotalTasksSubmitted();
+        int numEvents = 1000;
+        for (int i=0; i<numEvents; i++) {
+            (i % 2 == 0 ? entity : otherEntity).sensors().set(TestEntity.SEQUENCE, i);
+        }
+
+        Asserts.succeedsEventually(() -> Asserts.assertSize(listener.getEvents(), numEvents));
+        for (int i=0; i<numEvents; i++) {
+            Assert.assertEquals(listener.getEvents().get(i).getValue(), i);
+        }
+        // alternating sources must not force a task per event
+        long tasksUsed = em.getTotalTasksSubmitted() - tasksBefore;
+        Assert.assertTrue(tasksUsed < numEvents, "tasksUsed="+tasksUsed);
+        Asserts.assertFalse(em.getTasksWithAllTags(ImmutableList.of(BrooklynTaskTags.SENSOR_TAG, BrooklynTaskTags.tagForTargetEntity(app))).isEmpty());
+    }
+
+    @Test
+    public void testDeliveryWithNullSubscriberExecutionManagerTag() {
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        RecordingSensorEventListener<Object> listener = new RecordingSensorEventListener<>();
+        Map<String, Object> flags = MutableMap.of("subscriberExecutionManagerTag", null);
+        SubscriptionHandle handle = app.subscriptions().subscribe(flags, entity, TestEntity.SEQUENCE, listener);
+
+        entity.sensors().set(TestEntity.SEQUENCE, 1);
+
+        Asserts.succeedsEventually(() -> Asserts.assertSize(listener.getEvents(), 1));
+        Assert.assertEquals(listener.getEvents().get(0).getValue(), 1);
+        Assert.assertTrue(app.subscriptions().unsubscribe(handle));
+    }
+}
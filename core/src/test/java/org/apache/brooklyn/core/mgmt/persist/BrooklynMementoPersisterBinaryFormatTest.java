@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.persist;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.api.mgmt.rebind.PersistenceExceptionHandler;
+import org.apache.brooklyn.api.mgmt.rebind.RebindManager.RebindFailureMode;
+import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMemento;
+import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMementoManifest;
+import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMementoManifest.EntityMementoManifest;
+import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMementoRawData;
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.internal.BrooklynProperties;
+import org.apache.brooklyn.core.mgmt.rebind.PersistenceExceptionHandlerImpl;
+import org.apache.brooklyn.core.mgmt.rebind.RebindTestUtils;
+import org.apache.brooklyn.core.mgmt.rebind.RecordingRebindExceptionHandler;
+import org.apache.brooklyn.core.mgmt.rebind.transformer.CompoundTransformer;
+import org.apache.brooklyn.util.core.xstream.XmlUtil;
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.Test;
+
+@Test
+public class BrooklynMementoPersisterBinaryFormatTest extends BrooklynMementoPersisterInMemoryTest {
+
+    @Override
+    protected ManagementContext newPersistingManagementContext() {
+        BrooklynProperties properties = BrooklynProperties.Factory.newEmpty();
+        properties.put(BrooklynMementoPersisterToObjectStore.PERSISTER_SERIALIZATION_FORMAT, MementoSerializationFormat.BINARY);
+        return RebindTestUtils.managementContextBuilder(classLoader, new InMemoryObjectStore())
+            .properties(properties)
+            .persistPeriod(Duration.millis(10)).buildStarted();
+    }
+
+    @Test
+    public void testPersistsBinaryAndLoadsManifestFromIt() throws Exception {
+        BrooklynMementoRawData rawMemento = loadRawMemento((BrooklynMementoPersisterToObjectStore)persister);
+        assertTrue(BinaryMementoSerializer.isBinary(rawMemento.getEntities().get(entity.getId())));
+        assertTrue(BinaryMementoSerializer.isBinary(rawMemento.getLocations().get(location.getId())));
+        
+        RecordingRebindExceptionHandler failFast = new RecordingRebindExceptionHandler(RebindFailureMode.FAIL_FAST, RebindFailureMode.FAIL_FAST);
+        BrooklynMementoManifest manifest = persister.loadMementoManifest(rawMemento, failFast);
+        EntityMementoManifest entityManifest = manifest.getEntityIdToManifest().get(entity.getId());
+        assertEquals(entityManifest.getId(), entity.getId());
+        assertEquals(entityManifest.getType(), Entities.deproxy(entity).getClass().getName());
+        assertEquals(entityManifest.getParent(), app.getId());
+        assertEquals(manifest.getEntityIdToManifest().get(app.getId()).getParent(), null);
+        assertEquals(manifest.getLocationIdToType().get(location.getId()), location.getClass().getName());
+    }
+
+    @Test
+    public void testConvertsBetweenFormatsWithoutDeserializing() throws Exception {
+        BrooklynMementoRawData rawMemento = loadRawMemento((BrooklynMementoPersisterToObjectStore)persister);
+        
+        BrooklynMementoRawData xmlMemento = CompoundTransformer.builder()
+                .serializationFormat(MementoSerializationFormat.XML)
+                .build()
+                .transform(rawMemento);
+        String xml = xmlMemento.getEntities().get(entity.getId());
+        assertFalse(BinaryMementoSerializer.isBinary(xml), xml);
+        assertEquals(XmlUtil.xpath(xml, "/entity/id"), entity.getId());
+        
+        // and back again, persisting it (as a migration would) and checking it can be read
+        BrooklynMementoRawData binaryMemento = MementoSerializationFormat.BINARY.convert(xmlMemento);
+        assertTrue(BinaryMementoSerializer.isBinary(binaryMemento.getEntities().get(entity.getId())));
+        
+        PersistenceExceptionHandler exceptionHandler = PersistenceExceptionHandlerImpl.builder().build();
+        ((BrooklynMementoPersisterToObjectStore) persister).checkpoint(binaryMemento, exceptionHandler);
+        BrooklynMemento reloadedMemento = loadMemento();
+        assertTrue(reloadedMemento.getEntityIds().contains(entity.getId()));
+        assertEquals(reloadedMemento.getEntityMemento(entity.getId()).getParent(), app.getId());
+    }
+
+    @Test
+    public void testXmlTransformersAppliedToBinaryState() throws Exception {
+        BrooklynMementoRawData rawMemento = loadRawMemento((BrooklynMementoPersisterToObjectStore)persister);
+        
+        BrooklynMementoRawData transformed = CompoundTransformer.builder()
+                .xmlReplaceItem("/entity/displayName/text()", "newDisplayName")
+                .build()
+                .transform(rawMemento);
+        String contents = transformed.getEntities().get(entity.getId());
+        assertTrue(BinaryMementoSerializer.isBinary(contents));
+        assertEquals(XmlUtil.xpath(BinaryMementoSerializer.toXml(contents), "/entity/displayName"), "newDisplayName");
+    }
+}
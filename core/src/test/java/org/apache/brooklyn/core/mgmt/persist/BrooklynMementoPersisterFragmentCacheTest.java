@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.persist;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.apache.brooklyn.api.catalog.CatalogItem;
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.api.location.Location;
+import org.apache.brooklyn.api.mgmt.rebind.RebindManager.RebindFailureMode;
+import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMemento;
+import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMementoPersister.LookupContext;
+import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMementoRawData;
+import org.apache.brooklyn.api.mgmt.rebind.mementos.EntityMemento;
+import org.apache.brooklyn.api.policy.Policy;
+import org.apache.brooklyn.api.sensor.Enricher;
+import org.apache.brooklyn.api.sensor.Feed;
+import org.apache.brooklyn.api.typereg.ManagedBundle;
+import org.apache.brooklyn.core.internal.BrooklynProperties;
+import org.apache.brooklyn.core.mgmt.persist.XmlMementoSerializerTest.LookupContextImpl;
+import org.apache.brooklyn.core.mgmt.rebind.RecordingRebindExceptionHandler;
+import org.apache.brooklyn.core.test.BrooklynMgmtUnitTestSupport;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class BrooklynMementoPersisterFragmentCacheTest extends BrooklynMgmtUnitTestSupport {
+
+    private BrooklynMementoPersisterToObjectStore persister;
+    private RecordingRebindExceptionHandler exceptionHandler;
+    private TestEntity entity;
+    private TestEntity child;
+    
+    @Override
+    protected BrooklynProperties getBrooklynProperties() {
+        BrooklynProperties result = BrooklynProperties.Factory.newEmpty();
+        result.put(BrooklynMementoPersisterToObjectStore.PERSISTER_FRAGMENT_CACHE_SIZE, 100);
+        return result;
+    }
+    
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        InMemoryObjectStore objectStore = new InMemoryObjectStore();
+        objectStore.injectManagementContext(mgmt);
+        persister = new BrooklynMementoPersisterToObjectStore(objectStore, mgmt);
+        exceptionHandler = new RecordingRebindExceptionHandler(RebindFailureMode.FAIL_FAST, RebindFailureMode.FAIL_FAST);
+        entity = mgmt.getEntityManager().createEntity(EntitySpec.create(TestEntity.class));
+        child = entity.addChild(EntitySpec.create(TestEntity.class).configure("ref", entity));
+    }
+    
+    @AfterMethod(alwaysRun=true)
+    @Override
+    public void tearDown() throws Exception {
+        if (persister != null) persister.stop(false);
+        super.tearDown();
+    }
+    
+    private BrooklynMementoRawData newRawData() {
+        return BrooklynMementoRawData.builder()
+                .entity(entity.getId(), persister.getMementoSerializer().toString(BrooklynPersistenceUtils.newObjectMemento(entity)))
+                .entity(child.getId(), persister.getMementoSerializer().toString(BrooklynPersistenceUtils.newObjectMemento(child)))
+                .build();
+    }
+    
+    private LookupContext newLookupContext() {
+        return new LookupContextImpl("test", mgmt, ImmutableList.<Entity>of(entity, child), ImmutableList.<Location>of(), 
+                ImmutableList.<Policy>of(), ImmutableList.<Enricher>of(), ImmutableList.<Feed>of(), 
+                ImmutableList.<CatalogItem<?, ?>>of(), ImmutableList.<ManagedBundle>of(), true);
+    }
+    
+    @Test
+    public void testReusesManifestsOfUnchangedObjects() throws Exception {
+        BrooklynMementoRawData data = newRawData();
+        persister.loadMementoManifest(data, exceptionHandler);
+        assertEquals(persister.getFragmentCacheMetrics().get("manifestMisses"), 2L);
+        
+        assertEquals(persister.loadMementoManifest(data, exceptionHandler).getEntityIdToManifest().get(child.getId()).getParent(), entity.getId());
+        assertEquals(persister.getFragmentCacheMetrics().get("manifestHits"), 2L);
+        assertEquals(persister.getFragmentCacheMetrics().get("manifestMisses"), 2L);
+    }
+    
+    @Test
+    public void testReusesMementosOnlyIfIndependentOfLookupContext() throws Exception {
+        BrooklynMementoRawData data = newRawData();
+        BrooklynMemento memento1 = persister.loadMemento(data, newLookupContext(), exceptionHandler);
+        BrooklynMemento memento2 = persister.loadMemento(data, newLookupContext(), exceptionHandler);
+        
+        // a copy of the cached memento
+        assertNotSame(memento2.getEntityMemento(entity.getId()), memento1.getEntityMemento(entity.getId()));
+        assertEquals(memento2.getEntityMemento(entity.getId()).getDisplayName(), entity.getDisplayName());
+        // refers to an entity, so must be deserialized against each lookup context
+        assertNotSame(memento2.getEntityMemento(child.getId()), memento1.getEntityMemento(child.getId()));
+        EntityMemento childMemento = memento2.getEntityMemento(child.getId());
+        assertTrue(childMemento.getConfig().containsValue(entity) || childMemento.getConfigUnmatched().containsValue(entity), "config="+childMemento.getConfig());
+        
+        Map<String, Object> metrics = persister.getFragmentCacheMetrics();
+        assertEquals(metrics.get("mementoHits"), 1L);
+        assertEquals(metrics.get("mementosUncacheable"), 2L);
+    }
+    
+    @Test
+    public void testChangesToLoadedMementoNotSeenByLaterLoads() throws Exception {
+        BrooklynMementoRawData data = newRawData();
+        EntityMemento memento1 = persister.loadMemento(data, newLookupContext(), exceptionHandler).getEntityMemento(entity.getId());
+        // as rebind does
+        memento1.injectTypeClass(TestEntity.class);
+        memento1.getConfig();
+        
+        EntityMemento memento2 = persister.loadMemento(data, newLookupContext(), exceptionHandler).getEntityMemento(entity.getId());
+        assertEquals(persister.getFragmentCacheMetrics().get("mementoHits"), 1L);
+        assertNotSame(memento2, memento1);
+        assertNull(memento2.getTypeClass());
+    }
+    
+    @Test
+    public void testChangedContentsAreParsedAgain() throws Exception {
+        persister.loadMementoManifest(newRawData(), exceptionHandler);
+        entity.setDisplayName("changed");
+        persister.loadMementoManifest(newRawData(), exceptionHandler);
+        
+        assertEquals(persister.getFragmentCacheMetrics().get("manifestHits"), 1L);
+        assertEquals(persister.getFragmentCacheMetrics().get("manifestMisses"), 3L);
+    }
+    
+    @Test
+    public void testHitRateNotedInActivityMetrics() throws Exception {
+        BrooklynMementoRawData data = newRawData();
+        persister.loadMementoManifest(data, exceptionHandler);
+        persister.loadMementoManifest(data, exceptionHandler);
+        
+        PersistenceActivityMetrics metrics = new PersistenceActivityMetrics();
+        metrics.noteCacheMetrics("mementoFragments", persister.getFragmentCacheMetrics());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> cacheMetrics = ((Map<String, Map<String, Object>>) metrics.asMap().get("caches")).get("mementoFragments");
+        assertEquals(cacheMetrics.get("hitRate"), 0.5);
+    }
+}
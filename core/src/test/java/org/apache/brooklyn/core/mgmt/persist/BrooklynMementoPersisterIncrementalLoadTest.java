@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.persist;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.api.mgmt.ha.HighAvailabilityMode;
+import org.apache.brooklyn.api.mgmt.rebind.RebindManager.RebindFailureMode;
+import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMementoRawData;
+import org.apache.brooklyn.core.mgmt.rebind.RecordingRebindExceptionHandler;
+import org.apache.brooklyn.core.test.BrooklynMgmtUnitTestSupport;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class BrooklynMementoPersisterIncrementalLoadTest extends BrooklynMgmtUnitTestSupport {
+
+    private Map<String, byte[]> files;
+    private Map<String, Date> modTimes;
+    private InMemoryObjectStore objectStore;
+    private BrooklynMementoPersisterToObjectStore persister;
+    private RecordingRebindExceptionHandler exceptionHandler;
+    
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        files = MutableMap.of();
+        modTimes = MutableMap.of();
+        objectStore = new InMemoryObjectStore(files, modTimes);
+        objectStore.injectManagementContext(mgmt);
+        objectStore.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.DISABLED);
+        persister = new BrooklynMementoPersisterToObjectStore(objectStore, mgmt);
+        persister.setIncrementalLoading(true);
+        exceptionHandler = new RecordingRebindExceptionHandler(RebindFailureMode.FAIL_FAST, RebindFailureMode.FAIL_FAST);
+    }
+    
+    @AfterMethod(alwaysRun=true)
+    @Override
+    public void tearDown() throws Exception {
+        if (persister != null) persister.stop(false);
+        super.tearDown();
+    }
+    
+    private void putEntity(String id, Date modTime) {
+        String path = "entities/"+id;
+        objectStore.newAccessor(path).put("<entity><id>"+id+"</id><type>org.example.Type</type></entity>");
+        if (modTime != null) modTimes.put(path, modTime);
+    }
+    
+    @Test
+    public void testReadsOnlyObjectsModifiedSinceLastLoad() throws Exception {
+        Date longAgo = new Date(System.currentTimeMillis() - 60*60*1000);
+        putEntity("e1", longAgo);
+        putEntity("e2", longAgo);
+        assertTrue(persister.hasChangedSinceLastLoad(exceptionHandler));
+        
+        BrooklynMementoRawData data = persister.loadMementoRawData(exceptionHandler);
+        assertEquals(data.getEntities().keySet(), ImmutableSet.of("e1", "e2"));
+        assertEquals(persister.getIncrementalLoadingMetrics().get("reads"), 2L);
+        assertFalse(persister.hasChangedSinceLastLoad(exceptionHandler));
+        
+        // a new object (modified just now) is seen, and only it is read
+        putEntity("e3", null);
+        assertTrue(persister.hasChangedSinceLastLoad(exceptionHandler));
+        data = persister.loadMementoRawData(exceptionHandler);
+        assertEquals(data.getEntities().keySet(), ImmutableSet.of("e1", "e2", "e3"));
+        assertEquals(persister.getIncrementalLoadingMetrics().get("reads"), 3L);
+        assertEquals(persister.getIncrementalLoadingMetrics().get("reuses"), 2L);
+        
+        // a modified object is read again
+        putEntity("e1", new Date(longAgo.getTime() + 1000));
+        assertTrue(persister.hasChangedSinceLastLoad(exceptionHandler));
+        persister.loadMementoRawData(exceptionHandler);
+        assertEquals(persister.getIncrementalLoadingMetrics().get("reuses"), 3L);
+        
+        // a deleted object is dropped
+        objectStore.newAccessor("entities/e2").delete();
+        assertTrue(persister.hasChangedSinceLastLoad(exceptionHandler));
+        data = persister.loadMementoRawData(exceptionHandler);
+        assertEquals(data.getEntities().keySet(), ImmutableSet.of("e1", "e3"));
+        assertEquals(persister.getIncrementalLoadingMetrics().get("cachedObjects"), 2);
+    }
+
+    @Test
+    public void testRereadsObjectsModifiedCloseToLastLoad() throws Exception {
+        putEntity("e1", null);
+        persister.loadMementoRawData(exceptionHandler);
+        
+        // changed within the margin (and so potentially within the same timestamp tick) of the load, so can't be trusted
+        String path = "entities/e1";
+        Date modTime = modTimes.get(path);
+        objectStore.newAccessor(path).put("<entity><id>e1</id><type>org.example.Other</type></entity>");
+        modTimes.put(path, modTime);
+        assertTrue(persister.hasChangedSinceLastLoad(exceptionHandler));
+        
+        BrooklynMementoRawData data = persister.loadMementoRawData(exceptionHandler);
+        assertTrue(data.getEntities().get("e1").contains("org.example.Other"), data.getEntities().get("e1"));
+    }
+    
+    @Test
+    public void testChecksForChangesFromListingWhereStoreListsDates() throws Exception {
+        DateListingInMemoryObjectStore listingStore = new DateListingInMemoryObjectStore(files, modTimes);
+        listingStore.injectManagementContext(mgmt);
+        listingStore.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.DISABLED);
+        persister.stop(false);
+        persister = new BrooklynMementoPersisterToObjectStore(listingStore, mgmt);
+        persister.setIncrementalLoading(true);
+        
+        Date longAgo = new Date(System.currentTimeMillis() - 60*60*1000);
+        putEntity("e1", longAgo);
+        putEntity("e2", longAgo);
+        persister.loadMementoRawData(exceptionHandler);
+        
+        // no request per object, just the listings
+        listingStore.accessorsCreated.set(0);
+        assertFalse(persister.hasChangedSinceLastLoad(exceptionHandler));
+        assertEquals(listingStore.accessorsCreated.get(), 0);
+        
+        modTimes.put("entities/e1", new Date(longAgo.getTime() + 1000));
+        assertTrue(persister.hasChangedSinceLastLoad(exceptionHandler));
+        assertEquals(listingStore.accessorsCreated.get(), 0);
+        
+        // and the load reads only the changed object (and the plane id)
+        BrooklynMementoRawData data = persister.loadMementoRawData(exceptionHandler);
+        assertEquals(data.getEntities().keySet(), ImmutableSet.of("e1", "e2"));
+        assertEquals(listingStore.accessorsCreated.get(), 2);
+        assertEquals(persister.getIncrementalLoadingMetrics().get("reuses"), 1L);
+    }
+    
+    @Test
+    public void testDisablingDiscardsCache() throws Exception {
+        putEntity("e1", null);
+        persister.loadMementoRawData(exceptionHandler);
+        persister.setIncrementalLoading(false);
+        assertFalse(persister.isIncrementalLoading());
+        assertTrue(persister.hasChangedSinceLastLoad(exceptionHandler));
+        assertEquals(persister.getIncrementalLoadingMetrics(), null);
+    }
+
+    private static class DateListingInMemoryObjectStore extends InMemoryObjectStore implements PersistenceObjectStore.ListableWithLastModifiedDates {
+        final AtomicInteger accessorsCreated = new AtomicInteger();
+        
+        DateListingInMemoryObjectStore(Map<String, byte[]> files, Map<String, Date> modTimes) {
+            super(files, modTimes);
+        }
+        
+        @Override
+        public StoreObjectAccessor newAccessor(String path) {
+            accessorsCreated.incrementAndGet();
+            return super.newAccessor(path);
+        }
+        
+        @Override
+        public Map<String, Date> listContentsWithSubPathAndLastModifiedDates(String subPath) {
+            Map<String, Date> result = MutableMap.of();
+            for (String path : listContentsWithSubPath(subPath)) {
+                result.put(path, fileModTimesByName.get(path));
+            }
+            return result;
+        }
+    }
+}
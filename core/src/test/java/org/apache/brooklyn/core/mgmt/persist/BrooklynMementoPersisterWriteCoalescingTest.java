@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.persist;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.api.mgmt.rebind.PersistenceExceptionHandler;
+import org.apache.brooklyn.api.mgmt.rebind.mementos.Memento;
+import org.apache.brooklyn.api.objs.BrooklynObjectType;
+import org.apache.brooklyn.core.internal.BrooklynProperties;
+import org.apache.brooklyn.core.mgmt.persist.ListeningObjectStore.RecordingTransactionListener;
+import org.apache.brooklyn.core.mgmt.rebind.PersistenceExceptionHandlerImpl;
+import org.apache.brooklyn.core.mgmt.rebind.PersisterDeltaImpl;
+import org.apache.brooklyn.core.test.BrooklynMgmtUnitTestSupport;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class BrooklynMementoPersisterWriteCoalescingTest extends BrooklynMgmtUnitTestSupport {
+
+    private Map<String, byte[]> files;
+    private RecordingTransactionListener writes;
+    private BrooklynMementoPersisterToObjectStore persister;
+    private PersistenceExceptionHandler exceptionHandler;
+    
+    @Override
+    protected BrooklynProperties getBrooklynProperties() {
+        BrooklynProperties result = BrooklynProperties.Factory.newEmpty();
+        result.put(BrooklynMementoPersisterToObjectStore.PERSISTER_WRITE_SHARDS_PER_TYPE, 2);
+        return result;
+    }
+    
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        files = MutableMap.of();
+        writes = new RecordingTransactionListener("test");
+        InMemoryObjectStore delegate = new InMemoryObjectStore(files, MutableMap.<String, Date>of());
+        ListeningObjectStore objectStore = new ListeningObjectStore(delegate, writes);
+        objectStore.injectManagementContext(mgmt);
+        persister = new BrooklynMementoPersisterToObjectStore(objectStore, mgmt);
+        persister.enableWriteAccess();
+        exceptionHandler = PersistenceExceptionHandlerImpl.builder().build();
+    }
+    
+    @AfterMethod(alwaysRun=true)
+    @Override
+    public void tearDown() throws Exception {
+        if (persister != null) persister.stop(false);
+        super.tearDown();
+    }
+    
+    private static PersisterDeltaImpl newDelta(Memento ...mementos) {
+        PersisterDeltaImpl result = new PersisterDeltaImpl();
+        for (Memento memento : mementos) {
+            result.add(BrooklynObjectType.ENTITY, memento);
+        }
+        return result;
+    }
+    
+    private String readEntity(TestEntity entity) {
+        byte[] contents = files.get("entities/"+entity.getId());
+        return contents == null ? null : new String(contents);
+    }
+    
+    @Test
+    public void testQueuedChangesToSameObjectWrittenOnce() throws Exception {
+        TestEntity e1 = mgmt.getEntityManager().createEntity(EntitySpec.create(TestEntity.class).displayName("first"));
+        TestEntity e2 = mgmt.getEntityManager().createEntity(EntitySpec.create(TestEntity.class));
+        TestEntity e3 = mgmt.getEntityManager().createEntity(EntitySpec.create(TestEntity.class));
+        
+        persister.queueDelta(newDelta(BrooklynPersistenceUtils.newObjectMemento(e1)));
+        e1.setDisplayName("second");
+        persister.queueDelta(newDelta(BrooklynPersistenceUtils.newObjectMemento(e1)));
+        e1.setDisplayName("third");
+        persister.delta(newDelta(BrooklynPersistenceUtils.newObjectMemento(e1), BrooklynPersistenceUtils.newObjectMemento(e2), 
+                BrooklynPersistenceUtils.newObjectMemento(e3)), exceptionHandler);
+        
+        assertEquals(writes.getCountDataOut(), 3);
+        assertTrue(readEntity(e1).contains("third"), readEntity(e1));
+        assertFalse(readEntity(e1).contains("second"), readEntity(e1));
+        assertTrue(readEntity(e2) != null);
+        assertTrue(readEntity(e3) != null);
+    }
+    
+    @Test
+    public void testQueuedChangeToObjectLaterRemovedIsNotWritten() throws Exception {
+        TestEntity e1 = mgmt.getEntityManager().createEntity(EntitySpec.create(TestEntity.class));
+        
+        persister.queueDelta(newDelta(BrooklynPersistenceUtils.newObjectMemento(e1)));
+        PersisterDeltaImpl removal = new PersisterDeltaImpl();
+        removal.removed(BrooklynObjectType.ENTITY, ImmutableSet.of(e1.getId()));
+        persister.delta(removal, exceptionHandler);
+        
+        assertEquals(writes.getCountDataOut(), 0);
+        assertEquals(readEntity(e1), null);
+    }
+    
+    @Test
+    public void testDeltaWithNothingPendingWritesNothing() throws Exception {
+        persister.delta(new PersisterDeltaImpl(), exceptionHandler);
+        assertEquals(writes.getCountDataOut(), 0);
+    }
+}
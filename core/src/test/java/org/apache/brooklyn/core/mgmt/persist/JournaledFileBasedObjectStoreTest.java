@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.persist;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.brooklyn.api.mgmt.ha.HighAvailabilityMode;
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.test.entity.LocalManagementContextForTests;
+import org.apache.brooklyn.util.os.Os;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+
+public class JournaledFileBasedObjectStoreTest {
+
+    private LocalManagementContextForTests mgmt;
+    private File parentdir;
+    private File basedir;
+    private JournaledFileBasedObjectStore store;
+    private JournaledFileBasedObjectStore store2;
+    
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        mgmt = new LocalManagementContextForTests();
+        parentdir = Files.createTempDir();
+        basedir = new File(parentdir, "mystore");
+        store = newStore();
+        store.createSubPath("entities");
+        store.prepareForMasterUse();
+    }
+    
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (store != null) store.close();
+        if (store2 != null) store2.close();
+        if (parentdir != null) Os.deleteRecursively(parentdir);
+        if (mgmt != null) Entities.destroyAll(mgmt);
+    }
+    
+    private JournaledFileBasedObjectStore newStore() {
+        JournaledFileBasedObjectStore result = new JournaledFileBasedObjectStore(basedir);
+        result.injectManagementContext(mgmt);
+        result.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.DISABLED);
+        return result;
+    }
+    
+    @Test
+    public void testWritesToJournalThenCompactsToFiles() throws Exception {
+        store.newAccessor("entities/a").put("contents-a");
+        store.newAccessor("entities/b").put("contents-b");
+        store.newAccessor("entities/b").put("contents-b2");
+        
+        assertFalse(new File(basedir, "entities/a").exists());
+        assertEquals(store.newAccessor("entities/a").get(), "contents-a");
+        assertEquals(store.newAccessor("entities/b").get(), "contents-b2");
+        assertEquals(ImmutableSet.copyOf(store.listContentsWithSubPath("entities")), ImmutableSet.of("entities/a", "entities/b"));
+        
+        store.compact();
+        assertEquals(Files.toString(new File(basedir, "entities/b"), Charsets.UTF_8), "contents-b2");
+        assertEquals(store.newAccessor("entities/a").get(), "contents-a");
+        assertEquals(new File(basedir, JournaledFileBasedObjectStore.JOURNAL_SUB_PATH).list().length, 1, "only the new journal should remain");
+        
+        store.newAccessor("entities/a").delete();
+        assertFalse(store.newAccessor("entities/a").exists());
+        assertNull(store.newAccessor("entities/a").get());
+        assertEquals(store.listContentsWithSubPath("entities"), ImmutableSet.of("entities/b").asList());
+        
+        store.compact();
+        assertFalse(new File(basedir, "entities/a").exists());
+    }
+
+    @Test
+    public void testReplaysJournalLeftBehind() throws Exception {
+        store.newAccessor("entities/a").put("contents-a");
+        store.newAccessor("entities/b").put("contents-b");
+        store.newAccessor("entities/b").delete();
+        
+        // as if the writer had crashed
+        store2 = newStore();
+        assertEquals(store2.newAccessor("entities/a").get(), "contents-a");
+        assertEquals(store2.listContentsWithSubPath("entities"), ImmutableSet.of("entities/a").asList());
+    }
+    
+    @Test
+    public void testReaderSeesNewRecordsAndCompaction() throws Exception {
+        store.newAccessor("entities/a").put("contents-a");
+        store2 = newStore();
+        assertEquals(store2.listContentsWithSubPath("entities"), ImmutableSet.of("entities/a").asList());
+        
+        store.newAccessor("entities/a").put("contents-a2");
+        store.newAccessor("entities/b").put("contents-b");
+        assertEquals(ImmutableSet.copyOf(store2.listContentsWithSubPath("entities")), ImmutableSet.of("entities/a", "entities/b"));
+        assertEquals(store2.newAccessor("entities/a").get(), "contents-a2");
+        
+        store.compact();
+        store2.listContentsWithSubPath("entities");
+        assertEquals(store2.newAccessor("entities/a").get(), "contents-a2");
+        assertTrue(store2.newAccessor("entities/b").exists());
+    }
+    
+    @Test
+    public void testCloseLeavesPlainFiles() throws Exception {
+        store.newAccessor("entities/a").put("contents-a");
+        store.close();
+        store = null;
+        assertEquals(Files.toString(new File(basedir, "entities/a"), Charsets.UTF_8), "contents-a");
+        assertEquals(new File(basedir, JournaledFileBasedObjectStore.JOURNAL_SUB_PATH).list().length, 0);
+    }
+    
+    @Test
+    public void testCompactsReplayedJournalsWhenMaster() throws Exception {
+        File journalDir = new File(basedir, JournaledFileBasedObjectStore.JOURNAL_SUB_PATH);
+        simulateCrashLeavingJournal("entities/a", "contents-a");
+        
+        store2 = newStore();
+        store2.prepareForMasterUse();
+        assertEquals(Files.toString(new File(basedir, "entities/a"), Charsets.UTF_8), "contents-a");
+        assertEquals(journalDir.list().length, 1, "only the new (empty) journal should remain: "+ImmutableSet.copyOf(journalDir.list()));
+    }
+    
+    @Test
+    public void testReplaysJournalWhenJournalingDisabled() throws Exception {
+        simulateCrashLeavingJournal("entities/a", "contents-a");
+        assertTrue(JournaledFileBasedObjectStore.hasJournals(basedir));
+        
+        store2 = new JournaledFileBasedObjectStore(basedir, false);
+        store2.injectManagementContext(mgmt);
+        store2.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.DISABLED);
+        assertEquals(store2.newAccessor("entities/a").get(), "contents-a");
+        assertEquals(store2.listContentsWithSubPath("entities"), ImmutableSet.of("entities/a").asList());
+        
+        store2.prepareForMasterUse();
+        assertEquals(Files.toString(new File(basedir, "entities/a"), Charsets.UTF_8), "contents-a");
+        assertFalse(JournaledFileBasedObjectStore.hasJournals(basedir));
+        
+        store2.newAccessor("entities/b").put("contents-b");
+        assertEquals(Files.toString(new File(basedir, "entities/b"), Charsets.UTF_8), "contents-b");
+        assertFalse(JournaledFileBasedObjectStore.hasJournals(basedir));
+    }
+    
+    @Test(expectedExceptions=IllegalStateException.class)
+    public void testRejectsWritesAfterClose() throws Exception {
+        store.close();
+        store.newAccessor("entities/a").put("contents-a");
+    }
+    
+    /** leaves a journal with the given object, and no file for it, as if the writer had crashed */
+    private void simulateCrashLeavingJournal(String path, String contents) throws Exception {
+        File journalDir = new File(basedir, JournaledFileBasedObjectStore.JOURNAL_SUB_PATH);
+        File saved = new File(parentdir, "saved-journal");
+        store.newAccessor(path).put(contents);
+        File[] journals = journalDir.listFiles();
+        assertEquals(journals.length, 1);
+        Files.copy(journals[0], saved);
+        store.close();
+        store = null;
+        assertTrue(new File(basedir, path).delete());
+        Files.copy(saved, journals[0]);
+    }
+    
+    @Test
+    public void testNonMementoPathsWrittenDirectly() throws Exception {
+        store.createSubPath("plane");
+        store.newAccessor("plane/node1").put("node");
+        assertEquals(Files.toString(new File(basedir, "plane/node1"), Charsets.UTF_8), "node");
+    }
+}
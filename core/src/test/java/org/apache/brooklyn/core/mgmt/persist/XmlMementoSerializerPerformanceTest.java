@@ -55,7 +55,11 @@ public class XmlMementoSerializerPerformanceTest extends AbstractPerformanceTest
     public void setUp() throws Exception {
         super.setUp();
 
-        serializer = new XmlMementoSerializer<Object>(XmlMementoSerializerPerformanceTest.class.getClassLoader());
+        serializer = newSerializer();
+    }
+
+    protected XmlMementoSerializer<Object> newSerializer() {
+        return new XmlMementoSerializer<Object>(XmlMementoSerializerPerformanceTest.class.getClassLoader());
     }
 
     protected int numIterations() {
@@ -67,6 +71,43 @@ public class XmlMementoSerializerPerformanceTest extends AbstractPerformanceTest
          int numIterations = numIterations();
          double minRatePerSec = 10 * PERFORMANCE_EXPECTATION;
 
+         // Create the memento for that entity (only once)
+         final Memento memento = newEntityMemento();
+         int serializedLength = serializeToString(memento).length();
+
+         // Run the performance test
+         measure(PerformanceTestDescriptor.create()
+                 .summary(getSummaryPrefix()+".serializeEntityMemento(size="+serializedLength+"chars)")
+                 .iterations(numIterations)
+                 .minAcceptablePerSecond(minRatePerSec)
+                 .job(new Runnable() {
+                     @Override public void run() {
+                         serializeToString(memento);
+                     }}));
+     }
+     
+     @Test(groups={"Live", "Acceptance"})
+     public void testDeserializeEntityMemento() throws Exception {
+         int numIterations = numIterations();
+         double minRatePerSec = 10 * PERFORMANCE_EXPECTATION;
+
+         final String serialized = serializeToString(newEntityMemento());
+
+         measure(PerformanceTestDescriptor.create()
+                 .summary(getSummaryPrefix()+".deserializeEntityMemento(size="+serialized.length()+"chars)")
+                 .iterations(numIterations)
+                 .minAcceptablePerSecond(minRatePerSec)
+                 .job(new Runnable() {
+                     @Override public void run() {
+                         serializer.fromString(serialized);
+                     }}));
+     }
+     
+     protected String getSummaryPrefix() {
+         return "mementoSerializer";
+     }
+     
+     private Memento newEntityMemento() {
          // Create an entity with lots of config/parameters, and sensors
          Map<ConfigKey<?>, String> config = Maps.newLinkedHashMap();
          List<BasicSpecParameter<?>> params = Lists.newArrayList();
@@ -88,19 +129,7 @@ public class XmlMementoSerializerPerformanceTest extends AbstractPerformanceTest
              entity.sensors().set(sensor, "valsensor"+i);
          }
 
-         // Create the memento for that entity (only once)
-         final Memento memento = MementosGenerators.newBasicMemento(Entities.deproxy(entity));
-         int serializedLength = serializeToString(memento).length();
-
-         // Run the performance test
-         measure(PerformanceTestDescriptor.create()
-                 .summary("mementoSerializer.serializeEntityMemento(size="+serializedLength+"chars)")
-                 .iterations(numIterations)
-                 .minAcceptablePerSecond(minRatePerSec)
-                 .job(new Runnable() {
-                     @Override public void run() {
-                         serializeToString(memento);
-                     }}));
+         return MementosGenerators.newBasicMemento(Entities.deproxy(entity));
      }
      
      private String serializeToString(Object val) {
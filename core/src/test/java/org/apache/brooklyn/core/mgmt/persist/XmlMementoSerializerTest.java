@@ -19,6 +19,8 @@
 package org.apache.brooklyn.core.mgmt.persist;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 import java.net.InetAddress;
 import java.util.Arrays;
@@ -61,6 +63,9 @@ import org.apache.brooklyn.core.mgmt.ha.OsgiManager;
 import org.apache.brooklyn.core.mgmt.internal.ManagementContextInternal;
 import org.apache.brooklyn.core.mgmt.osgi.OsgiStandaloneTest;
 import org.apache.brooklyn.core.mgmt.osgi.OsgiVersionMoreEntityTest;
+import org.apache.brooklyn.core.mgmt.rebind.dto.BasicEntityMemento;
+import org.apache.brooklyn.core.mgmt.rebind.dto.MementosGenerators;
+import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.core.test.entity.LocalManagementContextForTests;
 import org.apache.brooklyn.core.test.entity.TestApplication;
 import org.apache.brooklyn.core.test.entity.TestEntity;
@@ -302,6 +307,47 @@ public class XmlMementoSerializerTest {
         }
     }
 
+    @Test
+    public void testEntityMementoReusingSerializedAttributes() throws Exception {
+        final TestApplication app = TestApplication.Factory.newManagedInstanceForTests();
+        ManagementContext managementContext = app.getManagementContext();
+        AttributeSensor<Object> list1 = Sensors.newSensor(Object.class, "test.list1");
+        AttributeSensor<Object> list2 = Sensors.newSensor(Object.class, "test.list2");
+        try {
+            TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+            List<String> shared = MutableList.of("a", "b");
+            entity.sensors().set(TestEntity.NAME, "myname");
+            entity.sensors().set(list1, shared);
+            entity.sensors().set(list2, shared);
+            BasicEntityMemento memento = (BasicEntityMemento) MementosGenerators.newBasicMemento(entity);
+            String full = serializer.toString(memento);
+            
+            Map<String, String> fragments = MutableMap.of();
+            assertEquals(serializer.toStringReusingAttributes(memento, ImmutableMap.<String, String>of(), fragments), full);
+            assertTrue(fragments.get(TestEntity.NAME.getName()).contains("myname"), "fragments="+fragments);
+            assertTrue(fragments.containsKey(list1.getName()), "fragments="+fragments);
+            // written as a reference to the first list
+            assertFalse(fragments.containsKey(list2.getName()), "fragments="+fragments);
+            
+            // where nothing else refers into the attributes reused, the document is unchanged
+            Map<String, String> reused = MutableMap.copyOf(fragments);
+            reused.remove(list1.getName());
+            Map<String, String> newFragments = MutableMap.of();
+            assertEquals(serializer.toStringReusingAttributes(memento, reused, newFragments), full);
+            assertEquals(newFragments.keySet(), ImmutableSet.of(list1.getName()));
+            
+            // otherwise the value referred to is written again
+            String reusingAll = serializer.toStringReusingAttributes(memento, fragments, MutableMap.<String, String>of());
+            serializer.setLookupContext(newEmptyLookupManagementContext(managementContext, true).add(app).add(entity));
+            BasicEntityMemento deserialized = (BasicEntityMemento) serializer.fromString(reusingAll);
+            assertEquals(deserialized.getSerializedAttributes().get(TestEntity.NAME.getName()), "myname");
+            assertEquals(deserialized.getSerializedAttributes().get(list1.getName()), shared);
+            assertEquals(deserialized.getSerializedAttributes().get(list2.getName()), shared);
+        } finally {
+            Entities.destroyAll(managementContext);
+        }
+    }
+
     private LookupContextImpl newEmptyLookupManagementContext(ManagementContext managementContext, boolean failOnDangling) {
         return new LookupContextImpl("empty context for test", managementContext,
                 ImmutableList.<Entity>of(), ImmutableList.<Location>of(), ImmutableList.<Policy>of(),
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.rebind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
+import org.apache.brooklyn.core.mgmt.persist.BrooklynMementoPersisterToObjectStore;
+import org.apache.brooklyn.core.sensor.Sensors;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterables;
+
+public class RebindIncrementalEntityMementosTest extends RebindTestFixtureWithApp {
+
+    private boolean incrementalEntityMementosEnabled;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        incrementalEntityMementosEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_INCREMENTAL_ENTITY_MEMENTOS);
+        BrooklynFeatureEnablement.enable(BrooklynFeatureEnablement.FEATURE_INCREMENTAL_ENTITY_MEMENTOS);
+        super.setUp();
+    }
+
+    @AfterMethod(alwaysRun=true)
+    @Override
+    public void tearDown() throws Exception {
+        try {
+            super.tearDown();
+        } finally {
+            BrooklynFeatureEnablement.setEnablement(BrooklynFeatureEnablement.FEATURE_INCREMENTAL_ENTITY_MEMENTOS, incrementalEntityMementosEnabled);
+        }
+    }
+
+    @Test
+    public void testRestoresAttributeAndConfigChangesPersistedIncrementally() throws Exception {
+        TestEntity origE = origApp.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(TestEntity.CONF_NAME, "orig"));
+        origE.sensors().set(TestEntity.NAME, "myname");
+        origE.sensors().set(TestEntity.SEQUENCE, 1);
+        RebindTestUtils.waitForPersisted(origApp);
+        long incrementalBefore = getMementosGeneratedIncrementally();
+        
+        origE.sensors().set(TestEntity.SEQUENCE, 2);
+        origE.sensors().remove(TestEntity.NAME);
+        origE.config().set(TestEntity.CONF_NAME, "changed");
+        RebindTestUtils.waitForPersisted(origApp);
+        assertTrue(getMementosGeneratedIncrementally() > incrementalBefore, "metrics="+getPersistMetrics());
+        
+        newApp = rebind();
+        TestEntity newE = (TestEntity) Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newE.getAttribute(TestEntity.SEQUENCE), (Integer)2);
+        assertNull(newE.getAttribute(TestEntity.NAME));
+        assertEquals(newE.getConfig(TestEntity.CONF_NAME), "changed");
+    }
+
+    @Test
+    public void testReusesXmlOfUnchangedAttributes() throws Exception {
+        AttributeSensor<Object> map = Sensors.newSensor(Object.class, "test.map");
+        AttributeSensor<Object> list1 = Sensors.newSensor(Object.class, "test.list1");
+        AttributeSensor<Object> list2 = Sensors.newSensor(Object.class, "test.list2");
+        TestEntity origE = origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        List<String> shared = MutableList.of("a", "b");
+        origE.sensors().set(map, MutableMap.of("k", MutableList.of(1, 2)));
+        origE.sensors().set(list1, shared);
+        // written as a reference to list1 while list1 is serialized, and in full once list1's XML is reused
+        origE.sensors().set(list2, shared);
+        origE.sensors().set(TestEntity.SEQUENCE, 1);
+        RebindTestUtils.waitForPersisted(origApp);
+        long reusedBefore = getAttributeFragmentMetric("attributesReused");
+        
+        origE.sensors().set(TestEntity.SEQUENCE, 2);
+        RebindTestUtils.waitForPersisted(origApp);
+        assertTrue(getAttributeFragmentMetric("attributesReused") > reusedBefore, "metrics="+getAttributeFragmentMetrics());
+        
+        origE.sensors().set(TestEntity.SEQUENCE, 3);
+        RebindTestUtils.waitForPersisted(origApp);
+        
+        newApp = rebind();
+        TestEntity newE = (TestEntity) Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newE.getAttribute(TestEntity.SEQUENCE), (Integer)3);
+        assertEquals(newE.getAttribute(map), MutableMap.of("k", MutableList.of(1, 2)));
+        assertEquals(newE.getAttribute(list1), shared);
+        assertEquals(newE.getAttribute(list2), shared);
+    }
+
+    @Test
+    public void testStructuralChangesStillPersisted() throws Exception {
+        TestEntity origE = origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        origE.sensors().set(TestEntity.SEQUENCE, 1);
+        RebindTestUtils.waitForPersisted(origApp);
+        
+        // an attribute change and a structural change to the same entity in the same period
+        origE.sensors().set(TestEntity.SEQUENCE, 2);
+        origE.tags().addTag("mytag");
+        TestEntity origChild = origE.createAndManageChild(EntitySpec.create(TestEntity.class));
+        
+        newApp = rebind();
+        TestEntity newE = (TestEntity) Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newE.getAttribute(TestEntity.SEQUENCE), (Integer)2);
+        assertTrue(newE.tags().containsTag("mytag"));
+        assertEquals(Iterables.getOnlyElement(newE.getChildren()).getId(), origChild.getId());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getPersistMetrics() {
+        return (Map<String, Object>) origManagementContext.getRebindManager().getMetrics().get("persist");
+    }
+
+    private Map<String, Object> getAttributeFragmentMetrics() {
+        return ((BrooklynMementoPersisterToObjectStore) origManagementContext.getRebindManager().getPersister()).getEntityAttributeFragmentMetrics();
+    }
+
+    private long getAttributeFragmentMetric(String name) {
+        return (Long) getAttributeFragmentMetrics().get(name);
+    }
+
+    private long getMementosGeneratedIncrementally() {
+        return (Long) getPersistMetrics().get("mementosGeneratedIncrementally");
+    }
+}
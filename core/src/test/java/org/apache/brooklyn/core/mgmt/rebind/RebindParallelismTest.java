@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.rebind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.api.policy.PolicySpec;
+import org.apache.brooklyn.core.test.entity.TestApplication;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.core.test.policy.TestPolicy;
+import org.apache.brooklyn.entity.group.BasicGroup;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+public class RebindParallelismTest extends RebindTestFixtureWithApp {
+
+    @Test
+    public void testRebindsApplicationsInParallel() throws Exception {
+        List<TestApplication> origApps = Lists.newArrayList(origApp);
+        for (int i = 0; i < 3; i++) {
+            origApps.add(createApp());
+        }
+        for (TestApplication app : origApps) {
+            TestEntity child = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+            TestEntity grandchild = child.createAndManageChild(EntitySpec.create(TestEntity.class));
+            grandchild.sensors().set(TestEntity.NAME, "grandchild-of-"+app.getId());
+        }
+        
+        newApp = rebind(RebindOptions.create().additionalProperties(ImmutableMap.of(RebindManagerImpl.REBIND_PARALLELISM.getName(), 3)));
+        
+        assertEquals(newManagementContext.getApplications().size(), origApps.size());
+        for (TestApplication origApp : origApps) {
+            Entity newApp = newManagementContext.getEntityManager().getEntity(origApp.getId());
+            Entity newChild = Iterables.getOnlyElement(newApp.getChildren());
+            Entity newGrandchild = Iterables.getOnlyElement(newChild.getChildren());
+            assertEquals(newGrandchild.getParent(), newChild);
+            assertEquals(newGrandchild.getAttribute(TestEntity.NAME), "grandchild-of-"+origApp.getId());
+        }
+    }
+
+    @Test
+    public void testRebindsGroupWithMembersInOtherApplicationsInParallel() throws Exception {
+        // the group's subtree and its members' subtrees are reconstructed concurrently;
+        // the group only changes its own members, and looks the others up in the shared rebind context
+        BasicGroup origGroup = origApp.createAndManageChild(EntitySpec.create(BasicGroup.class));
+        origGroup.policies().add(PolicySpec.create(TestPolicy.class));
+        List<Entity> origMembers = Lists.newArrayList();
+        for (int i = 0; i < 4; i++) {
+            TestEntity member = createApp().createAndManageChild(EntitySpec.create(TestEntity.class));
+            origGroup.addMember(member);
+            origMembers.add(member);
+        }
+        
+        newApp = rebind(RebindOptions.create().additionalProperties(ImmutableMap.of(RebindManagerImpl.REBIND_PARALLELISM.getName(), 3)));
+        
+        BasicGroup newGroup = (BasicGroup) newManagementContext.getEntityManager().getEntity(origGroup.getId());
+        assertEquals(newGroup.getMembers().size(), origMembers.size());
+        for (Entity origMember : origMembers) {
+            Entity newMember = newManagementContext.getEntityManager().getEntity(origMember.getId());
+            assertTrue(newGroup.hasMember(newMember), "member="+newMember+"; members="+newGroup.getMembers());
+            assertTrue(Iterables.contains(newMember.groups(), newGroup), "member="+newMember+"; groups="+Iterables.toString(newMember.groups()));
+        }
+        assertEquals(Iterables.getOnlyElement(newGroup.policies()).getClass(), TestPolicy.class);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRecordsPhaseDurations() throws Exception {
+        origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        
+        newApp = rebind();
+        
+        Map<String, Object> metrics = (Map<String, Object>) newManagementContext.getRebindManager().getMetrics().get("rebind");
+        Map<String, Long> phaseDurations = (Map<String, Long>) metrics.get("lastPhaseDurations");
+        assertTrue(phaseDurations.keySet().containsAll(Lists.newArrayList("deserializeMementos", "reconstruct", "associateAdjuncts", "manage")), 
+                "phaseDurations="+phaseDurations);
+    }
+}
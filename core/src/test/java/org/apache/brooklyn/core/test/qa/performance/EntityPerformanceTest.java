@@ -28,6 +28,7 @@ import org.apache.brooklyn.api.mgmt.Task;
 import org.apache.brooklyn.api.sensor.SensorEvent;
 import org.apache.brooklyn.api.sensor.SensorEventListener;
 import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.core.test.entity.TestEntity;
 import org.apache.brooklyn.entity.stock.BasicApplication;
 import org.apache.brooklyn.test.Asserts;
@@ -102,6 +103,27 @@ public class EntityPerformanceTest extends AbstractPerformanceTest {
                     }}));
     }
 
+    @Test(groups={"Integration", "Acceptance"})
+    public void testUpdateAttributeWhenManyAttributes() {
+        // setting a sensor should not cost more the more sensors the entity has
+        int numIterations = numIterations();
+        double minRatePerSec = 1000 * PERFORMANCE_EXPECTATION;
+        final AtomicInteger i = new AtomicInteger();
+        for (int j = 0; j < 1000; j++) {
+            entity.sensors().set(Sensors.newIntegerSensor("test.many."+j), j);
+        }
+        
+        measure(PerformanceTestDescriptor.create()
+                .summary("EntityPerformanceTest.testUpdateAttributeWhenManyAttributes")
+                .iterations(numIterations)
+                .minAcceptablePerSecond(minRatePerSec)
+                .job(new Runnable() {
+                    @Override
+                    public void run() {
+                        entity.sensors().set(TestEntity.SEQUENCE, i.getAndIncrement());
+                    }}));
+    }
+
     @Test(groups={"Integration", "Acceptance"})
     public void testUpdateAttributeWithNoopListeners() {
         final int numIterations = numIterations();
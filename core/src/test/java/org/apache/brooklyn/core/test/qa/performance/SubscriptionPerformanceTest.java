@@ -158,4 +158,48 @@ public class SubscriptionPerformanceTest extends AbstractPerformanceTest {
             throw exception.get();
         }
     }
+
+    /**
+     * Publishes from many threads at once, each to its own entity, with wildcard subscribers present.
+     * Throughput should scale with the number of cores, as publishing does not take a shared lock
+     * to look up subscriptions.
+     */
+    @Test(groups={"Integration", "Acceptance"})
+    public void testManyConcurrentPublishersWithWildcardSubscribers() throws Exception {
+        int numThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        int numIterations = NUM_ITERATIONS;
+        double minRatePerSec = 100 * PERFORMANCE_EXPECTATION;
+        final AtomicInteger iter = new AtomicInteger();
+        final int expectedCount = numIterations;
+        
+        final AtomicInteger listenerCount = new AtomicInteger();
+        final CountDownLatch completionLatch = new CountDownLatch(1);
+        
+        // wildcard producer, so every publish on every entity must consult it
+        subscriptionManager.subscribe(MutableMap.<String, Object>of("subscriber", "wildcard"), null, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override
+            public void onEvent(SensorEvent<Integer> event) {
+                int count = listenerCount.incrementAndGet();
+                if (count >= expectedCount) completionLatch.countDown();
+            }});
+        // and unrelated subscribers on every entity
+        for (TestEntity e : entities) {
+            subscriptionManager.subscribe(MutableMap.<String, Object>of("subscriber", e.getId()), e, TestEntity.MY_NOTIF, new SensorEventListener<Integer>() {
+                @Override
+                public void onEvent(SensorEvent<Integer> event) {
+                }});
+        }
+        
+        measure(PerformanceTestDescriptor.create()
+                .summary("SubscriptionPerformanceTest.testManyConcurrentPublishersWithWildcardSubscribers")
+                .iterations(numIterations)
+                .numConcurrentJobs(numThreads)
+                .minAcceptablePerSecond(minRatePerSec)
+                .job(new Runnable() {
+                    @Override public void run() {
+                        int i = iter.getAndIncrement();
+                        entities.get(i % entities.size()).sensors().set(TestEntity.SEQUENCE, i);
+                    }})
+                .completionLatch(completionLatch));
+    }
 }
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.test.qa.performance;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.typereg.RegisteredType;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.core.typereg.BasicBrooklynTypeRegistry;
+import org.apache.brooklyn.core.typereg.BasicTypeImplementationPlan;
+import org.apache.brooklyn.core.typereg.JavaClassNameTypePlanTransformer;
+import org.apache.brooklyn.core.typereg.RegisteredTypePredicates;
+import org.apache.brooklyn.core.typereg.RegisteredTypes;
+import org.apache.brooklyn.test.performance.PerformanceTestDescriptor;
+import org.apache.brooklyn.test.performance.PerformanceTestResult;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * Compares lookups in a small and a large type registry, to check that unversioned lookups
+ * by name or alias, and filtering by tag, do not slow down as the number of types grows.
+ */
+public class TypeRegistryPerformanceTest extends AbstractPerformanceTest {
+
+    private static final int NUM_ITERATIONS = 10000;
+    private static final int SMALL_REGISTRY_SIZE = 100;
+    private static final int LARGE_REGISTRY_SIZE = 10000;
+
+    private BasicBrooklynTypeRegistry registry() {
+        return (BasicBrooklynTypeRegistry) mgmt.getTypeRegistry();
+    }
+
+    private void addTypes(int fromIndex, int toIndex) {
+        for (int i = fromIndex; i < toIndex; i++) {
+            RegisteredType type = RegisteredTypes.spec("perf.entity."+i, "1.0",
+                new BasicTypeImplementationPlan(JavaClassNameTypePlanTransformer.FORMAT, TestEntity.class.getName()), Entity.class);
+            RegisteredTypes.addAlias(type, "perf-alias-"+i);
+            RegisteredTypes.addTag(type, "perf-tag-"+i);
+            registry().addToLocalUnpersistedTypeRegistry(type, false);
+        }
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testLookupByNameIndependentOfRegistrySize() {
+        runComparison("testLookupByName", new LookupJob() {
+            @Override public void lookup(int i) {
+                Assert.assertNotNull(registry().get("perf.entity."+i));
+            }});
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testLookupByAliasIndependentOfRegistrySize() {
+        runComparison("testLookupByAlias", new LookupJob() {
+            @Override public void lookup(int i) {
+                Assert.assertNotNull(registry().get("perf-alias-"+i));
+            }});
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testFilterByTagIndependentOfRegistrySize() {
+        runComparison("testFilterByTag", new LookupJob() {
+            @Override public void lookup(int i) {
+                Assert.assertEquals(Iterables.size(registry().getMatching(RegisteredTypePredicates.tag("perf-tag-"+i))), 1);
+            }});
+    }
+
+    private interface LookupJob {
+        void lookup(int i);
+    }
+
+    private void runComparison(String methodName, LookupJob job) {
+        addTypes(0, SMALL_REGISTRY_SIZE);
+        PerformanceTestResult small = measureLookups(methodName+"-"+SMALL_REGISTRY_SIZE, job);
+
+        addTypes(SMALL_REGISTRY_SIZE, LARGE_REGISTRY_SIZE);
+        PerformanceTestResult large = measureLookups(methodName+"-"+LARGE_REGISTRY_SIZE, job);
+
+        // a scan would be about 100 times slower with the larger registry; allow for noise
+        Assert.assertTrue(large.ratePerSecond > small.ratePerSecond / 10,
+            "rate with "+LARGE_REGISTRY_SIZE+" types ("+large.ratePerSecond+"/s) much lower than with "
+                + SMALL_REGISTRY_SIZE+" types ("+small.ratePerSecond+"/s)");
+    }
+
+    private PerformanceTestResult measureLookups(String summary, final LookupJob job) {
+        final AtomicInteger counter = new AtomicInteger();
+        double minRatePerSec = 1000 * PERFORMANCE_EXPECTATION;
+        return measure(PerformanceTestDescriptor.create()
+                .summary("TypeRegistryPerformanceTest." + summary)
+                .iterations(NUM_ITERATIONS)
+                .minAcceptablePerSecond(minRatePerSec)
+                .job(new Runnable() {
+                    @Override
+                    public void run() {
+                        // only look up types present in the small registry, so both runs do the same work
+                        job.lookup(counter.getAndIncrement() % SMALL_REGISTRY_SIZE);
+                    }}));
+    }
+}
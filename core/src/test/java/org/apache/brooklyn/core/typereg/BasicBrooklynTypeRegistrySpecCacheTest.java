@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.typereg;
+
+import java.util.Map;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.api.typereg.RegisteredType;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.internal.BrooklynProperties;
+import org.apache.brooklyn.core.test.BrooklynMgmtUnitTestSupport;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.reflect.TypeToken;
+
+public class BasicBrooklynTypeRegistrySpecCacheTest extends BrooklynMgmtUnitTestSupport {
+
+    private static final RegisteredType ENTITY_TYPE = RegisteredTypes.spec("cached.entity", "1.0",
+        new BasicTypeImplementationPlan(JavaClassNameTypePlanTransformer.FORMAT, TestEntity.class.getName()), Entity.class);
+    private static final RegisteredType OTHER_TYPE = RegisteredTypes.spec("other.entity", "1.0",
+        new BasicTypeImplementationPlan(JavaClassNameTypePlanTransformer.FORMAT, TestEntity.class.getName()), Entity.class);
+
+    @SuppressWarnings("serial")
+    private static final ConfigKey<EntitySpec<?>> MEMBER_SPEC = ConfigKeys.newConfigKey(new TypeToken<EntitySpec<?>>() {}, "test.memberSpec");
+
+    @Override
+    protected BrooklynProperties getBrooklynProperties() {
+        BrooklynProperties result = BrooklynProperties.Factory.newEmpty();
+        result.put(BasicBrooklynTypeRegistry.SPEC_CACHE_SIZE, 100);
+        return result;
+    }
+
+    private BasicBrooklynTypeRegistry registry() {
+        return (BasicBrooklynTypeRegistry) mgmt.getTypeRegistry();
+    }
+
+    private EntitySpec<?> createSpec(RegisteredType type) {
+        return registry().createSpec(type, null, EntitySpec.class);
+    }
+
+    @Test
+    public void testRepeatedCreateSpecIsHitAndReturnsCopy() {
+        registry().addToLocalUnpersistedTypeRegistry(ENTITY_TYPE, false);
+
+        EntitySpec<?> spec1 = createSpec(ENTITY_TYPE);
+        spec1.configure(TestEntity.CONF_NAME, "changed");
+        spec1.child(EntitySpec.create(TestEntity.class));
+        EntitySpec<?> spec2 = createSpec(ENTITY_TYPE);
+        EntitySpec<?> spec3 = createSpec(ENTITY_TYPE);
+
+        Assert.assertEquals(spec2.getType(), TestEntity.class);
+        Assert.assertNotSame(spec2, spec1);
+        Assert.assertNotSame(spec3, spec2);
+        Assert.assertFalse(spec2.getConfig().containsKey(TestEntity.CONF_NAME), "config="+spec2.getConfig());
+        Assert.assertTrue(spec2.getChildren().isEmpty(), "children="+spec2.getChildren());
+
+        Map<String, Object> metrics = registry().getSpecCacheMetrics();
+        Assert.assertEquals(metrics.get("parses"), 1L, "metrics="+metrics);
+        Assert.assertEquals(metrics.get("hits"), 2L, "metrics="+metrics);
+        Assert.assertEquals(metrics.get("misses"), 1L, "metrics="+metrics);
+    }
+
+    @Test
+    public void testCopiesAreDeep() {
+        RegisteredTypeSpecCache cache = new RegisteredTypeSpecCache(10);
+        RegisteredTypeSpecCache.Key key = RegisteredTypeSpecCache.keyFor(ENTITY_TYPE, RegisteredTypeLoadingContexts.spec(Entity.class));
+        EntitySpec<TestEntity> memberSpec = EntitySpec.create(TestEntity.class);
+        cache.put(key, cache.getVersion(), EntitySpec.create(TestEntity.class)
+                .configure(MEMBER_SPEC, memberSpec)
+                .child(EntitySpec.create(TestEntity.class)));
+
+        EntitySpec<?> spec1 = (EntitySpec<?>) cache.getCopy(key);
+        ((EntitySpec<?>) spec1.getConfig().get(MEMBER_SPEC)).configure(TestEntity.CONF_NAME, "changed");
+        spec1.getChildren().get(0).configure(TestEntity.CONF_NAME, "changed");
+        memberSpec.configure(TestEntity.CONF_NAME, "changed-original");
+
+        EntitySpec<?> spec2 = (EntitySpec<?>) cache.getCopy(key);
+        Assert.assertEquals(spec2.getType(), TestEntity.class);
+        Assert.assertFalse(((EntitySpec<?>) spec2.getConfig().get(MEMBER_SPEC)).getConfig().containsKey(TestEntity.CONF_NAME));
+        Assert.assertFalse(spec2.getChildren().get(0).getConfig().containsKey(TestEntity.CONF_NAME));
+    }
+
+    @Test
+    public void testRegistryChangeInvalidates() {
+        registry().addToLocalUnpersistedTypeRegistry(ENTITY_TYPE, false);
+        createSpec(ENTITY_TYPE);
+        createSpec(ENTITY_TYPE);
+
+        registry().addToLocalUnpersistedTypeRegistry(OTHER_TYPE, false);
+        createSpec(ENTITY_TYPE);
+
+        Map<String, Object> metrics = registry().getSpecCacheMetrics();
+        Assert.assertEquals(metrics.get("parses"), 2L, "metrics="+metrics);
+        Assert.assertEquals(metrics.get("hits"), 1L, "metrics="+metrics);
+
+        registry().delete(OTHER_TYPE);
+        createSpec(ENTITY_TYPE);
+        Assert.assertEquals(registry().getSpecCacheMetrics().get("parses"), 3L);
+    }
+
+    @Test
+    public void testAnonymousPlansNotCached() {
+        registry().createSpecFromPlan(JavaClassNameTypePlanTransformer.FORMAT, TestEntity.class.getName(), null, EntitySpec.class);
+        registry().createSpecFromPlan(JavaClassNameTypePlanTransformer.FORMAT, TestEntity.class.getName(), null, EntitySpec.class);
+
+        Map<String, Object> metrics = registry().getSpecCacheMetrics();
+        Assert.assertEquals(metrics.get("hits"), 0L, "metrics="+metrics);
+        Assert.assertEquals(metrics.get("misses"), 0L, "metrics="+metrics);
+    }
+}
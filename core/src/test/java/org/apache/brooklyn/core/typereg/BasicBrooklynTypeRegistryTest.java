@@ -20,6 +20,7 @@ package org.apache.brooklyn.core.typereg;
 
 import javax.annotation.Nonnull;
 
+import org.apache.brooklyn.api.typereg.BrooklynTypeRegistry.RegisteredTypeKind;
 import org.apache.brooklyn.api.typereg.RegisteredType;
 import org.apache.brooklyn.api.typereg.RegisteredType.TypeImplementationPlan;
 import org.apache.brooklyn.core.test.BrooklynMgmtUnitTestSupport;
@@ -191,4 +192,35 @@ public class BasicBrooklynTypeRegistryTest extends BrooklynMgmtUnitTestSupport {
         
     }
 
+    @Test
+    public void testIndexedFiltersFollowAddAndDelete() {
+        RegisteredType sampleType15 = RegisteredTypes.addTag(RegisteredTypes.addAlias(
+            beanWithSuper("item.A", "1.5", new BasicTypeImplementationPlan("ignore", null), String.class),
+            "my_a"), "the_a");
+        add(SAMPLE_TYPE);
+        add(sampleType15);
+        
+        Assert.assertEquals( MutableSet.copyOf(registry().getMatching(RegisteredTypePredicates.subtypeOf(CharSequence.class))),
+            MutableSet.of(SAMPLE_TYPE, sampleType15) );
+        Assert.assertEquals( MutableSet.copyOf(registry().getMatching(RegisteredTypePredicates.subtypeOf(String.class.getName()))),
+            MutableSet.of(SAMPLE_TYPE, sampleType15) );
+        Assert.assertEquals( MutableSet.copyOf(registry().getMatching(RegisteredTypePredicates.kind(RegisteredTypeKind.BEAN))),
+            MutableSet.of(SAMPLE_TYPE, sampleType15) );
+        Assert.assertEquals( MutableList.copyOf(registry().getMatching(RegisteredTypePredicates.and(
+                RegisteredTypePredicates.subtypeOf(Object.class), RegisteredTypePredicates.nameOrAlias("my_a")))),
+            MutableList.of(sampleType15) );
+        Assert.assertTrue( Iterables.isEmpty(registry().getMatching(RegisteredTypePredicates.subtypeOf(Integer.class))) );
+        Assert.assertTrue( Iterables.isEmpty(registry().getMatching(RegisteredTypePredicates.kind(RegisteredTypeKind.SPEC))) );
+        
+        registry().delete(sampleType15);
+        Assert.assertTrue( Iterables.isEmpty(registry().getMatching(RegisteredTypePredicates.tag("the_a"))) );
+        Assert.assertTrue( Iterables.isEmpty(registry().getMatching(RegisteredTypePredicates.alias("my_a"))) );
+        Assert.assertEquals( MutableList.copyOf(registry().getMatching(RegisteredTypePredicates.subtypeOf(CharSequence.class))),
+            MutableList.of(SAMPLE_TYPE) );
+        Assert.assertNull( registry().get("my_a") );
+        
+        registry().clear();
+        Assert.assertTrue( Iterables.isEmpty(registry().getMatching(RegisteredTypePredicates.symbolicName(SAMPLE_TYPE.getSymbolicName()))) );
+    }
+
 }
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.feed.http;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.brooklyn.test.Asserts;
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class AsyncHttpPollExecutorTest {
+
+    private static final long TIMEOUT_MS = 10*1000;
+
+    private AsyncHttpPollExecutor executor;
+    private CountDownLatch release;
+    private CountDownLatch interrupted;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        executor = new AsyncHttpPollExecutor(false, 4, 1, 1, Duration.ONE_MINUTE);
+        release = new CountDownLatch(1);
+        interrupted = new CountDownLatch(1);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (release != null) release.countDown();
+        if (executor != null) executor.shutdown();
+    }
+
+    @Test
+    public void testTimeoutInterruptsRequestAndFreesHostForNext() throws Exception {
+        ListenableFuture<String> blocked = executor.submit("host", "a", newBlockingRequest(), Duration.millis(100));
+        ListenableFuture<String> next = executor.submit("host", "b", newRequest("b"), null);
+        
+        assertEquals(next.get(TIMEOUT_MS, TimeUnit.MILLISECONDS), "b");
+        assertFailsWith(blocked, TimeoutException.class);
+        assertTrue(interrupted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), "blocked request not interrupted");
+        assertEquals(executor.getMetrics().get("timedOut"), 1L);
+    }
+
+    @Test
+    public void testCancelInterruptsRequestAndFreesHostForNext() throws Exception {
+        ListenableFuture<String> blocked = executor.submit("host", "a", newBlockingRequest(), null);
+        ListenableFuture<String> next = executor.submit("host", "b", newRequest("b"), null);
+        
+        blocked.cancel(false);
+        
+        assertEquals(next.get(TIMEOUT_MS, TimeUnit.MILLISECONDS), "b");
+        assertTrue(interrupted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), "blocked request not interrupted");
+    }
+
+    @Test
+    public void testTimedOutRequestKeepsHostUntilItReturns() throws Exception {
+        // e.g. blocked in a socket read on a platform thread, which an interrupt does not stop
+        ListenableFuture<String> blocked = executor.submit("host", "a", newUninterruptibleRequest(), Duration.millis(100));
+        ListenableFuture<String> next = executor.submit("host", "b", newRequest("b"), null);
+        
+        assertFailsWith(blocked, TimeoutException.class);
+        assertFalse(next.isDone(), "next request ran while timed out request still running");
+        
+        release.countDown();
+        assertEquals(next.get(TIMEOUT_MS, TimeUnit.MILLISECONDS), "b");
+    }
+
+    @Test
+    public void testDropsRequestFromSourceAlreadyWaitingForHost() throws Exception {
+        executor.submit("host", "a", newBlockingRequest(), null);
+        ListenableFuture<String> queued = executor.submit("host", "b", newRequest("b1"), null);
+        ListenableFuture<String> duplicate = executor.submit("host", "b", newRequest("b2"), null);
+        
+        assertSame(duplicate, queued);
+        release.countDown();
+        assertEquals(duplicate.get(TIMEOUT_MS, TimeUnit.MILLISECONDS), "b1");
+        assertEquals(executor.getMetrics().get("duplicatesDropped"), 1L);
+    }
+
+    @Test
+    public void testRejectsRequestsBeyondMaxQueuedForHost() throws Exception {
+        executor.submit("host", "a", newBlockingRequest(), null);
+        ListenableFuture<String> queued = executor.submit("host", "b", newRequest("b"), null);
+        ListenableFuture<String> rejected = executor.submit("host", "c", newRequest("c"), null);
+        
+        assertFailsWith(rejected, RejectedExecutionException.class);
+        // other hosts are not affected
+        assertEquals(executor.submit("otherHost", "c", newRequest("c"), null).get(TIMEOUT_MS, TimeUnit.MILLISECONDS), "c");
+        
+        release.countDown();
+        assertEquals(queued.get(TIMEOUT_MS, TimeUnit.MILLISECONDS), "b");
+        assertEquals(executor.getMetrics().get("rejected"), 1L);
+    }
+
+    @Test
+    public void testForgetsHostsWithNoRequests() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            assertEquals(executor.submit("host"+i, null, newRequest("r"), null).get(TIMEOUT_MS, TimeUnit.MILLISECONDS), "r");
+        }
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(executor.getMetrics().get("hosts"), 0);
+            }});
+    }
+
+    private Callable<String> newRequest(final String result) {
+        return new Callable<String>() {
+            @Override public String call() {
+                return result;
+            }
+        };
+    }
+
+    private Callable<String> newBlockingRequest() {
+        return new Callable<String>() {
+            @Override public String call() throws Exception {
+                try {
+                    release.await();
+                    return "released";
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+            }
+        };
+    }
+
+    private Callable<String> newUninterruptibleRequest() {
+        return new Callable<String>() {
+            @Override public String call() throws Exception {
+                Uninterruptibles.awaitUninterruptibly(release);
+                return "released";
+            }
+        };
+    }
+
+    private void assertFailsWith(ListenableFuture<?> future, Class<? extends Exception> expected) throws Exception {
+        try {
+            Object result = future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            fail("expected "+expected.getSimpleName()+", but got "+result);
+        } catch (ExecutionException e) {
+            assertTrue(expected.isInstance(e.getCause()), "cause="+e.getCause());
+        }
+    }
+}
@@ -521,7 +521,7 @@ public class HttpFeedTest extends BrooklynAppUnitTestSupport {
     }
     
 
-    private <T> void assertSensorEventually(final AttributeSensor<T> sensor, final T expectedVal, long timeout) {
+    protected <T> void assertSensorEventually(final AttributeSensor<T> sensor, final T expectedVal, long timeout) {
         Asserts.succeedsEventually(ImmutableMap.of("timeout", timeout), new Callable<Void>() {
             @Override
             public Void call() {
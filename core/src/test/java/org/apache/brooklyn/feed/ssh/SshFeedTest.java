@@ -19,6 +19,7 @@
 package org.apache.brooklyn.feed.ssh;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 import java.util.List;
 import java.util.Map;
@@ -27,6 +28,7 @@ import org.apache.brooklyn.api.entity.EntityLocal;
 import org.apache.brooklyn.api.entity.EntitySpec;
 import org.apache.brooklyn.api.location.LocationSpec;
 import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
 import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
 import org.apache.brooklyn.core.test.entity.TestEntity;
@@ -42,6 +44,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.google.common.base.Functions;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -165,6 +168,46 @@ public class SshFeedTest extends BrooklynAppUnitTestSupport {
             }});
     }
 
+    @Test
+    public void testBatchesDifferentCommandsWhenEnabled() throws Exception {
+        boolean batchingEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_BATCH_SSH_FEED_COMMANDS);
+        BrooklynFeatureEnablement.enable(BrooklynFeatureEnablement.FEATURE_BATCH_SSH_FEED_COMMANDS);
+        try {
+            final RecordingSshMachineLocation recordingMachine = mgmt.getLocationManager().createLocation(LocationSpec.create(RecordingSshMachineLocation.class)
+                    .configure(SshCommandBatcher.BATCH_WINDOW, Duration.FIVE_SECONDS));
+            app.start(ImmutableList.of(recordingMachine));
+            
+            final String cmd = "myCommand";
+            final String cmd2 = "myCommand2";
+            
+            feed = SshFeed.builder()
+                    .period(Duration.PRACTICALLY_FOREVER)
+                    .entity(entity)
+                    .poll(new SshPollConfig<String>(SENSOR_STRING)
+                            .command(cmd)
+                            .onSuccess(Functions.constant("success")))
+                    .poll(new SshPollConfig<String>(SENSOR_STRING2)
+                            .env(ImmutableMap.of("mykey", "myval"))
+                            .command(cmd2)
+                            .onSuccess(Functions.constant("success")))
+                    .build();
+            
+            // Expect a single exec, running both commands (each with its begin and end markers)
+            Asserts.succeedsEventually(new Runnable() {
+                @Override
+                public void run() {
+                    assertEquals(RecordingSshMachineLocation.execScriptCalls.size(), 1, "calls="+RecordingSshMachineLocation.execScriptCalls);
+                    List<String> script = RecordingSshMachineLocation.execScriptCalls.get(0);
+                    assertEquals(script.size(), 4, "script="+script);
+                    String joined = Joiner.on("\n").join(script);
+                    assertTrue(joined.contains("\n"+cmd+"\n"), "script="+script);
+                    assertTrue(joined.contains("export mykey=\"myval\"\n"+cmd2+"\n"), "script="+script);
+                }});
+        } finally {
+            BrooklynFeatureEnablement.setEnablement(BrooklynFeatureEnablement.FEATURE_BATCH_SSH_FEED_COMMANDS, batchingEnabled);
+        }
+    }
+
     public static class RecordingSshMachineLocation extends SshMachineLocation {
         public static List<List<String>> execScriptCalls = Lists.newCopyOnWriteArrayList();
 
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.util.core.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.api.mgmt.Task;
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
+import org.apache.brooklyn.test.Asserts;
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class BasicExecutionManagerVirtualThreadsTest {
+
+    private BasicExecutionManager em;
+    private boolean virtualThreadsWasPreviouslyEnabled;
+    
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        if (!VirtualThreads.isAvailable()) {
+            throw new SkipException("Virtual threads not available in this JVM");
+        }
+        virtualThreadsWasPreviouslyEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_VIRTUAL_THREADS);
+        BrooklynFeatureEnablement.enable(BrooklynFeatureEnablement.FEATURE_VIRTUAL_THREADS);
+        em = new BasicExecutionManager("mycontextid");
+    }
+    
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (em != null) em.shutdownNow();
+        BrooklynFeatureEnablement.setEnablement(BrooklynFeatureEnablement.FEATURE_VIRTUAL_THREADS, virtualThreadsWasPreviouslyEnabled);
+    }
+    
+    @Test
+    public void testTaskRunsOnVirtualThread() throws Exception {
+        final BasicTask<Boolean> t = new BasicTask<Boolean>(new Callable<Boolean>() {
+            @Override public Boolean call() {
+                return isVirtual(Thread.currentThread());
+            }});
+        em.submit(MutableMap.of("tag", "A"), t);
+        assertTrue(t.get(), "task did not run on a virtual thread");
+    }
+    
+    @Test
+    public void testTaskRunsWithCurrentTaskSet() throws Exception {
+        assertTrue(em.isUsingVirtualThreads());
+        final BasicTask<Task<?>> t = new BasicTask<Task<?>>(new Callable<Task<?>>() {
+            @Override public Task<?> call() {
+                return Tasks.current();
+            }});
+        em.submit(MutableMap.of("tag", "A"), t);
+        assertEquals(t.get(), t);
+    }
+    
+    @Test
+    public void testManyConcurrentlyBlockedTasks() throws Exception {
+        // virtual threads are carried by a pool with one platform thread per processor (by default);
+        // with platform threads each blocked task would hold one, so block many more than that at once
+        final int carrierThreads = Integer.getInteger("jdk.virtualThreadScheduler.parallelism", Runtime.getRuntime().availableProcessors());
+        final int numTasks = Math.max(1000, carrierThreads * 100);
+        final CountDownLatch allStarted = new CountDownLatch(numTasks);
+        // the count alone would also pass with (enough) platform threads, so check what each task runs on
+        final List<Thread> platformThreads = new CopyOnWriteArrayList<Thread>();
+        final CountDownLatch release = new CountDownLatch(1);
+        List<Task<?>> tasks = MutableList.of();
+        try {
+            for (int i=0; i<numTasks; i++) {
+                tasks.add(em.submit(MutableMap.of("tag", "A"), new Runnable() {
+                    @Override public void run() {
+                        if (!isVirtual(Thread.currentThread())) platformThreads.add(Thread.currentThread());
+                        allStarted.countDown();
+                        try {
+                            release.await(30, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }}));
+            }
+            assertTrue(allStarted.await(30, TimeUnit.SECONDS), "only "+(numTasks-allStarted.getCount())+" of "+numTasks+" tasks started");
+            long active = em.getNumActiveTasks();
+            assertTrue(active > carrierThreads, "active="+active+"; carrierThreads="+carrierThreads);
+            assertEquals(active, numTasks);
+            assertTrue(platformThreads.isEmpty(), "tasks ran on platform threads: "+platformThreads);
+        } finally {
+            release.countDown();
+        }
+        for (Task<?> t : tasks) {
+            t.get();
+        }
+        // the count is decremented after the task's result is set, so may briefly lag
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(em.getNumActiveTasks(), 0);
+            }});
+    }
+
+    /** {@code Thread.isVirtual()}, which is only present in Java 21+ */
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+}
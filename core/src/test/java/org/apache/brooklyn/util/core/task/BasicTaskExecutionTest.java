@@ -28,7 +28,9 @@ import static org.testng.Assert.fail;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
@@ -187,6 +189,92 @@ public class BasicTaskExecutionTest {
         assertEquals(em.getTasksWithAnyTag(ImmutableList.of("A", "D")).size(), 3);
     }
 
+    @Test
+    public void testTaskTagIndexUnderConcurrentSubmissionAndDeletion() throws Exception {
+        final int numThreads = 8;
+        final int tasksPerThread = 200;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = Lists.newArrayList();
+        for (int i = 0; i < numThreads; i++) {
+            final String ownTag = "T"+i;
+            Thread thread = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < tasksPerThread; j++) {
+                            Task<?> t = em.submit(MutableMap.of("tags", ImmutableList.of("shared", ownTag)), newNoop());
+                            t.get();
+                            // delete every other task, so tags are emptied and re-created concurrently
+                            if (j % 2 == 0) em.deleteTask(t);
+                        }
+                    } catch (Exception e) {
+                        throw Throwables.propagate(e);
+                    }
+                }});
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT_MS);
+            assertFalse(thread.isAlive());
+        }
+        
+        assertEquals(em.getNumTasksWithTag("shared"), numThreads*tasksPerThread/2);
+        assertEquals(em.getTasksWithTag("shared").size(), numThreads*tasksPerThread/2);
+        for (int i = 0; i < numThreads; i++) {
+            assertEquals(em.getNumTasksWithTag("T"+i), tasksPerThread/2);
+        }
+        
+        for (Task<?> t : em.getTasksWithTag("T0")) {
+            em.deleteTask(t);
+        }
+        assertEquals(em.getNumTasksWithTag("T0"), 0);
+        assertNull(em.tasksWithTagLiveOrNull("T0"));
+        assertFalse(em.getTaskTags().contains("T0"));
+        assertEquals(em.getNumTasksWithTag("shared"), (numThreads-1)*tasksPerThread/2);
+    }
+
+    @Test
+    public void testLiveTasksWithTagIterableWhileTasksDeleted() throws Exception {
+        List<Task<?>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            tasks.add(em.submit(MutableMap.of("tag", "A"), newNoop()));
+        }
+        for (Task<?> t : tasks) t.get();
+        
+        Set<Task<?>> live = em.tasksWithTagLiveOrNull("A");
+        assertTrue(live.contains(tasks.get(50)));
+        int count = 0;
+        // the view needs no lock, and deleting as we go must not break the iteration
+        for (Task<?> t : live) {
+            assertEquals(t, tasks.get(count++));
+            em.deleteTask(t);
+            assertFalse(live.contains(t));
+        }
+        assertEquals(count, tasks.size());
+        assertEquals(live.size(), 0);
+        assertNull(em.tasksWithTagLiveOrNull("A"));
+    }
+
+    @Test
+    public void testTasksWithTagReturnedInSubmissionOrder() throws Exception {
+        // many tasks share a submit time (in millis), so this checks the order is kept by the index
+        List<Task<?>> tasks = Lists.newArrayList();
+        List<Task<?>> evenTasks = Lists.newArrayList();
+        for (int i = 0; i < 200; i++) {
+            Task<?> t = em.submit(MutableMap.of("tags", ImmutableList.of("A", i%2==0 ? "even" : "odd")), newNoop());
+            tasks.add(t);
+            if (i%2==0) evenTasks.add(t);
+        }
+        for (Task<?> t : tasks) {
+            t.get();
+        }
+        assertEquals(ImmutableList.copyOf(em.getTasksWithTag("A")), tasks);
+        assertEquals(ImmutableList.copyOf(em.getTasksWithAnyTag(ImmutableList.of("A"))), tasks);
+        assertEquals(ImmutableList.copyOf(em.getTasksWithTag("even")), evenTasks);
+    }
+
     @Test
     public void testGetTaskById() throws Exception {
         Task<?> t = new BasicTask<Void>(newNoop());
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.util.core.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.test.Asserts;
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+public class HashedWheelTaskTimerTest {
+
+    private HashedWheelTaskTimer timer;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        // small wheel, so that delays span several revolutions
+        timer = new HashedWheelTaskTimer(new ThreadFactoryBuilder().setDaemon(true).build(), Duration.millis(5), 8);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (timer != null) {
+            timer.shutdownNow();
+            assertTrue(timer.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testRunsJobsInDeadlineOrderAndNotEarly() throws Exception {
+        final List<Integer> order = new CopyOnWriteArrayList<Integer>();
+        final long start = System.nanoTime();
+        List<ScheduledFuture<Long>> futures = ImmutableList.of(
+            timer.schedule(newRecordingJob(order, 3, start), 150, TimeUnit.MILLISECONDS),
+            timer.schedule(newRecordingJob(order, 1, start), 10, TimeUnit.MILLISECONDS),
+            timer.schedule(newRecordingJob(order, 2, start), 70, TimeUnit.MILLISECONDS));
+        
+        assertTrue(futures.get(0).get(10, TimeUnit.SECONDS) >= TimeUnit.MILLISECONDS.toNanos(150));
+        assertTrue(futures.get(1).get() >= TimeUnit.MILLISECONDS.toNanos(10));
+        assertTrue(futures.get(2).get() >= TimeUnit.MILLISECONDS.toNanos(70));
+        assertEquals(order, ImmutableList.of(1, 2, 3));
+        assertEquals(timer.getPendingCount(), 0);
+    }
+
+    @Test
+    public void testCancelledJobNotRun() throws Exception {
+        final List<Integer> order = new CopyOnWriteArrayList<Integer>();
+        long start = System.nanoTime();
+        ScheduledFuture<Long> cancelled = timer.schedule(newRecordingJob(order, 1, start), 50, TimeUnit.MILLISECONDS);
+        ScheduledFuture<Long> kept = timer.schedule(newRecordingJob(order, 2, start), 100, TimeUnit.MILLISECONDS);
+        assertTrue(cancelled.getDelay(TimeUnit.MILLISECONDS) > 0);
+        assertTrue(cancelled.cancel(false));
+        
+        kept.get(10, TimeUnit.SECONDS);
+        assertTrue(cancelled.isCancelled());
+        assertEquals(order, ImmutableList.of(2));
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(timer.getPendingCount(), 0);
+            }});
+    }
+
+    @Test
+    public void testRejectsAfterShutdown() throws Exception {
+        timer.shutdownNow();
+        assertTrue(timer.awaitTermination(10, TimeUnit.SECONDS));
+        try {
+            timer.schedule(newRecordingJob(new CopyOnWriteArrayList<Integer>(), 1, System.nanoTime()), 1, TimeUnit.MILLISECONDS);
+            Asserts.shouldHaveFailedPreviously();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertFalse(timer.toString().isEmpty());
+    }
+
+    private static Callable<Long> newRecordingJob(final List<Integer> order, final int id, final long start) {
+        return new Callable<Long>() {
+            @Override public Long call() {
+                order.add(id);
+                return System.nanoTime() - start;
+            }
+        };
+    }
+}
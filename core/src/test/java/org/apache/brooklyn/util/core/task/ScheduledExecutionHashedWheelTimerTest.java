@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.util.core.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Runs the {@link ScheduledExecutionTest} tests with {@link BrooklynFeatureEnablement#FEATURE_HASHED_WHEEL_TIMER} enabled.
+ */
+public class ScheduledExecutionHashedWheelTimerTest extends ScheduledExecutionTest {
+
+    private boolean hashedWheelTimerEnabled;
+
+    @BeforeMethod(alwaysRun=true)
+    public void enableHashedWheelTimer() {
+        hashedWheelTimerEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_HASHED_WHEEL_TIMER);
+        BrooklynFeatureEnablement.enable(BrooklynFeatureEnablement.FEATURE_HASHED_WHEEL_TIMER);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void restoreHashedWheelTimer() {
+        BrooklynFeatureEnablement.setEnablement(BrooklynFeatureEnablement.FEATURE_HASHED_WHEEL_TIMER, hashedWheelTimerEnabled);
+    }
+
+    @Test
+    public void testUsesHashedWheelTimerAndRecordsLag() throws Exception {
+        BasicExecutionManager m = new BasicExecutionManager("mycontextid");
+        try {
+            assertTrue(m.getTaskTimer() instanceof HashedWheelTaskTimer, "timer="+m.getTaskTimer());
+            
+            final AtomicInteger i = new AtomicInteger(0);
+            ScheduledTask t = ScheduledTask.builder(() -> new BasicTask<Integer>(() -> i.incrementAndGet()))
+                    .period(Duration.millis(20))
+                    .maxIterations(3)
+                    .build();
+            m.submit(t);
+            t.blockUntilEnded();
+            assertEquals(i.get(), 3);
+            
+            Map<String, Map<String, Object>> lag = m.getSchedulingLagMetrics().getMetrics();
+            assertEquals(lag.keySet().toString(), "[periodUpTo1s]");
+            assertEquals(lag.get("periodUpTo1s").get("count"), 3L);
+        } finally {
+            m.shutdownNow();
+        }
+    }
+}
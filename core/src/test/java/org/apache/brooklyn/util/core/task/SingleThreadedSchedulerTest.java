@@ -27,7 +27,11 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -187,6 +191,63 @@ public class SingleThreadedSchedulerTest {
         assertEquals(future.get(), (Integer)123);
     }
     
+    @Test
+    public void testCarriesOnAfterExecutorRejectsSubmission() throws Exception {
+        // a single thread and no queue, like a full task pool with the ABORT policy
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>());
+        try {
+            final SingleThreadedScheduler scheduler = new SingleThreadedScheduler();
+            scheduler.injectExecutor(executor);
+            CountDownLatch latch = new CountDownLatch(1);
+            executor.submit(newLatchAwaiter(latch));
+            
+            try {
+                scheduler.submit(Callables.returning(1));
+                fail("Expected rejection while executor busy");
+            } catch (RejectedExecutionException e) {
+                // expected
+            }
+            latch.countDown();
+            
+            Asserts.succeedsEventually(new Callable<Void>() {
+                @Override public Void call() throws Exception {
+                    assertEquals(scheduler.submit(Callables.returning(2)).get(), (Integer)2);
+                    return null;
+                }});
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testCarriesOnAfterExecutorRejectsQueuedTask() throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>());
+        try {
+            final SingleThreadedScheduler scheduler = new SingleThreadedScheduler();
+            scheduler.injectExecutor(executor);
+            CountDownLatch latch = new CountDownLatch(1);
+            scheduler.submit(newLatchAwaiter(latch));
+            Future<Integer> queued = scheduler.submit(Callables.returning(1));
+            
+            // the queued task is handed to the executor while its only thread is still finishing the first task
+            latch.countDown();
+            try {
+                queued.get(Asserts.DEFAULT_LONG_TIMEOUT.toMilliseconds(), TimeUnit.MILLISECONDS);
+                fail("Expected rejection of queued task");
+            } catch (ExecutionException e) {
+                Asserts.expectedFailureOfType(e, RejectedExecutionException.class);
+            }
+            
+            Asserts.succeedsEventually(new Callable<Void>() {
+                @Override public Void call() throws Exception {
+                    assertEquals(scheduler.submit(Callables.returning(2)).get(), (Integer)2);
+                    return null;
+                }});
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
     private Callable<Void> newLatchAwaiter(final CountDownLatch latch) {
         return new Callable<Void>() {
             @Override
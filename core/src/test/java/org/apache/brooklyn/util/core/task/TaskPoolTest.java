@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.util.core.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.api.mgmt.Task;
+import org.apache.brooklyn.core.internal.BrooklynProperties;
+import org.apache.brooklyn.core.mgmt.BrooklynTaskTags;
+import org.apache.brooklyn.test.Asserts;
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class TaskPoolTest {
+
+    private BasicExecutionManager em;
+    
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        em = new BasicExecutionManager("mycontextid");
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(TaskPool.maxSizeKey(TaskPool.SENSOR), 2);
+        props.put(TaskPool.queueSizeKey(TaskPool.SENSOR), 0);
+        props.put(TaskPool.rejectionPolicyKey(TaskPool.SENSOR), TaskPool.RejectionPolicy.OVERFLOW);
+        em.configureTaskPools(props);
+    }
+    
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (em != null) em.shutdownNow();
+    }
+    
+    @Test
+    public void testOnlyConfiguredPoolsCreated() {
+        assertEquals(em.getTaskPoolMetrics().keySet(), ImmutableSet.of(TaskPool.SENSOR));
+    }
+    
+    @Test
+    public void testTaggedTasksRunInPoolAndOverflowWhenFull() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        List<Task<?>> tasks = MutableList.of();
+        for (int i=0; i<4; i++) {
+            tasks.add(em.submit(MutableMap.of("tag", BrooklynTaskTags.SENSOR_TAG), new Runnable() {
+                @Override public void run() {
+                    try {
+                        latch.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }}));
+        }
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                Map<String, Object> metrics = em.getTaskPoolMetrics().get(TaskPool.SENSOR);
+                assertEquals(metrics.get("activeCount"), 2);
+                assertEquals(metrics.get("overflowCount"), 2L);
+            }});
+        latch.countDown();
+        for (Task<?> t : tasks) {
+            t.get();
+        }
+    }
+    
+    @Test
+    public void testUntaggedTasksUseSharedPool() throws Exception {
+        em.submit(MutableMap.of("tag", "other"), new Runnable() {
+            @Override public void run() {}
+        }).get();
+        Map<String, Object> metrics = em.getTaskPoolMetrics().get(TaskPool.SENSOR);
+        assertEquals(metrics.get("completedTaskCount"), 0L);
+        assertTrue(em.getTotalTasksSubmitted() >= 1);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.util.executor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.Map;
+
+import org.apache.brooklyn.core.internal.BrooklynProperties;
+import org.apache.brooklyn.core.mgmt.internal.LocalManagementContext;
+import org.apache.brooklyn.core.test.entity.LocalManagementContextForTests;
+import org.apache.brooklyn.util.core.http.BetterMockWebServer;
+import org.apache.brooklyn.util.http.auth.UsernamePassword;
+import org.apache.brooklyn.util.http.executor.HttpExecutor;
+import org.apache.brooklyn.util.http.executor.HttpRequest;
+import org.apache.brooklyn.util.http.executor.HttpResponse;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import com.google.mockwebserver.MockResponse;
+import com.google.mockwebserver.RecordedRequest;
+
+public class ManagedHttpClientsTest {
+
+    private BetterMockWebServer server;
+    private URL baseUrl;
+    private LocalManagementContext mgmt;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        server = BetterMockWebServer.newInstanceLocalhost();
+        server.play();
+        baseUrl = server.getUrl("/");
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (mgmt != null) mgmt.terminate();
+        if (server != null) server.shutdown();
+    }
+
+    @Test
+    public void testReusesConnectionWhenPoolingEnabled() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(ManagedHttpClients.POOL_ENABLED, true);
+        mgmt = LocalManagementContextForTests.newInstance(props);
+        
+        // separate executors, as used by separate feeds, share the pool
+        execute(ManagedHttpClients.newHttpExecutor(mgmt));
+        execute(ManagedHttpClients.newHttpExecutor(mgmt));
+        
+        assertEquals(server.takeRequest().getSequenceNumber(), 0);
+        assertEquals(server.takeRequest().getSequenceNumber(), 1, "second request should have used the same connection");
+        
+        Map<String, Object> metrics = ManagedHttpClients.getMetrics(mgmt);
+        assertEquals(metrics.get("clientsCreated"), 1L, "metrics="+metrics);
+        assertEquals(metrics.get("requests"), 2L, "metrics="+metrics);
+        assertEquals(metrics.get("leasedConnections"), 0, "metrics="+metrics);
+        assertEquals(metrics.get("availableConnections"), 1, "metrics="+metrics);
+    }
+
+    @Test
+    public void testSeparatePoolPerHost() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(ManagedHttpClients.POOL_ENABLED, true);
+        mgmt = LocalManagementContextForTests.newInstance(props);
+        HttpExecutor executor = ManagedHttpClients.newHttpExecutor(mgmt);
+        
+        // same server, reached by two host names
+        execute(executor, new URI("http", null, "localhost", baseUrl.getPort(), "/", null, null));
+        execute(executor, new URI("http", null, "127.0.0.1", baseUrl.getPort(), "/", null, null));
+        
+        Map<String, Object> metrics = ManagedHttpClients.getMetrics(mgmt);
+        assertEquals(metrics.get("clientsCreated"), 2L, "metrics="+metrics);
+        assertEquals(metrics.get("clients"), 2L, "metrics="+metrics);
+    }
+
+    @Test
+    public void testSeparatePoolPerPassword() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(ManagedHttpClients.POOL_ENABLED, true);
+        mgmt = LocalManagementContextForTests.newInstance(props);
+        HttpExecutor executor = ManagedHttpClients.newHttpExecutor(mgmt);
+        
+        // same user and host; credentials' equals ignores the password
+        executeAuthenticated(executor, "myuser", "password1");
+        executeAuthenticated(executor, "myuser", "password2");
+        
+        Map<String, Object> metrics = ManagedHttpClients.getMetrics(mgmt);
+        assertEquals(metrics.get("clientsCreated"), 2L, "metrics="+metrics);
+    }
+
+    @Test
+    public void testCookiesNotSharedBetweenRequests() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(ManagedHttpClients.POOL_ENABLED, true);
+        mgmt = LocalManagementContextForTests.newInstance(props);
+        HttpExecutor executor = ManagedHttpClients.newHttpExecutor(mgmt);
+        
+        server.enqueue(new MockResponse().setResponseCode(200).addHeader("Set-Cookie", "session=abc; Path=/").setBody("ok"));
+        executor.execute(new HttpRequest.Builder().method("GET").uri(baseUrl.toURI()).build());
+        execute(executor);
+        
+        server.takeRequest();
+        assertNull(server.takeRequest().getHeader("Cookie"));
+    }
+
+    @Test
+    public void testNewClientPerRequestByDefault() throws Exception {
+        mgmt = LocalManagementContextForTests.newInstance();
+        assertFalse(ManagedHttpClients.getSharedClients(mgmt).isPresent());
+        
+        execute(ManagedHttpClients.newHttpExecutor(mgmt));
+        
+        assertEquals(server.takeRequest().getSequenceNumber(), 0);
+        assertTrue(ManagedHttpClients.getMetrics(mgmt).isEmpty());
+    }
+
+    private void executeAuthenticated(HttpExecutor executor, String user, String password) throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(401).addHeader("WWW-Authenticate", "Basic realm=\"myrealm\"").setBody("Not Authenticated"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("ok"));
+        HttpResponse response = executor.execute(new HttpRequest.Builder()
+                .method("GET")
+                .uri(baseUrl.toURI())
+                .credentials(new UsernamePassword(user, password))
+                .build());
+        assertEquals(response.code(), 200);
+        
+        server.takeRequest();
+        RecordedRequest authenticated = server.takeRequest();
+        assertEquals(authenticated.getHeader("Authorization"), "Basic "+BaseEncoding.base64().encode((user+":"+password).getBytes(Charsets.UTF_8)));
+    }
+
+    private void execute(HttpExecutor executor) throws Exception {
+        execute(executor, baseUrl.toURI());
+    }
+
+    private void execute(HttpExecutor executor, URI uri) throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("ok"));
+        HttpResponse response = executor.execute(new HttpRequest.Builder()
+                .method("GET")
+                .uri(uri)
+                .build());
+        assertEquals(response.code(), 200);
+    }
+}
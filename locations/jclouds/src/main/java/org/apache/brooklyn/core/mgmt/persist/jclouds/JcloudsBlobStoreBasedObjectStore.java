@@ -18,7 +18,9 @@
  */
 package org.apache.brooklyn.core.mgmt.persist.jclouds;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -34,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.brooklyn.location.jclouds.BlobStoreContextFactoryImpl;
 import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.exceptions.FatalConfigurationRuntimeException;
 import org.apache.brooklyn.util.text.Strings;
 
@@ -45,7 +48,7 @@ import com.google.common.collect.FluentIterable;
 /**
  * @author Andrea Turli
  */
-public class JcloudsBlobStoreBasedObjectStore implements PersistenceObjectStore {
+public class JcloudsBlobStoreBasedObjectStore implements PersistenceObjectStore, PersistenceObjectStore.ListableWithLastModifiedDates {
 
     private static final Logger log = LoggerFactory.getLogger(JcloudsBlobStoreBasedObjectStore.class);
 
@@ -80,9 +83,18 @@ public class JcloudsBlobStoreBasedObjectStore implements PersistenceObjectStore
         getBlobStoreContext();
     }
 
+    /** uses the given context, e.g. for the jclouds {@code transient} in-memory blob store in tests */
+    public JcloudsBlobStoreBasedObjectStore(BlobStoreContext context, String containerName) {
+        this.context = context;
+        String[] segments = splitOnce(containerName);
+        this.containerNameFirstPart = segments[0];
+        this.containerSubPath = segments[1];
+        context.getBlobStore().createContainerInLocation(null, getContainerNameFirstPart());
+    }
+
     @Override
     public String getSummaryName() {
-        return (locationSpec!=null ? locationSpec : location)+":"+getContainerNameFull();
+        return (locationSpec!=null ? locationSpec : location!=null ? location : context)+":"+getContainerNameFull();
     }
     
     public synchronized BlobStoreContext getBlobStoreContext() {
@@ -170,14 +182,30 @@ public class JcloudsBlobStoreBasedObjectStore implements PersistenceObjectStore
                 .transform(new Function<StorageMetadata, String>() {
                     @Override
                     public String apply(@javax.annotation.Nullable StorageMetadata input) {
-                        String result = input.getName();
-                        result = Strings.removeFromStart(result, containerSubPath);
-                        result = Strings.removeFromStart(result, "/");
-                        return result;
+                        return toSubPath(input);
                     }
                 }).toList();
     }
 
+    /** as {@link #listContentsWithSubPath(String)}, taking the dates from the same listing rather than requesting each blob's metadata */
+    @Override
+    public Map<String, Date> listContentsWithSubPathAndLastModifiedDates(String parentSubPath) {
+        checkPrepared();
+        Map<String, Date> result = MutableMap.of();
+        for (StorageMetadata blob : context.getBlobStore().list(getContainerNameFirstPart(), 
+                ListContainerOptions.Builder.inDirectory(getItemInContainerSubPath(parentSubPath)))) {
+            result.put(toSubPath(blob), blob.getLastModified());
+        }
+        return result;
+    }
+
+    private String toSubPath(StorageMetadata blob) {
+        String result = blob.getName();
+        result = Strings.removeFromStart(result, containerSubPath);
+        result = Strings.removeFromStart(result, "/");
+        return result;
+    }
+
     @Override
     public void close() {
         if (context!=null)
@@ -216,6 +244,17 @@ public class JcloudsBlobStoreBasedObjectStore implements PersistenceObjectStore
             log.warn("Using legacy backup for "+this+"; functionality will be removed in future versions, in favor of promotion/demotion-specific backups to a configurable backup location.");
             throw new FatalConfigurationRuntimeException("Backups not supported for object store ("+this+")");
         }
+        
+        if (!readsPackedSegments() && newAccessor(PackedJcloudsBlobStoreBasedObjectStore.MANIFEST_PATH).exists()) {
+            // objects written since would be missed, and stale plain blobs read instead
+            throw new FatalConfigurationRuntimeException("Persisted state in "+this+" is packed into segments; "
+                    + "set "+PackedJcloudsBlobStoreBasedObjectStore.ENABLED.getName()+" to read it");
+        }
+    }
+
+    /** whether this store reads objects packed by {@link PackedJcloudsBlobStoreBasedObjectStore} */
+    protected boolean readsPackedSegments() {
+        return false;
     }
 
     @Override
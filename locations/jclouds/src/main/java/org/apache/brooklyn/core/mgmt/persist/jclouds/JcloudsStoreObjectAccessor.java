@@ -27,6 +27,7 @@ import org.apache.brooklyn.util.stream.Streams;
 import org.apache.commons.io.Charsets;
 import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.BlobMetadata;
 import org.jclouds.util.Strings2;
 
 import com.google.common.base.Throwables;
@@ -113,9 +114,10 @@ public class JcloudsStoreObjectAccessor implements PersistenceObjectStore.StoreO
 
     @Override
     public Date getLastModifiedDate() {
-        Blob blob = blobStore.getBlob(containerName, blobName);
-        if (blob==null) return null;
-        return blob.getMetadata().getLastModified();
+        // metadata only, rather than fetching the blob's contents
+        BlobMetadata metadata = blobStore.blobMetadata(containerName, blobName);
+        if (metadata==null) return null;
+        return metadata.getLastModified();
     }
     
 }
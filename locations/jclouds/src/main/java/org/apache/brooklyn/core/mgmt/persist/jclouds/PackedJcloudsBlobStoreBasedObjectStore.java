@@ -0,0 +1,609 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.persist.jclouds;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.api.mgmt.ha.HighAvailabilityMode;
+import org.apache.brooklyn.api.objs.BrooklynObjectType;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.mgmt.persist.BrooklynMementoPersisterToObjectStore;
+import org.apache.brooklyn.core.mgmt.persist.BrooklynPersistenceUtils;
+import org.apache.brooklyn.core.mgmt.persist.PersistMode;
+import org.apache.brooklyn.core.mgmt.persist.PersistenceObjectStore;
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.collections.MutableSet;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.text.Identifiers;
+import org.apache.brooklyn.util.text.Strings;
+import org.apache.brooklyn.util.time.Duration;
+import org.jclouds.blobstore.BlobStoreContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link JcloudsBlobStoreBasedObjectStore} which packs the mementos written into compressed segment blobs,
+ * listed in a manifest blob, rather than writing a blob per object; so a checkpoint or delta touching
+ * many objects costs a couple of requests, and a rebind fetches a few segments (in parallel) rather than
+ * a blob per object.
+ * <p>
+ * Writes are buffered (and visible to reads from this store immediately) and written as one segment
+ * when {@link #flush() flushed}: by the {@link BrooklynMementoPersisterToObjectStore persister} at the end of
+ * each checkpoint and delta (so those are durable when they return, as with a plain store), otherwise
+ * every {@link #FLUSH_PERIOD}, and when the store is closed. Once there are more than {@link #MAX_SEGMENTS}
+ * segments, they are merged into one. A node which is not writing (e.g. a hot standby) re-reads the manifest
+ * whenever contents are listed, and fetches only the segments it has not yet seen.
+ * <p>
+ * Objects in the store as plain blobs (e.g. written before packing was enabled) are still read,
+ * unless overwritten in a segment. Only memento sub-paths are packed; others (such as the management plane
+ * records written by every node) are written as plain blobs.
+ * <p>
+ * Packed state is not written back as plain blobs, so once a manifest exists a plain
+ * {@link JcloudsBlobStoreBasedObjectStore} refuses to use the container (rather than reading stale blobs).
+ */
+@Beta
+public class PackedJcloudsBlobStoreBasedObjectStore extends JcloudsBlobStoreBasedObjectStore implements PersistenceObjectStore.WithBufferedWrites {
+
+    private static final Logger log = LoggerFactory.getLogger(PackedJcloudsBlobStoreBasedObjectStore.class);
+
+    public static final ConfigKey<Boolean> ENABLED = ConfigKeys.newBooleanConfigKey(
+            "brooklyn.persistence.jclouds.packed.enabled",
+            "Whether persistence to an object store packs mementos into compressed segment blobs, "
+            + "rather than writing a blob per object", false);
+
+    public static final ConfigKey<Duration> FLUSH_PERIOD = ConfigKeys.newDurationConfigKey(
+            "brooklyn.persistence.jclouds.packed.flushPeriod",
+            "How often buffered writes are written to the object store as a segment, "
+            + "if not already flushed at the end of a persistence checkpoint or delta", Duration.millis(500));
+
+    public static final ConfigKey<Integer> MAX_SEGMENTS = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.persistence.jclouds.packed.maxSegments",
+            "Number of segments above which they are merged into one", 32);
+
+    public static final ConfigKey<Integer> FETCH_THREADS = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.persistence.jclouds.packed.fetchThreads",
+            "Number of segments fetched in parallel when loading", 8);
+
+    static final String PACKED_SUB_PATH = "packed";
+    static final String MANIFEST_NAME = "manifest";
+    static final String MANIFEST_PATH = PACKED_SUB_PATH+"/"+MANIFEST_NAME;
+    private static final String MANIFEST_HEADER = "brooklyn-packed-segments 1";
+    private static final String SEGMENT_PREFIX = "segment-";
+    
+    private static final byte OP_PUT = 'P';
+    private static final byte OP_DELETE = 'D';
+
+    private static final Set<String> PACKED_SUB_PATHS;
+    static {
+        Set<String> subPaths = MutableSet.of();
+        for (BrooklynObjectType type : BrooklynPersistenceUtils.STANDARD_BROOKLYN_OBJECT_TYPE_PERSISTENCE_ORDER) {
+            subPaths.add(type.getSubPathName());
+        }
+        PACKED_SUB_PATHS = subPaths;
+    }
+
+    /** the contents of an object, or a deletion if {@code data} is null */
+    private static final class Record {
+        final long time;
+        final byte[] data;
+        
+        Record(long time, byte[] data) {
+            this.time = time;
+            this.data = data;
+        }
+    }
+
+    /** written but not yet flushed; guarded by itself */
+    private final Map<String, Record> pending = MutableMap.of();
+    /** latest contents from the segments loaded; replaced wholesale when segments are merged by the writer */
+    private volatile Map<String, Record> packed = new ConcurrentHashMap<String, Record>();
+    /** names of the segments loaded, in the order listed in the manifest; guarded by segmentsLock */
+    private final List<String> loadedSegments = MutableList.of();
+    private final Object segmentsLock = new Object();
+    private final Object flushLock = new Object();
+    private final Object fetcherLock = new Object();
+    
+    private volatile boolean writing = false;
+    private ManagementContext mgmt;
+    private ScheduledExecutorService flusher;
+    private ListeningExecutorService fetcher;
+
+    public PackedJcloudsBlobStoreBasedObjectStore(String locationSpec, String containerName) {
+        super(locationSpec, containerName);
+    }
+
+    public PackedJcloudsBlobStoreBasedObjectStore(JcloudsLocation location, String containerName) {
+        super(location, containerName);
+    }
+
+    public PackedJcloudsBlobStoreBasedObjectStore(BlobStoreContext context, String containerName) {
+        super(context, containerName);
+    }
+
+    @Override
+    public void injectManagementContext(ManagementContext mgmt) {
+        super.injectManagementContext(mgmt);
+        this.mgmt = mgmt;
+    }
+
+    private <T> T getConfig(ConfigKey<T> key) {
+        return (mgmt != null) ? mgmt.getConfig().getConfig(key) : key.getDefaultValue();
+    }
+
+    @Override
+    public void prepareForSharedUse(@Nullable PersistMode persistMode, HighAvailabilityMode haMode) {
+        super.prepareForSharedUse(persistMode, haMode);
+        loadSegments();
+    }
+
+    @Override
+    public void prepareForMasterUse() {
+        super.prepareForMasterUse();
+        startWriting();
+    }
+
+    @Override
+    protected boolean readsPackedSegments() {
+        return true;
+    }
+
+    protected boolean isPacked(String path) {
+        int slash = path.indexOf('/');
+        return slash > 0 && PACKED_SUB_PATHS.contains(path.substring(0, slash));
+    }
+
+    @Override
+    public StoreObjectAccessor newAccessor(String path) {
+        if (!isPacked(path)) return blobAccessor(path);
+        return new PackedStoreObjectAccessor(path, blobAccessor(path));
+    }
+
+    /** accessor for the plain blob at the given path */
+    private StoreObjectAccessor blobAccessor(String path) {
+        return super.newAccessor(path);
+    }
+
+    @Override
+    public List<String> listContentsWithSubPath(String parentSubPath) {
+        List<String> blobs = super.listContentsWithSubPath(parentSubPath);
+        if (!PACKED_SUB_PATHS.contains(parentSubPath)) return blobs;
+        if (!writing) loadSegments();
+        
+        Set<String> result = MutableSet.copyOf(blobs);
+        String prefix = parentSubPath+"/";
+        applyToListing(result, prefix, packed);
+        synchronized (pending) {
+            applyToListing(result, prefix, pending);
+        }
+        return ImmutableList.copyOf(result);
+    }
+
+    @Override
+    public Map<String, Date> listContentsWithSubPathAndLastModifiedDates(String parentSubPath) {
+        Map<String, Date> blobs = super.listContentsWithSubPathAndLastModifiedDates(parentSubPath);
+        if (!PACKED_SUB_PATHS.contains(parentSubPath)) return blobs;
+        if (!writing) loadSegments();
+        
+        Map<String, Date> result = MutableMap.copyOf(blobs);
+        String prefix = parentSubPath+"/";
+        applyToListing(result, prefix, packed);
+        synchronized (pending) {
+            applyToListing(result, prefix, pending);
+        }
+        return result;
+    }
+
+    private static void applyToListing(Set<String> listing, String prefix, Map<String, Record> records) {
+        for (Map.Entry<String, Record> entry : records.entrySet()) {
+            String path = entry.getKey();
+            if (!path.startsWith(prefix) || path.indexOf('/', prefix.length()) >= 0) continue;
+            if (entry.getValue().data == null) {
+                listing.remove(path);
+            } else {
+                listing.add(path);
+            }
+        }
+    }
+
+    private static void applyToListing(Map<String, Date> listing, String prefix, Map<String, Record> records) {
+        for (Map.Entry<String, Record> entry : records.entrySet()) {
+            String path = entry.getKey();
+            if (!path.startsWith(prefix) || path.indexOf('/', prefix.length()) >= 0) continue;
+            if (entry.getValue().data == null) {
+                listing.remove(path);
+            } else {
+                listing.put(path, new Date(entry.getValue().time));
+            }
+        }
+    }
+
+    @Nullable
+    private Record getRecord(String path) {
+        synchronized (pending) {
+            Record record = pending.get(path);
+            if (record != null) return record;
+        }
+        return packed.get(path);
+    }
+
+    private void write(String path, byte[] data) {
+        if (!writing) startWriting();
+        synchronized (pending) {
+            pending.put(path, new Record(System.currentTimeMillis(), data));
+        }
+    }
+
+    protected synchronized void startWriting() {
+        if (writing) return;
+        // make sure we have everything previously written, as merging writes out all we know
+        loadSegments();
+        
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("brooklyn-persistence-packed-flusher")
+                .setDaemon(true)
+                .build());
+        long period = getConfig(FLUSH_PERIOD).toMilliseconds();
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (Throwable t) {
+                    // keep the pending writes; retry next time
+                    log.warn("Problem writing packed segment to "+getSummaryName()+" (will retry): "+t, t);
+                    Exceptions.propagateIfFatal(t);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        writing = true;
+    }
+
+    /** writes all buffered writes as a new segment, merging the segments if there are too many */
+    @Override
+    public void flush() {
+        synchronized (flushLock) {
+            Map<String, Record> batch;
+            synchronized (pending) {
+                if (pending.isEmpty()) return;
+                batch = MutableMap.copyOf(pending);
+            }
+            
+            String segment = newSegmentName();
+            blobAccessor(segmentPath(segment)).put(ByteSource.wrap(pack(batch)));
+            List<String> segments;
+            synchronized (segmentsLock) {
+                loadedSegments.add(segment);
+                segments = MutableList.copyOf(loadedSegments);
+            }
+            writeManifest(segments);
+            
+            packed.putAll(batch);
+            synchronized (pending) {
+                for (Map.Entry<String, Record> entry : batch.entrySet()) {
+                    // only if not overwritten meanwhile
+                    if (pending.get(entry.getKey()) == entry.getValue()) pending.remove(entry.getKey());
+                }
+            }
+            if (log.isTraceEnabled()) log.trace("Wrote packed segment {} of {} objects to {}", new Object[] {segment, batch.size(), getSummaryName()});
+            
+            if (segments.size() > getConfig(MAX_SEGMENTS)) {
+                merge(segments);
+            }
+        }
+    }
+
+    /** writes everything loaded as a single segment, deleting the plain blobs of deleted objects, then deletes the old segments */
+    private void merge(List<String> oldSegments) {
+        Map<String, Record> live = MutableMap.of();
+        for (Map.Entry<String, Record> entry : packed.entrySet()) {
+            if (entry.getValue().data == null) {
+                blobAccessor(entry.getKey()).delete();
+            } else {
+                live.put(entry.getKey(), entry.getValue());
+            }
+        }
+        
+        String segment = newSegmentName();
+        blobAccessor(segmentPath(segment)).put(ByteSource.wrap(pack(live)));
+        synchronized (segmentsLock) {
+            loadedSegments.clear();
+            loadedSegments.add(segment);
+        }
+        writeManifest(ImmutableList.of(segment));
+        packed = new ConcurrentHashMap<String, Record>(live);
+        
+        for (String oldSegment : oldSegments) {
+            blobAccessor(segmentPath(oldSegment)).delete();
+        }
+        log.debug("Merged {} packed segments ({} objects) into {} in {}", new Object[] {oldSegments.size(), live.size(), segment, getSummaryName()});
+    }
+
+    /**
+     * Loads any segments in the manifest not yet loaded, starting again (into a new map) if the segments have been merged.
+     * Nothing is changed unless all the segments are loaded, so a failed load after a merge is started again next time.
+     */
+    protected void loadSegments() {
+        synchronized (segmentsLock) {
+            List<String> manifest = readManifest();
+            Map<String, Record> target = packed;
+            List<String> toLoad;
+            boolean merged;
+            if (manifest.size() >= loadedSegments.size() && manifest.subList(0, loadedSegments.size()).equals(loadedSegments)) {
+                toLoad = manifest.subList(loadedSegments.size(), manifest.size());
+                merged = false;
+            } else {
+                target = new ConcurrentHashMap<String, Record>();
+                toLoad = manifest;
+                merged = true;
+            }
+            if (toLoad.isEmpty() && !merged) return;
+            
+            List<ListenableFuture<Map<String, Record>>> futures = MutableList.of();
+            for (final String segment : toLoad) {
+                futures.add(getFetcher().submit(new Callable<Map<String, Record>>() {
+                    @Override
+                    public Map<String, Record> call() {
+                        byte[] bytes = blobAccessor(segmentPath(segment)).getBytes();
+                        if (bytes == null) throw new IllegalStateException("Packed segment "+segment+" not found in "+getSummaryName());
+                        return unpack(bytes);
+                    }
+                }));
+            }
+            List<Map<String, Record>> contents;
+            try {
+                contents = Futures.allAsList(futures).get();
+            } catch (Exception e) {
+                // most likely merged and deleted by the writer since we read the manifest; try again next time
+                Exceptions.propagateIfFatal(e);
+                log.debug("Unable to load packed segments from "+getSummaryName()+" (continuing): "+e);
+                return;
+            }
+            for (Map<String, Record> segmentContents : contents) {
+                target.putAll(segmentContents);
+            }
+            if (merged) loadedSegments.clear();
+            loadedSegments.addAll(toLoad);
+            packed = target;
+        }
+    }
+
+    private ListeningExecutorService getFetcher() {
+        synchronized (fetcherLock) {
+            if (fetcher == null) {
+                fetcher = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(getConfig(FETCH_THREADS), new ThreadFactoryBuilder()
+                        .setNameFormat("brooklyn-persistence-packed-fetcher-%d")
+                        .setDaemon(true)
+                        .build()));
+            }
+            return fetcher;
+        }
+    }
+
+    private List<String> readManifest() {
+        String contents = blobAccessor(MANIFEST_PATH).get();
+        if (contents == null) return ImmutableList.of();
+        List<String> lines = MutableList.of();
+        for (String line : contents.split("\n")) {
+            if (Strings.isNonBlank(line)) lines.add(line.trim());
+        }
+        if (lines.isEmpty() || !MANIFEST_HEADER.equals(lines.get(0))) {
+            throw new IllegalStateException("Unsupported packed segment manifest in "+getSummaryName());
+        }
+        return lines.subList(1, lines.size());
+    }
+
+    private void writeManifest(List<String> segments) {
+        blobAccessor(MANIFEST_PATH).put(MANIFEST_HEADER+"\n"+Joiner.on("\n").join(segments)+"\n");
+    }
+
+    private static String newSegmentName() {
+        return SEGMENT_PREFIX+System.currentTimeMillis()+"-"+Identifiers.makeRandomId(8);
+    }
+
+    private static String segmentPath(String segment) {
+        return PACKED_SUB_PATH+"/"+segment;
+    }
+
+    private static byte[] pack(Map<String, Record> records) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes));
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+                Record record = entry.getValue();
+                byte[] path = entry.getKey().getBytes(Charsets.UTF_8);
+                out.writeByte(record.data == null ? OP_DELETE : OP_PUT);
+                out.writeLong(record.time);
+                out.writeInt(path.length);
+                out.write(path);
+                out.writeInt(record.data == null ? -1 : record.data.length);
+                if (record.data != null) out.write(record.data);
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    private static Map<String, Record> unpack(byte[] segment) {
+        Map<String, Record> result = MutableMap.of();
+        try {
+            DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(segment)));
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (op != OP_PUT && op != OP_DELETE) throw new IllegalStateException("Invalid packed segment record type "+op);
+                long time = in.readLong();
+                byte[] path = new byte[in.readInt()];
+                in.readFully(path);
+                int length = in.readInt();
+                byte[] data = null;
+                if (length >= 0) {
+                    data = new byte[length];
+                    in.readFully(data);
+                }
+                result.put(new String(path, Charsets.UTF_8), new Record(time, data));
+            }
+            return result;
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (flusher != null) flusher.shutdownNow();
+            if (writing) flush();
+        } catch (Exception e) {
+            log.warn("Problem writing packed segment on close of "+this+"; buffered writes lost: "+e, e);
+        } finally {
+            writing = false;
+            synchronized (fetcherLock) {
+                if (fetcher != null) fetcher.shutdownNow();
+                fetcher = null;
+            }
+            super.close();
+        }
+    }
+
+    @Override
+    public void deleteCompletely() {
+        synchronized (pending) {
+            pending.clear();
+        }
+        synchronized (segmentsLock) {
+            loadedSegments.clear();
+            packed = new ConcurrentHashMap<String, Record>();
+        }
+        super.deleteCompletely();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).add("container", getContainerName()).add("packed", packed.size()).toString();
+    }
+
+    /** Reads buffered or packed contents where present, otherwise the plain blob; writes are buffered for the next segment. */
+    private class PackedStoreObjectAccessor implements StoreObjectAccessor {
+        private final String path;
+        private final StoreObjectAccessor blobAccessor;
+        
+        PackedStoreObjectAccessor(String path, StoreObjectAccessor blobAccessor) {
+            this.path = path;
+            this.blobAccessor = blobAccessor;
+        }
+        
+        @Override
+        public String get() {
+            byte[] bytes = getBytes();
+            return bytes == null ? null : new String(bytes, Charsets.UTF_8);
+        }
+
+        @Override
+        public byte[] getBytes() {
+            Record record = getRecord(path);
+            if (record != null) return record.data;
+            return blobAccessor.getBytes();
+        }
+
+        @Override
+        public boolean exists() {
+            Record record = getRecord(path);
+            if (record != null) return record.data != null;
+            return blobAccessor.exists();
+        }
+
+        @Override
+        public void put(String val) {
+            write(path, (val == null ? "" : val).getBytes(Charsets.UTF_8));
+        }
+
+        @Override
+        public void put(ByteSource bytes) {
+            try {
+                write(path, bytes.read());
+            } catch (IOException e) {
+                throw Exceptions.propagate(e);
+            }
+        }
+
+        @Override
+        public void append(String val) {
+            String existing = get();
+            String combined = (existing == null ? "" : existing) + (val == null ? "" : val);
+            write(path, combined.getBytes(Charsets.UTF_8));
+        }
+
+        @Override
+        public void delete() {
+            write(path, null);
+        }
+
+        @Override
+        public Date getLastModifiedDate() {
+            Record record = getRecord(path);
+            if (record != null) return record.data == null ? null : new Date(record.time);
+            return blobAccessor.getLastModifiedDate();
+        }
+        
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this).add("path", path).add("store", PackedJcloudsBlobStoreBasedObjectStore.this).toString();
+        }
+    }
+}
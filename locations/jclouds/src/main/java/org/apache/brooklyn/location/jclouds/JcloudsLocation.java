@@ -78,6 +78,7 @@ import org.apache.brooklyn.core.location.internal.LocationInternal;
 import org.apache.brooklyn.core.mgmt.internal.LocalLocationManager;
 import org.apache.brooklyn.core.mgmt.persist.PersistenceObjectStore;
 import org.apache.brooklyn.core.mgmt.persist.jclouds.JcloudsBlobStoreBasedObjectStore;
+import org.apache.brooklyn.core.mgmt.persist.jclouds.PackedJcloudsBlobStoreBasedObjectStore;
 import org.apache.brooklyn.location.jclouds.api.JcloudsLocationPublic;
 import org.apache.brooklyn.location.jclouds.networking.JcloudsPortForwarderExtension;
 import org.apache.brooklyn.location.jclouds.networking.creator.DefaultAzureArmNetworkCreator;
@@ -2996,6 +2997,9 @@ public class JcloudsLocation extends AbstractCloudMachineProvisioningLocation im
 
     @Override
     public PersistenceObjectStore newPersistenceObjectStore(String container) {
+        if (Boolean.TRUE.equals(getManagementContext().getConfig().getConfig(PackedJcloudsBlobStoreBasedObjectStore.ENABLED))) {
+            return new PackedJcloudsBlobStoreBasedObjectStore(this, container);
+        }
         return new JcloudsBlobStoreBasedObjectStore(this, container);
     }
 
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.core.mgmt.persist.jclouds;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.apache.brooklyn.api.mgmt.ha.HighAvailabilityMode;
+import org.apache.brooklyn.api.mgmt.rebind.mementos.BrooklynMementoRawData;
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.mgmt.internal.LocalManagementContext;
+import org.apache.brooklyn.core.mgmt.persist.BrooklynMementoPersisterToObjectStore;
+import org.apache.brooklyn.core.mgmt.persist.PersistMode;
+import org.apache.brooklyn.core.mgmt.rebind.PersistenceExceptionHandlerImpl;
+import org.apache.brooklyn.core.test.entity.LocalManagementContextForTests;
+import org.apache.brooklyn.test.Asserts;
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableSet;
+import org.apache.brooklyn.util.exceptions.FatalConfigurationRuntimeException;
+import org.apache.brooklyn.util.text.Identifiers;
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.BlobStoreContext;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/** Uses the jclouds {@code transient} in-memory blob store. */
+public class PackedJcloudsBlobStoreBasedObjectStoreTest {
+
+    private LocalManagementContext mgmt;
+    private BlobStoreContext context;
+    private String container;
+    private PackedJcloudsBlobStoreBasedObjectStore store;
+    private PackedJcloudsBlobStoreBasedObjectStore reader;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        mgmt = LocalManagementContextForTests.builder(true)
+                .useAdditionalProperties(ImmutableMap.of(
+                        PackedJcloudsBlobStoreBasedObjectStore.FLUSH_PERIOD.getName(), "1h",
+                        PackedJcloudsBlobStoreBasedObjectStore.MAX_SEGMENTS.getName(), 2))
+                .build();
+        context = ContextBuilder.newBuilder("transient").credentials("id", "credential").buildView(BlobStoreContext.class);
+        container = "brooklyn-test-"+Identifiers.makeRandomId(4);
+        store = newStore();
+        store.prepareForMasterUse();
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        // closing a store closes the (shared) context
+        if (store != null) store.close();
+        if (reader != null) reader.close();
+        if (mgmt != null) Entities.destroyAll(mgmt);
+    }
+
+    private PackedJcloudsBlobStoreBasedObjectStore newStore() {
+        PackedJcloudsBlobStoreBasedObjectStore result = new PackedJcloudsBlobStoreBasedObjectStore(context, container);
+        result.injectManagementContext(mgmt);
+        result.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.DISABLED);
+        return result;
+    }
+
+    private Set<String> blobNames(String directory) {
+        Set<String> result = MutableSet.of();
+        for (StorageMetadata blob : context.getBlobStore().list(container, ListContainerOptions.Builder.inDirectory(directory))) {
+            result.add(blob.getName());
+        }
+        return result;
+    }
+
+    @Test
+    public void testPacksWritesIntoSegment() throws Exception {
+        store.newAccessor("entities/a").put("contents-a");
+        store.newAccessor("entities/b").put("contents-b");
+        assertEquals(store.newAccessor("entities/a").get(), "contents-a");
+        assertEquals(ImmutableSet.copyOf(store.listContentsWithSubPath("entities")), ImmutableSet.of("entities/a", "entities/b"));
+        
+        store.flush();
+        assertEquals(blobNames("entities"), ImmutableSet.of());
+        assertEquals(blobNames(PackedJcloudsBlobStoreBasedObjectStore.PACKED_SUB_PATH).size(), 2, "manifest and one segment expected: "+blobNames("packed"));
+        assertEquals(store.newAccessor("entities/b").get(), "contents-b");
+        
+        reader = newStore();
+        assertEquals(ImmutableSet.copyOf(reader.listContentsWithSubPath("entities")), ImmutableSet.of("entities/a", "entities/b"));
+        assertEquals(reader.newAccessor("entities/a").get(), "contents-a");
+    }
+
+    @Test
+    public void testReaderLoadsNewSegmentsAndMerges() throws Exception {
+        store.newAccessor("entities/a").put("contents-a");
+        store.flush();
+        reader = newStore();
+        assertEquals(reader.listContentsWithSubPath("entities"), MutableList.of("entities/a"));
+        
+        store.newAccessor("entities/a").put("contents-a2");
+        store.newAccessor("entities/b").put("contents-b");
+        store.flush();
+        assertEquals(ImmutableSet.copyOf(reader.listContentsWithSubPath("entities")), ImmutableSet.of("entities/a", "entities/b"));
+        assertEquals(reader.newAccessor("entities/a").get(), "contents-a2");
+        
+        // third segment exceeds the max of 2, so they are merged
+        store.newAccessor("entities/b").delete();
+        store.flush();
+        assertEquals(blobNames(PackedJcloudsBlobStoreBasedObjectStore.PACKED_SUB_PATH).size(), 2, "manifest and one merged segment expected: "+blobNames("packed"));
+        assertFalse(store.newAccessor("entities/b").exists());
+        
+        assertEquals(reader.listContentsWithSubPath("entities"), MutableList.of("entities/a"));
+        assertEquals(reader.newAccessor("entities/a").get(), "contents-a2");
+        assertNull(reader.newAccessor("entities/b").get());
+    }
+
+    @Test
+    public void testPersisterCheckpointIsDurableOnReturn() throws Exception {
+        BrooklynMementoPersisterToObjectStore persister = new BrooklynMementoPersisterToObjectStore(store, mgmt);
+        try {
+            persister.enableWriteAccess();
+            // the flush period is 1h, so only the persister's flush writes the segment
+            persister.checkpoint(BrooklynMementoRawData.builder().planeId("myplane").entity("a", "contents-a").build(),
+                    PersistenceExceptionHandlerImpl.builder().build());
+            
+            reader = newStore();
+            assertEquals(reader.listContentsWithSubPath("entities"), MutableList.of("entities/a"));
+            assertEquals(reader.newAccessor("entities/a").get(), "contents-a");
+        } finally {
+            persister.stop(false);
+        }
+    }
+
+    @Test
+    public void testReadsAndOverridesPlainBlobs() throws Exception {
+        JcloudsBlobStoreBasedObjectStore plain = new JcloudsBlobStoreBasedObjectStore(context, container);
+        plain.injectManagementContext(mgmt);
+        plain.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.DISABLED);
+        plain.newAccessor("entities/old").put("contents-old");
+        plain.newAccessor("entities/gone").put("contents-gone");
+        
+        assertEquals(store.newAccessor("entities/old").get(), "contents-old");
+        store.newAccessor("entities/gone").delete();
+        store.flush();
+        assertEquals(store.listContentsWithSubPath("entities"), MutableList.of("entities/old"));
+        assertTrue(store.newAccessor("entities/old").exists());
+    }
+
+    @Test
+    public void testPlainStoreRefusesPackedState() throws Exception {
+        store.newAccessor("entities/a").put("contents-a");
+        store.flush();
+        
+        JcloudsBlobStoreBasedObjectStore plain = new JcloudsBlobStoreBasedObjectStore(context, container);
+        plain.injectManagementContext(mgmt);
+        try {
+            plain.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.DISABLED);
+            Asserts.shouldHaveFailedPreviously();
+        } catch (FatalConfigurationRuntimeException e) {
+            Asserts.expectedFailureContains(e, PackedJcloudsBlobStoreBasedObjectStore.ENABLED.getName());
+        }
+    }
+
+    @Test
+    public void testNonMementoPathsWrittenAsPlainBlobs() throws Exception {
+        store.newAccessor("plane/node1").put("node");
+        assertEquals(blobNames("plane"), ImmutableSet.of("plane/node1"));
+    }
+}
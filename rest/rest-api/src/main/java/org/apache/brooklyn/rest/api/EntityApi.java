@@ -35,12 +35,16 @@ import javax.ws.rs.core.Response;
 import java.util.List;
 import java.util.Map;
 
+import com.google.common.annotations.Beta;
+
 @Path("/applications/{application}/entities")
 @Api("Entities")
 @Produces(MediaType.APPLICATION_JSON)
 @Consumes(MediaType.APPLICATION_JSON)
 public interface EntityApi {
 
+    String SERVER_SENT_EVENTS = "text/event-stream";
+
     @GET
     @ApiOperation(value = "Fetch the list of children entities directly under the root of an application",
             response = org.apache.brooklyn.rest.domain.EntitySummary.class,
@@ -243,4 +247,33 @@ public interface EntityApi {
             @PathParam("application") String application,
             @ApiParam(value = "Entity ID or name", required = true)
             @PathParam("entity") String entity);
+
+    @GET
+    @Path("/{entity}/sensors-stream")
+    @Produces(SERVER_SENT_EVENTS)
+    @ApiOperation(value = "Stream sensor values as server-sent events",
+            notes="Sends a 'sensors' event with the current values (a map of sensor name to value), "
+                + "then further 'sensors' events with those which have changed, as they change. "
+                + "Changes are coalesced, so a slow client receives only the latest value of each sensor; "
+                + "a comment line is sent if nothing has changed for a while, to keep the connection open. "
+                + "The number of open streams is limited by the server, which returns 503 when at that limit.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 404, message = "Could not find application or entity"),
+            @ApiResponse(code = 503, message = "Too many sensor streams are open")
+    })
+    @Beta
+    public Response streamSensors(
+            @ApiParam(value = "Application ID or name", required = true)
+            @PathParam("application") final String application,
+            @ApiParam(value = "Entity ID or name", required = true)
+            @PathParam("entity") final String entityToken,
+            @ApiParam(value = "Comma-separated names of the sensors to stream, defaulting to all", required = false)
+            @QueryParam("sensors") final String sensors,
+            @ApiParam(value = "Return raw sensor data instead of display values", required = false)
+            @QueryParam("raw") @DefaultValue("false") final Boolean raw,
+            @ApiParam(value = "Minimum time between events, e.g. 500ms; changes within this period are coalesced", required = false)
+            @QueryParam("minPeriod") @DefaultValue("200ms") final String minPeriod,
+            @ApiParam(value = "Time after which the stream is closed, e.g. 2m, defaulting to (and at most) the server's limit; "
+                + "clients are expected to reconnect", required = false)
+            @QueryParam("maxDuration") final String maxDuration);
 }
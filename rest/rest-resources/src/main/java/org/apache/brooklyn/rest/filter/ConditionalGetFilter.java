@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.rest.filter;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.annotation.Priority;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.Provider;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Splitter;
+
+/**
+ * Supports conditional GETs, so that clients polling for state which has not changed
+ * are answered cheaply.
+ * <p>
+ * Resources call {@link #evaluate(EntityTag)} with a strong tag identifying the state they would return,
+ * before doing the work to build the response. If the request's {@code If-None-Match} header includes that tag,
+ * a {@code 304 Not Modified} is returned at once; otherwise the tag is sent as the response's {@code ETag}.
+ * If this filter is not installed, {@link #evaluate(EntityTag)} has no effect.
+ * <p>
+ * Responses with a tag are sent with {@code Cache-Control: no-cache} (rather than the {@code no-store}
+ * set by {@link NoCacheFilter}, which runs before this on the response), so that clients keep them and revalidate.
+ */
+@Provider
+@Priority(150)
+@Beta
+public class ConditionalGetFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static class RequestState {
+        final List<String> ifNoneMatch;
+        EntityTag tag;
+
+        RequestState(List<String> ifNoneMatch) {
+            this.ifNoneMatch = ifNoneMatch;
+        }
+    }
+
+    private static final ThreadLocal<RequestState> state = new ThreadLocal<RequestState>();
+
+    /** whether the current request could be answered with {@code 304 Not Modified},
+     * i.e. whether it is worth computing a tag for {@link #evaluate(EntityTag)} */
+    public static boolean isActive() {
+        return state.get() != null;
+    }
+
+    /**
+     * Throws a {@link WebApplicationException} with a {@code 304 Not Modified} response if the client has
+     * the representation with the given tag, and otherwise records the tag to be sent with the response.
+     */
+    public static void evaluate(EntityTag tag) {
+        RequestState s = state.get();
+        if (s == null) return;
+        s.tag = tag;
+        if (s.ifNoneMatch != null && matchesAny(tag, s.ifNoneMatch)) {
+            throw new WebApplicationException(Response.notModified(tag).build());
+        }
+    }
+
+    private static boolean matchesAny(EntityTag tag, List<String> ifNoneMatchHeaders) {
+        String quoted = "\"" + tag.getValue() + "\"";
+        for (String header : ifNoneMatchHeaders) {
+            for (String candidate : Splitter.on(',').trimResults().omitEmptyStrings().split(header)) {
+                // If-None-Match uses the weak comparison
+                if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+                if (candidate.equals("*") || candidate.equals(quoted)) return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        String method = requestContext.getMethod();
+        if (HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method)) {
+            state.set(new RequestState(requestContext.getHeaders().get(HttpHeaders.IF_NONE_MATCH)));
+        } else {
+            state.remove();
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+        RequestState s = state.get();
+        state.remove();
+        if (s == null || s.tag == null) return;
+        int status = responseContext.getStatus();
+        if (status == Status.OK.getStatusCode() || status == Status.NOT_MODIFIED.getStatusCode()) {
+            responseContext.getHeaders().putSingle(HttpHeaders.ETAG, s.tag);
+            responseContext.getHeaders().putSingle(HttpHeaders.CACHE_CONTROL, "no-cache");
+        }
+    }
+
+}
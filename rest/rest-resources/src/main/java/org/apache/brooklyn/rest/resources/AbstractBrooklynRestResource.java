@@ -20,15 +20,21 @@ package org.apache.brooklyn.rest.resources;
 
 import javax.annotation.Nullable;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.ext.ContextResolver;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.api.mgmt.entitlement.EntitlementContext;
 import org.apache.brooklyn.core.config.render.RendererHints;
+import org.apache.brooklyn.core.entity.EntityInternal;
+import org.apache.brooklyn.core.mgmt.entitlement.Entitlements;
+import org.apache.brooklyn.core.mgmt.internal.EntityManagementSupport;
 import org.apache.brooklyn.core.mgmt.internal.ManagementContextInternal;
 import org.apache.brooklyn.rest.domain.ApiError;
+import org.apache.brooklyn.rest.filter.ConditionalGetFilter;
 import org.apache.brooklyn.rest.util.BrooklynRestResourceUtils;
 import org.apache.brooklyn.rest.util.DefaultExceptionMapper;
 import org.apache.brooklyn.rest.util.ManagementContextProvider;
@@ -36,14 +42,21 @@ import org.apache.brooklyn.rest.util.WebResourceUtils;
 import org.apache.brooklyn.rest.util.json.BrooklynJacksonJsonProvider;
 import org.apache.brooklyn.util.core.task.Tasks;
 import org.apache.brooklyn.util.guava.Maybe;
+import org.apache.brooklyn.util.text.Identifiers;
 import org.apache.brooklyn.util.time.Duration;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 public abstract class AbstractBrooklynRestResource {
 
+    /** distinguishes tags from this server process from those of any previous one, as modification counts are not persisted */
+    private static final String TAG_PREFIX = Identifiers.makeRandomId(8);
+
     protected @Context UriInfo ui;
 
     @Context
@@ -81,6 +94,34 @@ public abstract class AbstractBrooklynRestResource {
         return ApiError.of(e).asBadRequestResponseJson();
     }
     
+    /**
+     * Returns at once with {@code 304 Not Modified} if the client already has the current representation,
+     * which is identified by the given parts, and otherwise arranges for the corresponding {@code ETag} to be sent.
+     * <p>
+     * The parts must cover everything the response depends on, such as the {@link #entityVersion(Entity, boolean)}
+     * of each entity used and the request parameters; the user is included here, as entitlements affect responses.
+     * Does nothing unless {@link ConditionalGetFilter} is installed, so callers need not check.
+     */
+    protected void checkNotModified(Object ...parts) {
+        if (!ConditionalGetFilter.isActive()) return;
+        EntitlementContext entitlementContext = Entitlements.getEntitlementContext();
+        Hasher hasher = Hashing.murmur3_128().newHasher()
+            .putString(TAG_PREFIX, Charsets.UTF_8)
+            .putString(String.valueOf(entitlementContext==null ? null : entitlementContext.user()), Charsets.UTF_8);
+        for (Object part : parts) {
+            hasher.putChar('\0').putString(String.valueOf(part), Charsets.UTF_8);
+        }
+        ConditionalGetFilter.evaluate(new EntityTag(hasher.hash().toString()));
+    }
+
+    /** identifies the current state of the entity, or of it and its descendants, for use in {@link #checkNotModified(Object...)} */
+    protected static String entityVersion(Entity entity, boolean includeDescendants) {
+        EntityManagementSupport support = ((EntityInternal) entity).getManagementSupport();
+        // the identity of the support object distinguishes instances of the entity, e.g. after rebind on a hot standby
+        return entity.getId() + "@" + System.identityHashCode(support) + "#"
+            + (includeDescendants ? support.getSubtreeModificationVersion() : support.getModificationCount());
+    }
+
     protected ObjectMapper mapper() {
         return mapper(mgmt());
     }
@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.mgmt.ExecutionManager;
 import org.apache.brooklyn.api.mgmt.HasTaskChildren;
 import org.apache.brooklyn.api.mgmt.Task;
 import org.apache.brooklyn.core.mgmt.BrooklynTaskTags;
@@ -38,6 +39,7 @@ import org.apache.brooklyn.rest.transform.TaskTransformer;
 import org.apache.brooklyn.rest.util.WebResourceUtils;
 import org.apache.brooklyn.util.collections.MutableList;
 import org.apache.brooklyn.util.collections.MutableSet;
+import org.apache.brooklyn.util.core.task.BasicExecutionManager;
 
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Iterables;
@@ -113,7 +115,15 @@ public class ActivityResource extends AbstractBrooklynRestResource implements Ac
         Entity entity = BrooklynTaskTags.getContextEntity(t);
         List<TaskSummary> result = MutableList.of();
         if (entity!=null) {
-            Set<Task<?>> tasks = BrooklynTaskTags.getTasksInEntityContext(mgmt().getExecutionManager(), entity);
+            Collection<Task<?>> tasks;
+            ExecutionManager em = mgmt().getExecutionManager();
+            if (em instanceof BasicExecutionManager) {
+                // we only filter, so iterate the live view, which needs no lock, rather than copying it
+                tasks = ((BasicExecutionManager)em).tasksWithTagLiveOrNull(BrooklynTaskTags.tagForContextEntity(entity));
+                if (tasks==null) tasks = Collections.emptySet();
+            } else {
+                tasks = BrooklynTaskTags.getTasksInEntityContext(em, entity);
+            }
             for (Task<?> ti: tasks) {
                 if (t.equals(ti.getSubmittedByTask())) {
                     result.add(TaskTransformer.fromTask(ui.getBaseUriBuilder()).apply(ti));
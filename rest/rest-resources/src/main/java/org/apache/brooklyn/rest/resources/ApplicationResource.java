@@ -180,6 +180,9 @@ public class ApplicationResource extends AbstractBrooklynRestResource implements
 
     @Override
     public List<EntityDetail> fetch(String entityIds, String extraSensorsS) {
+        // details include children, members and the extra entities, all of which are descendants of the applications
+        checkNotModified(applicationVersions(true), entityIds, extraSensorsS, ui.getBaseUri());
+
         List<String> extraSensorNames = JavaStringEscapes.unwrapOptionallyQuotedJavaStringList(extraSensorsS);
         List<AttributeSensor<?>> extraSensors = extraSensorNames.stream().map((s) -> Sensors.newSensor(Object.class, s)).collect(Collectors.toList());
 
@@ -227,11 +230,21 @@ public class ApplicationResource extends AbstractBrooklynRestResource implements
         return result;
     }
 
+    /** the versions of all applications, for {@link #checkNotModified(Object...)} */
+    private List<String> applicationVersions(boolean includeDescendants) {
+        List<String> result = Lists.newArrayList();
+        for (Application application : mgmt().getApplications()) {
+            result.add(entityVersion(application, includeDescendants));
+        }
+        return result;
+    }
+
     @Override
     public List<ApplicationSummary> list(String typeRegex) {
         if (Strings.isBlank(typeRegex)) {
             typeRegex = ".*";
         }
+        checkNotModified(applicationVersions(false), typeRegex, ui.getBaseUri());
         return FluentIterable
                 .from(mgmt().getApplications())
                 .filter(EntitlementPredicates.isEntitled(mgmt().getEntitlementManager(), Entitlements.SEE_ENTITY))
@@ -242,7 +255,9 @@ public class ApplicationResource extends AbstractBrooklynRestResource implements
 
     @Override
     public ApplicationSummary get(String application) {
-        return ApplicationTransformer.summaryFromApplication(brooklyn().getApplication(application), ui.getBaseUriBuilder());
+        Application app = brooklyn().getApplication(application);
+        checkNotModified(entityVersion(app, false), ui.getBaseUri());
+        return ApplicationTransformer.summaryFromApplication(app, ui.getBaseUriBuilder());
     }
 
     /** @deprecated since 0.7.0 see #create */ @Deprecated
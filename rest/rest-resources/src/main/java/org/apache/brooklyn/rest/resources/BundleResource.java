@@ -136,9 +136,9 @@ public class BundleResource extends AbstractBrooklynRestResource implements Bund
         }
         
         Predicate<RegisteredType> pred = RegisteredTypePredicates.nameOrAlias(typeSymbolicName);
-        pred = Predicates.and(pred, RegisteredTypePredicates.containingBundle(b.getVersionedName()));
+        pred = RegisteredTypePredicates.and(pred, RegisteredTypePredicates.containingBundle(b.getVersionedName()));
         if (!LATEST.equalsIgnoreCase(typeVersion)) {
-            pred = Predicates.and(pred, RegisteredTypePredicates.version(typeVersion));
+            pred = RegisteredTypePredicates.and(pred, RegisteredTypePredicates.version(typeVersion));
         }
         Iterable<RegisteredType> items = mgmt().getTypeRegistry().getMatching(pred);
         
@@ -70,7 +70,6 @@ import org.slf4j.LoggerFactory;
 import com.google.common.annotations.Beta;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
@@ -277,7 +276,7 @@ public class CatalogResource extends AbstractBrooklynRestResource implements Cat
     @Deprecated
     public List<CatalogEntitySummary> listEntities(String regex, String fragment, boolean allVersions) {
         Predicate<RegisteredType> filter =
-                Predicates.and(
+                RegisteredTypePredicates.and(
                         RegisteredTypePredicates.IS_ENTITY,
                         RegisteredTypePredicates.disabled(false));
         List<CatalogItemSummary> result = getCatalogItemSummariesMatchingRegexFragment(filter, regex, fragment, allVersions);
@@ -289,7 +288,7 @@ public class CatalogResource extends AbstractBrooklynRestResource implements Cat
     public List<CatalogItemSummary> listApplications(String regex, String fragment, boolean allVersions) {
         @SuppressWarnings("unchecked")
         Predicate<RegisteredType> filter =
-                Predicates.and(
+                RegisteredTypePredicates.and(
                         RegisteredTypePredicates.template(true),
                         RegisteredTypePredicates.deprecated(false),
                         RegisteredTypePredicates.disabled(false));
@@ -324,7 +323,7 @@ public class CatalogResource extends AbstractBrooklynRestResource implements Cat
     @Deprecated
     public List<CatalogPolicySummary> listPolicies(String regex, String fragment, boolean allVersions) {
         Predicate<RegisteredType> filter =
-                Predicates.and(
+                RegisteredTypePredicates.and(
                         RegisteredTypePredicates.IS_POLICY,
                         RegisteredTypePredicates.disabled(false));
         List<CatalogItemSummary> result = getCatalogItemSummariesMatchingRegexFragment(filter, regex, fragment, allVersions);
@@ -352,7 +351,7 @@ public class CatalogResource extends AbstractBrooklynRestResource implements Cat
     @Deprecated
     public List<CatalogLocationSummary> listLocations(String regex, String fragment, boolean allVersions) {
         Predicate<RegisteredType> filter =
-                Predicates.and(
+                RegisteredTypePredicates.and(
                         RegisteredTypePredicates.IS_LOCATION,
                         RegisteredTypePredicates.disabled(false));
         List<CatalogItemSummary> result = getCatalogItemSummariesMatchingRegexFragment(filter, regex, fragment, allVersions);
@@ -392,7 +391,7 @@ public class CatalogResource extends AbstractBrooklynRestResource implements Cat
         filters.add(RegisteredTypePredicates.entitledToSee(mgmt()));
 
         ImmutableList<RegisteredType> sortedItems =
-                FluentIterable.from(brooklyn().getTypeRegistry().getMatching(Predicates.and(filters)))
+                FluentIterable.from(brooklyn().getTypeRegistry().getMatching(RegisteredTypePredicates.and(filters)))
                     .toSortedList(RegisteredTypes.RegisteredTypeNameThenBestFirstComparator.INSTANCE);
         return Lists.transform(sortedItems, toCatalogItemSummary(ui));
     }
@@ -433,7 +432,7 @@ public class CatalogResource extends AbstractBrooklynRestResource implements Cat
     @Deprecated
     public List<CatalogEnricherSummary> listEnrichers(@ApiParam(name = "regex", value = "Regular expression to search for") @DefaultValue("") String regex, @ApiParam(name = "fragment", value = "Substring case-insensitive to search for") @DefaultValue("") String fragment, @ApiParam(name = "allVersions", value = "Include all versions (defaults false, only returning the best version)") @DefaultValue("false") boolean includeAllVersions) {
         Predicate<RegisteredType> filter =
-                Predicates.and(
+                RegisteredTypePredicates.and(
                         RegisteredTypePredicates.IS_ENRICHER,
                         RegisteredTypePredicates.disabled(false));
         List<CatalogItemSummary> result = getCatalogItemSummariesMatchingRegexFragment(filter, regex, fragment, includeAllVersions);
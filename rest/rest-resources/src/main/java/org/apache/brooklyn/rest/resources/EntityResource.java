@@ -23,21 +23,36 @@ import static javax.ws.rs.core.Response.status;
 import static javax.ws.rs.core.Response.Status.ACCEPTED;
 import static org.apache.brooklyn.rest.util.WebResourceUtils.serviceAbsoluteUriBuilder;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.location.Location;
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.api.mgmt.Scratchpad;
+import org.apache.brooklyn.api.mgmt.SubscriptionHandle;
 import org.apache.brooklyn.api.mgmt.Task;
+import org.apache.brooklyn.api.mgmt.entitlement.EntitlementContext;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.entity.Entities;
 import org.apache.brooklyn.core.mgmt.BrooklynTags;
 import org.apache.brooklyn.core.mgmt.BrooklynTags.NamedStringTag;
 import org.apache.brooklyn.core.mgmt.BrooklynTaskTags;
@@ -45,6 +60,7 @@ import org.apache.brooklyn.core.mgmt.EntityManagementUtils;
 import org.apache.brooklyn.core.mgmt.EntityManagementUtils.CreationResult;
 import org.apache.brooklyn.core.mgmt.entitlement.EntitlementPredicates;
 import org.apache.brooklyn.core.mgmt.entitlement.Entitlements;
+import org.apache.brooklyn.core.mgmt.entitlement.Entitlements.EntityAndItem;
 import org.apache.brooklyn.core.typereg.RegisteredTypes;
 import org.apache.brooklyn.rest.api.EntityApi;
 import org.apache.brooklyn.rest.domain.EntitySummary;
@@ -57,13 +73,19 @@ import org.apache.brooklyn.rest.transform.LocationTransformer.LocationDetailLeve
 import org.apache.brooklyn.rest.transform.TaskTransformer;
 import org.apache.brooklyn.rest.util.WebResourceUtils;
 import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.collections.MutableSet;
 import org.apache.brooklyn.util.core.ResourceUtils;
+import org.apache.brooklyn.util.text.Strings;
 import org.apache.brooklyn.util.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
 import com.google.common.base.Objects;
+import com.google.common.base.Splitter;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -72,9 +94,23 @@ import com.google.common.io.Files;
 @HaHotStateRequired
 public class EntityResource extends AbstractBrooklynRestResource implements EntityApi {
 
-    @SuppressWarnings("unused")
     private static final Logger log = LoggerFactory.getLogger(EntityResource.class);
 
+    /**
+     * Each open sensor stream holds a thread of the web server (JAX-RS 2.0 has no asynchronous event sink),
+     * so their number is limited; further requests are refused with 503 until one closes.
+     */
+    public static final ConfigKey<Integer> SENSOR_STREAMS_MAX = ConfigKeys.newIntegerConfigKey("brooklyn.rest.sensorStreams.max",
+            "Maximum number of sensor streams open at once", 16);
+    public static final ConfigKey<Duration> SENSOR_STREAMS_MAX_DURATION = ConfigKeys.newDurationConfigKey("brooklyn.rest.sensorStreams.maxDuration",
+            "Time after which a sensor stream is closed, and the longest a client can request", Duration.minutes(5));
+
+    private static final ConfigKey<AtomicInteger> SENSOR_STREAMS_OPEN = ConfigKeys.newConfigKey(AtomicInteger.class,
+            "brooklyn.internal.rest.sensorStreams.open");
+
+    /** how long a sensor stream can be idle before a comment is written, so that proxies and clients keep it open */
+    private static final Duration STREAM_HEARTBEAT = Duration.seconds(15);
+
     @Context
     private UriInfo uriInfo;
     
@@ -99,8 +135,15 @@ public class EntityResource extends AbstractBrooklynRestResource implements Enti
 
     @Override
     public List<EntitySummary> getChildren(final String application, final String entity) {
+        Entity parent = brooklyn().getEntity(application, entity);
+        List<String> versions = Lists.newArrayList(entityVersion(parent, false));
+        for (Entity child : parent.getChildren()) {
+            versions.add(entityVersion(child, false));
+        }
+        checkNotModified(versions, ui.getBaseUri());
+
         return FluentIterable
-                .from(brooklyn().getEntity(application, entity).getChildren())
+                .from(parent.getChildren())
                 .filter(EntitlementPredicates.isEntitled(mgmt().getEntitlementManager(), Entitlements.SEE_ENTITY))
                 .transform(EntityTransformer.fromEntity(ui.getBaseUriBuilder()))
                 .toList();
@@ -298,4 +341,132 @@ public class EntityResource extends AbstractBrooklynRestResource implements Enti
             return null;
         return (String) WebResourceUtils.getValueForDisplay(spec.getContents(), false, true);
     }
+
+    @Override
+    public Response streamSensors(final String application, final String entityToken, final String sensors, final Boolean raw,
+            final String minPeriod, final String maxDuration) {
+        final Entity entity = brooklyn().getEntity(application, entityToken);
+        if (!Entitlements.isEntitled(mgmt().getEntitlementManager(), Entitlements.SEE_ENTITY, entity)) {
+            throw WebResourceUtils.forbidden("User '%s' is not authorized to see entity '%s'",
+                    Entitlements.getEntitlementContext().user(), entity);
+        }
+        final int maxStreams = mgmt().getConfig().getConfig(SENSOR_STREAMS_MAX);
+        final AtomicInteger openStreams = openSensorStreams(mgmt());
+        if (openStreams.get() >= maxStreams) {
+            throw WebResourceUtils.throwWebApplicationException(Status.SERVICE_UNAVAILABLE,
+                    "Too many sensor streams are open (limit %s); try again later", maxStreams);
+        }
+        final Duration minPeriodDuration = Duration.of(minPeriod);
+        Duration maxDurationLimit = mgmt().getConfig().getConfig(SENSOR_STREAMS_MAX_DURATION);
+        final Duration maxDurationDuration = Strings.isBlank(maxDuration) ? maxDurationLimit
+                : Duration.min(Duration.of(maxDuration), maxDurationLimit);
+        final Set<String> sensorNames = Strings.isBlank(sensors) ? null
+                : MutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(sensors));
+
+        // the body is written after the request has been handled, so capture what it needs from the request now
+        final ManagementContext mgmt = mgmt();
+        final EntitlementContext entitlementContext = Entitlements.getEntitlementContext();
+
+        StreamingOutput output = new StreamingOutput() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                // counted here rather than above so that a response which is never written does not hold a place;
+                // streams started concurrently past the limit are closed at once, and the client retries
+                try {
+                    if (openStreams.incrementAndGet() > maxStreams) return;
+                    EntitlementContext previous = Entitlements.getEntitlementContext();
+                    Entitlements.setEntitlementContext(entitlementContext);
+                    try {
+                        streamSensors(out, mgmt, entity, sensorNames, raw, minPeriodDuration, maxDurationDuration);
+                    } finally {
+                        if (previous==null) Entitlements.clearEntitlementContext();
+                        else Entitlements.setEntitlementContext(previous);
+                    }
+                } finally {
+                    openStreams.decrementAndGet();
+                }
+            }
+        };
+        return Response.ok(output, SERVER_SENT_EVENTS).header("Cache-Control", "no-cache").build();
+    }
+
+    private static AtomicInteger openSensorStreams(ManagementContext mgmt) {
+        Scratchpad scratchpad = mgmt.getScratchpad();
+        synchronized (scratchpad) {
+            AtomicInteger result = scratchpad.get(SENSOR_STREAMS_OPEN);
+            if (result == null) {
+                result = new AtomicInteger();
+                scratchpad.put(SENSOR_STREAMS_OPEN, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Writes the current values of the sensors, then their changed values as they change,
+     * until the entity is unmanaged, the max duration passes, or the client goes away.
+     * <p>
+     * This subscribes to the entity rather than polling it; changes are coalesced by {@link SensorEventCoalescer},
+     * and at most one event is written per {@code minPeriod}, so a slow client holds up only its own stream.
+     * Entitlement to see each sensor is checked once, the first time it is written.
+     */
+    private void streamSensors(OutputStream out, ManagementContext mgmt, Entity entity, Set<String> sensorNames, Boolean raw,
+            Duration minPeriod, Duration maxDuration) throws IOException {
+        Writer writer = new OutputStreamWriter(out, Charsets.UTF_8);
+        ObjectMapper mapper = mapper(mgmt);
+        long endTime = System.currentTimeMillis() + maxDuration.toMilliseconds();
+        Map<String, Boolean> entitled = MutableMap.of();
+        SensorEventCoalescer coalescer = new SensorEventCoalescer(sensorNames);
+        SubscriptionHandle subscription = mgmt.getSubscriptionManager().subscribe(entity, null, coalescer);
+        try {
+            // subscribe before reading the initial values, so that no change is missed
+            Map<String, AttributeSensor<?>> changed = MutableMap.of();
+            for (AttributeSensor<?> sensor : Iterables.filter(entity.getEntityType().getSensors(), AttributeSensor.class)) {
+                if (sensorNames==null || sensorNames.contains(sensor.getName())) changed.put(sensor.getName(), sensor);
+            }
+            while (true) {
+                if (changed.isEmpty()) {
+                    writer.write(": keepalive\n\n");
+                } else {
+                    Map<String, Object> values = MutableMap.of();
+                    for (AttributeSensor<?> sensor : changed.values()) {
+                        Boolean isEntitled = entitled.get(sensor.getName());
+                        if (isEntitled==null) {
+                            isEntitled = Entitlements.isEntitled(mgmt.getEntitlementManager(), Entitlements.SEE_SENSOR, new EntityAndItem<String>(entity, sensor.getName()));
+                            entitled.put(sensor.getName(), isEntitled);
+                        }
+                        if (!isEntitled) continue;
+                        values.put(sensor.getName(), resolving(entity.getAttribute(sensor), mgmt)
+                            .preferJson(true).asJerseyOutermostReturnValue(false).raw(raw).context(entity).timeout(Duration.ZERO).renderAs(sensor).resolve());
+                    }
+                    if (!values.isEmpty()) {
+                        writeEvent(writer, "sensors", mapper.writeValueAsString(values));
+                    }
+                }
+                writer.flush();
+
+                long remaining = endTime - System.currentTimeMillis();
+                if (remaining <= 0 || Entities.isNoLongerManaged(entity)) break;
+                // let changes accumulate for the min period, so that fast-changing sensors are sent at most once per period
+                Thread.sleep(Math.min(minPeriod.toMilliseconds(), remaining));
+                changed = coalescer.awaitChanges(Duration.millis(Math.max(0, Math.min(STREAM_HEARTBEAT.toMilliseconds(), endTime - System.currentTimeMillis()))));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // normally the client has closed the connection
+            log.debug("Stopped streaming sensors of "+entity+" to "+Entitlements.getEntitlementContext()+": "+e);
+        } finally {
+            coalescer.close();
+            mgmt.getSubscriptionManager().unsubscribe(subscription);
+        }
+    }
+
+    private static void writeEvent(Writer writer, String event, String data) throws IOException {
+        writer.write("event: "+event+"\n");
+        for (String line : Splitter.on('\n').split(data)) {
+            writer.write("data: "+line+"\n");
+        }
+        writer.write("\n");
+    }
 }
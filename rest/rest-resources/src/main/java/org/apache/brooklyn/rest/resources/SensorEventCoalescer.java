@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.rest.resources;
+
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.api.sensor.SensorEvent;
+import org.apache.brooklyn.api.sensor.SensorEventListener;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.time.Duration;
+
+/**
+ * Collects the attribute sensors of an entity which have changed, for a single streaming client.
+ * <p>
+ * Only the names of changed sensors are kept, not their values, so however slow the client
+ * the pending work is bounded by the number of sensors; the writer reads the latest value when it
+ * {@link #awaitChanges(Duration) takes the changes}, so repeated changes are coalesced into one.
+ */
+class SensorEventCoalescer implements SensorEventListener<Object> {
+
+    private final @Nullable Set<String> sensorNames;
+    private final Map<String, AttributeSensor<?>> pending = MutableMap.of();
+    private boolean closed;
+
+    /** @param sensorNames the sensors of interest, or null for all */
+    SensorEventCoalescer(@Nullable Set<String> sensorNames) {
+        this.sensorNames = sensorNames;
+    }
+
+    @Override
+    public void onEvent(SensorEvent<Object> event) {
+        if (!(event.getSensor() instanceof AttributeSensor)) return;
+        String name = event.getSensor().getName();
+        if (sensorNames!=null && !sensorNames.contains(name)) return;
+        synchronized (this) {
+            pending.put(name, (AttributeSensor<?>) event.getSensor());
+            notifyAll();
+        }
+    }
+
+    /** waits for up to the given time for a change, returning (and forgetting) all sensors changed since the last call;
+     * the result is empty if there were no changes in that time or if {@link #close()} was called */
+    synchronized Map<String, AttributeSensor<?>> awaitChanges(Duration maxWait) throws InterruptedException {
+        long end = System.currentTimeMillis() + maxWait.toMilliseconds();
+        while (pending.isEmpty() && !closed) {
+            long remaining = end - System.currentTimeMillis();
+            if (remaining <= 0) break;
+            wait(remaining);
+        }
+        Map<String, AttributeSensor<?>> result = MutableMap.copyOf(pending);
+        pending.clear();
+        return result;
+    }
+
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+}
@@ -78,6 +78,7 @@ public class SensorResource extends AbstractBrooklynRestResource implements Sens
             throw WebResourceUtils.forbidden("User '%s' is not authorized to see entity '%s'",
                     Entitlements.getEntitlementContext().user(), entity);
         }
+        checkNotModified(entityVersion(entity, false), raw);
 
         Map<String, Object> sensorMap = Maps.newHashMap();
         @SuppressWarnings("rawtypes")
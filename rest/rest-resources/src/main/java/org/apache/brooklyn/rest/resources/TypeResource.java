@@ -55,7 +55,6 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.annotations.Beta;
 import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.Files;
@@ -109,7 +108,7 @@ public class TypeResource extends AbstractBrooklynRestResource implements TypeAp
         if (Strings.isNonEmpty(fragment)) {
             filters.add(RegisteredTypePredicates.nameOrAlias(StringPredicates.containsLiteralIgnoreCase(fragment)));
         }
-        Predicate<RegisteredType> filter = Predicates.and(filters);
+        Predicate<RegisteredType> filter = RegisteredTypePredicates.and(filters);
 
         ImmutableList<RegisteredType> sortedItems =
             FluentIterable.from(brooklyn().getTypeRegistry().getMatching(filter))
@@ -127,7 +126,7 @@ public class TypeResource extends AbstractBrooklynRestResource implements TypeAp
 
     @Override
     public List<TypeSummary> listVersions(String nameOrAlias) {
-        Predicate<RegisteredType> filter = Predicates.and(RegisteredTypePredicates.entitledToSee(mgmt()), 
+        Predicate<RegisteredType> filter = RegisteredTypePredicates.and(RegisteredTypePredicates.entitledToSee(mgmt()), 
             RegisteredTypePredicates.nameOrAlias(nameOrAlias));
         ImmutableList<RegisteredType> sortedItems =
             FluentIterable.from(brooklyn().getTypeRegistry().getMatching(filter))
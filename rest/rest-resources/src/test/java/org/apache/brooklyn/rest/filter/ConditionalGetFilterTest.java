@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.rest.filter;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotNull;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.core.entity.EntityInternal;
+import org.apache.brooklyn.core.entity.EntityPredicates;
+import org.apache.brooklyn.core.sensor.Sensors;
+import org.apache.brooklyn.rest.domain.ApplicationSpec;
+import org.apache.brooklyn.rest.domain.EntitySpec;
+import org.apache.brooklyn.rest.testing.BrooklynRestResourceTest;
+import org.apache.brooklyn.rest.testing.mocks.RestMockSimpleEntity;
+import org.apache.brooklyn.test.Asserts;
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+
+@Test(singleThreaded = true,
+        // by using a different suite name we disallow interleaving other tests between the methods of this test class, which wrecks the test fixtures
+        suiteName = "ConditionalGetFilterTest")
+public class ConditionalGetFilterTest extends BrooklynRestResourceTest {
+
+    private static final ApplicationSpec SIMPLE_SPEC = ApplicationSpec.builder()
+            .name("simple-app")
+            .entities(ImmutableSet.of(new EntitySpec("simple-ent", RestMockSimpleEntity.class.getName())))
+            .locations(ImmutableSet.of("localhost"))
+            .build();
+
+    private static final String APPLICATION_ENDPOINT = "/applications/simple-app";
+    private static final String CURRENT_STATE_ENDPOINT = "/applications/simple-app/entities/simple-ent/sensors/current-state";
+    private static final AttributeSensor<Integer> SENSOR = Sensors.newIntegerSensor("conditional.get.test");
+
+    private EntityInternal entity;
+
+    @Override
+    protected void addBrooklynResources() {
+        addResource(new ConditionalGetFilter());
+        super.addBrooklynResources();
+    }
+
+    @BeforeClass(alwaysRun = true)
+    public void setUp() throws Exception {
+        startServer();
+        Response deploy = clientDeploy(SIMPLE_SPEC);
+        waitForApplicationToBeRunning(deploy.getLocation());
+        entity = (EntityInternal) Iterables.find(getManagementContext().getEntityManager().getEntities(), EntityPredicates.displayNameEqualTo("simple-ent"));
+    }
+
+    @Test
+    public void testSensorsNotModifiedUntilSensorChanges() {
+        entity.sensors().set(SENSOR, 1);
+        String etag = assertNotModifiedWhenUnchanged(CURRENT_STATE_ENDPOINT);
+
+        entity.sensors().set(SENSOR, 2);
+        Response response = get(CURRENT_STATE_ENDPOINT, etag);
+        assertEquals(response.getStatus(), Response.Status.OK.getStatusCode());
+        assertNotEquals(response.getHeaderString(HttpHeaders.ETAG), etag);
+    }
+
+    @Test
+    public void testApplicationNotModifiedUntilApplicationChanges() {
+        String etag = assertNotModifiedWhenUnchanged(APPLICATION_ENDPOINT);
+
+        ((EntityInternal) entity.getApplication()).setDisplayName("simple-app-renamed");
+        try {
+            Response response = get(APPLICATION_ENDPOINT, etag);
+            assertEquals(response.getStatus(), Response.Status.OK.getStatusCode());
+            assertNotEquals(response.getHeaderString(HttpHeaders.ETAG), etag);
+        } finally {
+            ((EntityInternal) entity.getApplication()).setDisplayName("simple-app");
+        }
+    }
+
+    @Test
+    public void testNonMatchingTagGivesFullResponse() {
+        Response response = get(CURRENT_STATE_ENDPOINT, "\"not-the-tag\"");
+        assertEquals(response.getStatus(), Response.Status.OK.getStatusCode());
+        assertNotNull(response.getHeaderString(HttpHeaders.ETAG));
+    }
+
+    /** returns the tag, once a request with it gives 304 (allowing for background changes as the app settles) */
+    private String assertNotModifiedWhenUnchanged(final String path) {
+        final String[] etag = new String[1];
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                Response first = get(path, null);
+                assertEquals(first.getStatus(), Response.Status.OK.getStatusCode());
+                etag[0] = first.getHeaderString(HttpHeaders.ETAG);
+                assertNotNull(etag[0]);
+
+                Response second = get(path, etag[0]);
+                assertEquals(second.getStatus(), Response.Status.NOT_MODIFIED.getStatusCode());
+                assertEquals(second.getHeaderString(HttpHeaders.ETAG), etag[0]);
+            }});
+        return etag[0];
+    }
+
+    private Response get(String path, String ifNoneMatch) {
+        WebClient client = client().path(path).accept(MediaType.APPLICATION_JSON);
+        if (ifNoneMatch != null) client = client.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        return client.get();
+    }
+}
@@ -19,8 +19,12 @@
 package org.apache.brooklyn.rest.resources;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.Map;
 import java.util.concurrent.Callable;
 
@@ -39,12 +43,13 @@ import org.apache.brooklyn.api.sensor.Feed;
 import org.apache.brooklyn.core.config.render.RendererHints;
 import org.apache.brooklyn.core.entity.EntityInternal;
 import org.apache.brooklyn.core.entity.EntityPredicates;
+import org.apache.brooklyn.core.mgmt.internal.ManagementContextInternal;
 import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.core.test.entity.TestEntity;
 import org.apache.brooklyn.core.test.policy.TestEnricher;
 import org.apache.brooklyn.core.test.policy.TestPolicy;
 import org.apache.brooklyn.feed.function.FunctionFeed;
-import org.apache.brooklyn.rest.api.SensorApi;
+import org.apache.brooklyn.rest.api.EntityApi;
 import org.apache.brooklyn.rest.domain.ApplicationSpec;
 import org.apache.brooklyn.rest.domain.EntitySpec;
 import org.apache.brooklyn.rest.test.config.render.TestRendererHints;
@@ -62,6 +67,7 @@ import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -153,6 +159,66 @@ public class SensorResourceTest extends BrooklynRestResourceTest {
         }
     }
 
+    /** Check the stream sends the current value, then the changed value, using the display value hint. */
+    @Test
+    public void testStream() throws Exception {
+        Response response = client().path(SENSORS_ENDPOINT + "-stream")
+                .query("sensors", SENSOR_NAME)
+                .query("minPeriod", "10ms")
+                .query("maxDuration", "1m")
+                .accept(EntityApi.SERVER_SENT_EVENTS)
+                .get();
+        BufferedReader reader = null;
+        try {
+            HttpAsserts.assertHealthyStatusCode(response.getStatus());
+            reader = new BufferedReader(new InputStreamReader(response.readEntity(InputStream.class), Charsets.UTF_8));
+            
+            // the initial values, read before changing the sensor so that they are known
+            String first = readEvent(reader);
+            assertEquals(first, "event: sensors\ndata: {\""+SENSOR_NAME+"\":\"12345 frogs\"}\n", "first="+first);
+            
+            entity.sensors().set(SENSOR, 67890);
+            String next;
+            do {
+                next = readEvent(reader);
+                assertNotNull(next, "stream ended without the changed value");
+            } while (next.startsWith(":"));
+            assertEquals(next, "event: sensors\ndata: {\""+SENSOR_NAME+"\":\"67890 frogs\"}\n", "next="+next);
+        } finally {
+            // stop reading without waiting for maxDuration
+            Streams.closeQuietly(reader);
+            response.close();
+            addAmphibianSensor(entity);
+        }
+    }
+
+    @Test
+    public void testStreamRefusedWhenTooManyOpen() throws Exception {
+        ((ManagementContextInternal)getManagementContext()).getBrooklynProperties().put(EntityResource.SENSOR_STREAMS_MAX, 0);
+        try {
+            Response response = client().path(SENSORS_ENDPOINT + "-stream")
+                    .accept(EntityApi.SERVER_SENT_EVENTS)
+                    .get();
+            assertEquals(response.getStatus(), Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        } finally {
+            ((ManagementContextInternal)getManagementContext()).getBrooklynProperties().remove(EntityResource.SENSOR_STREAMS_MAX);
+        }
+    }
+
+    /** @return the lines of the next server-sent event (or comment), each followed by a newline; or null at the end of the stream */
+    private static String readEvent(BufferedReader reader) throws IOException {
+        StringBuilder result = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (result.length() > 0) return result.toString();
+            } else {
+                result.append(line).append("\n");
+            }
+        }
+        return null;
+    }
+
     protected Response doSensorTest(Boolean raw, MediaType acceptsType, Object expectedValue) {
         return doSensorTestUntyped(
             raw==null ? null : (""+raw).toLowerCase(), 
@@ -34,6 +34,7 @@ import javax.management.ObjectName;
 import org.apache.brooklyn.api.entity.Entity;
 import org.apache.brooklyn.api.entity.EntityLocal;
 import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
 import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.feed.AbstractFeed;
 import org.apache.brooklyn.core.feed.AttributePollHandler;
@@ -41,13 +42,16 @@ import org.apache.brooklyn.core.feed.DelegatingPollHandler;
 import org.apache.brooklyn.core.feed.PollHandler;
 import org.apache.brooklyn.core.feed.Poller;
 import org.apache.brooklyn.entity.software.base.SoftwareProcessImpl;
+import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.reflect.TypeToken;
@@ -289,8 +293,12 @@ public class JmxFeed extends AbstractFeed {
         }
         
         // Setup polling of sensors
-        for (final String jmxAttributeName : attributePolls.keys()) {
-            registerAttributePoller(attributePolls.get(jmxAttributeName));
+        if (BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_BATCH_JMX_ATTRIBUTE_READS)) {
+            registerBatchedAttributePollers(attributePolls);
+        } else {
+            for (final String jmxAttributeName : attributePolls.keys()) {
+                registerAttributePoller(attributePolls.get(jmxAttributeName));
+            }
         }
         
         // Setup polling of operations
@@ -376,6 +384,137 @@ public class JmxFeed extends AbstractFeed {
                 new DelegatingPollHandler<Object>(handlers), minPeriod);
     }
 
+    /**
+     * Registers to poll jmx-attributes, reading all the attributes of an ObjectName which have the same period
+     * in a single call; see {@link BrooklynFeatureEnablement#FEATURE_BATCH_JMX_ATTRIBUTE_READS}.
+     */
+    private void registerBatchedAttributePollers(SetMultimap<String, JmxAttributePollConfig<?>> attributePolls) {
+        Map<List<Object>, Map<String, PollHandler<Object>>> batches = Maps.newLinkedHashMap();
+        
+        for (String key : attributePolls.keySet()) {
+            Set<JmxAttributePollConfig<?>> configs = attributePolls.get(key);
+            Set<AttributePollHandler<? super Object>> handlers = Sets.newLinkedHashSet();
+            long minPeriod = Integer.MAX_VALUE;
+            for (JmxAttributePollConfig<?> config : configs) {
+                handlers.add(new AttributePollHandler<Object>(config, getEntity(), this));
+                if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
+            }
+            
+            JmxAttributePollConfig<?> first = Iterables.get(configs, 0);
+            List<Object> batchKey = ImmutableList.<Object>of(first.getObjectName(), minPeriod);
+            Map<String, PollHandler<Object>> batch = batches.get(batchKey);
+            if (batch == null) {
+                batch = Maps.newLinkedHashMap();
+                batches.put(batchKey, batch);
+            }
+            batch.put(first.getAttributeName(), new DelegatingPollHandler<Object>(handlers));
+        }
+        
+        for (Map.Entry<List<Object>, Map<String, PollHandler<Object>>> batch : batches.entrySet()) {
+            final ObjectName objectName = (ObjectName) batch.getKey().get(0);
+            final long period = (Long) batch.getKey().get(1);
+            final Map<String, PollHandler<Object>> handlers = batch.getValue();
+            
+            getPoller().scheduleAtFixedRate(
+                    new Callable<Object>() {
+                        @Override
+                        public Object call() throws Exception {
+                            if (log.isTraceEnabled()) log.trace("jmx attributes polling for {} sensors at {} -> {}", new Object[] {getEntity(), getJmxUri(), handlers.keySet()});
+                            return readAttributes(objectName, handlers.keySet());
+                        }
+                    }, 
+                    new BatchedAttributePollHandler(objectName, handlers), period);
+        }
+    }
+    
+    /**
+     * Reads the attributes in one call; any not returned (which {@code getAttributes} does for attributes it cannot read)
+     * are read individually, so that the reason is reported to their handlers as before.
+     */
+    private Map<String, Object> readAttributes(ObjectName objectName, Set<String> attributeNames) {
+        Map<String, Object> values = getHelper().getAttributes(objectName, attributeNames);
+        Map<String, Object> result = Maps.newLinkedHashMap(values);
+        for (String attributeName : attributeNames) {
+            if (!values.containsKey(attributeName)) {
+                try {
+                    result.put(attributeName, getHelper().getAttribute(objectName, attributeName));
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    result.put(attributeName, new AttributeReadFailure(e));
+                }
+            }
+        }
+        return result;
+    }
+    
+    private static class AttributeReadFailure {
+        final Exception exception;
+        AttributeReadFailure(Exception exception) {
+            this.exception = exception;
+        }
+    }
+    
+    /** passes the value of each attribute read in a batch to the handlers for that attribute */
+    private static class BatchedAttributePollHandler implements PollHandler<Object> {
+        private final ObjectName objectName;
+        private final Map<String, PollHandler<Object>> handlers;
+        
+        BatchedAttributePollHandler(ObjectName objectName, Map<String, PollHandler<Object>> handlers) {
+            this.objectName = objectName;
+            this.handlers = handlers;
+        }
+        
+        @Override
+        public boolean checkSuccess(Object val) {
+            // success or failure is determined for each attribute, in onSuccess
+            return true;
+        }
+        
+        @Override
+        public void onSuccess(Object val) {
+            Map<?, ?> values = (Map<?, ?>) val;
+            for (Map.Entry<String, PollHandler<Object>> entry : handlers.entrySet()) {
+                PollHandler<Object> handler = entry.getValue();
+                Object value = values.get(entry.getKey());
+                // a failure handling one attribute must not stop the others
+                try {
+                    if (value instanceof AttributeReadFailure) {
+                        handler.onException(((AttributeReadFailure) value).exception);
+                    } else if (handler.checkSuccess(value)) {
+                        handler.onSuccess(value);
+                    } else {
+                        handler.onFailure(value);
+                    }
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    log.warn("Poll of jmx attribute "+objectName.getCanonicalName()+"."+entry.getKey()+" failed in handler (continuing with other attributes): "+e, e);
+                }
+            }
+        }
+        
+        @Override
+        public void onFailure(Object val) {
+            onSuccess(val);
+        }
+        
+        @Override
+        public void onException(Exception exception) {
+            for (PollHandler<Object> handler : handlers.values()) {
+                handler.onException(exception);
+            }
+        }
+        
+        @Override
+        public String getDescription() {
+            return "jmx attributes "+objectName.getCanonicalName()+" "+handlers.keySet();
+        }
+        
+        @Override
+        public String toString() {
+            return super.toString()+"["+getDescription()+"]";
+        }
+    }
+
     /**
      * Registers to subscribe to notifications for an ObjectName, where all the given configs are for that same ObjectName + filter.
      */
@@ -26,6 +26,7 @@ import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -36,6 +37,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
@@ -652,6 +654,37 @@ public class JmxHelper {
         }
     }
 
+    /**
+     * Reads the given attributes of an mbean in a single call (rather than a round-trip per attribute, as with
+     * {@link #getAttribute(ObjectName, String)}).
+     * <p>
+     * As with {@link MBeanServerConnection#getAttributes(ObjectName, String[])}, attributes which cannot be read
+     * (e.g. because they do not exist) are omitted from the result rather than causing a failure.
+     * If the mbean is not found, all attributes are returned with null values, consistent with {@link #getAttribute(ObjectName, String)}.
+     */
+    public Map<String, Object> getAttributes(ObjectName objectName, Collection<String> attributes) {
+        final ObjectName realObjectName = toLiteralObjectName(objectName);
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        
+        if (realObjectName != null) {
+            final String[] names = attributes.toArray(new String[attributes.size()]);
+            AttributeList values = invokeWithReconnect(new Callable<AttributeList>() {
+                    @Override
+                    public AttributeList call() throws Exception {
+                        return getConnectionOrFail().getAttributes(realObjectName, names);
+                    }});
+            for (javax.management.Attribute value : values.asList()) {
+                result.put(value.getName(), value.getValue());
+            }
+            if (LOG.isTraceEnabled()) LOG.trace("From {}, for jmx attributes {}.{}, got values {}", new Object[] {url, objectName.getCanonicalName(), attributes, result});
+        } else {
+            for (String attribute : attributes) {
+                result.put(attribute, null);
+            }
+        }
+        return result;
+    }
+
     public void setAttribute(String objectName, String attribute, Object val) {
         setAttribute(createObjectName(objectName), attribute, val);
     }
@@ -46,6 +46,7 @@ import org.apache.brooklyn.api.entity.ImplementedBy;
 import org.apache.brooklyn.api.sensor.AttributeSensor;
 import org.apache.brooklyn.api.sensor.SensorEvent;
 import org.apache.brooklyn.api.sensor.SensorEventListener;
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
 import org.apache.brooklyn.core.effector.AddSensor;
 import org.apache.brooklyn.core.entity.AbstractEntity;
 import org.apache.brooklyn.core.entity.Attributes;
@@ -180,6 +181,37 @@ public class JmxFeedTest extends BrooklynAppUnitTestSupport {
         assertSensorEventually(intAttribute, 64, TIMEOUT_MS);
     }
 
+    @Test
+    public void testJmxAttributePollerReadsAttributesOfMBeanInBatch() throws Exception {
+        boolean enabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_BATCH_JMX_ATTRIBUTE_READS);
+        BrooklynFeatureEnablement.enable(BrooklynFeatureEnablement.FEATURE_BATCH_JMX_ATTRIBUTE_READS);
+        try {
+            GeneralisedDynamicMBean mbean = jmxService.registerMBean(ImmutableMap.of(attributeName, 42, "mystringattrib", "abc"), objectName);
+            
+            feed = JmxFeed.builder()
+                    .entity(entity)
+                    .pollAttribute(new JmxAttributePollConfig<Integer>(intAttribute)
+                            .objectName(objectName)
+                            .period(50)
+                            .attributeName(attributeName))
+                    .pollAttribute(new JmxAttributePollConfig<String>(stringAttribute)
+                            .objectName(objectName)
+                            .period(50)
+                            .attributeName("mystringattrib"))
+                    .build();
+            
+            assertSensorEventually(intAttribute, 42, TIMEOUT_MS);
+            assertSensorEventually(stringAttribute, "abc", TIMEOUT_MS);
+            
+            mbean.updateAttributeValue(attributeName, 64);
+            mbean.updateAttributeValue("mystringattrib", "def");
+            assertSensorEventually(intAttribute, 64, TIMEOUT_MS);
+            assertSensorEventually(stringAttribute, "def", TIMEOUT_MS);
+        } finally {
+            BrooklynFeatureEnablement.setEnablement(BrooklynFeatureEnablement.FEATURE_BATCH_JMX_ATTRIBUTE_READS, enabled);
+        }
+    }
+
     @Test
     public void testJmxAttributeSensor() throws Exception {
         GeneralisedDynamicMBean mbean = jmxService.registerMBean(ImmutableMap.of(attributeName, 42), objectName);
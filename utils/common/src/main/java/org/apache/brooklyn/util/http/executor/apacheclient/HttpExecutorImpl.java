@@ -49,27 +49,46 @@ public class HttpExecutorImpl implements HttpExecutor {
         return new HttpExecutorImpl();
     }
 
+    /** @return an executor using (pooled) clients from the given {@link SharedHttpClients} */
+    @Beta
+    public static HttpExecutorImpl newInstance(SharedHttpClients sharedClients) {
+        return new HttpExecutorImpl(sharedClients);
+    }
+
+    private final SharedHttpClients sharedClients;
+
     /**
      * A must have constructor.
      */
     public HttpExecutorImpl(Map<?, ?> props) {
-        
+        this.sharedClients = null;
     }
     
     public HttpExecutorImpl() {
+        this.sharedClients = null;
+    }
+
+    /** if sharedClients is null, a new client is built for each request */
+    public HttpExecutorImpl(SharedHttpClients sharedClients) {
+        this.sharedClients = sharedClients;
     }
 
     @Override
     public HttpResponse execute(HttpRequest request) throws IOException {
         HttpConfig config = (request.config() != null) ? request.config() : DEFAULT_CONFIG;
         Credentials creds = (request.credentials() != null) ? new UsernamePasswordCredentials(request.credentials().getUser(), request.credentials().getPassword()) : null;
-        HttpClient httpClient = HttpTool.httpClientBuilder()
-                .uri(request.uri())
-                .credential(Optional.fromNullable(creds))
-                .laxRedirect(config.laxRedirect())
-                .trustSelfSigned(config.trustSelfSigned())
-                .trustAll(config.trustAll())
-                .build();
+        HttpClient httpClient;
+        if (sharedClients != null) {
+            httpClient = sharedClients.get(request.uri(), config, creds);
+        } else {
+            httpClient = HttpTool.httpClientBuilder()
+                    .uri(request.uri())
+                    .credential(Optional.fromNullable(creds))
+                    .laxRedirect(config.laxRedirect())
+                    .trustSelfSigned(config.trustSelfSigned())
+                    .trustAll(config.trustAll())
+                    .build();
+        }
         
         HttpToolResponse response;
         
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.brooklyn.util.http.executor.apacheclient;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.http.HttpTool;
+import org.apache.brooklyn.util.http.executor.HttpConfig;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.http.auth.Credentials;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.params.CookiePolicy;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.hash.Hashing;
+
+/**
+ * Connection-pooled {@link HttpClient}s, shared by {@link HttpExecutorImpl}s so that repeated requests
+ * (e.g. feed polls) reuse kept-alive connections rather than each opening a new connection
+ * (and TLS session) with a new client.
+ * <p>
+ * A client is created for each distinct combination of scheme, host, port, redirect and trust settings
+ * and credentials (the user and a digest of the password, so that the password is not held in the key),
+ * each with its own connection pool limited in size overall and per route,
+ * so that one busy or slow host cannot use up the connections for all others.
+ * The clients ignore cookies: a client is shared by all requests to its host, so a cookie set
+ * in response to one request (e.g. for one entity) would otherwise be sent with the others.
+ * A request waits at most the connection request timeout for a connection from its pool.
+ * Connections idle for longer than the idle timeout are closed as clients are used,
+ * or on {@link #closeIdleConnections()}; clients not used for the expiry period are shut down.
+ * <p>
+ * Clients must only be used with requests whose responses are consumed (as {@link HttpTool}'s methods do),
+ * otherwise their connections are not returned to the pool.
+ */
+@Beta
+public class SharedHttpClients {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedHttpClients.class);
+
+    public static final int DEFAULT_MAX_TOTAL = 200;
+    public static final int DEFAULT_MAX_PER_ROUTE = 20;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.THIRTY_SECONDS;
+    public static final Duration DEFAULT_CONNECTION_REQUEST_TIMEOUT = Duration.THIRTY_SECONDS;
+    public static final Duration DEFAULT_EXPIRY = Duration.minutes(30);
+
+    private static class PooledClient {
+        final HttpClient client;
+        final PoolingClientConnectionManager connectionManager;
+        
+        PooledClient(HttpClient client, PoolingClientConnectionManager connectionManager) {
+            this.client = client;
+            this.connectionManager = connectionManager;
+        }
+    }
+
+    private final int maxTotal;
+    private final int maxPerRoute;
+    private final Duration idleTimeout;
+    private final Duration connectionRequestTimeout;
+    private final Cache<List<Object>, PooledClient> clients;
+    private final AtomicLong lastIdleCheck = new AtomicLong(System.currentTimeMillis());
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong clientsCreatedCount = new AtomicLong();
+
+    public SharedHttpClients() {
+        this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE, DEFAULT_IDLE_TIMEOUT, DEFAULT_EXPIRY);
+    }
+
+    public SharedHttpClients(int maxTotal, int maxPerRoute, Duration idleTimeout, Duration expiry) {
+        this(maxTotal, maxPerRoute, idleTimeout, expiry, DEFAULT_CONNECTION_REQUEST_TIMEOUT);
+    }
+
+    /**
+     * @param maxTotal maximum number of connections in the pool of each client
+     * @param maxPerRoute maximum number of connections to any one host (and port) in the pool of each client
+     * @param idleTimeout how long an unused connection is kept open for reuse
+     * @param expiry how long a client is kept when not used
+     * @param connectionRequestTimeout how long a request waits for a connection from the pool, when all are in use
+     */
+    public SharedHttpClients(int maxTotal, int maxPerRoute, Duration idleTimeout, Duration expiry, Duration connectionRequestTimeout) {
+        Preconditions.checkArgument(maxTotal > 0, "maxTotal must be positive");
+        Preconditions.checkArgument(maxPerRoute > 0, "maxPerRoute must be positive");
+        this.maxTotal = maxTotal;
+        this.maxPerRoute = maxPerRoute;
+        this.idleTimeout = Preconditions.checkNotNull(idleTimeout, "idleTimeout");
+        this.connectionRequestTimeout = Preconditions.checkNotNull(connectionRequestTimeout, "connectionRequestTimeout");
+        this.clients = CacheBuilder.newBuilder()
+                .expireAfterAccess(Preconditions.checkNotNull(expiry, "expiry").toMilliseconds(), TimeUnit.MILLISECONDS)
+                .removalListener(new RemovalListener<List<Object>, PooledClient>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<List<Object>, PooledClient> notification) {
+                        log.debug("Shutting down shared http client for "+notification.getKey()+" ("+notification.getCause()+")");
+                        notification.getValue().connectionManager.shutdown();
+                    }
+                })
+                .build();
+    }
+
+    /** @return a shared client for the given request target, config and credentials */
+    public HttpClient get(final URI uri, final HttpConfig config, final Credentials credentials) {
+        requestCount.incrementAndGet();
+        maybeCloseIdleConnections();
+        List<Object> key = Arrays.<Object>asList(uri.getScheme(), uri.getHost(), uri.getPort(), config.laxRedirect(), config.trustAll(), config.trustSelfSigned(),
+                credentialsKey(credentials));
+        try {
+            return clients.get(key, new Callable<PooledClient>() {
+                @Override
+                public PooledClient call() {
+                    return newClient(uri, config, credentials);
+                }
+            }).client;
+        } catch (ExecutionException e) {
+            throw Exceptions.propagate(e.getCause());
+        }
+    }
+
+    /** credentials implementations' equals typically ignores the password, so key on it explicitly */
+    private static List<Object> credentialsKey(Credentials credentials) {
+        if (credentials == null) return null;
+        String user = (credentials.getUserPrincipal() == null) ? null : credentials.getUserPrincipal().getName();
+        String password = credentials.getPassword();
+        String passwordDigest = (password == null) ? null : Hashing.sha256().hashString(password, Charsets.UTF_8).toString();
+        return Arrays.<Object>asList(credentials.getClass().getName(), user, passwordDigest);
+    }
+
+    @SuppressWarnings("deprecation")
+    protected PooledClient newClient(URI uri, HttpConfig config, Credentials credentials) {
+        PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager(SchemeRegistryFactory.createDefault());
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        HttpClient client = HttpTool.httpClientBuilder()
+                .clientConnectionManager(connectionManager)
+                .uri(uri)
+                .credential(Optional.fromNullable(credentials))
+                .laxRedirect(config.laxRedirect())
+                .trustSelfSigned(config.trustSelfSigned())
+                .trustAll(config.trustAll())
+                .build();
+        // without this a request would wait indefinitely for a connection when the pool is exhausted
+        HttpClientParams.setConnectionManagerTimeout(client.getParams(), connectionRequestTimeout.toMilliseconds());
+        // the client is shared by unrelated requests to the host, which must not see each other's cookies
+        HttpClientParams.setCookiePolicy(client.getParams(), CookiePolicy.IGNORE_COOKIES);
+        clientsCreatedCount.incrementAndGet();
+        return new PooledClient(client, connectionManager);
+    }
+
+    private void maybeCloseIdleConnections() {
+        long last = lastIdleCheck.get();
+        long now = System.currentTimeMillis();
+        if (now - last >= idleTimeout.toMilliseconds() && lastIdleCheck.compareAndSet(last, now)) {
+            closeIdleConnections();
+        }
+    }
+
+    /** closes pooled connections which have been idle for longer than the idle timeout, or have expired, and shuts down unused clients */
+    public void closeIdleConnections() {
+        clients.cleanUp();
+        for (PooledClient client : clients.asMap().values()) {
+            client.connectionManager.closeExpiredConnections();
+            client.connectionManager.closeIdleConnections(idleTimeout.toMilliseconds(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** current statistics for the clients' connection pools, summed over all clients, for reporting */
+    public Map<String, Object> getMetrics() {
+        int leased = 0, available = 0, pending = 0;
+        long clientCount = 0;
+        for (PooledClient client : clients.asMap().values()) {
+            PoolStats stats = client.connectionManager.getTotalStats();
+            leased += stats.getLeased();
+            available += stats.getAvailable();
+            pending += stats.getPending();
+            clientCount++;
+        }
+        return MutableMap.<String, Object>of(
+            "clients", clientCount,
+            "clientsCreated", clientsCreatedCount.get(),
+            "requests", requestCount.get(),
+            "leasedConnections", leased,
+            "availableConnections", available,
+            "pendingConnections", pending);
+    }
+
+    /** shuts down all clients, closing their connections */
+    public void close() {
+        clients.invalidateAll();
+        clients.cleanUp();
+    }
+
+    @Override
+    public String toString() {
+        return "SharedHttpClients[maxTotal="+maxTotal+"; maxPerRoute="+maxPerRoute+"; idleTimeout="+idleTimeout
+                +"; connectionRequestTimeout="+connectionRequestTimeout+"]";
+    }
+}